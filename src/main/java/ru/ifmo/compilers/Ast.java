@@ -0,0 +1,930 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores the nodes of syntax trees as parallel arrays.
+ * Every node is represented by its kind, the index of its lexeme, its first child and its next sibling,
+ * so no object is created per node.
+ * The lexemes are either referred to in the buffer the tree has been built from or copied to the store.
+ * <p>
+ * A node may be a link to a subtree stored once and shared by several trees, see {@link AstInterner}.
+ * The content of a link is the content of the linked node, but its children are stored in the linked store,
+ * so {@link Ast#getTargetAst} and {@link Ast#getTargetNode} have to be used to walk through it.
+ * A link may move the linked subtree to other lines, then {@link Ast#getLineShift} has to be added
+ * to the lines of the nodes reached through it, so equal statements on different lines are stored once.
+ */
+final class Ast {
+    /**
+     * The index meaning that there is no such node
+     */
+    static final int NONE = -1;
+
+    /**
+     * The result of {@link Ast#findLineShift} for the subtrees which are not equal
+     */
+    static final int NO_SHIFT = Integer.MIN_VALUE;
+
+    /**
+     * The kind of the nodes which represent a text instead of a lexeme
+     */
+    static final int LABEL = -1;
+
+    /**
+     * The kind of the nodes which are links to subtrees
+     */
+    static final int LINK = -2;
+
+    /**
+     * The initial capacity of the arrays
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * All the classes of lexemes, indexed by ordinal
+     */
+    private static final LexemeClass[] CLASSES = LexemeClass.values();
+
+    /**
+     * The buffer containing the lexemes referred to by the nodes, null if there is no such buffer
+     */
+    private final TokenBuffer tokens;
+
+    /**
+     * The lexemes copied to the store, created when the first one is added
+     */
+    private TokenBuffer copies;
+
+    /**
+     * The table the signs of the copied lexemes are interned to, null if it is the table of the first copied lexeme
+     */
+    private final SymbolTable copiedSymbols;
+
+    /**
+     * The texts of the nodes which are not lexemes
+     */
+    private final List<String> labels = new ArrayList<>();
+
+    /**
+     * Kinds of the nodes: ordinals of the classes of the lexemes or {@link Ast#LABEL}
+     */
+    private int[] kinds = new int[INITIAL_CAPACITY];
+
+    /**
+     * The stores containing the linked subtrees, the store itself may be among them
+     */
+    private final List<Ast> linkedAsts = new ArrayList<>();
+
+    /**
+     * Indices of the lexemes in {@link Ast#tokens} or bitwise complements of indices in {@link Ast#copies},
+     * for labels indices in {@link Ast#labels}, for links indices in {@link Ast#linkedAsts}
+     */
+    private int[] tokenIndices = new int[INITIAL_CAPACITY];
+
+    /**
+     * Indices of the first children of the nodes, for links indices of the linked nodes
+     */
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+
+    /**
+     * Indices of the next siblings of the nodes
+     */
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+
+    /**
+     * Indices of the last children of the nodes, so that a child is added in constant time
+     */
+    private int[] lastChildren = new int[INITIAL_CAPACITY];
+
+    /**
+     * The numbers added to the lines of the linked subtrees indexed by node, null while no link moves its subtree
+     */
+    private int[] lineShifts;
+
+    /**
+     * The number of the nodes
+     */
+    private int size = 0;
+
+    /**
+     * Whether no node can be added to the store
+     */
+    private boolean isFrozen = false;
+
+    /**
+     * Hashes of the subtrees of the nodes, which do not depend on the lines of the lexemes,
+     * computed when a hash of the frozen store is asked for the first time,
+     * null before that. The frozen stores may be shared by threads, so the array is published safely.
+     */
+    private volatile int[] hashes;
+
+    /**
+     * Creates an empty store, which copies every added lexeme
+     */
+    Ast() {
+        this.tokens = null;
+        this.copiedSymbols = null;
+    }
+
+    /**
+     * Creates an empty store, which copies every added lexeme and interns the signs to the table
+     *
+     * @param symbols the table the signs of the copied lexemes are interned to
+     */
+    Ast(@NonNull SymbolTable symbols) {
+        this.tokens = null;
+        this.copiedSymbols = symbols;
+    }
+
+    /**
+     * Creates an empty store of the trees built from the lexemes of the buffer
+     *
+     * @param tokens the buffer of lexemes the nodes refer to
+     */
+    Ast(@NonNull TokenBuffer tokens) {
+        this.tokens = tokens;
+        this.copiedSymbols = null;
+    }
+
+    /**
+     * Adds a node representing a text
+     *
+     * @param parent the index of the parent node or {@link Ast#NONE} for a root
+     * @param label  the text of the node
+     * @return the index of the created node
+     */
+    int addLabel(int parent, @NonNull String label) {
+        labels.add(label);
+        return add(parent, LABEL, labels.size() - 1);
+    }
+
+    /**
+     * Adds a node representing the lexeme of the buffer the store has been created for
+     *
+     * @param parent the index of the parent node or {@link Ast#NONE} for a root
+     * @param token  the index of the lexeme in the buffer
+     * @return the index of the created node
+     * @throws IllegalStateException if the store has not been created for a buffer
+     */
+    int addToken(int parent, int token) {
+        if (tokens == null)
+            throw new IllegalStateException("The tree has not been built from a buffer of lexemes");
+
+        return add(parent, tokens.getLexemeClass(token).ordinal(), token);
+    }
+
+    /**
+     * Adds a node representing the lexeme, copying it to the store.
+     * The sign is interned to the table of the copies unless it is predefined.
+     *
+     * @param parent the index of the parent node or {@link Ast#NONE} for a root
+     * @param lexeme the lexeme of the node
+     * @return the index of the created node
+     */
+    int addLexeme(int parent, @NonNull Lexeme lexeme) {
+        if (copies == null) {
+            var symbols = copiedSymbols != null ? copiedSymbols : lexeme.getSymbolTable();
+            copies = new TokenBuffer(new StringBuilder(), symbols != null ? symbols : SymbolTable.SHARED);
+        }
+
+        var text = (StringBuilder) copies.getSource();
+        var start = text.length();
+        text.append(lexeme.getSignView());
+
+        var symbol = lexeme.getSymbol();
+        if (SymbolTable.isInterned(lexeme.getLexemeClass()) && !SymbolTable.isPredefined(symbol)
+                && (symbol == SymbolTable.NONE || lexeme.getSymbolTable() != copies.getSymbolTable()))
+            symbol = copies.getSymbolTable().intern(lexeme.getSignView());
+
+        copies.add(lexeme.getLexemeClass(), start, text.length() - start, lexeme.getLine(), symbol);
+        return add(parent, lexeme.getLexemeClass().ordinal(), ~(copies.size() - 1));
+    }
+
+    /**
+     * Adds a node linking to the subtree, which is not copied.
+     * If the linked node is a link itself, its target is linked.
+     *
+     * @param parent the index of the parent node or {@link Ast#NONE} for a root
+     * @param target the store containing the subtree, which has to be either frozen or this store
+     * @param node   the index of the root of the subtree
+     * @return the index of the created node
+     * @throws IllegalArgumentException if the target store is neither frozen nor this store
+     */
+    int addLink(int parent, @NonNull Ast target, int node) {
+        return addLink(parent, target, node, 0);
+    }
+
+    /**
+     * Adds a node linking to the subtree, which is not copied, moving its lexemes to other lines.
+     * If the linked node is a link itself, its target is linked and the shifts of the lines are added up.
+     *
+     * @param parent    the index of the parent node or {@link Ast#NONE} for a root
+     * @param target    the store containing the subtree, which has to be either frozen or this store
+     * @param node      the index of the root of the subtree
+     * @param lineShift the number to be added to the lines of the lexemes of the subtree
+     * @return the index of the created node
+     * @throws IllegalArgumentException if the target store is neither frozen nor this store
+     */
+    int addLink(int parent, @NonNull Ast target, int node, int lineShift) {
+        var targetAst = target.getTargetAst(node);
+        var targetNode = target.getTargetNode(node);
+        lineShift += target.getLineShift(node);
+
+        if (targetAst != this && !targetAst.isFrozen())
+            throw new IllegalArgumentException("Only a subtree of a frozen tree may be linked");
+
+        var slot = linkedAsts.indexOf(targetAst);
+        if (slot < 0) {
+            linkedAsts.add(targetAst);
+            slot = linkedAsts.size() - 1;
+        }
+
+        var link = add(parent, LINK, slot);
+        firstChildren[link] = targetNode;
+
+        if (lineShift != 0) {
+            if (lineShifts == null)
+                lineShifts = new int[kinds.length];
+
+            lineShifts[link] = lineShift;
+        }
+
+        return link;
+    }
+
+    private int add(int parent, int kind, int token) {
+        if (isFrozen)
+            throw new IllegalStateException("The tree is frozen and cannot be changed");
+
+        if (parent != NONE && kinds[checkIndex(parent)] == LINK)
+            throw new IllegalArgumentException("Node " + parent + " is a link and cannot have children");
+
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            tokenIndices = Arrays.copyOf(tokenIndices, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+
+            if (lineShifts != null)
+                lineShifts = Arrays.copyOf(lineShifts, capacity);
+        }
+
+        kinds[size] = kind;
+        tokenIndices[size] = token;
+        firstChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        lastChildren[size] = NONE;
+
+        if (parent != NONE) {
+            if (lastChildren[parent] == NONE)
+                firstChildren[parent] = size;
+            else
+                nextSiblings[lastChildren[parent]] = size;
+
+            lastChildren[parent] = size;
+        }
+
+        return size++;
+    }
+
+    /**
+     * Forbids adding nodes to the store. The hashes of the subtrees are not computed until one of them is asked for,
+     * so the trees which are only printed or written do not pay for them.
+     */
+    void freeze() {
+        isFrozen = true;
+        lastChildren = null;
+    }
+
+    /**
+     * Checks whether the store has been frozen
+     *
+     * @return true if no node can be added
+     */
+    boolean isFrozen() {
+        return isFrozen;
+    }
+
+    /**
+     * Gets the hash of the subtree, which depends on the contents of the nodes and the order of the children,
+     * but not on the lines of the lexemes, so the subtrees equal up to a shift of the lines have the same hash.
+     * If the store is frozen, the hashes of all subtrees are computed on the first call and cached,
+     * otherwise the hash is computed on every call.
+     *
+     * @param node the index of the root of the subtree
+     * @return the hash of the subtree
+     */
+    int getSubtreeHash(int node) {
+        checkIndex(node);
+
+        var known = frozenHashes();
+        return known != null ? known[node] : computeHashes(node)[node];
+    }
+
+    /**
+     * Gets the hashes of all subtrees of the frozen store, computing them if it is the first call.
+     * As every node is added after its parent, the children are hashed before their parent in reverse order.
+     * Several threads may compute the same hashes at once, then one of the equal arrays is kept.
+     *
+     * @return the hashes indexed by node, null if the store is not frozen
+     */
+    private int[] frozenHashes() {
+        if (!isFrozen)
+            return null;
+
+        var known = hashes;
+        if (known == null)
+            hashes = known = computeHashes(0);
+
+        return known;
+    }
+
+    /**
+     * Compares the subtrees by the contents of the nodes, including the lines, and the order of the children.
+     * The subtrees may be stored in different stores. The hashes are compared first if both stores are frozen,
+     * which computes them if they have not been asked for yet.
+     *
+     * @param ast       the store of the first subtree
+     * @param node      the root of the first subtree
+     * @param otherAst  the store of the second subtree
+     * @param otherNode the root of the second subtree
+     * @return true if the subtrees are equal
+     */
+    static boolean subtreeEquals(@NonNull Ast ast, int node, @NonNull Ast otherAst, int otherNode) {
+        return subtreeEquals(ast, node, 0, otherAst, otherNode, 0);
+    }
+
+    /**
+     * Compares the subtrees by the contents of the nodes, including the lines, and the order of the children,
+     * the subtrees being reached through links moving them to other lines
+     *
+     * @param ast            the store of the first subtree
+     * @param node           the root of the first subtree
+     * @param lineShift      the number to be added to the lines of the first subtree
+     * @param otherAst       the store of the second subtree
+     * @param otherNode      the root of the second subtree
+     * @param otherLineShift the number to be added to the lines of the second subtree
+     * @return true if the subtrees are equal
+     */
+    static boolean subtreeEquals(@NonNull Ast ast, int node, int lineShift,
+                                 @NonNull Ast otherAst, int otherNode, int otherLineShift) {
+        return compare(ast, node, lineShift, otherAst, otherNode, otherLineShift, false) != NO_SHIFT;
+    }
+
+    /**
+     * Compares the subtrees ignoring the lines, as long as all lexemes of the second subtree are moved
+     * by the same number of lines from the ones of the first subtree
+     *
+     * @param ast       the store of the first subtree
+     * @param node      the root of the first subtree
+     * @param otherAst  the store of the second subtree
+     * @param otherNode the root of the second subtree
+     * @return the number to be added to the lines of the first subtree to get the second one,
+     * 0 if there are no lexemes, {@link Ast#NO_SHIFT} if the subtrees are not equal this way
+     */
+    static int findLineShift(@NonNull Ast ast, int node, @NonNull Ast otherAst, int otherNode) {
+        return compare(ast, node, 0, otherAst, otherNode, 0, true);
+    }
+
+    /**
+     * Compares the subtrees without recursion, the pairs of nodes to be compared are kept in a stack
+     * with the shifts of the lines of the links they have been reached through
+     *
+     * @param isShifted whether the lines of the second subtree may be moved from the ones of the first subtree
+     * @return the shift of the lines of the second subtree or {@link Ast#NO_SHIFT} if the subtrees are not equal
+     */
+    private static int compare(Ast ast, int node, int lineShift, Ast otherAst, int otherNode, int otherLineShift,
+                               boolean isShifted) {
+        ast.checkIndex(node);
+        otherAst.checkIndex(otherNode);
+
+        var asts = new Ast[16];
+        var nodes = new int[16];
+        var shifts = new int[16];
+        var top = 0;
+        asts[top] = ast;
+        shifts[top] = lineShift;
+        nodes[top++] = node;
+        asts[top] = otherAst;
+        shifts[top] = otherLineShift;
+        nodes[top++] = otherNode;
+
+        var isKnown = !isShifted;
+        var difference = 0;
+
+        while (top > 0) {
+            top--;
+            var second = asts[top].getTargetAst(nodes[top]);
+            var other = asts[top].getTargetNode(nodes[top]);
+            var otherShift = shifts[top] + asts[top].getLineShift(nodes[top]);
+            top--;
+            var first = asts[top].getTargetAst(nodes[top]);
+            var current = asts[top].getTargetNode(nodes[top]);
+            var shift = shifts[top] + asts[top].getLineShift(nodes[top]);
+
+            if (first == second && current == other && isKnown && otherShift - shift == difference)
+                continue;
+
+            var firstHashes = first.frozenHashes();
+            var secondHashes = second.frozenHashes();
+            if (firstHashes != null && secondHashes != null && firstHashes[current] != secondHashes[other])
+                return NO_SHIFT;
+
+            if (!contentEquals(first, current, second, other))
+                return NO_SHIFT;
+
+            if (first.kinds[current] != LABEL) {
+                var lines = second.lineOf(other) + otherShift - first.lineOf(current) - shift;
+
+                if (!isKnown) {
+                    difference = lines;
+                    isKnown = true;
+                } else if (lines != difference) {
+                    return NO_SHIFT;
+                }
+            }
+
+            var child = first.firstChildren[current];
+            var otherChild = second.firstChildren[other];
+
+            for (; child != NONE && otherChild != NONE; otherChild = second.nextSiblings[otherChild]) {
+                if (top + 2 > nodes.length) {
+                    asts = Arrays.copyOf(asts, asts.length * 2);
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    shifts = Arrays.copyOf(shifts, shifts.length * 2);
+                }
+
+                asts[top] = first;
+                shifts[top] = shift;
+                nodes[top++] = child;
+                asts[top] = second;
+                shifts[top] = otherShift;
+                nodes[top++] = otherChild;
+                child = first.nextSiblings[child];
+            }
+
+            if (child != NONE || otherChild != NONE)
+                return NO_SHIFT;
+        }
+
+        return difference;
+    }
+
+    /**
+     * Compares the contents of the nodes which are not links, a lexeme is compared by its class and its sign
+     */
+    private static boolean contentEquals(Ast ast, int node, Ast otherAst, int otherNode) {
+        if (ast.kinds[node] != otherAst.kinds[otherNode])
+            return false;
+
+        if (ast.kinds[node] == LABEL)
+            return ast.labels.get(ast.tokenIndices[node]).equals(otherAst.labels.get(otherAst.tokenIndices[otherNode]));
+
+        var buffer = ast.bufferOf(node);
+        var token = ast.tokenOf(node);
+        var otherBuffer = otherAst.bufferOf(otherNode);
+        var otherToken = otherAst.tokenOf(otherNode);
+
+        var symbol = buffer.getSymbol(token);
+        var otherSymbol = otherBuffer.getSymbol(otherToken);
+        if (symbol != SymbolTable.NONE && otherSymbol != SymbolTable.NONE)
+            return SymbolTable.signEquals(buffer.getSymbolTable(), symbol, otherBuffer.getSymbolTable(), otherSymbol);
+
+        return ast.getLexeme(node).signEquals(otherAst.getLexeme(otherNode).getSignView());
+    }
+
+    /**
+     * Computes the hash of the content of the node which is not a link, it is consistent with {@link Ast#contentEquals}
+     */
+    private int contentHash(int node) {
+        if (kinds[node] == LABEL)
+            return labels.get(tokenIndices[node]).hashCode();
+
+        var buffer = bufferOf(node);
+        var token = tokenOf(node);
+        var symbol = buffer.getSymbol(token);
+        int signHash;
+
+        if (symbol != SymbolTable.NONE) {
+            signHash = buffer.getSymbolTable().getSign(symbol).hashCode();
+        } else {
+            var sign = getLexeme(node).getSignView();
+            signHash = 0;
+            for (int i = 0; i < sign.length(); i++)
+                signHash = 31 * signHash + sign.charAt(i);
+        }
+
+        return kinds[node] * 31 + signHash;
+    }
+
+    /**
+     * Computes the hashes of the subtrees of all nodes starting from the node, which include its subtree.
+     * The nodes are mostly hashed in reverse order, as every node is added after its parent.
+     * A link to an earlier node of this store is hashed after the linked subtree, using an explicit stack.
+     *
+     * @param from the index of the first node to be hashed
+     * @return the array of hashes indexed by node, the elements before the node may be not filled
+     */
+    private int[] computeHashes(int from) {
+        var result = new int[size];
+        var isHashed = new boolean[size];
+        var isVisited = new boolean[size];
+        var stack = new int[16];
+
+        for (int start = size - 1; start >= from; start--) {
+            var top = 0;
+            stack[top++] = start;
+
+            while (top > 0) {
+                var node = stack[top - 1];
+
+                if (isHashed[node]) {
+                    top--;
+                    continue;
+                }
+
+                if (!isVisited[node]) {
+                    isVisited[node] = true;
+                    var pushed = top;
+
+                    if (kinds[node] == LINK) {
+                        if (linkedAsts.get(tokenIndices[node]) == this && !isHashed[firstChildren[node]])
+                            stack[top++] = firstChildren[node];
+                    } else {
+                        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+                            if (isHashed[child])
+                                continue;
+
+                            if (top == stack.length)
+                                stack = Arrays.copyOf(stack, top * 2);
+
+                            stack[top++] = child;
+                        }
+                    }
+
+                    if (top > pushed)
+                        continue;
+                }
+
+                result[node] = hash(node, result);
+                isHashed[node] = true;
+                top--;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the hash of the subtree, the hashes of the children or of the linked node of this store are known
+     */
+    private int hash(int node, int[] known) {
+        if (kinds[node] == LINK) {
+            var target = linkedAsts.get(tokenIndices[node]);
+            return target == this ? known[firstChildren[node]] : target.getSubtreeHash(firstChildren[node]);
+        }
+
+        int hash = contentHash(node);
+
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child])
+            hash = hash * 31 + known[child];
+
+        return hash;
+    }
+
+    /**
+     * Writes the nodes of the frozen store. The children and the siblings are written as differences with the node,
+     * as they are usually added right after it, the hashes are not written.
+     *
+     * @param output where to write the nodes
+     * @throws IllegalStateException if the store is not frozen, copies lexemes or links subtrees
+     */
+    void write(@NonNull ByteOutput output) {
+        if (!isFrozen || copies != null || !linkedAsts.isEmpty())
+            throw new IllegalStateException("Only a frozen tree referring to the lexemes of a buffer may be written");
+
+        output.writeVarInt(labels.size());
+        for (var label : labels) {
+            output.writeString(label);
+        }
+
+        output.writeVarInt(size);
+        for (int node = 0, token = 0; node < size; node++) {
+            output.writeSignedVarInt(kinds[node]);
+
+            if (kinds[node] == LABEL) {
+                output.writeVarInt(tokenIndices[node]);
+            } else {
+                output.writeSignedVarInt(tokenIndices[node] - token);
+                token = tokenIndices[node];
+            }
+
+            output.writeVarInt(firstChildren[node] == NONE ? 0 : firstChildren[node] - node);
+            output.writeVarInt(nextSiblings[node] == NONE ? 0 : nextSiblings[node] - node);
+        }
+    }
+
+    /**
+     * Reads the nodes written by {@link Ast#write}, the store is frozen
+     *
+     * @param input  the buffer to read the nodes from, its position is moved after them
+     * @param tokens the buffer of lexemes the nodes refer to
+     * @return the read store
+     * @throws IllegalArgumentException if the nodes do not form valid trees of the lexemes
+     */
+    static Ast read(@NonNull ByteBuffer input, @NonNull TokenBuffer tokens) {
+        var ast = new Ast(tokens);
+
+        var labelCount = ByteOutput.readVarInt(input);
+        for (int i = 0; i < labelCount; i++) {
+            ast.labels.add(ByteOutput.readString(input));
+        }
+
+        var size = ByteOutput.readVarInt(input);
+        if (size < 0 || size > input.remaining())
+            throw new IllegalArgumentException("Invalid number of nodes: " + size);
+
+        ast.kinds = new int[size];
+        ast.tokenIndices = new int[size];
+        ast.firstChildren = new int[size];
+        ast.nextSiblings = new int[size];
+        ast.lastChildren = null;
+        ast.size = size;
+
+        for (int node = 0, token = 0; node < size; node++) {
+            var kind = ByteOutput.readSignedVarInt(input);
+            var isLabel = kind == LABEL;
+            var index = isLabel ? ByteOutput.readVarInt(input) : (token += ByteOutput.readSignedVarInt(input));
+            var child = ByteOutput.readVarInt(input);
+            var sibling = ByteOutput.readVarInt(input);
+
+            if (kind < LABEL || kind >= CLASSES.length || index < 0 || index >= (isLabel ? labelCount : tokens.size())
+                    || !isLabel && kind != tokens.getLexemeClass(index).ordinal()
+                    || child < 0 || child >= size - node || sibling < 0 || sibling >= size - node)
+                throw new IllegalArgumentException("Invalid node " + node);
+
+            ast.kinds[node] = kind;
+            ast.tokenIndices[node] = index;
+            ast.firstChildren[node] = child == 0 ? NONE : node + child;
+            ast.nextSiblings[node] = sibling == 0 ? NONE : node + sibling;
+        }
+
+        ast.isFrozen = true;
+        return ast;
+    }
+
+    /**
+     * Gets the number of the nodes
+     *
+     * @return the number of the nodes in the store
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of the stores containing the subtrees linked by the nodes of this store
+     *
+     * @return the number of the linked stores, which may include this store
+     */
+    int getLinkedAstCount() {
+        return linkedAsts.size();
+    }
+
+    /**
+     * Gets the kind of the node, for a link the kind of the linked node
+     *
+     * @param node the index of the node
+     * @return the ordinal of the class of the lexeme or {@link Ast#LABEL}
+     */
+    int getKind(int node) {
+        if (isLink(node))
+            return getTargetAst(node).getKind(getTargetNode(node));
+
+        return kinds[node];
+    }
+
+    /**
+     * Checks whether the node is a link to a subtree
+     *
+     * @param node the index of the node
+     * @return true if the node is a link
+     */
+    boolean isLink(int node) {
+        return kinds[checkIndex(node)] == LINK;
+    }
+
+    /**
+     * Gets the store containing the children of the node
+     *
+     * @param node the index of the node
+     * @return the store of the linked subtree for a link, this store otherwise
+     */
+    Ast getTargetAst(int node) {
+        return isLink(node) ? linkedAsts.get(tokenIndices[node]) : this;
+    }
+
+    /**
+     * Gets the node which children are the children of the node
+     *
+     * @param node the index of the node
+     * @return the index of the linked node in {@link Ast#getTargetAst} for a link, the node itself otherwise
+     */
+    int getTargetNode(int node) {
+        return isLink(node) ? firstChildren[node] : node;
+    }
+
+    /**
+     * Checks whether the node represents a lexeme
+     *
+     * @param node the index of the node
+     * @return true if the node represents a lexeme, false if it represents a text
+     */
+    boolean isLexeme(int node) {
+        return getKind(node) != LABEL;
+    }
+
+    /**
+     * Gets the class of the lexeme of the node
+     *
+     * @param node the index of the node
+     * @return the class of the lexeme
+     * @throws IllegalArgumentException if the node does not represent a lexeme
+     */
+    LexemeClass getLexemeClass(int node) {
+        return CLASSES[checkLexeme(node)];
+    }
+
+    /**
+     * Gets the id of the sign of the lexeme of the node
+     *
+     * @param node the index of the node
+     * @return the id in the table of {@link Ast#getSymbolTable} or {@link SymbolTable#NONE}
+     * @throws IllegalArgumentException if the node does not represent a lexeme
+     */
+    int getSymbol(int node) {
+        if (isLink(node))
+            return getTargetAst(node).getSymbol(getTargetNode(node));
+
+        checkLexeme(node);
+        return bufferOf(node).getSymbol(tokenOf(node));
+    }
+
+    /**
+     * Gets the table the sign of the lexeme of the node is interned to
+     *
+     * @param node the index of the node
+     * @return the table of the buffer containing the lexeme
+     * @throws IllegalArgumentException if the node does not represent a lexeme
+     */
+    SymbolTable getSymbolTable(int node) {
+        if (isLink(node))
+            return getTargetAst(node).getSymbolTable(getTargetNode(node));
+
+        checkLexeme(node);
+        return bufferOf(node).getSymbolTable();
+    }
+
+    /**
+     * Gets the table the signs of the lexemes of the store are interned to
+     *
+     * @return the table of the lexemes or of the copies, null if the store has neither
+     */
+    SymbolTable getSymbolTable() {
+        if (tokens != null)
+            return tokens.getSymbolTable();
+
+        return copies != null ? copies.getSymbolTable() : copiedSymbols;
+    }
+
+    /**
+     * Gets the line the lexeme of the node has been found on
+     *
+     * @param node the index of the node
+     * @return the line of the source code
+     * @throws IllegalArgumentException if the node does not represent a lexeme
+     */
+    int getLine(int node) {
+        if (isLink(node))
+            return getTargetAst(node).getLine(getTargetNode(node)) + lineShifts(node);
+
+        checkLexeme(node);
+        return lineOf(node);
+    }
+
+    /**
+     * Gets the number added by the link to the lines of the linked subtree
+     *
+     * @param node the index of the node
+     * @return the shift of the lines, 0 if the node is not a link
+     */
+    int getLineShift(int node) {
+        checkIndex(node);
+        return lineShifts(node);
+    }
+
+    /**
+     * Creates an instance of {@link Lexeme} representing the lexeme of the node
+     *
+     * @param node the index of the node
+     * @return the lexeme of the node
+     * @throws IllegalArgumentException if the node does not represent a lexeme
+     */
+    Lexeme getLexeme(int node) {
+        return getLexeme(node, 0);
+    }
+
+    /**
+     * Creates an instance of {@link Lexeme} representing the lexeme of the node moved to another line,
+     * which is needed for the nodes reached through the links moving their subtrees
+     *
+     * @param node      the index of the node
+     * @param lineShift the number to be added to the line of the lexeme
+     * @return the lexeme of the node
+     * @throws IllegalArgumentException if the node does not represent a lexeme
+     */
+    Lexeme getLexeme(int node, int lineShift) {
+        if (isLink(node))
+            return getTargetAst(node).getLexeme(getTargetNode(node), lineShift + lineShifts(node));
+
+        checkLexeme(node);
+        return bufferOf(node).get(tokenOf(node), lineShift);
+    }
+
+    /**
+     * Gets the text of the node
+     *
+     * @param node the index of the node
+     * @return the text of the node or the string representation of its lexeme
+     */
+    String getContent(int node) {
+        if (isLexeme(node))
+            return getLexeme(node).toString();
+
+        return isLink(node) ? getTargetAst(node).getContent(getTargetNode(node)) : labels.get(tokenIndices[node]);
+    }
+
+    /**
+     * Gets the first child of the node
+     *
+     * @param node the index of the node
+     * @return the index of the first child or {@link Ast#NONE}
+     * @throws IllegalArgumentException if the node is a link
+     */
+    int getFirstChild(int node) {
+        if (isLink(node))
+            throw new IllegalArgumentException("Node " + node + " is a link, its children are in the linked store");
+
+        return firstChildren[node];
+    }
+
+    /**
+     * Gets the next sibling of the node
+     *
+     * @param node the index of the node
+     * @return the index of the next sibling or {@link Ast#NONE}
+     */
+    int getNextSibling(int node) {
+        return nextSiblings[checkIndex(node)];
+    }
+
+    private int lineShifts(int node) {
+        return lineShifts == null ? 0 : lineShifts[node];
+    }
+
+    private int lineOf(int node) {
+        return bufferOf(node).getLine(tokenOf(node));
+    }
+
+    private TokenBuffer bufferOf(int node) {
+        return tokenIndices[node] >= 0 ? tokens : copies;
+    }
+
+    private int tokenOf(int node) {
+        var token = tokenIndices[node];
+        return token >= 0 ? token : ~token;
+    }
+
+    private int checkLexeme(int node) {
+        var kind = getKind(node);
+
+        if (kind == LABEL)
+            throw new IllegalArgumentException("Node " + node + " does not represent a lexeme");
+
+        return kind;
+    }
+
+    private int checkIndex(int node) {
+        if (node < 0 || node >= size)
+            throw new IndexOutOfBoundsException("Node: " + node + ", Size: " + size);
+
+        return node;
+    }
+}
@@ -0,0 +1,151 @@
+package ru.ifmo.compilers;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Builds the AST from the events of {@link Parser}. The operators of the program and of the compound operators
+ * become the children of the root, every nested construction is a child of the node of its first lexeme.
+ * The open nodes are kept in a stack, so no object is created per node but by {@link Ast}.
+ */
+final class AstBuilder implements ParseListener {
+    /**
+     * The store of the AST
+     */
+    private final Ast ast;
+
+    /**
+     * Whether the nodes refer to the lexemes in the buffer by their indices instead of copying them
+     */
+    private final boolean isBuffered;
+
+    /**
+     * The root node of the AST
+     */
+    @Getter
+    private final OutputTreeNode<Lexeme> root;
+
+    /**
+     * The nodes the next nodes are added to, the innermost one is the last
+     */
+    private int[] open = new int[16];
+
+    /**
+     * The number of the open nodes
+     */
+    private int depth = 0;
+
+    /**
+     * The number of the open nodes when the current expression has started
+     */
+    private int expressionDepth = 0;
+
+    /**
+     * Creates a builder copying the lexemes to the store
+     */
+    AstBuilder() {
+        this(new Ast(), false);
+    }
+
+    /**
+     * Creates a builder of the AST which nodes refer to the lexemes in the buffer,
+     * the indices of the lexemes in the events have to be their indices in the buffer
+     *
+     * @param tokens the buffer of lexemes
+     */
+    AstBuilder(@NonNull TokenBuffer tokens) {
+        this(new Ast(tokens), true);
+    }
+
+    private AstBuilder(Ast ast, boolean isBuffered) {
+        this.ast = ast;
+        this.isBuffered = isBuffered;
+        this.root = new OutputTreeNode<>(ast, "\nAST");
+        push(root.getIndex());
+    }
+
+    @Override
+    public void enterDeclaration(Lexeme keyword, int index) {
+        push(add(keyword, index));
+    }
+
+    @Override
+    public void onVariable(Lexeme variable, int index) {
+        add(variable, index);
+    }
+
+    @Override
+    public void exitDeclaration() {
+        depth--;
+    }
+
+    @Override
+    public void enterAssignment(Lexeme target, int targetIndex, Lexeme operator, int operatorIndex) {
+        push(add(operator, operatorIndex));
+        add(target, targetIndex);
+    }
+
+    @Override
+    public void exitAssignment() {
+        depth--;
+    }
+
+    @Override
+    public void enterLoop(Lexeme keyword, int index) {
+        push(add(keyword, index));
+    }
+
+    @Override
+    public void enterLoopBody(Lexeme keyword, int index) {
+        push(add(keyword, index));
+    }
+
+    @Override
+    public void exitLoop() {
+        depth -= 2;
+    }
+
+    @Override
+    public void enterExpression() {
+        expressionDepth = depth;
+    }
+
+    @Override
+    public void onUnaryMinus(Lexeme operator, int index) {
+        add(operator, index);
+    }
+
+    @Override
+    public void onBinaryOperator(Lexeme operator, int index) {
+        push(add(operator, index));
+    }
+
+    @Override
+    public void onOperand(Lexeme operand, int index) {
+        add(operand, index);
+    }
+
+    @Override
+    public void exitExpression() {
+        depth = expressionDepth;
+    }
+
+    /**
+     * Adds the lexeme as a child of the innermost open node
+     *
+     * @return the index of the created node
+     */
+    private int add(Lexeme lexeme, int index) {
+        var parent = open[depth - 1];
+        return isBuffered ? ast.addToken(parent, index) : ast.addLexeme(parent, lexeme);
+    }
+
+    private void push(int node) {
+        if (depth == open.length)
+            open = Arrays.copyOf(open, depth * 2);
+
+        open[depth++] = node;
+    }
+}
@@ -0,0 +1,156 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads the trees written by {@link AstExporter} in {@link AstExporter.Format#BINARY} from a buffer,
+ * which may be a mapped file. The signs of the lexemes are not copied, they are views of the buffer,
+ * so the buffer must not be changed while the trees are used. A tree may be skipped without being decoded.
+ */
+final class AstExportReader {
+    /**
+     * All the classes of lexemes, indexed by ordinal
+     */
+    private static final LexemeClass[] CLASSES = LexemeClass.values();
+
+    /**
+     * The remaining trees of the stream
+     */
+    private final ByteBuffer input;
+
+    /**
+     * The table the signs of the read trees are interned to
+     */
+    private final SymbolTable symbols = SymbolTable.SHARED;
+
+    /**
+     * Starts reading the stream
+     *
+     * @param input the stream, its remaining bytes are read, but its position is not moved
+     * @throws IllegalArgumentException if the stream has not been written by {@link AstExporter}
+     */
+    AstExportReader(@NonNull ByteBuffer input) {
+        this.input = input.duplicate();
+
+        if (this.input.remaining() < Integer.BYTES + 1 || this.input.getInt() != AstExporter.MAGIC)
+            throw new IllegalArgumentException("The stream does not contain exported trees");
+
+        var version = this.input.get();
+        if (version != AstExporter.VERSION)
+            throw new IllegalArgumentException("Unsupported version of the stream: " + version);
+    }
+
+    /**
+     * Checks whether there is a tree left in the stream
+     *
+     * @return true if {@link AstExportReader#next} may be called
+     */
+    boolean hasNext() {
+        return input.hasRemaining();
+    }
+
+    /**
+     * Moves to the next tree without decoding the current one
+     *
+     * @throws IllegalArgumentException if the length of the tree is invalid
+     */
+    void skip() {
+        var frame = nextFrame();
+        input.position(input.position() + frame.limit());
+    }
+
+    /**
+     * Reads the next tree, its store is frozen and its lexemes refer to the stream
+     *
+     * @return the root of the read tree
+     * @throws IllegalArgumentException if the tree is malformed
+     */
+    OutputTreeNode<Lexeme> next() {
+        var frame = nextFrame();
+        input.position(input.position() + frame.limit());
+
+        var source = new SourceText(frame);
+        var tokens = new TokenBuffer(source, symbols);
+        var ast = new Ast(tokens);
+
+        var parents = new int[16];
+        var remaining = new int[16];
+        var depth = -1;
+
+        try {
+            do {
+                var parent = depth >= 0 ? parents[depth] : Ast.NONE;
+                var tag = frame.get() & 0xFF;
+                var children = ByteOutput.readVarInt(frame);
+
+                if (tag > CLASSES.length || children < 0 || children > frame.remaining())
+                    throw new IllegalArgumentException("Invalid node " + ast.size());
+
+                int node;
+
+                if (tag == AstExporter.LABEL_TAG) {
+                    node = ast.addLabel(parent, ByteOutput.readString(frame));
+                } else {
+                    var lexemeClass = CLASSES[tag - 1];
+                    var line = ByteOutput.readVarInt(frame);
+                    var length = ByteOutput.readVarInt(frame);
+                    var start = frame.position();
+
+                    if (length < 0 || length > frame.remaining())
+                        throw new IllegalArgumentException("Invalid sign of node " + ast.size());
+
+                    frame.position(start + length);
+
+                    var symbol = SymbolTable.isInterned(lexemeClass)
+                            ? symbols.intern(source.subSequence(start, start + length))
+                            : SymbolTable.NONE;
+
+                    tokens.add(lexemeClass, start, length, line, symbol);
+                    node = ast.addToken(parent, tokens.size() - 1);
+                }
+
+                if (depth >= 0)
+                    remaining[depth]--;
+
+                if (children > 0) {
+                    if (++depth == parents.length) {
+                        parents = Arrays.copyOf(parents, depth * 2);
+                        remaining = Arrays.copyOf(remaining, depth * 2);
+                    }
+
+                    parents[depth] = node;
+                    remaining[depth] = children;
+                }
+
+                while (depth >= 0 && remaining[depth] == 0)
+                    depth--;
+            } while (depth >= 0);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("The tree is truncated", e);
+        }
+
+        if (frame.hasRemaining())
+            throw new IllegalArgumentException("The tree has " + frame.remaining() + " extra bytes");
+
+        ast.freeze();
+        return new OutputTreeNode<>(ast, 0);
+    }
+
+    /**
+     * Reads the length of the next tree and gets a view of its bytes, the position is left at the bytes
+     */
+    private ByteBuffer nextFrame() {
+        if (input.remaining() < Integer.BYTES)
+            throw new IllegalArgumentException("The stream is truncated");
+
+        var length = input.getInt();
+        if (length <= 0 || length > input.remaining())
+            throw new IllegalArgumentException("Invalid length of a tree: " + length);
+
+        return input.slice().limit(length);
+    }
+}
@@ -0,0 +1,506 @@
+package ru.ifmo.compilers;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Writes the trees stored in {@link Ast} to a channel in a format which is easy for other programs to read.
+ * The bytes are put into a direct buffer taken from a shared pool and written to the channel when it is full,
+ * so neither the strings of the nodes nor the whole encoding are ever built.
+ * The nodes are visited with an explicit stack, the linked subtrees are written as if they were copied,
+ * on the lines the links move them to.
+ * <p>
+ * In {@link Format#BINARY} the stream starts with {@link AstExporter#MAGIC} and {@link AstExporter#VERSION},
+ * every tree is its length in 4 bytes followed by its nodes in preorder. A node is a byte with 0 for a text
+ * or 1 plus the ordinal of the class of its lexeme, the number of its children, then either the text in UTF-8
+ * or the line and the sign of the lexeme, one byte per character. The numbers and the lengths of the strings
+ * are written as by {@link ByteOutput#writeVarInt}. Such a stream is read by {@link AstExportReader}.
+ * <p>
+ * In {@link Format#JSON} every tree is a line with an object per node, which has either a {@code label}
+ * or a {@code class}, a {@code sign} and a {@code line}, and a {@code children} array if it has children.
+ */
+final class AstExporter implements Closeable {
+    /**
+     * The first bytes of a binary stream
+     */
+    static final int MAGIC = 0x50415358;
+
+    /**
+     * The version of the binary format, which follows {@link AstExporter#MAGIC}
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The tag of the nodes representing a text in the binary format
+     */
+    static final int LABEL_TAG = 0;
+
+    /**
+     * The size of the pooled buffers
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximal number of the buffers kept in the pool
+     */
+    private static final int POOL_SIZE = 16;
+
+    /**
+     * The buffers which are not used by any exporter
+     */
+    private static final ArrayBlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    /**
+     * The digits of the hexadecimal escapes of JSON
+     */
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The opening of the children of a node in JSON
+     */
+    private static final String CHILDREN = ",\"children\":[";
+
+    /**
+     * The format the trees are written in
+     */
+    @Getter
+    private final Format format;
+
+    /**
+     * The channel the trees are written to
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The buffer of the bytes which have not been written to the channel yet, null after closing
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * The stores of the nodes being visited at every depth
+     */
+    private Ast[] asts = new Ast[16];
+
+    /**
+     * The next nodes to be visited at every depth
+     */
+    private int[] siblings = new int[16];
+
+    /**
+     * The numbers added to the lines of the nodes being visited at every depth by the links they are reached through
+     */
+    private int[] shifts = new int[16];
+
+    /**
+     * Creates an exporter, a binary stream has to be started by {@link AstExporter#writeHeader}
+     *
+     * @param format  the format the trees are written in
+     * @param channel the channel the trees are written to, which is not closed by the exporter
+     */
+    AstExporter(@NonNull Format format, @NonNull WritableByteChannel channel) {
+        this.format = format;
+        this.channel = channel;
+
+        var pooled = POOL.poll();
+        buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    /**
+     * Starts the binary stream, so that it can be read by {@link AstExportReader}.
+     * Nothing is done for the other formats.
+     *
+     * @throws IOException if failed to write to the channel
+     */
+    void writeHeader() throws IOException {
+        if (format != Format.BINARY)
+            return;
+
+        ensureRemaining(Integer.BYTES + 1);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+    }
+
+    /**
+     * Writes the tree, some of its bytes may stay in the buffer until {@link AstExporter#flush}
+     *
+     * @param ast  the store containing the tree
+     * @param root the index of the root node
+     * @throws IOException if failed to write to the channel
+     */
+    void write(@NonNull Ast ast, int root) throws IOException {
+        if (format == Format.BINARY)
+            writeBinary(ast, root);
+        else
+            writeJson(ast, root);
+    }
+
+    /**
+     * Writes the bytes left in the buffer to the channel
+     *
+     * @throws IOException if failed to write to the channel
+     */
+    void flush() throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the exporter and returns its buffer to the pool, the channel is left open
+     *
+     * @throws IOException if failed to write to the channel
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null)
+            return;
+
+        try {
+            flush();
+        } finally {
+            buffer.clear();
+            POOL.offer(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Writes the length of the tree and its nodes in preorder
+     */
+    private void writeBinary(Ast ast, int root) throws IOException {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(measure(ast, root));
+        writeBinaryNode(ast, root, 0);
+
+        var depth = push(ast, root, -1);
+
+        while (depth >= 0) {
+            var store = asts[depth];
+            var node = siblings[depth];
+
+            if (node == Ast.NONE) {
+                depth--;
+                continue;
+            }
+
+            siblings[depth] = store.getNextSibling(node);
+            writeBinaryNode(store, node, shifts[depth]);
+            depth = push(store, node, depth);
+        }
+    }
+
+    /**
+     * Computes the number of bytes taken by the nodes of the tree in the binary format
+     */
+    private int measure(Ast ast, int root) {
+        var size = (long) measureNode(ast, root, 0);
+        var depth = push(ast, root, -1);
+
+        while (depth >= 0) {
+            var store = asts[depth];
+            var node = siblings[depth];
+
+            if (node == Ast.NONE) {
+                depth--;
+                continue;
+            }
+
+            siblings[depth] = store.getNextSibling(node);
+            size += measureNode(store, node, shifts[depth]);
+            depth = push(store, node, depth);
+        }
+
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("The tree takes more than " + Integer.MAX_VALUE + " bytes");
+
+        return (int) size;
+    }
+
+    private int measureNode(Ast ast, int node, int lineShift) {
+        var size = 1 + varIntSize(countChildren(ast, node));
+
+        if (!ast.isLexeme(node)) {
+            var length = utf8Length(ast.getContent(node));
+            return size + varIntSize(length) + length;
+        }
+
+        var sign = ast.getLexeme(node).getSignView();
+        return size + varIntSize(ast.getLine(node) + lineShift) + varIntSize(sign.length()) + sign.length();
+    }
+
+    private void writeBinaryNode(Ast ast, int node, int lineShift) throws IOException {
+        ensureRemaining(1);
+
+        if (!ast.isLexeme(node)) {
+            buffer.put((byte) LABEL_TAG);
+            writeVarInt(countChildren(ast, node));
+
+            var label = ast.getContent(node);
+            writeVarInt(utf8Length(label));
+            writeUtf8(label, false);
+            return;
+        }
+
+        buffer.put((byte) (ast.getLexemeClass(node).ordinal() + 1));
+        writeVarInt(countChildren(ast, node));
+        writeVarInt(ast.getLine(node) + lineShift);
+
+        var sign = ast.getLexeme(node).getSignView();
+        writeVarInt(sign.length());
+
+        for (int i = 0; i < sign.length(); i++) {
+            ensureRemaining(1);
+            var c = sign.charAt(i);
+            buffer.put((byte) (c <= 0xFF ? c : '?'));
+        }
+    }
+
+    /**
+     * Writes the tree as a line of JSON
+     */
+    private void writeJson(Ast ast, int root) throws IOException {
+        writeJsonNode(ast, root, 0);
+
+        var depth = push(ast, root, -1);
+        writeAscii(depth < 0 ? "}" : CHILDREN);
+
+        var isFirst = true;
+
+        while (depth >= 0) {
+            var store = asts[depth];
+            var node = siblings[depth];
+
+            if (node == Ast.NONE) {
+                writeAscii("]}");
+                depth--;
+                isFirst = false;
+                continue;
+            }
+
+            if (!isFirst)
+                writeAscii(",");
+
+            siblings[depth] = store.getNextSibling(node);
+            writeJsonNode(store, node, shifts[depth]);
+
+            var next = push(store, node, depth);
+            writeAscii(next == depth ? "}" : CHILDREN);
+
+            isFirst = next != depth;
+            depth = next;
+        }
+
+        writeAscii("\n");
+    }
+
+    /**
+     * Writes the fields of the node without closing its object
+     */
+    private void writeJsonNode(Ast ast, int node, int lineShift) throws IOException {
+        if (!ast.isLexeme(node)) {
+            writeAscii("{\"label\":\"");
+            writeUtf8(ast.getContent(node), true);
+            writeAscii("\"");
+            return;
+        }
+
+        writeAscii("{\"class\":\"");
+        writeAscii(ast.getLexemeClass(node).name());
+        writeAscii("\",\"sign\":\"");
+        writeUtf8(ast.getLexeme(node).getSignView(), true);
+        writeAscii("\",\"line\":");
+        writeDecimal(ast.getLine(node) + lineShift);
+    }
+
+    /**
+     * Makes the children of the node the next ones to be visited
+     *
+     * @return the depth of the children, the same depth if the node has no children
+     */
+    private int push(Ast ast, int node, int depth) {
+        var target = ast.getTargetAst(node);
+        var child = target.getFirstChild(ast.getTargetNode(node));
+
+        if (child == Ast.NONE)
+            return depth;
+
+        var shift = (depth >= 0 ? shifts[depth] : 0) + ast.getLineShift(node);
+
+        if (++depth == siblings.length) {
+            asts = Arrays.copyOf(asts, depth * 2);
+            siblings = Arrays.copyOf(siblings, depth * 2);
+            shifts = Arrays.copyOf(shifts, depth * 2);
+        }
+
+        asts[depth] = target;
+        siblings[depth] = child;
+        shifts[depth] = shift;
+        return depth;
+    }
+
+    private static int countChildren(Ast ast, int node) {
+        var target = ast.getTargetAst(node);
+        var count = 0;
+
+        for (var child = target.getFirstChild(ast.getTargetNode(node)); child != Ast.NONE; child = target.getNextSibling(child))
+            count++;
+
+        return count;
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        ensureRemaining(5);
+
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    private static int varIntSize(int value) {
+        var size = 1;
+
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+
+        return size;
+    }
+
+    private void writeDecimal(int value) throws IOException {
+        ensureRemaining(11);
+
+        if (value < 0)
+            buffer.put((byte) '-');
+
+        var start = buffer.position();
+        var rest = Math.abs((long) value);
+
+        do {
+            buffer.put((byte) ('0' + rest % 10));
+            rest /= 10;
+        } while (rest != 0);
+
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            var b = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, b);
+        }
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            ensureRemaining(1);
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the text in UTF-8, an unpaired surrogate is written as '?' or as an escape in JSON
+     *
+     * @param text   the text to write
+     * @param isJson whether the quotes, the backslashes and the control characters are escaped as in JSON
+     */
+    private void writeUtf8(CharSequence text, boolean isJson) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            ensureRemaining(6);
+            var c = text.charAt(i);
+
+            if (isJson && (c == '"' || c == '\\')) {
+                buffer.put((byte) '\\').put((byte) c);
+            } else if (isJson && c < 0x20) {
+                buffer.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                        .put(HEX_DIGITS[c >> 4]).put(HEX_DIGITS[c & 0xF]);
+            } else if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                var codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (isJson)
+                    buffer.put((byte) '\\').put((byte) 'u').put(HEX_DIGITS[c >> 12]).put(HEX_DIGITS[c >> 8 & 0xF])
+                            .put(HEX_DIGITS[c >> 4 & 0xF]).put(HEX_DIGITS[c & 0xF]);
+                else
+                    buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Computes the number of bytes taken by the text written by {@link AstExporter#writeUtf8} without escapes
+     */
+    private static int utf8Length(CharSequence text) {
+        var length = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Writes the buffer to the channel if it has less than the number of bytes left
+     */
+    private void ensureRemaining(int required) throws IOException {
+        if (buffer.remaining() < required)
+            flush();
+    }
+
+    /**
+     * The format the trees are written in
+     */
+    enum Format {
+        /**
+         * The length-prefixed binary encoding read by {@link AstExportReader}
+         */
+        BINARY,
+
+        /**
+         * A line of JSON per tree
+         */
+        JSON;
+
+        /**
+         * Finds the format by its name
+         *
+         * @param name the name of the format in any case
+         * @return the format
+         * @throws IllegalArgumentException if there is no such format
+         */
+        static Format of(@NonNull String name) {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        }
+    }
+}
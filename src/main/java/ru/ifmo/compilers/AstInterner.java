@@ -0,0 +1,318 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Shares structurally identical subtrees between the trees it interns.
+ * An interned tree is a frozen copy where every subtree equal to an already interned one
+ * is replaced by a link to it, so the subtree is stored once.
+ * The lines are not a part of the identity of a subtree: a subtree equal to an interned one on other lines
+ * is linked with the shift of the lines, see {@link Ast#findLineShift}.
+ * <p>
+ * The interned subtrees are found by their hashes, which depend on the whole subtree, in an open addressing table
+ * of parallel arrays, so no object is created per subtree. The stores are referred to weakly, one reference per store,
+ * so a subtree is forgotten as soon as no tree refers to its store. The entries of the collected stores
+ * are skipped and removed when the table is rebuilt.
+ */
+final class AstInterner {
+    /**
+     * The initial number of the slots of the table, a power of two
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Hashes of the interned subtrees indexed by slot
+     */
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    /**
+     * Roots of the interned subtrees indexed by slot
+     */
+    private int[] nodes = new int[INITIAL_CAPACITY];
+
+    /**
+     * Indices of the stores of the interned subtrees in {@link AstInterner#stores} plus one indexed by slot,
+     * 0 for the empty slots
+     */
+    private int[] storeIds = new int[INITIAL_CAPACITY];
+
+    /**
+     * The number of the occupied slots, including the ones of the collected stores
+     */
+    private int occupied = 0;
+
+    /**
+     * The number of the occupied slots of the collected stores
+     */
+    private int collectedEntries = 0;
+
+    /**
+     * The stores the interned subtrees belong to, null for the forgotten ones
+     */
+    private Store[] stores = new Store[16];
+
+    /**
+     * The number of the used elements of {@link AstInterner#stores}
+     */
+    private int storeCount = 0;
+
+    /**
+     * The queue of the stores which have been collected
+     */
+    private final ReferenceQueue<Ast> collected = new ReferenceQueue<>();
+
+    /**
+     * Creates a frozen copy of the tree, where the subtrees equal to the interned ones are links to them.
+     * The subtrees of the copy having children are interned as well. Leaves are always copied,
+     * as a link takes the same space.
+     *
+     * @param root the root of the tree, its store is frozen if it is not
+     * @return the root of the copy
+     */
+    synchronized OutputTreeNode<Lexeme> intern(@NonNull OutputTreeNode<Lexeme> root) {
+        var source = root.getAst();
+        source.freeze();
+        removeCollected();
+
+        var symbols = source.getSymbolTable();
+        var result = symbols != null ? new Ast(symbols) : new Ast();
+        var store = addStore(result);
+        var nodes = new int[16];
+        var parents = new int[16];
+        var children = new int[16];
+        var top = 0;
+        nodes[top] = root.getIndex();
+        parents[top++] = Ast.NONE;
+
+        while (top > 0) {
+            var node = nodes[--top];
+            var parent = parents[top];
+
+            if (source.isLink(node)) {
+                result.addLink(parent, source, node);
+                continue;
+            }
+
+            var isLeaf = source.getFirstChild(node) == Ast.NONE;
+            var hash = isLeaf ? 0 : source.getSubtreeHash(node);
+
+            if (!isLeaf && link(result, parent, source, node, hash))
+                continue;
+
+            var copy = source.isLexeme(node)
+                    ? result.addLexeme(parent, source.getLexeme(node))
+                    : result.addLabel(parent, source.getContent(node));
+
+            if (isLeaf)
+                continue;
+
+            add(hash, copy, store);
+
+            var count = 0;
+            for (int child = source.getFirstChild(node); child != Ast.NONE; child = source.getNextSibling(child)) {
+                if (count == children.length)
+                    children = Arrays.copyOf(children, count * 2);
+
+                children[count++] = child;
+            }
+
+            if (top + count > nodes.length) {
+                nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, top + count));
+                parents = Arrays.copyOf(parents, nodes.length);
+            }
+
+            while (count > 0) {
+                nodes[top] = children[--count];
+                parents[top++] = copy;
+            }
+        }
+
+        result.freeze();
+        return new OutputTreeNode<>(result, 0, root.getLineShift());
+    }
+
+    /**
+     * Gets the number of the interned subtrees, excluding the ones which stores are known to be collected
+     *
+     * @return the number of the interned subtrees
+     */
+    synchronized int size() {
+        removeCollected();
+        return occupied - collectedEntries;
+    }
+
+    /**
+     * Adds a link to the interned subtree equal to the subtree up to a shift of the lines, if there is such one
+     *
+     * @param result the store to add the link to
+     * @param parent the parent of the link in the store
+     * @param source the store of the subtree
+     * @param node   the root of the subtree
+     * @param hash   the hash of the subtree
+     * @return true if the link has been added
+     */
+    private boolean link(Ast result, int parent, Ast source, int node, int hash) {
+        var mask = storeIds.length - 1;
+
+        for (int slot = spread(hash) & mask; storeIds[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] != hash)
+                continue;
+
+            var store = stores[storeIds[slot] - 1];
+            var ast = store == null ? null : store.get();
+            if (ast == null)
+                continue;
+
+            var lineShift = Ast.findLineShift(ast, nodes[slot], source, node);
+            if (lineShift != Ast.NO_SHIFT) {
+                result.addLink(parent, ast, nodes[slot], lineShift);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds the subtree to the table, growing or rebuilding the table if it is half full
+     */
+    private void add(int hash, int node, Store store) {
+        if (2 * (occupied + 1) > storeIds.length)
+            rebuild();
+
+        var mask = storeIds.length - 1;
+        var slot = spread(hash) & mask;
+        while (storeIds[slot] != 0)
+            slot = (slot + 1) & mask;
+
+        hashes[slot] = hash;
+        nodes[slot] = node;
+        storeIds[slot] = store.id + 1;
+        store.entries++;
+        occupied++;
+    }
+
+    /**
+     * Registers the store the subtrees of an interned tree are copied to
+     */
+    private Store addStore(Ast ast) {
+        if (storeCount == stores.length)
+            compactStores();
+
+        var store = new Store(ast, storeCount, collected);
+        stores[storeCount++] = store;
+        return store;
+    }
+
+    /**
+     * Moves the entries of the living stores to a new table, which is twice as large
+     * if more than a quarter of the current one would stay occupied
+     */
+    private void rebuild() {
+        var living = occupied - collectedEntries;
+        var capacity = 4 * (living + 1) > storeIds.length ? storeIds.length * 2 : storeIds.length;
+
+        var oldHashes = hashes;
+        var oldNodes = nodes;
+        var oldStoreIds = storeIds;
+
+        hashes = new int[capacity];
+        nodes = new int[capacity];
+        storeIds = new int[capacity];
+        occupied = 0;
+        collectedEntries = 0;
+
+        var mask = capacity - 1;
+
+        for (int i = 0; i < oldStoreIds.length; i++) {
+            if (oldStoreIds[i] == 0 || stores[oldStoreIds[i] - 1] == null)
+                continue;
+
+            var slot = spread(oldHashes[i]) & mask;
+            while (storeIds[slot] != 0)
+                slot = (slot + 1) & mask;
+
+            hashes[slot] = oldHashes[i];
+            nodes[slot] = oldNodes[i];
+            storeIds[slot] = oldStoreIds[i];
+            occupied++;
+        }
+    }
+
+    /**
+     * Removes the forgotten stores from {@link AstInterner#stores}, renumbering the living ones,
+     * and grows it if it is still more than half full
+     */
+    private void compactStores() {
+        rebuild();
+
+        var ids = new int[storeCount];
+        var count = 0;
+
+        for (int i = 0; i < storeCount; i++) {
+            if (stores[i] == null)
+                continue;
+
+            ids[i] = count + 1;
+            stores[i].id = count;
+            stores[count++] = stores[i];
+        }
+
+        Arrays.fill(stores, count, storeCount, null);
+        storeCount = count;
+
+        for (int slot = 0; slot < storeIds.length; slot++) {
+            if (storeIds[slot] != 0)
+                storeIds[slot] = ids[storeIds[slot] - 1];
+        }
+
+        if (2 * storeCount > stores.length)
+            stores = Arrays.copyOf(stores, stores.length * 2);
+    }
+
+    /**
+     * Forgets the stores which have been collected, their entries are removed when the table is rebuilt
+     */
+    private void removeCollected() {
+        for (var reference = collected.poll(); reference != null; reference = collected.poll()) {
+            var store = (Store) reference;
+
+            if (stores[store.id] == store) {
+                stores[store.id] = null;
+                collectedEntries += store.entries;
+            }
+        }
+    }
+
+    /**
+     * Mixes the bits of the hash, so that the similar hashes do not occupy adjacent slots
+     */
+    private static int spread(int hash) {
+        var mixed = hash * 0x9E3779B9;
+        return mixed ^ mixed >>> 16;
+    }
+
+    /**
+     * A store the interned subtrees belong to, referred to weakly
+     */
+    private static final class Store extends WeakReference<Ast> {
+        /**
+         * The index of the store in {@link AstInterner#stores}
+         */
+        private int id;
+
+        /**
+         * The number of the entries of the table referring to the store
+         */
+        private int entries = 0;
+
+        Store(Ast ast, int id, ReferenceQueue<Ast> queue) {
+            super(ast, queue);
+            this.id = id;
+        }
+    }
+}
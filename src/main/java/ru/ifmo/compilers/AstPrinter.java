@@ -0,0 +1,133 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Prints the trees stored in {@link Ast} in the same format as {@link OutputTreeNode#print}.
+ * The nodes are visited with an explicit stack and the prefix of the lines is kept in one buffer,
+ * so neither the depth nor the width of the tree causes recursion or string concatenation.
+ * The linked subtrees are printed as if they were copied, on the lines the links move them to.
+ */
+final class AstPrinter {
+    /**
+     * The size of the buffer to be used when printing to a stream
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The separator of the printed lines
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /**
+     * The length of every segment of the prefix
+     */
+    private static final int INDENT = 4;
+
+    private AstPrinter() {
+    }
+
+    /**
+     * Prints the node as root node, then prints its children.
+     * The writer is neither flushed nor closed.
+     *
+     * @param ast  the store containing the tree
+     * @param root the index of the root node
+     * @param out  where to print the tree
+     * @throws IOException if failed to write
+     */
+    static void print(@NonNull Ast ast, int root, @NonNull Writer out) throws IOException {
+        print(ast, root, 0, out);
+    }
+
+    /**
+     * Prints the node reached through the links moving it to other lines as root node, then prints its children.
+     * The writer is neither flushed nor closed.
+     *
+     * @param ast       the store containing the tree
+     * @param root      the index of the root node
+     * @param lineShift the number to be added to the lines of the lexemes of the tree
+     * @param out       where to print the tree
+     * @throws IOException if failed to write
+     */
+    static void print(@NonNull Ast ast, int root, int lineShift, @NonNull Writer out) throws IOException {
+        writeContent(ast, root, lineShift, out);
+        out.write(LINE_SEPARATOR);
+
+        var prefix = new StringBuilder();
+        var asts = new Ast[16];
+        var siblings = new int[16];
+        var shifts = new int[16];
+        var depth = 0;
+        asts[0] = ast.getTargetAst(root);
+        siblings[0] = asts[0].getFirstChild(ast.getTargetNode(root));
+        shifts[0] = lineShift + ast.getLineShift(root);
+
+        while (depth >= 0) {
+            var store = asts[depth];
+            var node = siblings[depth];
+            var shift = shifts[depth];
+
+            if (node == Ast.NONE) {
+                depth--;
+                continue;
+            }
+
+            var next = store.getNextSibling(node);
+            siblings[depth] = next;
+            prefix.setLength(depth * INDENT);
+
+            out.append(prefix).write("│   ");
+            out.write(LINE_SEPARATOR);
+            out.append(prefix).write(next != Ast.NONE ? "├── " : "└── ");
+            writeContent(store, node, shift, out);
+            out.write(LINE_SEPARATOR);
+
+            var target = store.getTargetAst(node);
+            var child = target.getFirstChild(store.getTargetNode(node));
+            if (child != Ast.NONE) {
+                prefix.append(next != Ast.NONE ? "│   " : "    ");
+
+                if (++depth == siblings.length) {
+                    asts = Arrays.copyOf(asts, depth * 2);
+                    siblings = Arrays.copyOf(siblings, depth * 2);
+                    shifts = Arrays.copyOf(shifts, depth * 2);
+                }
+
+                asts[depth] = target;
+                siblings[depth] = child;
+                shifts[depth] = shift + store.getLineShift(node);
+            }
+        }
+    }
+
+    /**
+     * Writes the content of the node without creating the string representation of its lexeme
+     *
+     * @param ast       the store containing the node
+     * @param node      the index of the node
+     * @param lineShift the number to be added to the line of the lexeme
+     * @param out       where to write the content
+     * @throws IOException if failed to write
+     */
+    private static void writeContent(Ast ast, int node, int lineShift, Writer out) throws IOException {
+        if (!ast.isLexeme(node)) {
+            out.write(ast.getContent(node));
+            return;
+        }
+
+        var lexeme = ast.getLexeme(node, lineShift);
+
+        out.write("Lexeme(lexemeClass=");
+        out.write(lexeme.getLexemeClass().toString());
+        out.write(", sign=");
+        out.append(lexeme.getSignView());
+        out.write(", line=");
+        out.write(Integer.toString(lexeme.getLine()));
+        out.write(')');
+    }
+}
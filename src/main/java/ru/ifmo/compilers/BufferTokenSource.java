@@ -0,0 +1,86 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The source of a part of the lexemes stored in {@link TokenBuffer}. The next lexeme is looked at
+ * through the arrays of the buffer, an instance of {@link Lexeme} is created only when it is consumed
+ * or asked for by {@link BufferTokenSource#peek}.
+ */
+final class BufferTokenSource implements TokenSource {
+    /**
+     * The buffer of lexemes
+     */
+    private final TokenBuffer lexemes;
+
+    /**
+     * Index after the last lexeme of the part
+     */
+    private final int end;
+
+    /**
+     * Index of the next lexeme in the buffer
+     */
+    private int index;
+
+    /**
+     * Index of the marked lexeme in the buffer, -1 if none is marked
+     */
+    private int mark = -1;
+
+    /**
+     * Creates a source of a part of the lexemes of the buffer
+     *
+     * @param lexemes the buffer of lexemes
+     * @param from    the index of the first lexeme of the part
+     * @param to      the index after the last lexeme of the part
+     * @throws IndexOutOfBoundsException if the part is not inside the buffer
+     */
+    BufferTokenSource(@NonNull TokenBuffer lexemes, int from, int to) {
+        if (from < 0 || from > to || to > lexemes.size())
+            throw new IndexOutOfBoundsException("Invalid part " + from + ".." + to + " of " + lexemes.size() + " lexemes");
+
+        this.lexemes = lexemes;
+        this.index = from;
+        this.end = to;
+    }
+
+    @Override
+    public Lexeme peek() {
+        return index < end ? lexemes.get(index) : null;
+    }
+
+    @Override
+    public LexemeClass peekClass() {
+        return index < end ? lexemes.getLexemeClass(index) : null;
+    }
+
+    @Override
+    public int peekSymbol() {
+        return index < end ? lexemes.getSymbol(index) : SymbolTable.NONE;
+    }
+
+    @Override
+    public Lexeme next() {
+        if (index >= end)
+            throw new NoSuchElementException("The input is over");
+
+        return lexemes.get(index++);
+    }
+
+    @Override
+    public void mark() {
+        mark = index;
+    }
+
+    @Override
+    public void reset() {
+        if (mark < 0)
+            throw new IllegalStateException("No position has been marked");
+
+        index = mark;
+        mark = -1;
+    }
+}
@@ -0,0 +1,185 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The growing array of bytes the binary data is written to without locking.
+ * The numbers may be written using from 1 to 5 bytes, 7 bits per byte, so that small numbers take a byte.
+ * The signed ones are zigzag-encoded, so that the numbers close to zero are small regardless of their sign.
+ * The written data is read from a {@link ByteBuffer} by the static methods.
+ */
+final class ByteOutput {
+    /**
+     * The initial capacity of the array
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The written bytes
+     */
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+
+    /**
+     * The number of the written bytes
+     */
+    private int size = 0;
+
+    /**
+     * Writes the byte
+     *
+     * @param value the byte in the lowest 8 bits
+     */
+    void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Writes the number using 4 bytes, the highest byte first, as {@link ByteBuffer#getInt} reads it
+     *
+     * @param value the number
+     */
+    void writeInt(int value) {
+        ensureCapacity(Integer.BYTES);
+
+        for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE)
+            bytes[size++] = (byte) (value >> shift);
+    }
+
+    /**
+     * Writes the number, small non-negative numbers take less bytes
+     *
+     * @param value the number
+     */
+    void writeVarInt(int value) {
+        ensureCapacity(5);
+
+        while ((value & ~0x7F) != 0) {
+            bytes[size++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Writes the number, numbers close to zero take less bytes
+     *
+     * @param value the number
+     */
+    void writeSignedVarInt(int value) {
+        writeVarInt(value << 1 ^ value >> 31);
+    }
+
+    /**
+     * Writes the bytes preceded by their number
+     *
+     * @param value the bytes
+     */
+    void writeBytes(@NonNull byte[] value) {
+        writeVarInt(value.length);
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, bytes, size, value.length);
+        size += value.length;
+    }
+
+    /**
+     * Writes the string in UTF-8 preceded by the number of its bytes
+     *
+     * @param value the string
+     */
+    void writeString(@NonNull String value) {
+        writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the number of the written bytes
+     *
+     * @return the number of the written bytes
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copies the written bytes to the stream
+     *
+     * @param stream where to copy the bytes
+     * @throws IOException if failed to write to the stream
+     */
+    void writeTo(@NonNull OutputStream stream) throws IOException {
+        stream.write(bytes, 0, size);
+    }
+
+    /**
+     * Reads the number written by {@link ByteOutput#writeVarInt}
+     *
+     * @param input the buffer to read the number from, its position is moved after the number
+     * @return the read number
+     * @throws IllegalArgumentException if the number takes more than 5 bytes
+     */
+    static int readVarInt(@NonNull ByteBuffer input) {
+        int value = 0;
+
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            var b = input.get();
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0)
+                return value;
+        }
+
+        throw new IllegalArgumentException("Malformed number at " + input.position());
+    }
+
+    /**
+     * Reads the number written by {@link ByteOutput#writeSignedVarInt}
+     *
+     * @param input the buffer to read the number from, its position is moved after the number
+     * @return the read number
+     * @throws IllegalArgumentException if the number takes more than 5 bytes
+     */
+    static int readSignedVarInt(@NonNull ByteBuffer input) {
+        var value = readVarInt(input);
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * Reads the bytes written by {@link ByteOutput#writeBytes}
+     *
+     * @param input the buffer to read the bytes from, its position is moved after them
+     * @return the read bytes
+     * @throws IllegalArgumentException if the number of the bytes is invalid
+     */
+    static byte[] readBytes(@NonNull ByteBuffer input) {
+        var length = readVarInt(input);
+        if (length < 0 || length > input.remaining())
+            throw new IllegalArgumentException("Invalid number of bytes: " + length);
+
+        var value = new byte[length];
+        input.get(value);
+        return value;
+    }
+
+    /**
+     * Reads the string written by {@link ByteOutput#writeString}
+     *
+     * @param input the buffer to read the string from, its position is moved after it
+     * @return the read string
+     * @throws IllegalArgumentException if the number of the bytes of the string is invalid
+     */
+    static String readString(@NonNull ByteBuffer input) {
+        return new String(readBytes(input), StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int required) {
+        if (bytes.length - size < required)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + required));
+    }
+}
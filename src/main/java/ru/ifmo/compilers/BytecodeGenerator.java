@@ -0,0 +1,641 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ru.ifmo.compilers.ClassFileWriter.*;
+
+/**
+ * Compiles the programs of {@link Interpreter} into JVM bytecode, so that their loops and arithmetic
+ * are compiled into native code by the JIT compiler.
+ * The executable nodes are translated into a class extending {@link CompiledStatement},
+ * which is defined by a class loader of its own, so that the class is unloaded as soon as the program is not used.
+ * <p>
+ * Every generated method takes the frame and the remaining budget and returns the remaining budget.
+ * A method short enough to be compiled by the JIT keeps the variables it uses in local variables
+ * and writes them back to the frame on return. Longer code is split into such methods,
+ * called from a method working with the frame directly.
+ */
+final class BytecodeGenerator {
+    /**
+     * The maximal estimated length of a method keeping the variables in local variables,
+     * the JIT compiler skips the methods longer than 8000 bytes
+     */
+    private static final int METHOD_LIMIT = 7000;
+
+    /**
+     * The maximal number of the statements a method working with the frame calls at once
+     */
+    private static final int MAX_CALLS = 1000;
+
+    /**
+     * The maximal depth of the nested loops of a compiled program, the generator visits the loops recursively
+     */
+    static final int MAX_LOOP_DEPTH = 500;
+
+    /**
+     * The internal name of the superclass of the generated classes
+     */
+    private static final String STATEMENT = "ru/ifmo/compilers/BytecodeGenerator$CompiledStatement";
+
+    /**
+     * The descriptor of the generated methods: they take the frame and the budget and return the budget
+     */
+    private static final String DESCRIPTOR = "([JJ)J";
+
+    /**
+     * The local variable containing the remaining budget, the frame is in the local variable 0
+     */
+    private static final int BUDGET = 1;
+
+    /**
+     * The number of the local variables used by every generated method
+     */
+    private static final int RESERVED_LOCALS = 3;
+
+    /**
+     * The estimated lengths of the code of the nodes, see {@link BytecodeGenerator#size}
+     */
+    private static final int CONSTANT_SIZE = 3;
+    private static final int VARIABLE_SIZE = 5;
+    private static final int STORE_SIZE = 5;
+    private static final int SPEND_SIZE = 16;
+    private static final int COMPARISON_SIZE = 9;
+    private static final int LOOP_SIZE = 8;
+    private static final int CALL_SIZE = 9;
+    private static final int SLOT_SIZE = 18;
+
+    /**
+     * The number of the classes generated, used to name them
+     */
+    private static final AtomicInteger classes = new AtomicInteger();
+
+    /**
+     * The internal name of the generated class
+     */
+    private final String name;
+
+    /**
+     * The writer of the generated class
+     */
+    private final ClassFileWriter writer;
+
+    /**
+     * The slot passing the value of a part of an expression to the next part
+     */
+    private final int scratchSlot;
+
+    /**
+     * The estimated lengths of the code of the nodes having children
+     */
+    private final Map<Object, Integer> sizes = new IdentityHashMap<>();
+
+    /**
+     * The number of the generated methods, used to name them
+     */
+    private int methods = 0;
+
+    private BytecodeGenerator(String name, int scratchSlot) {
+        this.name = name;
+        this.writer = new ClassFileWriter(name, STATEMENT);
+        this.scratchSlot = scratchSlot;
+    }
+
+    /**
+     * Compiles the program into a class and loads it
+     *
+     * @param interpreter the interpreter of the program
+     * @return the interpreter executing the compiled class, it has the same variables
+     * @throws IllegalStateException if the loops are nested too deeply or failed to define the class
+     */
+    static Interpreter compile(@NonNull Interpreter interpreter) {
+        if (loopDepth(interpreter.getProgram()) > MAX_LOOP_DEPTH)
+            throw new IllegalStateException("The loops are nested deeper than " + MAX_LOOP_DEPTH + " levels");
+
+        var generator = new BytecodeGenerator("ru/ifmo/compilers/CompiledProgram" + classes.incrementAndGet(),
+                interpreter.getScratchSlot());
+        var bytes = generator.generate(interpreter.getProgram(), interpreter.getBudgetSlot());
+
+        Interpreter.Statement program;
+
+        try {
+            var type = new ProgramLoader().define(generator.name.replace('/', '.'), bytes);
+            program = (Interpreter.Statement) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Failed to define the compiled program: " + e, e);
+        }
+
+        return new Interpreter(interpreter.getVariables(), program);
+    }
+
+    /**
+     * Writes the class overriding {@link CompiledStatement#run}
+     *
+     * @param program    the compiled program
+     * @param budgetSlot the slot of the frame containing the budget
+     * @return the bytes of the class file
+     */
+    private byte[] generate(Interpreter.Statement program, int budgetSlot) {
+        var constructor = writer.addMethod(ACC_PUBLIC, "<init>", "()V");
+        constructor.reserveLocals(1);
+        constructor.local(ALOAD, 0, 1);
+        constructor.invoke(INVOKESPECIAL, writer.methodRef(STATEMENT, "<init>", "()V"), -1);
+        constructor.op(RETURN, 0);
+
+        var execute = writer.addMethod(ACC_PUBLIC, "run", "([J)V");
+        var run = writer.methodRef(name, method(statementsOf(program)), DESCRIPTOR);
+        execute.reserveLocals(2);
+        execute.local(ALOAD, 1, 1);
+        execute.pushInt(budgetSlot);
+        execute.local(ALOAD, 1, 1);
+        execute.local(ALOAD, 1, 1);
+        execute.pushInt(budgetSlot);
+        execute.op(LALOAD, 0);
+        execute.invoke(INVOKESTATIC, run, -1);
+        execute.op(LASTORE, -4);
+        execute.op(RETURN, 0);
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Generates a method executing the statements
+     *
+     * @param statements the statements to be executed
+     * @return the name of the method
+     */
+    private String method(List<Interpreter.Statement> statements) {
+        var methodName = "run" + methods++;
+        var method = new Method(writer.addMethod(ACC_PRIVATE | ACC_STATIC, methodName, DESCRIPTOR));
+        var code = method.code;
+        var size = 0;
+
+        for (var statement : statements)
+            size += size(statement);
+
+        var slots = new LinkedHashSet<Integer>();
+        var assigned = new LinkedHashSet<Integer>();
+
+        if (size <= METHOD_LIMIT) {
+            for (var statement : statements)
+                collect(statement, slots, assigned);
+        }
+
+        if (size <= METHOD_LIMIT && size + SLOT_SIZE * slots.size() <= METHOD_LIMIT) {
+            method.locals = new HashMap<>();
+
+            for (var slot : slots) {
+                var local = RESERVED_LOCALS + 2 * method.locals.size();
+                method.locals.put(slot, local);
+
+                code.local(ALOAD, 0, 1);
+                code.pushInt(slot);
+                code.op(LALOAD, 0);
+                code.local(LSTORE, local, -2);
+            }
+        }
+
+        code.reserveLocals(RESERVED_LOCALS + 2 * (method.locals == null ? 0 : method.locals.size()));
+        emitStatements(method, statements);
+
+        if (method.locals != null) {
+            for (var slot : assigned) {
+                code.local(ALOAD, 0, 1);
+                code.pushInt(slot);
+                code.local(LLOAD, method.locals.get(slot), 2);
+                code.op(LASTORE, -4);
+            }
+        }
+
+        code.local(LLOAD, BUDGET, 2);
+        code.op(LRETURN, -2);
+
+        return methodName;
+    }
+
+    /**
+     * Emits the statements, moving them into other methods if the code would be too long
+     *
+     * @param method     the method to emit the code to
+     * @param statements the statements to be executed
+     */
+    private void emitStatements(Method method, List<Interpreter.Statement> statements) {
+        var size = 0;
+        for (var statement : statements)
+            size += size(statement);
+
+        if (method.locals != null || size <= METHOD_LIMIT) {
+            for (var statement : statements)
+                emitStatement(method, statement);
+
+            return;
+        }
+
+        if (statements.size() > MAX_CALLS) {
+            var step = (statements.size() + MAX_CALLS - 1) / MAX_CALLS;
+
+            for (int i = 0; i < statements.size(); i += step)
+                call(method, statements.subList(i, Math.min(i + step, statements.size())));
+
+            return;
+        }
+
+        var group = new ArrayList<Interpreter.Statement>();
+        var groupSize = 0;
+
+        for (var statement : statements) {
+            var statementSize = size(statement);
+
+            if (groupSize + statementSize > METHOD_LIMIT && !group.isEmpty()) {
+                call(method, group);
+                group = new ArrayList<>();
+                groupSize = 0;
+            }
+
+            if (statementSize > METHOD_LIMIT) {
+                emitStatement(method, statement);
+            } else {
+                group.add(statement);
+                groupSize += statementSize;
+            }
+        }
+
+        if (!group.isEmpty())
+            call(method, group);
+    }
+
+    private void call(Method method, List<Interpreter.Statement> statements) {
+        var callee = writer.methodRef(name, method(statements), DESCRIPTOR);
+        var code = method.code;
+
+        code.local(ALOAD, 0, 1);
+        code.local(LLOAD, BUDGET, 2);
+        code.invoke(INVOKESTATIC, callee, -1);
+        code.local(LSTORE, BUDGET, -2);
+    }
+
+    private void emitStatement(Method method, Interpreter.Statement statement) {
+        var code = method.code;
+
+        if (statement instanceof Interpreter.Block) {
+            emitStatements(method, statementsOf(statement));
+        } else if (statement instanceof Interpreter.Assignment) {
+            var assignment = (Interpreter.Assignment) statement;
+            emitSpend(code);
+            emitStore(method, assignment.slot, assignment.value);
+        } else if (statement instanceof Store) {
+            var store = (Store) statement;
+            emitStore(method, store.slot, store.value);
+        } else if (statement instanceof Interpreter.Loop) {
+            var loop = (Interpreter.Loop) statement;
+            var start = code.length();
+
+            emitSpend(code);
+            emitExpression(method, loop.condition);
+            code.pushLong(0);
+            code.op(LCMP, -3);
+            var exit = code.jump(IFEQ, -1);
+
+            emitStatement(method, loop.body);
+            code.jumpTo(GOTO, start, 0);
+            code.bind(exit);
+        } else {
+            throw new IllegalArgumentException("Unknown statement: " + statement.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Emits the code spending a unit of the budget kept in {@link BytecodeGenerator#BUDGET}
+     */
+    private void emitSpend(ClassFileWriter.Code code) {
+        code.local(LLOAD, BUDGET, 2);
+        code.pushLong(1);
+        code.op(LSUB, -2);
+        code.op(DUP2, 2);
+        code.local(LSTORE, BUDGET, -2);
+        code.pushLong(0);
+        code.op(LCMP, -3);
+        var skip = code.jump(IFGE, -1);
+
+        code.invoke(INVOKESTATIC, writer.methodRef(STATEMENT, "exhausted", "()Ljava/lang/IllegalStateException;"), 1);
+        code.op(ATHROW, -1);
+        code.bind(skip);
+    }
+
+    private void emitStore(Method method, int slot, Interpreter.Expression value) {
+        var code = method.code;
+
+        if (method.locals != null) {
+            emitExpression(method, value);
+            code.local(LSTORE, method.locals.get(slot), -2);
+        } else {
+            code.local(ALOAD, 0, 1);
+            code.pushInt(slot);
+            emitExpression(method, value);
+            code.op(LASTORE, -4);
+        }
+    }
+
+    private void emitExpression(Method method, Interpreter.Expression expression) {
+        var code = method.code;
+
+        if (expression instanceof Interpreter.Constant) {
+            code.pushLong(((Interpreter.Constant) expression).value);
+        } else if (expression instanceof Interpreter.Variable) {
+            var slot = ((Interpreter.Variable) expression).slot;
+
+            if (method.locals != null) {
+                code.local(LLOAD, method.locals.get(slot), 2);
+            } else {
+                code.local(ALOAD, 0, 1);
+                code.pushInt(slot);
+                code.op(LALOAD, 0);
+            }
+        } else if (expression instanceof Interpreter.Negation) {
+            emitExpression(method, ((Interpreter.Negation) expression).operand);
+            code.op(LNEG, 0);
+        } else if (expression instanceof Interpreter.Chain) {
+            var parts = ((Interpreter.Chain) expression).parts;
+            emitStatements(method, scratchStores(parts));
+            emitExpression(method, parts[parts.length - 1]);
+        } else if (expression instanceof Interpreter.Binary) {
+            var binary = (Interpreter.Binary) expression;
+            emitExpression(method, binary.left);
+            emitExpression(method, binary.right);
+            emitOperator(code, binary);
+        } else {
+            throw new IllegalArgumentException("Unknown expression: " + expression.getClass().getSimpleName());
+        }
+    }
+
+    private static void emitOperator(ClassFileWriter.Code code, Interpreter.Binary binary) {
+        if (binary instanceof Interpreter.Add) {
+            code.op(LADD, -2);
+        } else if (binary instanceof Interpreter.Subtract) {
+            code.op(LSUB, -2);
+        } else if (binary instanceof Interpreter.Multiply) {
+            code.op(LMUL, -2);
+        } else if (binary instanceof Interpreter.Divide) {
+            code.op(LDIV, -2);
+        } else {
+            code.op(LCMP, -3);
+            var isTrue = code.jump(comparison(binary), -1);
+            code.pushLong(0);
+            var end = code.jump(GOTO, 0);
+
+            code.setStack(code.getStack() - 2);
+            code.bind(isTrue);
+            code.pushLong(1);
+            code.bind(end);
+        }
+    }
+
+    /**
+     * Gets the jump taken if the result of LCMP satisfies the comparison
+     */
+    private static int comparison(Interpreter.Binary binary) {
+        if (binary instanceof Interpreter.Less)
+            return IFLT;
+
+        if (binary instanceof Interpreter.Greater)
+            return IFGT;
+
+        if (binary instanceof Interpreter.Equal)
+            return IFEQ;
+
+        throw new IllegalArgumentException("Unknown operator: " + binary.getClass().getSimpleName());
+    }
+
+    /**
+     * Estimates the length of the code of the node if it is emitted into one method.
+     * The estimation is not less than the real length.
+     *
+     * @param node a statement or an expression
+     * @return the estimated number of bytes
+     */
+    private int size(Object node) {
+        if (node instanceof Interpreter.Constant)
+            return CONSTANT_SIZE;
+
+        if (node instanceof Interpreter.Variable)
+            return VARIABLE_SIZE;
+
+        var size = sizes.get(node);
+        if (size != null)
+            return size;
+
+        if (node instanceof Interpreter.Block) {
+            size = 0;
+            for (var statement : ((Interpreter.Block) node).statements)
+                size += size(statement);
+        } else if (node instanceof Interpreter.Assignment) {
+            size = SPEND_SIZE + STORE_SIZE + size(((Interpreter.Assignment) node).value);
+        } else if (node instanceof Store) {
+            size = STORE_SIZE + size(((Store) node).value);
+        } else if (node instanceof Interpreter.Loop) {
+            var loop = (Interpreter.Loop) node;
+            size = SPEND_SIZE + LOOP_SIZE + size(loop.condition) + size(loop.body);
+        } else if (node instanceof Interpreter.Negation) {
+            size = 1 + size(((Interpreter.Negation) node).operand);
+        } else if (node instanceof Interpreter.Chain) {
+            var parts = ((Interpreter.Chain) node).parts;
+            size = STORE_SIZE * (parts.length - 1);
+            for (var part : parts)
+                size += size(part);
+        } else if (node instanceof Interpreter.Binary) {
+            var binary = (Interpreter.Binary) node;
+            size = size(binary.left) + size(binary.right)
+                    + (binary instanceof Interpreter.Less || binary instanceof Interpreter.Greater
+                    || binary instanceof Interpreter.Equal ? COMPARISON_SIZE : 1);
+        } else {
+            throw new IllegalArgumentException("Unknown node: " + node.getClass().getSimpleName());
+        }
+
+        sizes.put(node, size);
+        return size;
+    }
+
+    /**
+     * Collects the slots used by the node
+     *
+     * @param node     a statement or an expression
+     * @param slots    where to add the read or assigned slots
+     * @param assigned where to add the assigned slots
+     */
+    private void collect(Object node, Set<Integer> slots, Set<Integer> assigned) {
+        if (node instanceof Interpreter.Block) {
+            for (var statement : ((Interpreter.Block) node).statements)
+                collect(statement, slots, assigned);
+        } else if (node instanceof Interpreter.Assignment) {
+            var assignment = (Interpreter.Assignment) node;
+            collect(assignment.value, slots, assigned);
+            slots.add(assignment.slot);
+            assigned.add(assignment.slot);
+        } else if (node instanceof Store) {
+            collect(((Store) node).value, slots, assigned);
+            slots.add(((Store) node).slot);
+            assigned.add(((Store) node).slot);
+        } else if (node instanceof Interpreter.Loop) {
+            collect(((Interpreter.Loop) node).condition, slots, assigned);
+            collect(((Interpreter.Loop) node).body, slots, assigned);
+        } else if (node instanceof Interpreter.Variable) {
+            slots.add(((Interpreter.Variable) node).slot);
+        } else if (node instanceof Interpreter.Negation) {
+            collect(((Interpreter.Negation) node).operand, slots, assigned);
+        } else if (node instanceof Interpreter.Chain) {
+            for (var part : ((Interpreter.Chain) node).parts)
+                collect(part, slots, assigned);
+
+            slots.add(scratchSlot);
+            assigned.add(scratchSlot);
+        } else if (node instanceof Interpreter.Binary) {
+            collect(((Interpreter.Binary) node).left, slots, assigned);
+            collect(((Interpreter.Binary) node).right, slots, assigned);
+        }
+    }
+
+    /**
+     * Creates the statements passing the values of all parts of a chain but the last one through the scratch slot
+     */
+    private List<Interpreter.Statement> scratchStores(Interpreter.Expression[] parts) {
+        var stores = new ArrayList<Interpreter.Statement>(parts.length - 1);
+
+        for (int i = 0; i < parts.length - 1; i++)
+            stores.add(new Store(scratchSlot, parts[i]));
+
+        return stores;
+    }
+
+    /**
+     * Gets the depth of the nested loops of the statement without recursion
+     *
+     * @param statement the statement
+     * @return the largest number of the loops containing one another
+     */
+    private static int loopDepth(Interpreter.Statement statement) {
+        var statements = new ArrayDeque<Interpreter.Statement>();
+        var depths = new ArrayDeque<Integer>();
+        var result = 0;
+        statements.push(statement);
+        depths.push(0);
+
+        while (!statements.isEmpty()) {
+            var current = statements.pop();
+            var depth = depths.pop();
+            result = Math.max(result, depth);
+
+            if (current instanceof Interpreter.Loop) {
+                statements.push(((Interpreter.Loop) current).body);
+                depths.push(depth + 1);
+            } else if (current instanceof Interpreter.Block) {
+                for (var child : ((Interpreter.Block) current).statements) {
+                    statements.push(child);
+                    depths.push(depth);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private static List<Interpreter.Statement> statementsOf(Interpreter.Statement statement) {
+        if (statement instanceof Interpreter.Block)
+            return Arrays.asList(((Interpreter.Block) statement).statements);
+
+        return List.of(statement);
+    }
+
+    /**
+     * A generated method
+     */
+    private static final class Method {
+        /**
+         * The code of the method
+         */
+        private final ClassFileWriter.Code code;
+
+        /**
+         * The local variables keeping the slots of the frame, null if the method works with the frame directly
+         */
+        private Map<Integer, Integer> locals;
+
+        Method(ClassFileWriter.Code code) {
+            this.code = code;
+        }
+    }
+
+    /**
+     * An assignment which does not spend the budget, used to pass the values of the parts of a chain
+     */
+    private static final class Store extends Interpreter.Statement {
+        private final int slot;
+        private final Interpreter.Expression value;
+
+        Store(int slot, Interpreter.Expression value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        void execute(long[] frame) {
+            frame[slot] = value.evaluate(frame);
+        }
+    }
+
+    /**
+     * The superclass of the generated classes. As every generated class has its own class loader,
+     * it is not in the runtime package of this class, so it may use only the public and the protected members.
+     */
+    public abstract static class CompiledStatement extends Interpreter.Statement {
+        @Override
+        final void execute(long[] frame) {
+            run(frame);
+        }
+
+        /**
+         * Executes the compiled program
+         *
+         * @param frame the values of the variables and the budget
+         */
+        protected abstract void run(long[] frame);
+
+        /**
+         * Creates the exception thrown when the budget is exhausted
+         *
+         * @return the exception
+         */
+        protected static IllegalStateException exhausted() {
+            return Interpreter.Statement.exhausted();
+        }
+    }
+
+    /**
+     * The class loader defining a single generated class, the class is unloaded together with the loader
+     */
+    private static final class ProgramLoader extends ClassLoader {
+        ProgramLoader() {
+            super(BytecodeGenerator.class.getClassLoader());
+        }
+
+        /**
+         * Defines the generated class
+         *
+         * @param name  the binary name of the class
+         * @param bytes the class file
+         * @return the defined class
+         */
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
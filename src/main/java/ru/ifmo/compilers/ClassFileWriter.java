@@ -0,0 +1,465 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes JVM class files containing only methods.
+ * The classes have version 49, so their methods need no stack map frames and are checked by the inferring verifier.
+ */
+final class ClassFileWriter {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ICONST_0 = 0x03;
+    static final int LCONST_0 = 0x09;
+    static final int LCONST_1 = 0x0a;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int LLOAD = 0x16;
+    static final int ALOAD = 0x19;
+    static final int LALOAD = 0x2f;
+    static final int LSTORE = 0x37;
+    static final int LASTORE = 0x50;
+    static final int DUP2 = 0x5c;
+    static final int LADD = 0x61;
+    static final int LSUB = 0x65;
+    static final int LMUL = 0x69;
+    static final int LDIV = 0x6d;
+    static final int LNEG = 0x75;
+    static final int LCMP = 0x94;
+    static final int IFEQ = 0x99;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int GOTO = 0xa7;
+    static final int LRETURN = 0xad;
+    static final int RETURN = 0xb1;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ATHROW = 0xbf;
+    static final int WIDE = 0xc4;
+
+    /**
+     * The version of the written class files
+     */
+    private static final int MAJOR_VERSION = 49;
+
+    /**
+     * The maximal length of the code of a method allowed by the JVM
+     */
+    static final int MAX_CODE_LENGTH = 65535;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * The written entries of the constant pool
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+
+    /**
+     * The indices of the entries of the constant pool by their contents
+     */
+    private final Map<List<Object>, Integer> indices = new HashMap<>();
+
+    /**
+     * The number of the slots of the constant pool used, including the unused slot 0
+     */
+    private int poolSize = 1;
+
+    /**
+     * The methods of the class in the order of their creation
+     */
+    private final List<Method> methods = new ArrayList<>();
+
+    /**
+     * The index of the written class in the constant pool
+     */
+    private final int thisClass;
+
+    /**
+     * The index of the superclass in the constant pool
+     */
+    private final int superClass;
+
+    /**
+     * Creates a writer of a class
+     *
+     * @param name      the internal name of the class, like "java/lang/Object"
+     * @param superName the internal name of the superclass
+     */
+    ClassFileWriter(@NonNull String name, @NonNull String superName) {
+        thisClass = classRef(name);
+        superClass = classRef(superName);
+    }
+
+    /**
+     * Adds a method to the class
+     *
+     * @param access     the access flags of the method
+     * @param name       the name of the method
+     * @param descriptor the descriptor of the method, like "([J)V"
+     * @return the code of the method to be written
+     */
+    Code addMethod(int access, @NonNull String name, @NonNull String descriptor) {
+        var method = new Method(access, utf8(name), utf8(descriptor));
+        methods.add(method);
+        return method.code;
+    }
+
+    /**
+     * Gets the index of the reference to a method in the constant pool, adding it if it is not present
+     *
+     * @param owner      the internal name of the class declaring the method
+     * @param name       the name of the method
+     * @param descriptor the descriptor of the method
+     * @return the index of the reference
+     */
+    int methodRef(@NonNull String owner, @NonNull String name, @NonNull String descriptor) {
+        var ownerIndex = classRef(owner);
+        var nameAndType = constant(CONSTANT_NAME_AND_TYPE, utf8(name), utf8(descriptor));
+        return constant(CONSTANT_METHOD_REF, ownerIndex, nameAndType);
+    }
+
+    /**
+     * Writes the class file
+     *
+     * @return the bytes of the class file
+     */
+    byte[] toByteArray() {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        var codeName = utf8("Code");
+
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(poolSize);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+
+            for (var method : methods)
+                method.write(out, codeName);
+
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private int classRef(String name) {
+        return constant(CONSTANT_CLASS, utf8(name));
+    }
+
+    private int utf8(String value) {
+        return constant(CONSTANT_UTF8, value);
+    }
+
+    private int longConstant(long value) {
+        return constant(CONSTANT_LONG, value);
+    }
+
+    private int intConstant(int value) {
+        return constant(CONSTANT_INTEGER, value);
+    }
+
+    /**
+     * Gets the index of the entry of the constant pool, adding it if it is not present
+     *
+     * @param tag    the tag of the entry
+     * @param values the contents of the entry: strings, numbers or indices of other entries
+     * @return the index of the entry
+     */
+    private int constant(int tag, Object... values) {
+        var key = new ArrayList<>(values.length + 1);
+        key.add(tag);
+        key.addAll(Arrays.asList(values));
+
+        var index = indices.get(key);
+        if (index != null)
+            return index;
+
+        var out = new DataOutputStream(pool);
+
+        try {
+            out.writeByte(tag);
+
+            for (var value : values) {
+                if (value instanceof String)
+                    out.writeUTF((String) value);
+                else if (value instanceof Long)
+                    out.writeLong((Long) value);
+                else if (tag == CONSTANT_INTEGER)
+                    out.writeInt((Integer) value);
+                else
+                    out.writeShort((Integer) value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        index = poolSize;
+        poolSize += tag == CONSTANT_LONG ? 2 : 1;
+
+        if (poolSize > 0xffff)
+            throw new IllegalStateException("The constant pool is too big");
+
+        indices.put(key, index);
+        return index;
+    }
+
+    /**
+     * A method of the written class
+     */
+    private final class Method {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final Code code = new Code();
+
+        Method(int access, int name, int descriptor) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        void write(DataOutputStream out, int codeName) throws IOException {
+            if (code.length > MAX_CODE_LENGTH)
+                throw new IllegalStateException("The code of a method is too long: " + code.length);
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+            out.writeShort(code.maxStack);
+            out.writeShort(code.maxLocals);
+            out.writeInt(code.length);
+            out.write(code.bytes, 0, code.length);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+
+    /**
+     * The code of a method. Keeps track of the depth of the operand stack, counting longs as two slots.
+     */
+    final class Code {
+        private byte[] bytes = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals = 0;
+
+        /**
+         * Gets the current length of the code
+         *
+         * @return the number of the written bytes
+         */
+        int length() {
+            return length;
+        }
+
+        /**
+         * Reserves the local variables
+         *
+         * @param count the number of the slots of the local variables used by the method
+         */
+        void reserveLocals(int count) {
+            maxLocals = Math.max(maxLocals, count);
+        }
+
+        /**
+         * Writes an instruction without operands
+         *
+         * @param opcode the instruction
+         * @param delta  the change of the depth of the operand stack
+         */
+        void op(int opcode, int delta) {
+            write(opcode);
+            adjust(delta);
+        }
+
+        /**
+         * Writes an instruction referring to a method
+         *
+         * @param opcode the invoke instruction
+         * @param method the index of the reference to the method
+         * @param delta  the change of the depth of the operand stack
+         */
+        void invoke(int opcode, int method, int delta) {
+            write(opcode);
+            writeShort(method);
+            adjust(delta);
+        }
+
+        /**
+         * Pushes an int
+         *
+         * @param value the value to be pushed
+         */
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                write(ICONST_0 + value);
+            } else if (value == (byte) value) {
+                write(BIPUSH);
+                write(value);
+            } else if (value == (short) value) {
+                write(SIPUSH);
+                writeShort(value);
+            } else {
+                write(LDC_W);
+                writeShort(intConstant(value));
+            }
+
+            adjust(1);
+        }
+
+        /**
+         * Pushes a long
+         *
+         * @param value the value to be pushed
+         */
+        void pushLong(long value) {
+            if (value == 0 || value == 1) {
+                write(LCONST_0 + (int) value);
+            } else {
+                write(LDC2_W);
+                writeShort(longConstant(value));
+            }
+
+            adjust(2);
+        }
+
+        /**
+         * Writes an instruction accessing a local variable
+         *
+         * @param opcode the instruction
+         * @param local  the index of the local variable
+         * @param delta  the change of the depth of the operand stack
+         */
+        void local(int opcode, int local, int delta) {
+            if (local > 0xff) {
+                write(WIDE);
+                write(opcode);
+                writeShort(local);
+            } else {
+                write(opcode);
+                write(local);
+            }
+
+            adjust(delta);
+        }
+
+        /**
+         * Writes a jump to a position which is not known yet
+         *
+         * @param opcode the jump instruction
+         * @param delta  the change of the depth of the operand stack
+         * @return the position of the jump to be passed to {@link Code#bind}
+         */
+        int jump(int opcode, int delta) {
+            var position = length;
+            write(opcode);
+            writeShort(0);
+            adjust(delta);
+            return position;
+        }
+
+        /**
+         * Writes a jump to a known position
+         *
+         * @param opcode the jump instruction
+         * @param target the position of the jump target
+         * @param delta  the change of the depth of the operand stack
+         */
+        void jumpTo(int opcode, int target, int delta) {
+            var offset = target - length;
+
+            if (offset != (short) offset)
+                throw new IllegalStateException("The jump is too long: " + offset);
+
+            write(opcode);
+            writeShort(offset);
+            adjust(delta);
+        }
+
+        /**
+         * Makes the jump lead to the current position
+         *
+         * @param jump the position of the jump
+         */
+        void bind(int jump) {
+            var offset = length - jump;
+
+            if (offset != (short) offset)
+                throw new IllegalStateException("The jump is too long: " + offset);
+
+            bytes[jump + 1] = (byte) (offset >> 8);
+            bytes[jump + 2] = (byte) offset;
+        }
+
+        /**
+         * Sets the depth of the operand stack, used after an unconditional jump
+         *
+         * @param depth the depth of the operand stack at the current position
+         */
+        void setStack(int depth) {
+            stack = depth;
+        }
+
+        /**
+         * Gets the depth of the operand stack
+         *
+         * @return the depth of the operand stack at the current position
+         */
+        int getStack() {
+            return stack;
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void writeShort(int value) {
+            write(value >> 8);
+            write(value);
+        }
+
+        private void write(int value) {
+            if (length == bytes.length)
+                bytes = Arrays.copyOf(bytes, length * 2);
+
+            bytes[length++] = (byte) value;
+        }
+    }
+}
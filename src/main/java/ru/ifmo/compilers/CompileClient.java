@@ -0,0 +1,171 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The client passing its arguments to {@link CompileServer} and printing the answer,
+ * so that it prints the same as {@link EntryPoint#main} would
+ */
+public final class CompileClient {
+    /**
+     * The size of the buffer copying the frames and the input
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    private CompileClient() {
+    }
+
+    /**
+     * The client entry point. Sends the arguments to the server listening on the port set by
+     * {@value Options#PORT_OPTION} with the token the server has written to {@link CompileServer#TOKEN_DIRECTORY}.
+     * If no server is listening, processes the arguments itself.
+     *
+     * @param args arguments passed to program on start
+     */
+    public static void main(String[] args) {
+        int port;
+        try {
+            port = Options.parse(args).getPort();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        try {
+            request(port, CompileServer.TOKEN_DIRECTORY, Paths.get("").toAbsolutePath(), args, System.in, System.out, System.err);
+        } catch (ConnectException e) {
+            EntryPoint.main(args);
+        } catch (IOException e) {
+            System.err.printf("Unable to get the answer of the server: %s\n", e.getMessage());
+        }
+    }
+
+    /**
+     * Sends the request to the server and prints the answer
+     *
+     * @param port           the loopback port the server listens on
+     * @param tokenDirectory the directory the server has written its token file to
+     * @param directory      the directory the names of the files are resolved against
+     * @param args           the arguments of the program
+     * @param in             the input sent if the server asks for it
+     * @param out            where to print the result
+     * @param err            where to print the errors
+     * @throws ConnectException if no server listens on the port or it has written no token file,
+     *                          nothing has been printed then
+     * @throws IOException      if failed to read the token or to communicate with the server
+     */
+    static void request(int port, @NonNull Path tokenDirectory, @NonNull Path directory, @NonNull String[] args,
+                        @NonNull InputStream in, @NonNull PrintStream out, @NonNull PrintStream err) throws IOException {
+        byte[] token;
+        try {
+            token = Files.readAllBytes(CompileServer.tokenFile(tokenDirectory, port));
+        } catch (NoSuchFileException e) {
+            throw new ConnectException(String.format("No token file of a server listening on port %d", port));
+        }
+
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            var input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            var output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            output.write(token);
+            output.writeUTF(directory.toString());
+            output.writeInt(args.length);
+            for (var arg : args)
+                output.writeUTF(arg);
+            output.flush();
+
+            var buffer = new byte[BUFFER_SIZE];
+
+            while (true) {
+                switch (input.read()) {
+                    case CompileServer.OUTPUT:
+                        copy(input, input.readInt(), out, buffer);
+                        break;
+
+                    case CompileServer.ERRORS:
+                        copy(input, input.readInt(), err, buffer);
+                        break;
+
+                    case CompileServer.INPUT:
+                        sendInput(socket, in, output);
+                        break;
+
+                    case CompileServer.END:
+                        out.flush();
+                        err.flush();
+                        return;
+
+                    case -1:
+                        throw new EOFException("The server has closed the connection");
+
+                    default:
+                        throw new IOException("Malformed answer of the server");
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the bytes of a frame
+     *
+     * @param input  the stream of the connection
+     * @param length the number of bytes in the frame
+     * @param target where to copy the bytes
+     * @param buffer the buffer used for copying
+     * @throws IOException if failed to read the frame
+     */
+    private static void copy(InputStream input, int length, OutputStream target, byte[] buffer) throws IOException {
+        while (length > 0) {
+            var read = input.read(buffer, 0, Math.min(length, buffer.length));
+            if (read < 0)
+                throw new EOFException("The connection has been closed in the middle of a frame");
+
+            target.write(buffer, 0, read);
+            length -= read;
+        }
+    }
+
+    /**
+     * Sends the input to the server by another thread, so that the answer is being printed while it is sent
+     *
+     * @param socket the socket of the connection, its output is shut down after the whole input is sent
+     * @param in     the input
+     * @param output the stream of the connection
+     */
+    private static void sendInput(Socket socket, InputStream in, OutputStream output) {
+        var sender = new Thread(() -> {
+            var buffer = new byte[BUFFER_SIZE];
+
+            try {
+                for (int read; (read = in.read(buffer)) >= 0; ) {
+                    output.write(buffer, 0, read);
+                    output.flush();
+                }
+
+                socket.shutdownOutput();
+            } catch (IOException ignored) {
+                // The server closes the connection if it does not need the rest of the input
+            }
+        }, "input-sender");
+
+        sender.setDaemon(true);
+        sender.start();
+    }
+}
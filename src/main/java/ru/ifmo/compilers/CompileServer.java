@@ -0,0 +1,480 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The server processing the requests of {@link CompileClient} in a long-running JVM,
+ * so that neither starting the JVM nor warming up the lexer and the parser is paid for every file.
+ * <p>
+ * A request is the working directory of the client and the arguments of the program.
+ * The server answers with frames, every one of which starts with its tag.
+ * The frames {@link #OUTPUT} and {@link #ERRORS} are followed by the length and the bytes of the printed text,
+ * {@link #INPUT} asks the client to send its input until the end of the connection, and {@link #END} ends the answer.
+ * <p>
+ * Since a request makes the server read any file its user may read, every request starts with a random token,
+ * which the server writes to a file readable only by its user, see {@link #tokenFile}.
+ * The token is checked by separate threads before the request is passed to the threads processing the requests,
+ * so the clients sending no token do not delay the other requests.
+ * The connections sending another token are closed without an answer.
+ * The server does not start if the file cannot be written with such permissions.
+ */
+final class CompileServer implements Closeable {
+    /**
+     * The tag of the frame ending the answer
+     */
+    static final int END = 0;
+
+    /**
+     * The tag of the frame with a part of the result
+     */
+    static final int OUTPUT = 1;
+
+    /**
+     * The tag of the frame with a part of the errors
+     */
+    static final int ERRORS = 2;
+
+    /**
+     * The tag of the frame asking for the input
+     */
+    static final int INPUT = 3;
+
+    /**
+     * The size of the buffers of the printed text
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The number of times the generated program is processed before the requests are served
+     */
+    private static final int WARM_UP_ROUNDS = 50;
+
+    /**
+     * The number of statements of the generated program
+     */
+    private static final int WARM_UP_STATEMENTS = 300;
+
+    /**
+     * The number of random bytes of the token
+     */
+    static final int TOKEN_LENGTH = 32;
+
+    /**
+     * The directory the token file of the server started by {@link #serve(Options, PrintStream)} is written to
+     */
+    static final Path TOKEN_DIRECTORY = Paths.get(System.getProperty("user.home"));
+
+    /**
+     * The number of milliseconds a client is given to send the token
+     */
+    static final int TOKEN_TIMEOUT = 1_000;
+
+    /**
+     * The socket accepting the connections
+     */
+    private final ServerSocket socket;
+
+    /**
+     * The threads processing the requests, one connection at a time each
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The threads checking the tokens of the new connections before their requests are passed to {@link #executor}
+     */
+    private final ExecutorService authenticator;
+
+    /**
+     * The cache of the lexemes and the ASTs in memory shared by the requests, null if the requests have their own
+     */
+    private final MemoryParseCache memoryCache;
+
+    /**
+     * The token the requests have to start with
+     */
+    private final byte[] token;
+
+    /**
+     * The file the token is written to
+     */
+    private final Path tokenFile;
+
+    /**
+     * Starts listening on the loopback port
+     *
+     * @param port           the port to listen on, 0 to use any free one
+     * @param threads        the number of requests processed at the same time
+     * @param tokenDirectory the directory to write the token file to
+     * @throws IOException if failed to listen on the port or to write the token file
+     */
+    CompileServer(int port, int threads, @NonNull Path tokenDirectory) throws IOException {
+        this(port, threads, null, tokenDirectory);
+    }
+
+    /**
+     * Starts listening on the loopback port
+     *
+     * @param port           the port to listen on, 0 to use any free one
+     * @param threads        the number of requests processed at the same time
+     * @param memoryCache    the cache of the lexemes and the ASTs in memory shared by the requests,
+     *                       null if the requests have their own
+     * @param tokenDirectory the directory to write the token file to
+     * @throws IOException if failed to listen on the port or to write the token file
+     */
+    CompileServer(int port, int threads, MemoryParseCache memoryCache, @NonNull Path tokenDirectory) throws IOException {
+        socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+
+        try {
+            token = new byte[TOKEN_LENGTH];
+            new SecureRandom().nextBytes(token);
+            tokenFile = writeToken(tokenFile(tokenDirectory, getPort()), token);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+
+        executor = Executors.newFixedThreadPool(threads);
+        authenticator = Executors.newCachedThreadPool();
+        this.memoryCache = memoryCache;
+    }
+
+    /**
+     * Gets the file the server listening on the port writes its token to
+     *
+     * @param tokenDirectory the directory of the token files
+     * @param port           the port of the server
+     * @return the token file
+     */
+    static Path tokenFile(@NonNull Path tokenDirectory, int port) {
+        return tokenDirectory.resolve(".compile-server-" + port + ".token");
+    }
+
+    /**
+     * Writes the token to a file readable and writable only by its owner.
+     * The token is written to a new file, which then replaces the old one, so no one may open it before
+     * its permissions are set.
+     *
+     * @param file  the token file
+     * @param token the token
+     * @return the token file
+     * @throws IOException if failed to write the file or the file system does not support such permissions
+     */
+    private static Path writeToken(Path file, byte[] token) throws IOException {
+        Path temporary;
+        try {
+            temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), null,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            throw new IOException("The token file cannot be made readable only by its owner on this file system");
+        }
+
+        try {
+            Files.write(temporary, token);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        return file;
+    }
+
+    /**
+     * Starts the server and serves the requests until the program is stopped.
+     * If {@value Options#MEMORY_CACHE_OPTION} is passed, the cache in memory is shared by all the requests.
+     *
+     * @param options the options of the program
+     * @param log     where to print the problems of the server
+     */
+    static void serve(@NonNull Options options, @NonNull PrintStream log) {
+        var memoryCache = options.getMemoryCacheSize() > 0 ? new MemoryParseCache(options.getMemoryCacheSize()) : null;
+
+        try (var server = new CompileServer(options.getPort(), Runtime.getRuntime().availableProcessors(), memoryCache, TOKEN_DIRECTORY)) {
+            server.warmUp();
+            log.printf("Listening on port %d, the token is in %s\n", server.getPort(), server.tokenFile);
+            server.serve(log);
+        } catch (IOException e) {
+            log.printf("Unable to start the server: %s\n", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Processes a generated program, so that the code processing the requests is compiled before they come
+     */
+    void warmUp() {
+        var code = new StringBuilder("Var a, b, c;\nBegin\n");
+        for (int i = 0; i < WARM_UP_STATEMENTS; i++)
+            code.append(i % 10 == 0 ? "  WHILE 3 > c DO Begin c := c + 1; b := -(a - b) * 2; End\n" : "  a := " + i + " + b / 3;\n");
+
+        var input = code.append("  c := 0;\nEnd.\n").toString().getBytes(StandardCharsets.US_ASCII);
+        var ignored = new PrintStream(OutputStream.nullOutputStream());
+
+        for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+            var options = Options.parse(i % 2 == 0 ? new String[]{"--run"} : new String[]{Options.NO_LEXEMES_OPTION});
+            new EntryPoint(options, Paths.get(""), ignored, ignored).run(new ByteArrayInputStream(input));
+        }
+    }
+
+    /**
+     * Accepts the connections until the server is closed, the tokens are checked and the requests are processed
+     * by the other threads
+     *
+     * @param log where to print the problems of the requests
+     */
+    void serve(@NonNull PrintStream log) {
+        while (!socket.isClosed()) {
+            try {
+                var connection = socket.accept();
+                authenticator.execute(() -> authenticate(connection, log));
+            } catch (SocketException e) {
+                if (!socket.isClosed())
+                    log.printf("Unable to accept a connection: %s\n", e.getMessage());
+            } catch (IOException e) {
+                log.printf("Unable to accept a connection: %s\n", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops accepting the connections and removes the token file, the requests being processed are finished
+     *
+     * @throws IOException if failed to close the socket or to remove the file
+     */
+    @Override
+    public void close() throws IOException {
+        authenticator.shutdown();
+        executor.shutdown();
+
+        try {
+            socket.close();
+        } finally {
+            Files.deleteIfExists(tokenFile);
+        }
+    }
+
+    /**
+     * Reads the token the connection starts with and passes the connection to {@link #executor} if it is right.
+     * The connection is closed without an answer if it sends another token or sends none in {@value #TOKEN_TIMEOUT} ms.
+     *
+     * @param connection the connection of the client
+     * @param log        where to print the problems of the connection
+     */
+    private void authenticate(Socket connection, PrintStream log) {
+        try {
+            var received = new byte[TOKEN_LENGTH];
+            connection.setSoTimeout(TOKEN_TIMEOUT);
+            // Not buffered, so that no byte of the request after the token is read here
+            new DataInputStream(connection.getInputStream()).readFully(received);
+
+            if (MessageDigest.isEqual(token, received)) {
+                connection.setSoTimeout(0);
+                executor.execute(() -> handle(connection, log));
+                return;
+            }
+
+            log.printf("Rejected a request with a wrong token\n");
+        } catch (IOException | RuntimeException e) {
+            log.printf("Unable to check the token of a request: %s\n", e);
+        }
+
+        try {
+            connection.close();
+        } catch (IOException e) {
+            log.printf("Unable to close a connection: %s\n", e.getMessage());
+        }
+    }
+
+    /**
+     * Processes the request of the connection the way {@link EntryPoint#main} processes its arguments.
+     * Every request has its own options, streams, interner and symbol table, so the requests do not affect each other
+     * and the server does not keep the signs of every request, only the cache in memory of the server is shared.
+     *
+     * @param connection the connection of the client, which has sent the right token
+     * @param log        where to print the problems of the request
+     */
+    private void handle(Socket connection, PrintStream log) {
+        try (connection) {
+            var input = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            var output = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            var directory = Paths.get(input.readUTF());
+            var args = new String[input.readInt()];
+            for (int i = 0; i < args.length; i++)
+                args[i] = input.readUTF();
+
+            var out = new PrintStream(new BufferedOutputStream(new Channel(output, OUTPUT), BUFFER_SIZE));
+            var err = new PrintStream(new BufferedOutputStream(new Channel(output, ERRORS), BUFFER_SIZE));
+
+            try {
+                var options = Options.parse(args);
+                var cache = memoryCache != null || options.getMemoryCacheSize() == 0
+                        ? memoryCache
+                        : new MemoryParseCache(options.getMemoryCacheSize());
+
+                new EntryPoint(options, directory, out, err, cache, new SymbolTable()).run(new RequestedInput(input, output, out, err));
+            } catch (IllegalArgumentException e) {
+                err.println(e.getMessage());
+            }
+
+            err.flush();
+            out.flush();
+
+            synchronized (output) {
+                output.writeByte(END);
+                output.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.printf("Unable to process a request: %s\n", e);
+        }
+    }
+
+    /**
+     * The stream sending everything written to it as the frames with the tag
+     */
+    private static final class Channel extends OutputStream {
+        /**
+         * The stream of the connection
+         */
+        private final DataOutputStream output;
+
+        /**
+         * The tag of the frames
+         */
+        private final int tag;
+
+        /**
+         * @param output the stream of the connection
+         * @param tag    the tag of the frames
+         */
+        Channel(DataOutputStream output, int tag) {
+            this.output = output;
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return;
+
+            synchronized (output) {
+                output.writeByte(tag);
+                output.writeInt(len);
+                output.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (output) {
+                output.flush();
+            }
+        }
+    }
+
+    /**
+     * The input of the client, which is asked for only when it is read for the first time,
+     * so that the client does not wait for its input when it is not needed
+     */
+    private static final class RequestedInput extends InputStream {
+        /**
+         * The stream of the connection
+         */
+        private final DataInputStream input;
+
+        /**
+         * The stream of the connection the request is sent to
+         */
+        private final DataOutputStream output;
+
+        /**
+         * The streams of the result and the errors, which are flushed before the input is asked for
+         */
+        private final PrintStream out, err;
+
+        /**
+         * Whether the input has been asked for
+         */
+        private boolean isRequested = false;
+
+        /**
+         * @param input  the stream of the connection
+         * @param output the stream of the connection the request is sent to
+         * @param out    the stream of the result
+         * @param err    the stream of the errors
+         */
+        RequestedInput(DataInputStream input, DataOutputStream output, PrintStream out, PrintStream err) {
+            this.input = input;
+            this.output = output;
+            this.out = out;
+            this.err = err;
+        }
+
+        @Override
+        public int read() throws IOException {
+            request();
+            return input.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            request();
+            return input.read(b, off, len);
+        }
+
+        /**
+         * Asks the client for the input if it has not been asked yet
+         *
+         * @throws IOException if failed to send the request
+         */
+        private void request() throws IOException {
+            if (isRequested)
+                return;
+
+            isRequested = true;
+            err.flush();
+            out.flush();
+
+            synchronized (output) {
+                output.writeByte(INPUT);
+                output.flush();
+            }
+        }
+    }
+}
@@ -1,103 +1,678 @@
 package ru.ifmo.compilers;
 
-import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class EntryPoint {
     /**
-     * The stream to be used as output for the program
+     * The maximal number of lexemes the parser may look ahead when the input is parsed while being read
      */
-    private static final PrintStream out = System.out;
+    private static final int LOOKAHEAD = 16;
 
     /**
-     * The program entry point. Checks arguments for a file name, tries to open it if any present.
-     * If none is present or the open attempt failed, reads from stdin. Passes the input to Lexer, prints the result.
+     * The options of the invocation
+     */
+    private final Options options;
+
+    /**
+     * The directory the names of the files are resolved against
+     */
+    private final Path directory;
+
+    /**
+     * The stream to be used as output of the invocation
+     */
+    private final PrintStream out;
+
+    /**
+     * The stream to be used for errors of the invocation
+     */
+    private final PrintStream err;
+
+    /**
+     * The interner sharing equal subtrees between the ASTs of all files of the invocation
+     */
+    private final AstInterner interner = new AstInterner();
+
+    /**
+     * The cache of the lexemes and the ASTs of the files, null if they are not cached
+     */
+    private final ParseCache cache;
+
+    /**
+     * The cache of the lexemes and the ASTs of the files in memory, null if they are not cached there
+     */
+    private final MemoryParseCache memoryCache;
+
+    /**
+     * The table the signs of the lexemes of all files of the invocation are interned to
+     */
+    private final SymbolTable symbols;
+
+    /**
+     * Creates an invocation of the program
+     *
+     * @param options   the options of the invocation
+     * @param directory the directory the names of the files are resolved against
+     * @param out       where to print the result
+     * @param err       where to print the errors
+     */
+    EntryPoint(Options options, Path directory, PrintStream out, PrintStream err) {
+        this(options, directory, out, err,
+                options.getMemoryCacheSize() > 0 ? new MemoryParseCache(options.getMemoryCacheSize()) : null);
+    }
+
+    /**
+     * Creates an invocation of the program, which shares the cache in memory with other invocations
+     *
+     * @param options     the options of the invocation
+     * @param directory   the directory the names of the files are resolved against
+     * @param out         where to print the result
+     * @param err         where to print the errors
+     * @param memoryCache the cache of the lexemes and the ASTs in memory, null if they are not cached there
+     */
+    EntryPoint(Options options, Path directory, PrintStream out, PrintStream err, MemoryParseCache memoryCache) {
+        this(options, directory, out, err, memoryCache, SymbolTable.SHARED);
+    }
+
+    /**
+     * Creates an invocation of the program, which interns the signs of the lexemes to its own table
+     *
+     * @param options     the options of the invocation
+     * @param directory   the directory the names of the files are resolved against
+     * @param out         where to print the result
+     * @param err         where to print the errors
+     * @param memoryCache the cache of the lexemes and the ASTs in memory, null if they are not cached there
+     * @param symbols     the table the signs of the lexemes are interned to
+     */
+    EntryPoint(Options options, Path directory, PrintStream out, PrintStream err, MemoryParseCache memoryCache,
+               SymbolTable symbols) {
+        this.options = options;
+        this.directory = directory;
+        this.out = out;
+        this.err = err;
+        this.cache = options.getCache() != null
+                ? new ParseCache(directory.resolve(options.getCache()), options.getCacheSize(), symbols)
+                : null;
+        this.memoryCache = memoryCache;
+        this.symbols = symbols;
+    }
+
+    /**
+     * The program entry point. Checks arguments for file names, tries to map the files into memory if any present.
+     * If none is present or all open attempts failed, reads from stdin. Passes the input to Lexer, prints the result.
+     * If {@value Options#NO_LEXEMES_OPTION} is passed, prints only the AST, which is built while the input is being read.
+     * If {@value Options#JOBS_OPTION} is passed, processes that many files at the same time,
+     * but prints the results in the order of the arguments. A huge file is also read by that many threads.
+     * If {@value Options#HASH_CONS_OPTION} is passed, equal subtrees of all ASTs are stored once
+     * and the number of the deduplicated nodes is printed to the errors.
+     * If {@value Options#RUN_OPTION} is passed, every correct program is executed after its AST is printed
+     * and the final values of its variables are printed. {@value Options#BUDGET_OPTION} limits
+     * the number of the assignments and checks of loop conditions a program may perform.
+     * If {@value Options#SIMPLIFY_OPTION} is passed, the constant expressions of the ASTs are folded
+     * and the made changes are printed to the errors.
+     * If {@value Options#JIT_OPTION} is passed, the programs are executed after being compiled into JVM bytecode.
+     * If {@value Options#SSA_OPTION} is passed, every correct program is lowered to the SSA form,
+     * which is optimized and printed after the AST.
+     * If {@value Options#SERVE_OPTION} is passed, no file is processed, but the requests of {@link CompileClient}
+     * are served on the loopback port set by {@value Options#PORT_OPTION} until the program is stopped.
+     * Only the clients reading the token the server writes to a file in the home directory of its user are served.
+     * If {@value Options#CACHE_OPTION} is passed, the lexemes and the ASTs of the files are stored in that directory,
+     * so that a file which has not changed since is neither read nor parsed again.
+     * If {@value Options#MEMORY_CACHE_OPTION} is passed, the lexemes and the ASTs of the recently processed files
+     * are also kept in memory, which is useful when the same file is processed several times by the server.
+     * If {@value Options#EXPORT_OPTION} is passed, the ASTs of the correct programs are written in the binary format
+     * read by {@link AstExportReader} or as lines of JSON instead of being printed, everything else is printed to the errors.
+     * If {@value Options#VALIDATE_OPTION} is passed, only the errors of the incorrect programs are printed,
+     * no AST is built and the caches are not used.
      *
      * @param args arguments passed to program on start
      */
     public static void main(String[] args) {
-        var openFiles = getOpenFiles(args);
-
-        if (openFiles.isEmpty())
-            openFiles.add(new BufferedInputStream(System.in));
-
-        openFiles.stream()
-                .map(EntryPoint::getLexemes)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .filter(list -> !list.isEmpty())
-                .peek(lexemes -> {
-                    out.println("\nPrinting the result for next file:\n");
-                    lexemes.forEach(out::println);
-                })
-                .map(Parser::new)
-                .peek(parser -> out.println("\nCreating the AST:\n"))
-                .forEach(parser -> {
-                    if (parser.parseProgram()) {
-                        parser.getRoot().print(out);
-                    } else {
-                        out.println(String.join("\n", parser.getErrorMessages()));
-                    }
-                });
-    }
-
-    /**
-     * Tries to open the file
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        if (options.isServe())
+            CompileServer.serve(options, System.err);
+        else
+            new EntryPoint(options, Paths.get(""), System.out, System.err).run(System.in);
+    }
+
+    /**
+     * Processes the files, reads the input if none of them has been open
+     *
+     * @param in the input to be read if no file has been open
+     */
+    void run(InputStream in) {
+        if (options.getExport() != null)
+            export(AstExporter::writeHeader, out, err);
+
+        var isAnyOpen = options.getJobs() > 1 ? processInParallel() : processSequentially();
+
+        if (cache != null)
+            cache.trim();
+
+        if (!isAnyOpen)
+            process(new Lexer(in), out, err, null);
+    }
+
+    /**
+     * Processes the files one by one
+     *
+     * @return true if at least one file has been open
+     */
+    private boolean processSequentially() {
+        var isAnyOpen = false;
+
+        for (var name : options.getFiles())
+            isAnyOpen |= processFile(name, out, err, null);
+
+        return isAnyOpen;
+    }
+
+    /**
+     * Processes the files at the same time, buffering the results of every file
+     * and printing them in the order of the files. Only a few files are processed ahead of the printed one.
+     * The ASTs are interned in the order of the files as well, so the deduplicated nodes are the same as when
+     * the files are processed one by one.
+     *
+     * @return true if at least one file has been open
+     */
+    private boolean processInParallel() {
+        ExecutorService executor = Executors.newFixedThreadPool(options.getJobs());
+        var reports = new ArrayDeque<Future<Report>>();
+        var isAnyOpen = false;
+        InternTurn previous = null;
+
+        try {
+            for (var name : options.getFiles()) {
+                var turn = options.isHashCons() ? new InternTurn(previous) : null;
+                reports.add(executor.submit(() -> Report.of(this, name, turn)));
+                previous = turn;
+
+                if (reports.size() > 2 * options.getJobs())
+                    isAnyOpen |= reports.poll().get().print(out, err);
+            }
+
+            while (!reports.isEmpty())
+                isAnyOpen |= reports.poll().get().print(out, err);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to process a file", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return isAnyOpen;
+    }
+
+    /**
+     * Tries to open the file and to process it
      *
      * @param name the name of the target file
-     * @return result if the file has been open successfully
+     * @param out  where to print the result
+     * @param err  where to print the errors
+     * @param turn the turn of the file to intern its AST, null if the files are processed one by one
+     * @return true if the file has been open successfully
+     */
+    private boolean processFile(String name, PrintStream out, PrintStream err, InternTurn turn) {
+        var path = Paths.get(name);
+
+        if ((cache != null || memoryCache != null) && !options.isValidate())
+            return processCached(path, out, err, turn);
+
+        Lexer lexer;
+
+        try {
+            lexer = Lexer.map(directory.resolve(path));
+        } catch (IOException e) {
+            reportOpenFailure(path, e, err);
+            return false;
+        }
+
+        process(lexer, out, err, turn);
+        return true;
+    }
+
+    /**
+     * Reports that the file cannot be opened, naming it as it has been passed rather than resolved against the directory,
+     * so that a request to the server is answered the same as a local run
+     *
+     * @param path the path to the target file
+     * @param e    the exception thrown while opening the file
+     * @param err  where to print the error
      */
-    private static Optional<InputStream> openFile(Path name) {
+    private void reportOpenFailure(Path path, IOException e, PrintStream err) {
+        var description = e.toString().replace(directory.resolve(path).toString(), path.toString());
+        err.printf("Unable to open file %s for reading: %s\n", path, description);
+    }
+
+    /**
+     * Tries to open the file and to print its lexemes and AST, which are taken from the caches if they are there
+     *
+     * @param path the path to the target file
+     * @param out  where to print the result
+     * @param err  where to print the errors
+     * @param turn the turn of the file to intern its AST, null if the files are processed one by one
+     * @return true if the file has been open successfully
+     */
+    private boolean processCached(Path path, PrintStream out, PrintStream err, InternTurn turn) {
+        ByteBuffer content;
+        ParseCache.Entry entry;
+
         try {
-            return Optional.of(Files.newInputStream(name, StandardOpenOption.READ));
+            content = Lexer.mapFile(directory.resolve(path));
         } catch (IOException e) {
-            System.err.printf("Unable to open file %s for reading: %s\n", name, e.toString());
+            reportOpenFailure(path, e, err);
+            return false;
         }
 
-        return Optional.empty();
+        try {
+            entry = memoryCache != null ? memoryCache.get(content, this::load) : load(content);
+        } catch (IOException e) {
+            err.printf("Unable to read input: %s\n", e.getMessage());
+            return true;
+        }
+
+        err.write(entry.getLexerErrors(), 0, entry.getLexerErrors().length);
+
+        var lexemes = entry.getTokens();
+        if (lexemes.size() == 0)
+            return true;
+
+        if (options.isPrintLexemes()) {
+            out.println("\nPrinting the result for next file:\n");
+            lexemes.asList().forEach(out::println);
+        }
+
+        if (options.getExport() == null)
+            out.println("\nCreating the AST:\n");
+
+        var root = options.isHashCons() ? intern(entry.getRoot(), turn, err) : entry.getRoot();
+        printAst(entry.isCorrect(), root, entry.getErrorMessages(), out, err);
+        return true;
     }
 
     /**
-     * Maps the arguments to list of open files
+     * Gets the lexemes and the AST of the file from the cache on disk if it is used, otherwise reads and parses it
      *
-     * @param args the arguments from the user
-     * @return list of open files
+     * @param content the content of the file
+     * @return the lexemes and the AST of the file
+     * @throws IOException if failed to read the file
      */
-    private static List<BufferedInputStream> getOpenFiles(String[] args) {
-        return Stream.of(args)
-                .map(Paths::get)
-                .map(EntryPoint::openFile)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .map(BufferedInputStream::new)
-                .collect(Collectors.toList());
+    private ParseCache.Entry load(ByteBuffer content) throws IOException {
+        return cache != null
+                ? cache.get(content, options.getJobs())
+                : ParseCache.Entry.parse(content, options.getJobs(), symbols);
     }
 
     /**
-     * Tries to map an open file to list of the lexemes
+     * Reads the input and prints the lexemes and the AST
      *
-     * @param inputStream the file to be lexed
-     * @return the list of the lexemes if successfully read the file
+     * @param lexer the lexer reading the input
+     * @param out   where to print the result
+     * @param err   where to print the errors
+     * @param turn  the turn of the file to intern its AST, null if the files are processed one by one
      */
-    private static Optional<List<Lexeme>> getLexemes(BufferedInputStream inputStream) {
-        var lexer = new Lexer(inputStream);
+    private void process(Lexer lexer, PrintStream out, PrintStream err, InternTurn turn) {
+        lexer.setErrors(err);
+        lexer.setSymbols(symbols);
+
+        if (options.isValidate()) {
+            validate(lexer, out, err);
+            return;
+        }
+
+        if (!options.isPrintLexemes()) {
+            parseLazily(lexer, out, err, turn);
+            return;
+        }
 
         try (lexer) {
-            lexer.readToEnd();
+            lexer.readToEnd(options.getJobs());
+        } catch (IOException e) {
+            err.printf("Unable to read input: %s\n", e.getMessage());
+        }
+
+        var lexemes = lexer.getTokens();
+        if (lexemes.size() == 0)
+            return;
+
+        out.println("\nPrinting the result for next file:\n");
+        lexemes.asList().forEach(out::println);
+
+        out.println("\nCreating the AST:\n");
+        printAst(new Parser(lexemes), out, err, turn);
+    }
+
+    /**
+     * Parses the program while it is being read and prints the result
+     *
+     * @param lexer the lexer reading the input
+     * @param out   where to print the result
+     * @param err   where to print the errors
+     * @param turn  the turn of the file to intern its AST, null if the files are processed one by one
+     */
+    private void parseLazily(Lexer lexer, PrintStream out, PrintStream err, InternTurn turn) {
+        try (lexer) {
+            var lexemes = lexer.tokenSource(LOOKAHEAD);
+
+            if (lexemes.peek() == null)
+                return;
+
+            if (options.getExport() == null)
+                out.println("\nCreating the AST:\n");
+            printAst(new Parser(lexemes), out, err, turn);
+        } catch (IOException | UncheckedIOException e) {
+            err.printf("Unable to read input: %s\n", e.getMessage());
+        }
+    }
+
+    /**
+     * Parses the program while it is being read without building its AST and prints the found errors
+     *
+     * @param lexer the lexer reading the input
+     * @param out   where to print the result
+     * @param err   where to print the errors
+     */
+    private void validate(Lexer lexer, PrintStream out, PrintStream err) {
+        try (lexer) {
+            var lexemes = lexer.tokenSource(LOOKAHEAD);
+
+            if (lexemes.peek() == null)
+                return;
+
+            var parser = new Parser(lexemes, new ParseListener() {
+            });
+
+            if (!parser.parseProgram())
+                out.println(String.join("\n", parser.getErrorMessages()));
+        } catch (IOException | UncheckedIOException e) {
+            err.printf("Unable to read input: %s\n", e.getMessage());
+        }
+    }
+
+    /**
+     * Parses the program and prints either its AST and the problems with its names or the found errors
+     *
+     * @param parser the parser of the program
+     * @param out    where to print the result
+     * @param err    where to print the errors
+     * @param turn   the turn of the file to intern its AST, null if the files are processed one by one
+     */
+    private void printAst(Parser parser, PrintStream out, PrintStream err, InternTurn turn) {
+        var isCorrect = parser.parseProgram();
+        var root = options.isHashCons() ? intern(parser.getRoot(), turn, err) : parser.getRoot();
+
+        printAst(isCorrect, root, parser.getErrorMessages(), out, err);
+    }
+
+    /**
+     * Interns the AST of the file and prints the number of the deduplicated nodes.
+     * If the files are processed at the same time, waits for the previous file to intern its AST first.
+     *
+     * @param root the root of the AST
+     * @param turn the turn of the file to intern its AST, null if the files are processed one by one
+     * @param err  where to print the number of the deduplicated nodes
+     * @return the root of the interned AST
+     */
+    private OutputTreeNode<Lexeme> intern(OutputTreeNode<Lexeme> root, InternTurn turn, PrintStream err) {
+        if (turn != null)
+            turn.await();
+
+        try {
+            var interned = interner.intern(root);
+            err.printf("Deduplicated %d nodes of the AST\n", root.getAst().size() - interned.getAst().size());
+            return interned;
+        } finally {
+            if (turn != null)
+                turn.pass();
+        }
+    }
+
+    /**
+     * Prints either the AST of the program and the problems with its names or the found errors
+     *
+     * @param isCorrect     whether the program is correct
+     * @param root          the root of the AST of the program
+     * @param errorMessages the errors found by the parser
+     * @param out           where to print the result
+     * @param err           where to print the errors
+     */
+    private void printAst(boolean isCorrect, OutputTreeNode<Lexeme> root, List<String> errorMessages,
+                          PrintStream out, PrintStream err) {
+        if (isCorrect) {
+
+            if (options.isSimplify()) {
+                var simplifier = new Simplifier();
+                root = simplifier.simplify(root);
+                simplifier.getChanges().forEach(message -> err.printf("%s\n", message));
+            }
+
+            if (options.getExport() != null) {
+                var exported = root;
+                export(exporter -> exporter.write(exported.getAst(), exported.getIndex()), out, err);
+            } else {
+                var writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()), AstPrinter.BUFFER_SIZE);
+
+                try {
+                    root.print(writer);
+                    writer.flush();
+                } catch (IOException e) {
+                    err.printf("Unable to print the AST: %s\n", e.getMessage());
+                }
+            }
+
+            var names = Names.resolve(root);
+            names.getDiagnostics().forEach(message -> err.printf("%s\n", message));
+
+            if (options.isSsa() && names.isCorrect())
+                printSsa(root, names, out, err);
+
+            if (options.isRun() && names.isCorrect())
+                run(root, names, out, err);
+        } else {
+            (options.getExport() != null ? err : out).println(String.join("\n", errorMessages));
+        }
+    }
+
+    /**
+     * Writes to the output through an exporter in the format of {@value Options#EXPORT_OPTION}
+     *
+     * @param action what to write
+     * @param out    where to write the exported data
+     * @param err    where to print the errors
+     */
+    private void export(ExportAction action, PrintStream out, PrintStream err) {
+        try (var exporter = new AstExporter(options.getExport(), Channels.newChannel(out))) {
+            action.accept(exporter);
         } catch (IOException e) {
-            System.err.printf("Unable to read input: %s\n", e.getMessage());
+            err.printf("Unable to export the AST: %s\n", e.getMessage());
+        }
+    }
+
+    /**
+     * Lowers the program to the SSA form, optimizes and prints it
+     *
+     * @param root  the root of the AST of the program
+     * @param names the resolved names of the program
+     * @param out   where to print the result
+     * @param err   where to print the errors
+     */
+    private static void printSsa(OutputTreeNode<Lexeme> root, Names names, PrintStream out, PrintStream err) {
+        try {
+            var graph = SsaBuilder.build(Interpreter.compile(root, names));
+            SsaOptimizer.optimize(graph);
+            SsaVerifier.verify(graph).forEach(message -> err.printf("Malformed SSA form: %s\n", message));
+
+            out.println("\nLowering to SSA:\n");
+            out.print(SsaPrinter.toString(graph));
+        } catch (IllegalArgumentException e) {
+            err.printf("Unable to lower the program: %s\n", e.getMessage());
+        }
+    }
+
+    /**
+     * Executes the program and prints the final values of its variables
+     *
+     * @param root  the root of the AST of the program
+     * @param names the resolved names of the program
+     * @param out   where to print the result
+     * @param err   where to print the errors
+     */
+    private void run(OutputTreeNode<Lexeme> root, Names names, PrintStream out, PrintStream err) {
+        try {
+            var interpreter = Interpreter.compile(root, names);
+            if (options.isJit())
+                interpreter = BytecodeGenerator.compile(interpreter);
+
+            var values = interpreter.run(options.getBudget());
+
+            out.println("\nRunning the program:\n");
+            for (int i = 0; i < values.length; i++)
+                out.printf("%s = %d\n", interpreter.getVariables().get(i), values[i]);
+        } catch (IllegalArgumentException | IllegalStateException | ArithmeticException e) {
+            err.printf("Unable to run the program: %s\n", e.getMessage());
+        }
+    }
+
+    /**
+     * What is written through an exporter
+     */
+    @FunctionalInterface
+    private interface ExportAction {
+        /**
+         * Writes through the exporter
+         *
+         * @param exporter the exporter writing to the output
+         * @throws IOException if failed to write
+         */
+        void accept(AstExporter exporter) throws IOException;
+    }
+
+    /**
+     * The buffered result of processing a file
+     */
+    private static final class Report {
+        /**
+         * What has been printed as the result
+         */
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        /**
+         * What has been printed as errors
+         */
+        private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+        /**
+         * Whether the file has been open successfully
+         */
+        private boolean isOpen;
+
+        /**
+         * Processes the file
+         *
+         * @param invocation the invocation processing the file
+         * @param name       the name of the file
+         * @param turn       the turn of the file to intern its AST, null if the ASTs are not interned
+         * @return the result of processing
+         */
+        static Report of(EntryPoint invocation, String name, InternTurn turn) {
+            var report = new Report();
+
+            try {
+                report.isOpen = invocation.processFile(name, new PrintStream(report.output), new PrintStream(report.errors), turn);
+            } finally {
+                // The file may have nothing to intern
+                if (turn != null)
+                    turn.pass();
+            }
+
+            return report;
         }
 
-        return lexer.getLexemes().isEmpty() ? Optional.empty() : Optional.of(lexer.getLexemes());
+        /**
+         * Prints the buffered result and errors
+         *
+         * @param out where to print the result
+         * @param err where to print the errors
+         * @return whether the file has been open successfully
+         */
+        boolean print(PrintStream out, PrintStream err) {
+            err.write(errors.toByteArray(), 0, errors.size());
+            out.write(output.toByteArray(), 0, output.size());
+            return isOpen;
+        }
+    }
+
+    /**
+     * The turn of a file processed at the same time as the others to intern its AST,
+     * which comes when the previous file has interned its AST or has turned out to have none
+     */
+    private static final class InternTurn {
+        /**
+         * Counted down when the previous file has passed its turn, null for the first file
+         */
+        private final CountDownLatch previous;
+
+        /**
+         * Counted down when the file has passed its turn
+         */
+        private final CountDownLatch passed = new CountDownLatch(1);
+
+        /**
+         * @param previous the turn of the previous file, null for the first file
+         */
+        InternTurn(InternTurn previous) {
+            this.previous = previous != null ? previous.passed : null;
+        }
+
+        /**
+         * Waits for the previous file to pass its turn.
+         * The previous file is processed already, since the files are taken by the threads in their order.
+         *
+         * @throws IllegalStateException if the thread has been interrupted while waiting
+         */
+        void await() {
+            if (previous == null)
+                return;
+
+            try {
+                previous.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to intern the AST", e);
+            }
+        }
+
+        /**
+         * Lets the next file intern its AST
+         */
+        void pass() {
+            passed.countDown();
+        }
     }
 }
@@ -0,0 +1,690 @@
+package ru.ifmo.compilers;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The lexemes and the AST of a source code, which are updated incrementally when the source code is edited.
+ * Every edit creates a new instance, the previous one stays valid.
+ * <p>
+ * Only the lines from the edited one up to the first line which starts in the same state as before the edit,
+ * inside or outside of a comment, are read again, the lexemes of the other lines are moved.
+ * As a lexeme may span a comment, the lines which start inside of a lexeme are read together with the previous ones.
+ * Then only the smallest operator containing the changed lexemes is parsed again, and the unchanged operators
+ * are linked from the previous AST, see {@link Ast#addLink}, the links moving them to their new lines.
+ * If the operator cannot be parsed in place, the enclosing operators are tried.
+ * The whole program is parsed again if it has not been correct before the edit,
+ * if no enclosing operator can be parsed or if the AST links too many stores of the previous versions.
+ */
+final class IncrementalParser {
+    /**
+     * The maximal number of the stores an incrementally built AST may link, so that old versions are released
+     */
+    private static final int MAX_LINKED_ASTS = 8;
+
+    /**
+     * The source code, one byte per character
+     */
+    private final byte[] text;
+
+    /**
+     * The found lexemes
+     */
+    @Getter
+    private final TokenBuffer tokens;
+
+    /**
+     * The found undefined sequences
+     */
+    private final TokenBuffer undefined;
+
+    /**
+     * Indices of the first characters of the lines
+     */
+    private final int[] lineStarts;
+
+    /**
+     * Whether the lines start inside of a comment
+     */
+    private final boolean[] startsInComment;
+
+    /**
+     * Whether the lines start inside of a comment following an unfinished lexeme, which may continue after the comment
+     */
+    private final boolean[] startsInLexeme;
+
+    /**
+     * The root node of the AST
+     */
+    @Getter
+    private final OutputTreeNode<Lexeme> root;
+
+    /**
+     * Whether the program is correct
+     */
+    @Getter
+    private final boolean isCorrect;
+
+    /**
+     * The errors found by the parser
+     */
+    @Getter
+    private final List<String> errorMessages;
+
+    /**
+     * The number of the lines read by the last edit
+     */
+    @Getter
+    private final int relexedLines;
+
+    /**
+     * The number of the lexemes parsed by the last edit
+     */
+    @Getter
+    private final int reparsedLexemes;
+
+    /**
+     * The operators of the program, null if they have not been found yet
+     */
+    private Span program = null;
+
+    /**
+     * Creates the state of an empty source code, which has not been parsed
+     */
+    private IncrementalParser() {
+        this.text = new byte[0];
+        this.tokens = new TokenBuffer("", SymbolTable.SHARED);
+        this.undefined = tokens;
+        this.lineStarts = new int[]{0};
+        this.startsInComment = new boolean[]{false};
+        this.startsInLexeme = new boolean[]{false};
+        this.root = null;
+        this.isCorrect = false;
+        this.errorMessages = List.of();
+        this.relexedLines = 0;
+        this.reparsedLexemes = 0;
+    }
+
+    private IncrementalParser(byte[] text, TokenBuffer tokens, TokenBuffer undefined, int[] lineStarts,
+                              boolean[] startsInComment, boolean[] startsInLexeme, int relexedLines,
+                              OutputTreeNode<Lexeme> root, boolean isCorrect, List<String> errorMessages,
+                              int reparsedLexemes) {
+        this.text = text;
+        this.tokens = tokens;
+        this.undefined = undefined;
+        this.lineStarts = lineStarts;
+        this.startsInComment = startsInComment;
+        this.startsInLexeme = startsInLexeme;
+        this.relexedLines = relexedLines;
+        this.root = root;
+        this.isCorrect = isCorrect;
+        this.errorMessages = Collections.unmodifiableList(errorMessages);
+        this.reparsedLexemes = reparsedLexemes;
+    }
+
+    /**
+     * Reads and parses the whole source code
+     *
+     * @param text the source code, one byte per character
+     * @return the state of the source code
+     */
+    static IncrementalParser parse(@NonNull String text) {
+        return new IncrementalParser().edit(0, 0, text);
+    }
+
+    /**
+     * Gets the source code
+     *
+     * @return the text of the source code
+     */
+    String getText() {
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Gets the lexing result
+     *
+     * @return the list of found lexemes
+     */
+    List<Lexeme> getLexemes() {
+        return tokens.asList();
+    }
+
+    /**
+     * Gets the undefined sequences found by the lexer
+     *
+     * @return the reports in the order of the sequences
+     */
+    List<String> getUndefinedSequences() {
+        var reports = new ArrayList<String>();
+
+        for (int i = 0; i < undefined.size(); i++)
+            reports.add(Lexer.describeUndefined(undefined.getLine(i), undefined.getSign(i)));
+
+        return reports;
+    }
+
+    /**
+     * Replaces a part of the source code and updates the lexemes and the AST
+     *
+     * @param offset   the index of the first replaced character
+     * @param removed  the number of the replaced characters
+     * @param inserted the text replacing them, one byte per character
+     * @return the state of the edited source code
+     * @throws IndexOutOfBoundsException if the replaced part is out of the source code
+     */
+    IncrementalParser edit(int offset, int removed, @NonNull String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > text.length)
+            throw new IndexOutOfBoundsException(String.format("[%d, %d) of %d", offset, offset + removed, text.length));
+
+        var insertion = inserted.getBytes(StandardCharsets.ISO_8859_1);
+        var shift = insertion.length - removed;
+        var editEnd = offset + insertion.length;
+        var edited = new byte[text.length + shift];
+
+        System.arraycopy(text, 0, edited, 0, offset);
+        System.arraycopy(insertion, 0, edited, offset, insertion.length);
+        System.arraycopy(text, offset + removed, edited, editEnd, text.length - offset - removed);
+
+        var firstLine = Arrays.binarySearch(lineStarts, offset);
+        if (firstLine < 0)
+            firstLine = -firstLine - 2;
+
+        while (startsInLexeme[firstLine])
+            firstLine--;
+
+        var start = lineStarts[firstLine];
+        var isInComment = startsInComment[firstLine];
+        var isInLexeme = false;
+        var end = edited.length;
+        var resumedLine = lineStarts.length;
+        var newStarts = new int[16];
+        var newComments = new boolean[16];
+        var newLexemes = new boolean[16];
+        var newLines = 0;
+
+        for (int i = start; i < edited.length; i++) {
+            var symbol = (char) (edited[i] & 0xFF);
+
+            if (symbol == LexerTable.COMMENT_OPEN)
+                isInComment = true;
+            else if (isInComment)
+                isInComment = symbol != LexerTable.COMMENT_CLOSE;
+            else
+                isInLexeme = LexerTable.INSTANCE.kind(symbol) == LexerTable.TOKEN;
+
+            if (symbol == LexerTable.LINE_END) {
+                var next = i + 1;
+                var line = next < editEnd ? -1 : Arrays.binarySearch(lineStarts, next - shift);
+
+                if (line >= 0 && startsInComment[line] == isInComment && !startsInLexeme[line]
+                        && !(isInComment && isInLexeme)) {
+                    end = next;
+                    resumedLine = line;
+                    break;
+                }
+
+                if (newLines == newStarts.length) {
+                    newStarts = Arrays.copyOf(newStarts, newLines * 2);
+                    newComments = Arrays.copyOf(newComments, newLines * 2);
+                    newLexemes = Arrays.copyOf(newLexemes, newLines * 2);
+                }
+
+                newStarts[newLines] = next;
+                newComments[newLines] = isInComment;
+                newLexemes[newLines++] = isInComment && isInLexeme;
+            }
+        }
+
+        var lineShift = firstLine + 1 + newLines - resumedLine;
+        var lines = firstLine + 1 + newLines + lineStarts.length - resumedLine;
+        var starts = Arrays.copyOf(lineStarts, lines);
+        var comments = Arrays.copyOf(startsInComment, lines);
+
+        System.arraycopy(newStarts, 0, starts, firstLine + 1, newLines);
+        System.arraycopy(newComments, 0, comments, firstLine + 1, newLines);
+        System.arraycopy(startsInComment, resumedLine, comments, resumedLine + lineShift, lineStarts.length - resumedLine);
+
+        var lexemes = Arrays.copyOf(startsInLexeme, lines);
+
+        System.arraycopy(newLexemes, 0, lexemes, firstLine + 1, newLines);
+        System.arraycopy(startsInLexeme, resumedLine, lexemes, resumedLine + lineShift, lineStarts.length - resumedLine);
+
+        for (int i = resumedLine; i < lineStarts.length; i++)
+            starts[i + lineShift] = lineStarts[i] + shift;
+
+        var part = Lexer.readPart(ByteBuffer.wrap(edited, start, end - start), firstLine + 1, startsInComment[firstLine],
+                tokens.getSymbolTable());
+        var resumed = resumedLine < lineStarts.length ? lineStarts[resumedLine] : text.length + 1;
+        var source = new SourceText(ByteBuffer.wrap(edited));
+
+        var editedTokens = splice(tokens, part.getTokens(), source, start, resumed, shift, lineShift);
+        var editedUndefined = splice(undefined, part.getUndefined(), source, start, resumed, shift, lineShift);
+
+        var from = tokens.indexAt(start);
+        var to = tokens.indexAt(resumed);
+        var count = part.getTokens().size();
+        var prefix = 0;
+        var suffix = 0;
+
+        while (prefix < count && from + prefix < to && tokens.lexemeEquals(from + prefix, editedTokens, from + prefix, 0))
+            prefix++;
+
+        while (suffix < count - prefix && suffix < to - from - prefix
+                && tokens.lexemeEquals(to - 1 - suffix, editedTokens, from + count - 1 - suffix, lineShift))
+            suffix++;
+
+        var state = new IncrementalParser(edited, editedTokens, editedUndefined, starts, comments, lexemes, newLines + 1,
+                null, false, List.of(), 0);
+
+        return state.reparse(this, from + prefix, to - suffix, count - (to - from), lineShift);
+    }
+
+    /**
+     * Moves the lexemes of the buffer to the edited source code, replacing the ones of the read lines
+     *
+     * @param buffer    the lexemes before the edit
+     * @param part      the lexemes of the read lines, their positions are relative to the first one
+     * @param source    the edited source code
+     * @param start     the index of the first character of the read lines
+     * @param resumed   the index of the first character after the read lines before the edit
+     * @param shift     the number of the inserted characters minus the number of the removed ones
+     * @param lineShift the number of the inserted lines minus the number of the removed ones
+     * @return the lexemes of the edited source code
+     */
+    private static TokenBuffer splice(TokenBuffer buffer, TokenBuffer part, CharSequence source,
+                                      int start, int resumed, int shift, int lineShift) {
+        var result = new TokenBuffer(source, buffer.getSymbolTable());
+        var resumedIndex = buffer.indexAt(resumed);
+
+        result.addAll(buffer, 0, buffer.indexAt(start), 0, 0);
+        result.addAll(part, start);
+        result.addAll(buffer, resumedIndex, buffer.size(), shift, lineShift);
+
+        return result;
+    }
+
+    /**
+     * Parses the edited lexemes, reusing the AST of the previous state if it is correct
+     *
+     * @param previous   the state before the edit
+     * @param from       the index of the first changed lexeme
+     * @param to         the index after the last changed lexeme before the edit
+     * @param tokenShift the number of the inserted lexemes minus the number of the removed ones
+     * @param lineShift  the number of the inserted lines minus the number of the removed ones
+     * @return this state with the AST
+     */
+    private IncrementalParser reparse(IncrementalParser previous, int from, int to, int tokenShift, int lineShift) {
+        if (previous.isCorrect && from == to && tokenShift == 0 && lineShift == 0)
+            return withAst(previous.root, true, List.of(), 0);
+
+        var span = previous.isCorrect ? previous.program() : null;
+        if (span != null && (from < span.start || to > span.end))
+            span = null;
+
+        for (var child = span; child != null; child = child.childContaining(from, to))
+            span = child;
+
+        for (; span != null; span = span.parent) {
+            var parser = new Parser(tokens, span.start, span.end + tokenShift);
+            var isBody = span.parent != null && span.parent.kind == Kind.LOOP;
+
+            if (!parser.parseOperators(isBody ? 1 : Integer.MAX_VALUE))
+                continue;
+
+            var ast = link(previous.root, span, parser.getRoot(), lineShift);
+            if (ast.getLinkedAstCount() > MAX_LINKED_ASTS)
+                break;
+
+            return withAst(new OutputTreeNode<>(ast, 0), true, List.of(), span.end + tokenShift - span.start);
+        }
+
+        var parser = new Parser(tokens);
+        var isProgramCorrect = parser.parseProgram();
+        return withAst(parser.getRoot(), isProgramCorrect, parser.getErrorMessages(), tokens.size());
+    }
+
+    private IncrementalParser withAst(OutputTreeNode<Lexeme> root, boolean isCorrect, List<String> errorMessages,
+                                      int reparsedLexemes) {
+        return new IncrementalParser(text, tokens, undefined, lineStarts, startsInComment, startsInLexeme, relexedLines,
+                root, isCorrect, errorMessages, reparsedLexemes);
+    }
+
+    /**
+     * Builds the AST which contains the parsed operators instead of the ones of the span.
+     * The operators enclosing the span are created again, the other ones are linked.
+     *
+     * @param previous  the root of the AST before the edit
+     * @param span      the operators replaced by the parsed ones
+     * @param parsed    the root of the parsed operators
+     * @param lineShift the number to be added to the lines of the operators following the span
+     * @return the frozen store of the AST, its root is the first node
+     */
+    private Ast link(OutputTreeNode<Lexeme> previous, Span span, OutputTreeNode<Lexeme> parsed, int lineShift) {
+        var path = new ArrayList<Span>();
+        for (var current = span; current != null; current = current.parent)
+            path.add(current);
+
+        Collections.reverse(path);
+
+        var ast = new Ast(tokens);
+        var parent = ast.addLabel(Ast.NONE, previous.getContent());
+        var children = new Children(previous.getAst(), previous.getIndex(), previous.getLineShift());
+        var suffixes = new ArrayDeque<Suffix>();
+
+        ast.addLink(parent, children.ast, children.next(), children.lineShift);
+
+        for (int level = 0; level < path.size() - 1; level++) {
+            var current = path.get(level);
+            var next = path.get(level + 1);
+
+            if (current.kind == Kind.LOOP) {
+                var loop = new Children(children.ast, children.next(), children.lineShift);
+                parent = ast.addToken(parent, current.start);
+
+                var part = loop.next();
+                for (var following = loop.next(); following != Ast.NONE; following = loop.next()) {
+                    ast.addLink(parent, loop.ast, part, loop.lineShift);
+                    part = following;
+                }
+
+                parent = ast.addToken(parent, next.start - 1);
+                children = new Children(loop.ast, part, loop.lineShift);
+                continue;
+            }
+
+            var index = current.children.indexOf(next);
+            for (int i = 0; i < index; i++)
+                reuse(ast, parent, children, current.children.get(i).nodes, 0);
+
+            var following = 0;
+            for (int i = index + 1; i < current.children.size(); i++)
+                following += current.children.get(i).nodes;
+
+            suffixes.push(new Suffix(children, following, parent));
+        }
+
+        for (int i = 0; i < span.nodes; i++)
+            children.next();
+
+        var operators = new Children(parsed.getAst(), parsed.getIndex(), parsed.getLineShift());
+        for (var operator = operators.next(); operator != Ast.NONE; operator = operators.next())
+            ast.addLink(parent, operators.ast, operator, operators.lineShift);
+
+        while (!suffixes.isEmpty()) {
+            var suffix = suffixes.pop();
+            reuse(ast, suffix.parent, suffix.children, suffix.count, lineShift);
+        }
+
+        ast.freeze();
+        return ast;
+    }
+
+    /**
+     * Adds links to the next children of the previous AST to the node, the links move them to their new lines
+     *
+     * @param ast       the store of the built AST
+     * @param parent    the node to add the children to
+     * @param children  the children of the previous AST
+     * @param count     the number of the children to be added
+     * @param lineShift the number to be added to the lines of the children
+     */
+    private static void reuse(Ast ast, int parent, Children children, int count, int lineShift) {
+        for (int i = 0; i < count; i++)
+            ast.addLink(parent, children.ast, children.next(), children.lineShift + lineShift);
+    }
+
+    /**
+     * Finds the operators of the program, which has to be correct
+     *
+     * @return the span of all operators, null if the program is not correct
+     */
+    private Span program() {
+        if (program == null && isCorrect)
+            program = Span.find(tokens);
+
+        return program;
+    }
+
+    /**
+     * The kinds of the operators
+     */
+    private enum Kind {
+        /**
+         * The operators between "Begin" and "End." of the program
+         */
+        PROGRAM,
+
+        /**
+         * "*Ident* := *expression* ;"
+         */
+        ASSIGNMENT,
+
+        /**
+         * "WHILE *expression* DO *operator*"
+         */
+        LOOP,
+
+        /**
+         * "Begin *list of operators* End", its operators are the children of the enclosing node of the AST
+         */
+        COMPOUND
+    }
+
+    /**
+     * The lexemes of an operator
+     */
+    private static final class Span {
+        /**
+         * The kind of the operator
+         */
+        private final Kind kind;
+
+        /**
+         * The operator containing this one, null for the program
+         */
+        private final Span parent;
+
+        /**
+         * The index of the first lexeme of the operator
+         */
+        private final int start;
+
+        /**
+         * The index after the last lexeme of the operator
+         */
+        private int end;
+
+        /**
+         * The number of the nodes the operator adds to the children of the enclosing node of the AST
+         */
+        private int nodes;
+
+        /**
+         * The nested operators in the order of their lexemes
+         */
+        private final List<Span> children = new ArrayList<>();
+
+        private Span(Kind kind, Span parent, int start) {
+            this.kind = kind;
+            this.parent = parent;
+            this.start = start;
+
+            if (parent != null)
+                parent.children.add(this);
+        }
+
+        /**
+         * Finishes the operator
+         *
+         * @param end the index after the last lexeme of the operator
+         * @return the operator containing this one
+         */
+        private Span close(int end) {
+            this.end = end;
+
+            if (kind == Kind.ASSIGNMENT || kind == Kind.LOOP) {
+                nodes = 1;
+            } else {
+                for (var child : children)
+                    nodes += child.nodes;
+            }
+
+            return parent;
+        }
+
+        /**
+         * Finds the nested operator containing the lexemes
+         *
+         * @param from the index of the first lexeme
+         * @param to   the index after the last lexeme
+         * @return the last nested operator starting before the lexemes and containing them, null if there is none
+         */
+        private Span childContaining(int from, int to) {
+            int low = 0;
+            int high = children.size();
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (children.get(middle).start <= from)
+                    low = middle + 1;
+                else
+                    high = middle;
+            }
+
+            return low > 0 && to <= children.get(low - 1).end ? children.get(low - 1) : null;
+        }
+
+        /**
+         * Finds the operators in the lexemes of a correct program without recursion
+         *
+         * @param tokens the lexemes of the program
+         * @return the span of all operators, null if the lexemes are not a correct program
+         */
+        private static Span find(TokenBuffer tokens) {
+            var begin = 0;
+            while (begin < tokens.size() && !isKeyword(tokens, begin, SymbolTable.BEGIN))
+                begin++;
+
+            var program = new Span(Kind.PROGRAM, null, begin + 1);
+            var span = program;
+
+            for (int i = begin + 1; i < tokens.size(); ) {
+                if (span.kind == Kind.LOOP && !span.children.isEmpty()) {
+                    span = span.close(span.children.get(0).end);
+                } else if (span.kind != Kind.LOOP && !span.children.isEmpty()
+                        && (isKeyword(tokens, i, SymbolTable.END) || isKeyword(tokens, i, SymbolTable.END_OF_PROGRAM))) {
+                    if (span == program) {
+                        program.close(i);
+                        return program;
+                    }
+
+                    span = span.close(++i);
+                } else if (tokens.getLexemeClass(i) == LexemeClass.Ident) {
+                    var end = i;
+                    while (end < tokens.size() && !isSeparator(tokens, end, SymbolTable.SEMICOLON))
+                        end++;
+
+                    new Span(Kind.ASSIGNMENT, span, i).close(end + 1);
+                    i = end + 1;
+                } else if (isKeyword(tokens, i, SymbolTable.WHILE)) {
+                    span = new Span(Kind.LOOP, span, i);
+
+                    while (i < tokens.size() && !isKeyword(tokens, i, SymbolTable.DO))
+                        i++;
+
+                    i++;
+                } else if (isKeyword(tokens, i, SymbolTable.BEGIN)) {
+                    span = new Span(Kind.COMPOUND, span, i++);
+                } else {
+                    return null;
+                }
+            }
+
+            return null;
+        }
+
+        private static boolean isKeyword(TokenBuffer tokens, int index, int symbol) {
+            return tokens.getLexemeClass(index) == LexemeClass.Keyword && tokens.getSymbol(index) == symbol;
+        }
+
+        private static boolean isSeparator(TokenBuffer tokens, int index, int symbol) {
+            return tokens.getLexemeClass(index) == LexemeClass.Separator && tokens.getSymbol(index) == symbol;
+        }
+    }
+
+    /**
+     * The iterator over the children of a node of the AST, which may be stored in another store if the node is a link
+     */
+    private static final class Children {
+        /**
+         * The store containing the children
+         */
+        private final Ast ast;
+
+        /**
+         * The number to be added to the lines of the children by the links they have been reached through
+         */
+        private final int lineShift;
+
+        /**
+         * The index of the next child in {@link Children#ast}
+         */
+        private int next;
+
+        private Children(Ast ast, int node, int lineShift) {
+            this.ast = ast.getTargetAst(node);
+            this.lineShift = lineShift + ast.getLineShift(node);
+            this.next = this.ast.getFirstChild(ast.getTargetNode(node));
+        }
+
+        /**
+         * Gets the next child
+         *
+         * @return the index of the child in {@link Children#ast} or {@link Ast#NONE} if there are no more children
+         */
+        private int next() {
+            var child = next;
+
+            if (child != Ast.NONE)
+                next = ast.getNextSibling(child);
+
+            return child;
+        }
+    }
+
+    /**
+     * The children of a node of the previous AST which follow the replaced operators
+     */
+    private static final class Suffix {
+        /**
+         * The iterator over the children, which is positioned after the replaced operators when they are added
+         */
+        private final Children children;
+
+        /**
+         * The number of the children to be added
+         */
+        private final int count;
+
+        /**
+         * The node to add the children to
+         */
+        private final int parent;
+
+        private Suffix(Children children, int count, int parent) {
+            this.children = children;
+            this.count = count;
+            this.parent = parent;
+        }
+    }
+}
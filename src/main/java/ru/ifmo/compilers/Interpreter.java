@@ -0,0 +1,631 @@
+package ru.ifmo.compilers;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Executes the programs built by {@link Parser}.
+ * The AST is compiled once into a tree of executable nodes specialized for every operator,
+ * and every variable is stored in a slot of a {@code long[]} frame, so the execution neither looks up names nor boxes values.
+ * <p>
+ * As the AST is right-nested, every binary operator is applied to an operand and the rest of the expression,
+ * and the unary minus negates the rest of the expression. The comparison operators result in 1 or 0,
+ * a loop is executed while its condition is not 0.
+ */
+final class Interpreter {
+    /**
+     * The budget used if no other is provided
+     */
+    static final long DEFAULT_BUDGET = 10_000_000_000L;
+
+    /**
+     * The maximal depth of the nested executable nodes of an expression,
+     * the longer chains of operators are split so that evaluating them does not overflow the stack
+     */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * The number of the slots following the variables: the scratch slot and the budget slot
+     */
+    private static final int RESERVED_SLOTS = 2;
+
+    /**
+     * The names of the variables in the order of their slots
+     */
+    @Getter
+    private final List<String> variables;
+
+    /**
+     * The compiled program
+     */
+    @Getter(AccessLevel.PACKAGE)
+    private final Statement program;
+
+    /**
+     * Creates an interpreter of a compiled program
+     *
+     * @param variables the names of the variables in the order of their slots
+     * @param program   the compiled program
+     */
+    Interpreter(@NonNull List<String> variables, @NonNull Statement program) {
+        this.variables = Collections.unmodifiableList(variables);
+        this.program = program;
+    }
+
+    /**
+     * Compiles the program
+     *
+     * @param root the root of the AST of a correct program
+     * @return the interpreter of the program
+     * @throws IllegalArgumentException if the names are not resolved, a constant is too big or the AST is malformed
+     */
+    static Interpreter compile(@NonNull OutputTreeNode<Lexeme> root) {
+        return compile(root, Names.resolve(root));
+    }
+
+    /**
+     * Compiles the program which names have been resolved
+     *
+     * @param root  the root of the AST of a correct program
+     * @param names the names of the program
+     * @return the interpreter of the program
+     * @throws IllegalArgumentException if the names are not resolved, a constant is too big or the AST is malformed
+     */
+    static Interpreter compile(@NonNull OutputTreeNode<Lexeme> root, @NonNull Names names) {
+        if (!names.isCorrect())
+            throw new IllegalArgumentException(names.getDiagnostics().get(0));
+
+        var ast = root.getAst();
+        return new Compiler(names).compile(ast.getTargetAst(root.getIndex()), ast.getTargetNode(root.getIndex()),
+                root.getLineShift() + ast.getLineShift(root.getIndex()));
+    }
+
+    /**
+     * Executes the program, all variables are 0 at the start
+     *
+     * @param budget the maximal number of the executed assignments and checks of loop conditions
+     * @return the values of the variables in the order of {@link Interpreter#getVariables()}
+     * @throws IllegalStateException if the budget is exhausted
+     * @throws ArithmeticException   if a division by zero occurs
+     */
+    long[] run(long budget) {
+        var frame = new long[variables.size() + RESERVED_SLOTS];
+        frame[getBudgetSlot()] = budget;
+
+        program.execute(frame);
+
+        return Arrays.copyOf(frame, variables.size());
+    }
+
+    /**
+     * Gets the slot passing the value of a part of an expression to the next part, see {@link Chain}
+     *
+     * @return the slot following the variables
+     */
+    int getScratchSlot() {
+        return variables.size();
+    }
+
+    /**
+     * Gets the slot containing the remaining budget
+     *
+     * @return the last slot of the frame
+     */
+    int getBudgetSlot() {
+        return variables.size() + 1;
+    }
+
+    /**
+     * Compiles the AST into the executable nodes
+     */
+    private static final class Compiler {
+        /**
+         * The resolved names of the program
+         */
+        private final Names names;
+
+        /**
+         * The slot passing the value of a part of an expression to the next part, see {@link Chain}
+         */
+        private int scratchSlot;
+
+        /**
+         * The slot containing the remaining budget
+         */
+        private int budgetSlot;
+
+        Compiler(Names names) {
+            this.names = names;
+        }
+
+        /**
+         * Compiles the program, the lines are needed only to describe the problems
+         *
+         * @param lineShift the number to be added to the lines of the nodes
+         */
+        Interpreter compile(Ast ast, int root, int lineShift) {
+            var first = ast.getFirstChild(root);
+
+            if (first != Ast.NONE && ast.isLexeme(first) && ast.getSymbol(first) == SymbolTable.VAR)
+                first = ast.getNextSibling(first);
+
+            var variables = names.getVariables();
+            scratchSlot = variables.size();
+            budgetSlot = variables.size() + 1;
+
+            return new Interpreter(variables, compileStatements(ast, first, lineShift));
+        }
+
+        /**
+         * Compiles the list of statements. The bodies of the nested loops are kept on a stack
+         * instead of being compiled recursively, so the depth of the loops is not limited by the call stack.
+         */
+        private Statement compileStatements(Ast ast, int first, int lineShift) {
+            var bodies = new ArrayDeque<Body>();
+            bodies.push(new Body(ast, first, lineShift, null));
+
+            while (true) {
+                var body = bodies.peek();
+
+                if (body.next == Ast.NONE) {
+                    bodies.pop();
+
+                    var statements = body.statements;
+                    var statement = statements.size() == 1
+                            ? statements.get(0)
+                            : new Block(statements.toArray(new Statement[0]));
+
+                    if (bodies.isEmpty())
+                        return statement;
+
+                    bodies.peek().statements.add(new Loop(body.condition, statement, budgetSlot));
+                    continue;
+                }
+
+                var node = body.next;
+                var target = body.ast.getTargetAst(node);
+                var index = body.ast.getTargetNode(node);
+                var shift = body.lineShift + body.ast.getLineShift(node);
+                body.next = body.ast.getNextSibling(node);
+
+                if (target.getLexemeClass(index) == LexemeClass.AssignmentOperator) {
+                    var variable = target.getFirstChild(index);
+                    body.statements.add(new Assignment(slotOf(target, variable),
+                            compileExpression(target, target.getNextSibling(variable), shift), budgetSlot));
+                    continue;
+                }
+
+                if (target.getLexemeClass(index) != LexemeClass.Keyword || target.getSymbol(index) != SymbolTable.WHILE)
+                    throw malformed(target, index);
+
+                var loopBody = target.getFirstChild(index);
+                while (target.getNextSibling(loopBody) != Ast.NONE)
+                    loopBody = target.getNextSibling(loopBody);
+
+                var bodyAst = target.getTargetAst(loopBody);
+                var bodyNode = target.getTargetNode(loopBody);
+
+                bodies.push(new Body(bodyAst, bodyAst.getFirstChild(bodyNode), shift + target.getLineShift(loopBody),
+                        compileExpression(target, target.getFirstChild(index), shift)));
+            }
+        }
+
+        /**
+         * Compiles the expression, which is a sequence of unary minuses followed by either an operand
+         * or a binary operator, which children are an operand and the rest of the expression.
+         * The expression is read as a chain of operands without recursion.
+         */
+        private Expression compileExpression(Ast ast, int first, int lineShift) {
+            var negations = new ArrayList<Boolean>();
+            var operands = new ArrayList<Expression>();
+            var operators = new ArrayList<Integer>();
+
+            for (int node = first; ; ) {
+                var isNegated = false;
+
+                for (; isUnaryMinus(ast, node); node = ast.getNextSibling(node))
+                    isNegated = !isNegated;
+
+                if (node == Ast.NONE)
+                    throw new IllegalArgumentException("The expression is incomplete");
+
+                negations.add(isNegated);
+
+                var target = ast.getTargetAst(node);
+                var term = ast.getTargetNode(node);
+                var operand = target.getFirstChild(term);
+                lineShift += ast.getLineShift(node);
+
+                if (operand == Ast.NONE) {
+                    operands.add(compileOperand(target, term, lineShift));
+                    break;
+                }
+
+                operands.add(compileOperand(target, operand, lineShift));
+                operators.add(target.getSymbol(term));
+
+                ast = target;
+                node = target.getNextSibling(operand);
+            }
+
+            var parts = new ArrayList<Expression>();
+            Expression result = null;
+
+            for (int i = operands.size() - 1; i >= 0; i--) {
+                if (result == null) {
+                    result = operands.get(i);
+                } else {
+                    if (depth(parts, i, operands.size()) == MAX_DEPTH) {
+                        parts.add(result);
+                        result = new Variable(scratchSlot);
+                    }
+
+                    result = binary(operators.get(i), operands.get(i), result);
+                }
+
+                if (negations.get(i))
+                    result = new Negation(result);
+            }
+
+            if (parts.isEmpty())
+                return result;
+
+            parts.add(result);
+            return new Chain(parts.toArray(new Expression[0]), scratchSlot);
+        }
+
+        private static int depth(List<Expression> parts, int index, int count) {
+            return (count - 1 - index) - parts.size() * MAX_DEPTH;
+        }
+
+        private Expression compileOperand(Ast ast, int node, int lineShift) {
+            if (ast.getLexemeClass(node) == LexemeClass.Ident)
+                return new Variable(slotOf(ast, node));
+
+            if (ast.getLexemeClass(node) != LexemeClass.Const)
+                throw malformed(ast, node);
+
+            var sign = ast.getLexeme(node).getSign();
+
+            try {
+                return new Constant(Long.parseLong(sign));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format(
+                        "Constant %s on line %d is too big", sign, ast.getLine(node) + lineShift));
+            }
+        }
+
+        private static Expression binary(int operator, Expression left, Expression right) {
+            switch (operator) {
+                case SymbolTable.PLUS:
+                    return new Add(left, right);
+
+                case SymbolTable.MINUS:
+                    return new Subtract(left, right);
+
+                case SymbolTable.MULTIPLY:
+                    return new Multiply(left, right);
+
+                case SymbolTable.DIVIDE:
+                    return new Divide(left, right);
+
+                case SymbolTable.LESS:
+                    return new Less(left, right);
+
+                case SymbolTable.GREATER:
+                    return new Greater(left, right);
+
+                case SymbolTable.EQUALS:
+                    return new Equal(left, right);
+
+                default:
+                    throw new IllegalArgumentException("Unknown operator: " + SymbolTable.SHARED.getSign(operator));
+            }
+        }
+
+        private int slotOf(Ast ast, int node) {
+            var slot = names.getSlot(ast, node);
+
+            if (slot == SymbolTable.NONE)
+                throw malformed(ast, node);
+
+            return slot;
+        }
+
+        private static boolean isUnaryMinus(Ast ast, int node) {
+            return node != Ast.NONE && ast.getLexemeClass(node) == LexemeClass.ArithmeticOperator
+                    && ast.getSymbol(node) == SymbolTable.MINUS
+                    && ast.getTargetAst(node).getFirstChild(ast.getTargetNode(node)) == Ast.NONE;
+        }
+
+        private static IllegalArgumentException malformed(Ast ast, int node) {
+            return new IllegalArgumentException("Unexpected node in the AST: " + ast.getContent(node));
+        }
+
+        /**
+         * A list of statements which has not been compiled completely yet
+         */
+        private static final class Body {
+            /**
+             * The store containing the statements
+             */
+            private final Ast ast;
+
+            /**
+             * The next statement to be compiled, {@link Ast#NONE} if all of them have been compiled
+             */
+            private int next;
+
+            /**
+             * The number to be added to the lines of the statements
+             */
+            private final int lineShift;
+
+            /**
+             * The condition of the loop the list is the body of, null for the statements of the program
+             */
+            private final Expression condition;
+
+            /**
+             * The compiled statements
+             */
+            private final List<Statement> statements = new ArrayList<>();
+
+            Body(Ast ast, int next, int lineShift, Expression condition) {
+                this.ast = ast;
+                this.next = next;
+                this.lineShift = lineShift;
+                this.condition = condition;
+            }
+        }
+    }
+
+    /**
+     * An executable node changing the frame
+     */
+    abstract static class Statement {
+        abstract void execute(long[] frame);
+
+        /**
+         * Spends a unit of the budget
+         *
+         * @param frame      the frame containing the budget
+         * @param budgetSlot the slot of the budget
+         * @throws IllegalStateException if the budget is exhausted
+         */
+        static void spend(long[] frame, int budgetSlot) {
+            if (--frame[budgetSlot] < 0)
+                throw exhausted();
+        }
+
+        /**
+         * Creates the exception thrown when the budget is exhausted
+         *
+         * @return the exception to be thrown
+         */
+        static IllegalStateException exhausted() {
+            return new IllegalStateException("The instruction budget is exhausted");
+        }
+    }
+
+    static final class Block extends Statement {
+        final Statement[] statements;
+
+        Block(Statement[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        void execute(long[] frame) {
+            for (var statement : statements)
+                statement.execute(frame);
+        }
+    }
+
+    static final class Assignment extends Statement {
+        final int slot;
+        final Expression value;
+        final int budgetSlot;
+
+        Assignment(int slot, Expression value, int budgetSlot) {
+            this.slot = slot;
+            this.value = value;
+            this.budgetSlot = budgetSlot;
+        }
+
+        @Override
+        void execute(long[] frame) {
+            spend(frame, budgetSlot);
+            frame[slot] = value.evaluate(frame);
+        }
+    }
+
+    static final class Loop extends Statement {
+        final Expression condition;
+        final Statement body;
+        final int budgetSlot;
+
+        Loop(Expression condition, Statement body, int budgetSlot) {
+            this.condition = condition;
+            this.body = body;
+            this.budgetSlot = budgetSlot;
+        }
+
+        @Override
+        void execute(long[] frame) {
+            while (true) {
+                spend(frame, budgetSlot);
+
+                if (condition.evaluate(frame) == 0)
+                    return;
+
+                body.execute(frame);
+            }
+        }
+    }
+
+    /**
+     * An executable node computing a value from the frame
+     */
+    abstract static class Expression {
+        abstract long evaluate(long[] frame);
+    }
+
+    static final class Constant extends Expression {
+        final long value;
+
+        Constant(long value) {
+            this.value = value;
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return value;
+        }
+    }
+
+    static final class Variable extends Expression {
+        final int slot;
+
+        Variable(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return frame[slot];
+        }
+    }
+
+    static final class Negation extends Expression {
+        final Expression operand;
+
+        Negation(Expression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return -operand.evaluate(frame);
+        }
+    }
+
+    /**
+     * A long expression split into parts, each part reads the value of the previous one from the scratch slot
+     */
+    static final class Chain extends Expression {
+        final Expression[] parts;
+        final int scratchSlot;
+
+        Chain(Expression[] parts, int scratchSlot) {
+            this.parts = parts;
+            this.scratchSlot = scratchSlot;
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            var value = parts[0].evaluate(frame);
+
+            for (int i = 1; i < parts.length; i++) {
+                frame[scratchSlot] = value;
+                value = parts[i].evaluate(frame);
+            }
+
+            return value;
+        }
+    }
+
+    abstract static class Binary extends Expression {
+        final Expression left;
+        final Expression right;
+
+        Binary(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Add extends Binary {
+        Add(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return left.evaluate(frame) + right.evaluate(frame);
+        }
+    }
+
+    static final class Subtract extends Binary {
+        Subtract(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return left.evaluate(frame) - right.evaluate(frame);
+        }
+    }
+
+    static final class Multiply extends Binary {
+        Multiply(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return left.evaluate(frame) * right.evaluate(frame);
+        }
+    }
+
+    static final class Divide extends Binary {
+        Divide(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return left.evaluate(frame) / right.evaluate(frame);
+        }
+    }
+
+    static final class Less extends Binary {
+        Less(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return left.evaluate(frame) < right.evaluate(frame) ? 1 : 0;
+        }
+    }
+
+    static final class Greater extends Binary {
+        Greater(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return left.evaluate(frame) > right.evaluate(frame) ? 1 : 0;
+        }
+    }
+
+    static final class Equal extends Binary {
+        Equal(Expression left, Expression right) {
+            super(left, right);
+        }
+
+        @Override
+        long evaluate(long[] frame) {
+            return left.evaluate(frame) == right.evaluate(frame) ? 1 : 0;
+        }
+    }
+}
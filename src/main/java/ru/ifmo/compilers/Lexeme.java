@@ -1,27 +1,180 @@
 package ru.ifmo.compilers;
 
-import lombok.Data;
+import lombok.Getter;
 import lombok.NonNull;
 
 /**
- * Represents a lexeme found in the source code
+ * Represents a lexeme found in the source code.
+ * The sign of the lexeme is not copied from the source code, it is a view of a part of it.
  */
-@Data
 public class Lexeme {
     /**
      * The class of found lexeme
      */
+    @Getter
     @NonNull
     private final LexemeClass lexemeClass;
 
     /**
-     * The sign of the lexeme
+     * The source code containing the sign of the lexeme
      */
-    @NonNull
-    private final String sign;
+    private final CharSequence source;
+
+    /**
+     * Index of the first character of the sign in {@link Lexeme#source}
+     */
+    private final int offset;
+
+    /**
+     * The number of characters in the sign
+     */
+    private final int length;
 
     /**
      * The line of source code where it was found
      */
+    @Getter
     private final int line;
+
+    /**
+     * The id of the sign in {@link Lexeme#symbols} or {@link SymbolTable#NONE} if the sign is not interned
+     */
+    @Getter
+    private final int symbol;
+
+    /**
+     * The table the sign is interned to, null if the sign is either predefined or not interned
+     */
+    private final SymbolTable symbols;
+
+    /**
+     * Creates a lexeme with the sign
+     *
+     * @param lexemeClass the class of the lexeme
+     * @param sign        the sign of the lexeme
+     * @param line        the line of source code where it was found
+     */
+    public Lexeme(@NonNull LexemeClass lexemeClass, @NonNull String sign, int line) {
+        this(lexemeClass, sign, 0, sign.length(), line,
+                SymbolTable.isInterned(lexemeClass) ? SymbolTable.SHARED.intern(sign) : SymbolTable.NONE, SymbolTable.SHARED);
+    }
+
+    /**
+     * Creates a lexeme which sign is a part of the source code
+     *
+     * @param lexemeClass the class of the lexeme
+     * @param source      the source code containing the sign
+     * @param offset      the index of the first character of the sign in the source code
+     * @param length      the number of characters in the sign
+     * @param line        the line of source code where it was found
+     * @param symbol      the id of the sign in the table or {@link SymbolTable#NONE}
+     * @param symbols     the table the sign is interned to, may be null if the sign is predefined or not interned
+     */
+    Lexeme(@NonNull LexemeClass lexemeClass, @NonNull CharSequence source, int offset, int length, int line,
+           int symbol, SymbolTable symbols) {
+        if (offset < 0 || length < 0 || offset + length > source.length())
+            throw new IndexOutOfBoundsException(String.format("[%d, %d) of %d", offset, offset + length, source.length()));
+
+        this.lexemeClass = lexemeClass;
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.line = line;
+        this.symbol = symbol;
+        this.symbols = SymbolTable.isPredefined(symbol) ? null : symbols;
+    }
+
+    /**
+     * Gets the table the sign is interned to
+     *
+     * @return the table, null if the sign is either predefined or not interned
+     */
+    SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Gets the sign of the lexeme, creating a string only if the sign is not interned
+     *
+     * @return the sign of the lexeme
+     */
+    public String getSign() {
+        if (symbol != SymbolTable.NONE)
+            return (symbols != null ? symbols : SymbolTable.SHARED).getSign(symbol);
+
+        if (offset == 0 && length == source.length() && source instanceof String)
+            return (String) source;
+
+        return source.subSequence(offset, offset + length).toString();
+    }
+
+    /**
+     * Gets the sign of the lexeme without copying it
+     *
+     * @return the view of the sign in the source code
+     */
+    CharSequence getSignView() {
+        if (offset == 0 && length == source.length())
+            return source;
+
+        return source.subSequence(offset, offset + length);
+    }
+
+    /**
+     * Compares the sign of the lexeme with the string without copying the sign
+     *
+     * @param sign the string to compare with
+     * @return true if the sign consists of the same characters
+     */
+    boolean signEquals(@NonNull CharSequence sign) {
+        if (sign.length() != length)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(offset + i) != sign.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Compares the sign of the lexeme with the sign of the other one, by their ids if both are interned
+     *
+     * @param other the lexeme to compare with
+     * @return true if the signs consist of the same characters
+     */
+    boolean signEquals(@NonNull Lexeme other) {
+        if (symbol == SymbolTable.NONE || other.symbol == SymbolTable.NONE)
+            return signEquals(other.getSignView());
+
+        return SymbolTable.signEquals(symbols != null ? symbols : SymbolTable.SHARED, symbol,
+                other.symbols != null ? other.symbols : SymbolTable.SHARED, other.symbol);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof Lexeme))
+            return false;
+
+        var lexeme = (Lexeme) o;
+        return lexemeClass == lexeme.lexemeClass && line == lexeme.line && lexeme.signEquals(getSignView());
+    }
+
+    @Override
+    public int hashCode() {
+        int signHash = 0;
+        for (int i = 0; i < length; i++)
+            signHash = 31 * signHash + source.charAt(offset + i);
+
+        return (lexemeClass.hashCode() * 59 + signHash) * 59 + line;
+    }
+
+    @Override
+    public String toString() {
+        return "Lexeme(lexemeClass=" + lexemeClass + ", sign=" + getSignView() + ", line=" + line + ")";
+    }
 }
@@ -73,6 +73,15 @@ public enum LexemeClass {
                 .orElse(LexemeClass.Undefined);
     }
 
+    /**
+     * Gets the fixed values a lexeme of this class can have
+     *
+     * @return the set of the values, empty if the class is not limited to fixed values
+     */
+    Set<String> getPossibleValues() {
+        return mPossibleValues;
+    }
+
     /**
      * Tests if the string can be {@link this}
      *
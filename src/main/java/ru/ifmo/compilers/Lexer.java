@@ -1,35 +1,134 @@
 package ru.ifmo.compilers;
 
+import lombok.AccessLevel;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 /**
- * Performs lexical analysis resulting in a list of {@link Lexeme}
+ * Performs lexical analysis resulting in a {@link TokenBuffer} of found lexemes
+ * or in a {@link TokenSource} producing them lazily
  */
-@RequiredArgsConstructor
 class Lexer implements AutoCloseable, Closeable {
     /**
-     * The stream to be used as input
+     * Size of the chunks the input is read by
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The minimal size of the input which is worth being read by several threads
+     */
+    private static final int PARALLEL_THRESHOLD = 4 * 1024 * 1024;
+
+    /**
+     * The number of parts of the input per thread when it is read by several threads
+     */
+    private static final int PARTS_PER_THREAD = 4;
+
+    /**
+     * The stream to be used as input, null if the input is {@link Lexer#source}
      */
-    @NonNull
     private final InputStream stream;
 
     /**
-     * The list of found lexemes
+     * The buffer to be used as input, null if the input is {@link Lexer#stream}
+     */
+    private final ByteBuffer source;
+
+    /**
+     * The transition table driving the lexer
+     */
+    private final LexerTable table = LexerTable.INSTANCE;
+
+    /**
+     * The stream to report undefined sequences to
+     */
+    @NonNull
+    @Setter(AccessLevel.PACKAGE)
+    private PrintStream errors = System.err;
+
+    /**
+     * The table the signs of the found lexemes are interned to, it is shared by the lexers reading the parts of the input
+     */
+    @NonNull
+    @Setter(AccessLevel.PACKAGE)
+    private SymbolTable symbols = SymbolTable.SHARED;
+
+    /**
+     * The found lexemes, null unless {@link Lexer#readToEnd} has been called
+     */
+    private TokenBuffer tokens = null;
+
+    /**
+     * The undefined sequences found, null if they are reported to {@link Lexer#errors}
+     */
+    private TokenBuffer undefined = null;
+
+    /**
+     * The lexemes found but not yet requested, null unless {@link Lexer#tokenSource} has been called
+     */
+    private ArrayDeque<Lexeme> pending = null;
+
+    /**
+     * The part of the input read lazily, which starts with the lexeme being read.
+     * The array is never modified after it has been filled, as the found lexemes refer to it.
+     */
+    private byte[] window = null;
+
+    /**
+     * The text of {@link Lexer#window}
      */
-    private List<Lexeme> lexemes = null;
+    private SourceText windowText = null;
 
     /**
-     * Buffer string which contents will later be sign of found lexeme
+     * Index of the first byte of {@link Lexer#window} in the input
      */
-    private String currentString = "";
+    private int windowBase = 0;
+
+    /**
+     * The number of bytes read to {@link Lexer#window}
+     */
+    private int windowLength = 0;
+
+    /**
+     * Index of the first character of the lexeme being read, -1 if none is being read
+     */
+    private int tokenStart = -1;
+
+    /**
+     * Index after the last character of the lexeme being read, the comments following it are not a part of it
+     */
+    private int tokenEnd = -1;
+
+    /**
+     * Whether a comment has been opened after the last character of the lexeme being read
+     */
+    private boolean isCommentAfterToken = false;
+
+    /**
+     * Whether the lexeme being read spans a comment, so that its sign has to be copied without the comment
+     */
+    private boolean isTokenSpanningComment = false;
 
     /**
      * Current line number
@@ -37,9 +136,9 @@ class Lexer implements AutoCloseable, Closeable {
     private int lineNumber = 1;
 
     /**
-     * {@link LexemeClass} of last found lexeme
+     * State of {@link Lexer#table} after reading the characters of the current lexeme
      */
-    private LexemeClass currentClass;
+    private int currentState = LexerTable.START;
 
     /**
      * Whether we are currently reading a comment or not
@@ -47,31 +146,275 @@ class Lexer implements AutoCloseable, Closeable {
     private boolean isComment = false;
 
     /**
-     * Reads the characters from the provided stream until the input is over.
+     * Creates a lexer reading the stream
+     *
+     * @param stream the stream to be used as input
+     */
+    Lexer(@NonNull InputStream stream) {
+        this.stream = stream;
+        this.source = null;
+    }
+
+    /**
+     * Creates a lexer reading the remaining bytes of the buffer
+     *
+     * @param source the buffer to be used as input
+     */
+    Lexer(@NonNull ByteBuffer source) {
+        this.stream = null;
+        this.source = source;
+    }
+
+    /**
+     * Creates a lexer reading the memory-mapped file
+     *
+     * @param path the path to the file
+     * @return the created lexer
+     * @throws IOException if failed to open or to map the file
+     */
+    static Lexer map(@NonNull Path path) throws IOException {
+        return new Lexer(mapFile(path));
+    }
+
+    /**
+     * Maps the file into memory
+     *
+     * @param path the path to the file
+     * @return the buffer containing the bytes of the file
+     * @throws IOException if failed to open or to map the file
+     */
+    static ByteBuffer mapFile(@NonNull Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("The file is too large to be mapped: " + path);
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads a part of the input, which starts either at the start of the input or right after a line separator
+     * outside of comments, so that no lexeme crosses its start.
+     * The undefined sequences are collected instead of being reported.
+     *
+     * @param part        the part of the input, its remaining bytes are read
+     * @param line        the line the part starts on
+     * @param isInComment whether the part starts inside of a comment
+     * @param symbols     the table of the signs of the whole input
+     * @return the lexer which has read the part, the positions of its lexemes are relative to the part
+     */
+    static Lexer readPart(@NonNull ByteBuffer part, int line, boolean isInComment, @NonNull SymbolTable symbols) {
+        var lexer = new Lexer(part);
+        var input = part.slice();
+
+        lexer.lineNumber = line;
+        lexer.isComment = isInComment;
+        lexer.symbols = symbols;
+        lexer.tokens = new TokenBuffer(new SourceText(input), symbols);
+        lexer.undefined = new TokenBuffer(lexer.tokens.getSource(), symbols);
+        lexer.readSequentially(input);
+
+        return lexer;
+    }
+
+    /**
+     * Formats the report of an undefined sequence
+     *
+     * @param line     the line the sequence has been found on
+     * @param sequence the undefined sequence
+     * @return the text of the report
+     */
+    static String describeUndefined(int line, @NonNull CharSequence sequence) {
+        return String.format("Undefined sequence found on %d-th line: %s", line, sequence);
+    }
+
+    /**
+     * Reads the characters from the provided input until it is over.
      *
      * @throws IOException           if failed to read from the stream
      * @throws IllegalStateException if already has read a file successfully
      */
     void readToEnd() throws IOException {
-        if (lexemes != null)
-            throw new IllegalStateException("You have to use a new instance of " + Lexer.class.getSimpleName());
+        readSequentially(prepareInput());
+    }
+
+    /**
+     * Reads the characters from the input by the current thread
+     *
+     * @param input the whole input
+     */
+    private void readSequentially(ByteBuffer input) {
+        if (input.hasArray()) {
+            onNewSymbols(input.array(), input.arrayOffset(), input.remaining(), 0);
+        } else {
+            var chunk = new byte[CHUNK_SIZE];
+
+            for (int base = 0; input.hasRemaining(); base += chunk.length) {
+                int count = Math.min(chunk.length, input.remaining());
+                input.get(chunk, 0, count);
+                onNewSymbols(chunk, 0, count, base);
+            }
+        }
+
+        flushLexeme();
+    }
+
+    /**
+     * Reads the characters from the provided input until it is over, using several threads if the input is large.
+     * The result is the same as the one of {@link Lexer#readToEnd()}.
+     *
+     * @param threads the maximal number of threads to be used
+     * @throws IOException           if failed to read from the stream
+     * @throws IllegalStateException if already has read a file successfully
+     */
+    void readToEnd(int threads) throws IOException {
+        var size = source != null ? source.remaining() : -1;
+
+        if (threads <= 1 || (size >= 0 && size < PARALLEL_THRESHOLD)) {
+            readToEnd();
+            return;
+        }
+
+        var input = prepareInput();
 
-        int character;
-        while ((character = stream.read()) != -1)
-            onNewSymbol(Character.toString(character));
+        if (input.remaining() < PARALLEL_THRESHOLD) {
+            readSequentially(input);
+        } else {
+            readInParallel(input, threads, input.remaining() / (threads * PARTS_PER_THREAD));
+        }
+    }
 
-        if (!currentString.isBlank())
-            addLexeme(new Lexeme(currentClass, currentString, lineNumber));
+    /**
+     * Reads the characters from the provided input until it is over, splitting it into parts
+     * right after line separators and reading the parts by several threads.
+     *
+     * @param threads  the number of threads to be used
+     * @param partSize the minimal size of a part
+     * @throws IOException           if failed to read from the stream
+     * @throws IllegalStateException if already has read a file successfully
+     */
+    void readToEnd(int threads, int partSize) throws IOException {
+        readInParallel(prepareInput(), threads, partSize);
     }
 
     /**
-     * Checks if the current symbol is a line separator
+     * Reads the whole input to memory and creates {@link Lexer#tokens} referring to it
      *
-     * @param symbol the symbol to be checked
-     * @return true if the symbol is line separator
+     * @return the whole input
+     * @throws IOException           if failed to read from the stream
+     * @throws IllegalStateException if already has read a file successfully
      */
-    private static boolean isLineSeparator(String symbol) {
-        return System.lineSeparator().endsWith(symbol);
+    private ByteBuffer prepareInput() throws IOException {
+        checkNotStarted();
+
+        var input = source != null ? source.slice() : ByteBuffer.wrap(stream.readAllBytes());
+        tokens = new TokenBuffer(new SourceText(input), symbols);
+        return input;
+    }
+
+    /**
+     * Reads the input by parts in parallel.
+     * First, the comments and the lines are counted in every part, assuming that the part either starts in a comment or not.
+     * Then, the real state at the start of every part is found, and the parts are read by separate lexers.
+     * As a lexeme may span a comment, a part starting inside of a comment is joined with the previous one,
+     * so that the parts start right after line separators outside of comments and no lexeme crosses their bounds.
+     *
+     * @param input    the whole input
+     * @param threads  the number of threads to be used
+     * @param partSize the minimal size of a part
+     */
+    private void readInParallel(ByteBuffer input, int threads, int partSize) {
+        List<Part> parts = new ArrayList<>();
+
+        for (int start = 0, end; start < input.remaining(); start = end) {
+            end = Math.min(input.remaining(), start + Math.max(1, partSize));
+
+            while (end < input.remaining() && input.get(end - 1) != LexerTable.LINE_END)
+                end++;
+
+            parts.add(new Part(input, start, end, symbols));
+        }
+
+        var executor = Executors.newFixedThreadPool(Math.min(threads, parts.size()));
+
+        try {
+            runAll(executor, parts, Part::countLines);
+
+            int line = lineNumber;
+            var isInComment = isComment;
+            for (var part : parts) {
+                part.startLine = line;
+                part.startsInComment = isInComment;
+                line += part.lines;
+                isInComment = isInComment ? part.endsInCommentIfStartsInComment : part.endsInComment;
+            }
+
+            var joined = new ArrayList<Part>();
+            for (var part : parts) {
+                if (part.startsInComment && !joined.isEmpty())
+                    joined.get(joined.size() - 1).join(part);
+                else
+                    joined.add(part);
+            }
+
+            parts = joined;
+
+            runAll(executor, parts, Part::read);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (var part : parts) {
+            errors.write(part.errors.toByteArray(), 0, part.errors.size());
+            tokens.addAll(part.tokens, part.start);
+        }
+
+        lineNumber = parts.isEmpty() ? lineNumber : parts.get(parts.size() - 1).startLine + parts.get(parts.size() - 1).lines;
+        isComment = !parts.isEmpty() && parts.get(parts.size() - 1).endsInComment();
+    }
+
+    /**
+     * Runs the action for every part of the input and waits until all of them are finished
+     *
+     * @param executor the executor to run the actions
+     * @param parts    the parts of the input
+     * @param action   the action to run
+     */
+    private static void runAll(ExecutorService executor, List<Part> parts, Consumer<Part> action) {
+        var tasks = new ArrayList<Callable<Void>>();
+        for (var part : parts) {
+            tasks.add(() -> {
+                action.accept(part);
+                return null;
+            });
+        }
+
+        try {
+            for (var future : executor.invokeAll(tasks))
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the input", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to read a part of the input", e.getCause());
+        }
+    }
+
+    /**
+     * Creates a source of the lexemes, which reads the input only when the next lexeme is requested.
+     * The input is kept in memory only while the lexeme containing it is being read.
+     *
+     * @param lookahead the maximal number of lexemes which can be read after {@link TokenSource#mark}
+     * @return the source of the lexemes
+     * @throws IllegalStateException if the input has been read already
+     */
+    TokenSource tokenSource(int lookahead) {
+        checkNotStarted();
+
+        pending = new ArrayDeque<>();
+        window = new byte[CHUNK_SIZE];
+        windowText = new SourceText(ByteBuffer.wrap(window));
+        return new LazySource(lookahead);
     }
 
     /**
@@ -80,82 +423,494 @@ class Lexer implements AutoCloseable, Closeable {
      * @return the list of found lexemes
      */
     List<Lexeme> getLexemes() {
-        return lexemes == null ? Collections.emptyList() : lexemes;
+        return tokens == null ? Collections.emptyList() : tokens.asList();
+    }
+
+    /**
+     * Gets the lexing result
+     *
+     * @return the buffer of found lexemes, empty if nothing has been read yet
+     */
+    TokenBuffer getTokens() {
+        return tokens == null ? new TokenBuffer("", symbols) : tokens;
+    }
+
+    /**
+     * Gets the undefined sequences found by the lexer created by {@link Lexer#readPart}
+     *
+     * @return the buffer of the undefined sequences, empty if they have been reported to the errors
+     */
+    TokenBuffer getUndefined() {
+        return undefined == null ? new TokenBuffer("", symbols) : undefined;
     }
 
     @Override
     public void close() throws IOException {
-        stream.close();
+        if (stream != null)
+            stream.close();
+    }
+
+    /**
+     * Checks that the input has not been read by this instance
+     *
+     * @throws IllegalStateException if the input has been read already
+     */
+    private void checkNotStarted() {
+        if (tokens != null || pending != null)
+            throw new IllegalStateException("You have to use a new instance of " + Lexer.class.getSimpleName());
+    }
+
+    /**
+     * Reads the next part of the input to {@link Lexer#window} and checks its symbols.
+     * When the window is full, a new one is created and only the symbols of the lexeme being read are copied to it.
+     *
+     * @return false if the input is over, true otherwise
+     * @throws IOException if failed to read from the stream
+     */
+    private boolean readWindow() throws IOException {
+        if (windowLength == window.length) {
+            int drop = tokenStart < 0 ? windowLength : tokenStart - windowBase;
+            int keep = windowLength - drop;
+
+            var next = new byte[keep == window.length ? window.length * 2 : window.length];
+            System.arraycopy(window, drop, next, 0, keep);
+            window = next;
+            windowText = new SourceText(ByteBuffer.wrap(window));
+            windowBase += drop;
+            windowLength = keep;
+        }
+
+        int count = readInput(window, windowLength, window.length - windowLength);
+
+        if (count == -1) {
+            flushLexeme();
+            return false;
+        }
+
+        onNewSymbols(window, windowLength, count, windowBase + windowLength);
+        windowLength += count;
+        return true;
+    }
+
+    /**
+     * Reads the next bytes of the input
+     *
+     * @param bytes  where to put the read bytes
+     * @param offset the index in the array to put the first byte to
+     * @param length the maximal number of bytes to read
+     * @return the number of the read bytes or -1 if the input is over
+     * @throws IOException if failed to read from the stream
+     */
+    private int readInput(byte[] bytes, int offset, int length) throws IOException {
+        if (stream != null)
+            return stream.read(bytes, offset, length);
+
+        if (!source.hasRemaining())
+            return -1;
+
+        int count = Math.min(length, source.remaining());
+        source.get(bytes, offset, count);
+        return count;
+    }
+
+    /**
+     * Gets the text of the input which has not been dropped yet
+     *
+     * @param start the index of the first character in the input
+     * @param end   the index after the last character in the input
+     * @return the text
+     */
+    private CharSequence getText(int start, int end) {
+        if (tokens != null)
+            return tokens.getSource().subSequence(start, end);
+
+        return windowText.subSequence(start - windowBase, end - windowBase);
     }
 
     /**
      * Adds lexeme to result
      *
-     * @param lexeme the new lexeme
+     * @param lexemeClass the class of the lexeme
+     * @param start       the index of the first character of the lexeme in the input
+     * @param end         the index after the last character of the lexeme in the input
+     * @param sign        the copied sign of the lexeme spanning a comment, null for the other lexemes
      */
-    private void addLexeme(Lexeme lexeme) {
-        if (lexemes == null)
-            lexemes = new LinkedList<>();
+    private void addLexeme(LexemeClass lexemeClass, int start, int end, String sign) {
+        var text = sign != null ? sign : getText(start, end);
+        int symbol = SymbolTable.isInterned(lexemeClass) ? symbols.intern(text) : SymbolTable.NONE;
 
-        lexemes.add(lexeme);
+        if (tokens != null && sign != null)
+            tokens.add(lexemeClass, start, end - start, lineNumber, symbol, sign);
+        else if (tokens != null)
+            tokens.add(lexemeClass, start, end - start, lineNumber, symbol);
+        else if (sign != null)
+            pending.add(new Lexeme(lexemeClass, sign, 0, sign.length(), lineNumber, symbol, symbols));
+        else
+            pending.add(new Lexeme(lexemeClass, windowText, start - windowBase, end - start, lineNumber, symbol, symbols));
+    }
+
+    /**
+     * Checks each symbol of the chunk
+     *
+     * @param chunk  the chunk of the input
+     * @param offset the index of the first symbol in the chunk
+     * @param length the number of the symbols
+     * @param base   the index of the first symbol of the chunk in the input
+     */
+    private void onNewSymbols(byte[] chunk, int offset, int length, int base) {
+        for (int i = 0; i < length; i++)
+            onNewSymbol((char) (chunk[offset + i] & 0xFF), base + i);
     }
 
     /**
      * Checks each new symbol
      *
-     * @param symbol the new symbol
+     * @param symbol   the new symbol
+     * @param position the index of the symbol in the input
      */
-    private void onNewSymbol(String symbol) {
+    private void onNewSymbol(char symbol, int position) {
         if (checkComments(symbol))
             return;
 
-        String oldString = currentString;
-        currentString += symbol;
+        switch (table.kind(symbol)) {
+            case LexerTable.TOKEN:
+                int next = table.next(currentState, symbol);
 
-        LexemeClass oldLexemeClass = LexemeClass.determine(oldString);
-        currentClass = LexemeClass.determine(currentString);
+                if ((next & LexerTable.EMIT) != 0) {
+                    flushLexeme();
+                    next &= ~LexerTable.EMIT;
+                }
 
-        boolean isLineSeparator = isLineSeparator(symbol);
+                if (tokenStart < 0)
+                    tokenStart = position;
+                else if (isCommentAfterToken)
+                    isTokenSpanningComment = true;
 
-        if (LexemeClass.Separator.test(symbol) || isLineSeparator) {
-            if (!oldString.isEmpty()) {
-                if (oldLexemeClass == LexemeClass.Undefined)
-                    System.err.printf("Undefined sequence found on %d-th line: %s\n", lineNumber, oldString);
-                else
-                    addLexeme(new Lexeme(oldLexemeClass, oldString, lineNumber));
-            }
+                isCommentAfterToken = false;
+                tokenEnd = position + 1;
+                currentState = next;
+                break;
 
-            if (isLineSeparator)
+            case LexerTable.SEPARATOR:
+                flushLexeme();
+                addLexeme(LexemeClass.Separator, position, position + 1, null);
+                break;
+
+            case LexerTable.LINE_SEPARATOR:
+                flushLexeme();
                 lineNumber++;
-            else if (!symbol.isBlank())
-                addLexeme(new Lexeme(LexemeClass.Separator, symbol, lineNumber));
+                break;
+
+            default:
+                flushLexeme();
+        }
+    }
+
+    /**
+     * Adds the lexeme read so far to result and starts reading a new one.
+     * The sign of a lexeme spanning a comment is copied without the comment.
+     */
+    private void flushLexeme() {
+        if (tokenStart < 0)
+            return;
+
+        var lexemeClass = table.classOf(currentState);
+        var sign = isTokenSpanningComment ? withoutComments(getText(tokenStart, tokenEnd)) : null;
+
+        if (lexemeClass != LexemeClass.Undefined)
+            addLexeme(lexemeClass, tokenStart, tokenEnd, sign);
+        else if (undefined != null && sign != null)
+            undefined.add(lexemeClass, tokenStart, tokenEnd - tokenStart, lineNumber, SymbolTable.NONE, sign);
+        else if (undefined != null)
+            undefined.add(lexemeClass, tokenStart, tokenEnd - tokenStart, lineNumber, SymbolTable.NONE);
+        else
+            errors.printf("%s\n", describeUndefined(lineNumber, sign != null ? sign : getText(tokenStart, tokenEnd)));
 
-            currentString = "";
-        } else if (oldLexemeClass != LexemeClass.Undefined && currentClass == LexemeClass.Undefined) {
-            addLexeme(new Lexeme(oldLexemeClass, oldString, lineNumber));
-            currentString = symbol;
+        tokenStart = -1;
+        tokenEnd = -1;
+        isCommentAfterToken = false;
+        isTokenSpanningComment = false;
+        currentState = LexerTable.START;
+    }
+
+    /**
+     * Removes the comments from the text of a lexeme spanning them
+     *
+     * @param text the part of the input from the start to the end of the lexeme
+     * @return the sign of the lexeme
+     */
+    private static String withoutComments(CharSequence text) {
+        var sign = new StringBuilder(text.length());
+        var isInComment = false;
+
+        for (int i = 0; i < text.length(); i++) {
+            var symbol = text.charAt(i);
+
+            if (symbol == LexerTable.COMMENT_OPEN)
+                isInComment = true;
+            else if (isInComment)
+                isInComment = symbol != LexerTable.COMMENT_CLOSE;
+            else
+                sign.append(symbol);
         }
+
+        return sign.toString();
     }
 
     /**
-     * Checks if the stream is currently sending commented characters
+     * Checks if the stream is currently sending commented characters.
+     * A comment does not end the lexeme being read, the lexeme continues after the comment.
      *
+     * @param symbol the new symbol
      * @return true if the symbols are commented and should be skipped
      */
-    private boolean checkComments(String symbol) {
-        if (symbol.equals("{")) {
+    private boolean checkComments(char symbol) {
+        if (symbol == LexerTable.COMMENT_OPEN) {
+            if (tokenStart >= 0)
+                isCommentAfterToken = true;
+
             isComment = true;
             return true;
         }
 
         if (isComment) {
-            if (symbol.equals("}"))
+            if (symbol == LexerTable.COMMENT_CLOSE)
                 isComment = false;
-            else if (isLineSeparator(symbol))
+            else if (symbol == LexerTable.LINE_END)
                 lineNumber++;
             return true;
         }
 
         return false;
     }
+
+    /**
+     * The source of the lexemes found lazily, which keeps the lexemes read after the mark
+     */
+    private class LazySource implements TokenSource {
+        /**
+         * The maximal number of lexemes which can be read after the mark
+         */
+        private final int lookahead;
+
+        /**
+         * The lexemes read after the mark or the next lexeme if there is no mark
+         */
+        private final List<Lexeme> buffered = new ArrayList<>();
+
+        /**
+         * Index of the next lexeme in {@link LazySource#buffered}
+         */
+        private int position = 0;
+
+        /**
+         * Whether a position has been marked
+         */
+        private boolean isMarked = false;
+
+        /**
+         * Whether the input is over
+         */
+        private boolean isOver = false;
+
+        LazySource(int lookahead) {
+            this.lookahead = lookahead;
+        }
+
+        @Override
+        public Lexeme peek() {
+            if (position == buffered.size()) {
+                if (!isMarked) {
+                    buffered.clear();
+                    position = 0;
+                } else if (buffered.size() >= lookahead) {
+                    throw new IllegalStateException("More than " + lookahead + " lexemes have been read after mark");
+                }
+
+                var lexeme = read();
+                if (lexeme == null)
+                    return null;
+
+                buffered.add(lexeme);
+            }
+
+            return buffered.get(position);
+        }
+
+        @Override
+        public Lexeme next() {
+            var lexeme = peek();
+
+            if (lexeme == null)
+                throw new NoSuchElementException("The input is over");
+
+            position++;
+            return lexeme;
+        }
+
+        @Override
+        public void mark() {
+            buffered.subList(0, position).clear();
+            position = 0;
+            isMarked = true;
+        }
+
+        @Override
+        public void reset() {
+            if (!isMarked)
+                throw new IllegalStateException("No position has been marked");
+
+            position = 0;
+            isMarked = false;
+        }
+
+        /**
+         * Reads the input until the next lexeme is found
+         *
+         * @return the found lexeme or null if the input is over
+         */
+        private Lexeme read() {
+            try {
+                while (pending.isEmpty() && !isOver)
+                    isOver = !readWindow();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return pending.poll();
+        }
+    }
+
+    /**
+     * A part of the input read by a separate lexer
+     */
+    private static final class Part {
+        /**
+         * The whole input
+         */
+        private final ByteBuffer input;
+
+        /**
+         * Index of the first byte of the part in the input
+         */
+        private final int start;
+
+        /**
+         * Index after the last byte of the part in the input
+         */
+        private int end;
+
+        /**
+         * The number of line separators in the part
+         */
+        private int lines;
+
+        /**
+         * Whether a comment is open at the end of the part if it starts outside of comments
+         */
+        private boolean endsInComment;
+
+        /**
+         * Whether a comment is open at the end of the part if it starts inside of a comment
+         */
+        private boolean endsInCommentIfStartsInComment;
+
+        /**
+         * The line the part starts on
+         */
+        private int startLine;
+
+        /**
+         * Whether the part starts inside of a comment
+         */
+        private boolean startsInComment;
+
+        /**
+         * The lexemes found in the part, their positions are relative to the part
+         */
+        private TokenBuffer tokens;
+
+        /**
+         * The undefined sequences found in the part
+         */
+        private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+        /**
+         * The table of the signs of the whole input
+         */
+        private final SymbolTable symbols;
+
+        Part(ByteBuffer input, int start, int end, SymbolTable symbols) {
+            this.input = input;
+            this.start = start;
+            this.end = end;
+            this.symbols = symbols;
+        }
+
+        /**
+         * Counts the line separators and finds whether a comment is open at the end of the part
+         * for both possible states at its start
+         */
+        void countLines() {
+            var isOpen = false;
+            var isOpenIfStartsInComment = true;
+
+            for (int i = start; i < end; i++) {
+                var symbol = (char) (input.get(i) & 0xFF);
+
+                if (symbol == LexerTable.LINE_END) {
+                    lines++;
+                } else if (symbol == LexerTable.COMMENT_OPEN) {
+                    isOpen = true;
+                    isOpenIfStartsInComment = true;
+                } else if (symbol == LexerTable.COMMENT_CLOSE) {
+                    isOpen = false;
+                    isOpenIfStartsInComment = false;
+                }
+            }
+
+            endsInComment = isOpen;
+            endsInCommentIfStartsInComment = isOpenIfStartsInComment;
+        }
+
+        /**
+         * Appends the following part, which start state is known, to this one
+         *
+         * @param next the part following this one
+         */
+        void join(Part next) {
+            end = next.end;
+            lines += next.lines;
+            endsInComment = next.endsInComment();
+            endsInCommentIfStartsInComment = endsInComment;
+        }
+
+        /**
+         * Reads the lexemes of the part by a separate lexer
+         */
+        void read() {
+            var lexer = new Lexer(input.duplicate().position(start).limit(end).slice());
+            lexer.lineNumber = startLine;
+            lexer.isComment = startsInComment;
+            lexer.symbols = symbols;
+            lexer.errors = new PrintStream(errors);
+
+            try {
+                lexer.readToEnd();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            tokens = lexer.tokens;
+        }
+
+        /**
+         * Checks whether a comment is open at the end of the part, which start state is known
+         *
+         * @return true if the part ends inside of a comment
+         */
+        boolean endsInComment() {
+            return startsInComment ? endsInCommentIfStartsInComment : endsInComment;
+        }
+    }
 }
@@ -0,0 +1,283 @@
+package ru.ifmo.compilers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Precomputed state-transition table of the lexer.
+ * The table is built once from the rules of {@link LexemeClass},
+ * so that {@link Lexer} never has to match regular expressions while reading the input.
+ */
+final class LexerTable {
+    /**
+     * The state of the automaton before any symbol of a lexeme has been read
+     */
+    static final int START = 0;
+
+    /**
+     * Flag set in a transition if the lexeme read so far has to be emitted before taking the transition
+     */
+    static final int EMIT = 1 << 30;
+
+    /**
+     * Kind of a symbol which is a part of a lexeme
+     */
+    static final byte TOKEN = 0;
+
+    /**
+     * Kind of a symbol which separates lexemes and is a lexeme itself: ",", ";", "(", ")"
+     */
+    static final byte SEPARATOR = 1;
+
+    /**
+     * Kind of a whitespace symbol which separates lexemes
+     */
+    static final byte WHITESPACE = 2;
+
+    /**
+     * Kind of a symbol which ends a line
+     */
+    static final byte LINE_SEPARATOR = 3;
+
+    /**
+     * Kind of a symbol which starts a comment
+     */
+    static final byte COMMENT_START = 4;
+
+    /**
+     * The symbol which starts a comment
+     */
+    static final char COMMENT_OPEN = '{';
+
+    /**
+     * The symbol which ends a comment
+     */
+    static final char COMMENT_CLOSE = '}';
+
+    /**
+     * The symbol which ends a line
+     */
+    static final char LINE_END = System.lineSeparator().charAt(System.lineSeparator().length() - 1);
+
+    /**
+     * The only instance of the table
+     */
+    static final LexerTable INSTANCE = new LexerTable();
+
+    /**
+     * Number of symbols having their own column in the table, all others share the last column
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * Number of columns in the table
+     */
+    private static final int COLUMNS = ASCII + 1;
+
+    /**
+     * The kinds of the symbols, indexed by the symbol
+     */
+    private final byte[] kinds = new byte[ASCII];
+
+    /**
+     * The transitions, indexed by {@code state * COLUMNS + column}
+     */
+    private final int[] transitions;
+
+    /**
+     * The class of a lexeme which has been read when the automaton is in the state
+     */
+    private final LexemeClass[] classes;
+
+    private LexerTable() {
+        for (char symbol = 0; symbol < ASCII; symbol++)
+            kinds[symbol] = kindOf(symbol);
+
+        var builder = new Builder();
+        builder.build();
+
+        classes = builder.classes.toArray(new LexemeClass[0]);
+        transitions = new int[classes.length * COLUMNS];
+
+        for (int state = 0; state < classes.length; state++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                int target = builder.transitions.get(state)[column];
+
+                if (classes[state] != LexemeClass.Undefined && classes[target] == LexemeClass.Undefined)
+                    target = EMIT | builder.transitions.get(START)[column];
+
+                transitions[state * COLUMNS + column] = target;
+            }
+        }
+    }
+
+    /**
+     * Gets the kind of the symbol
+     *
+     * @param symbol the symbol from the input
+     * @return one of {@link LexerTable#TOKEN}, {@link LexerTable#SEPARATOR}, {@link LexerTable#WHITESPACE},
+     * {@link LexerTable#LINE_SEPARATOR} or {@link LexerTable#COMMENT_START}
+     */
+    byte kind(char symbol) {
+        return symbol < ASCII ? kinds[symbol] : TOKEN;
+    }
+
+    /**
+     * Gets the transition from the state by the symbol
+     *
+     * @param state  the current state
+     * @param symbol the symbol of {@link LexerTable#TOKEN} kind
+     * @return the next state, possibly combined with {@link LexerTable#EMIT}
+     */
+    int next(int state, char symbol) {
+        return transitions[state * COLUMNS + (symbol < ASCII ? symbol : ASCII)];
+    }
+
+    /**
+     * Gets the class of the lexeme read by the automaton
+     *
+     * @param state the state of the automaton after reading the lexeme
+     * @return the class of the lexeme or {@link LexemeClass#Undefined}
+     */
+    LexemeClass classOf(int state) {
+        return classes[state];
+    }
+
+    /**
+     * Determines the kind of the symbol using the rules of {@link LexemeClass}
+     *
+     * @param symbol the symbol to check
+     * @return the kind of the symbol
+     */
+    private static byte kindOf(char symbol) {
+        if (symbol == COMMENT_OPEN)
+            return COMMENT_START;
+
+        if (symbol == LINE_END)
+            return LINE_SEPARATOR;
+
+        var string = String.valueOf(symbol);
+
+        if (!LexemeClass.Separator.test(string))
+            return TOKEN;
+
+        return string.isBlank() ? WHITESPACE : SEPARATOR;
+    }
+
+    /**
+     * Builds the automaton by exploring every reachable combination of a prefix of a fixed lexeme
+     * (a keyword or an operator) and a kind of a generic lexeme (a constant or an identifier)
+     */
+    private class Builder {
+        private static final int NONE = 0;
+        private static final int EMPTY = 1;
+        private static final int DIGITS = 2;
+        private static final int LETTERS = 3;
+
+        private final List<LexemeClass> classes = new ArrayList<>();
+        private final List<int[]> transitions = new ArrayList<>();
+        private final Map<State, Integer> ids = new HashMap<>();
+        private final ArrayDeque<State> queue = new ArrayDeque<>();
+
+        private final Set<String> prefixes = Stream.of(LexemeClass.values())
+                .flatMap(lexemeClass -> lexemeClass.getPossibleValues().stream())
+                .flatMap(value -> Stream.iterate(1, i -> i <= value.length(), i -> i + 1).map(i -> value.substring(0, i)))
+                .collect(Collectors.toSet());
+
+        void build() {
+            var start = idOf(new State("", EMPTY, ""));
+            var dead = idOf(new State(null, NONE, "\0"));
+            assert start == START && dead != START;
+
+            while (!queue.isEmpty()) {
+                var state = queue.poll();
+                var row = new int[COLUMNS];
+
+                for (int column = 0; column < COLUMNS; column++) {
+                    var symbol = (char) column;
+
+                    row[column] = column < ASCII && kinds[column] != TOKEN ? dead : idOf(state.next(symbol));
+                }
+
+                transitions.set(ids.get(state), row);
+            }
+        }
+
+        private int idOf(State state) {
+            var id = ids.get(state);
+
+            if (id == null) {
+                id = classes.size();
+                ids.put(state, id);
+                classes.add(LexemeClass.determine(state.sample));
+                transitions.add(null);
+                queue.add(state);
+            }
+
+            return id;
+        }
+
+        /**
+         * A state of the automaton being built
+         */
+        private class State {
+            /**
+             * The string read if it is a prefix of a fixed lexeme, null otherwise
+             */
+            private final String prefix;
+
+            /**
+             * The kind of a generic lexeme the string read may be
+             */
+            private final int generic;
+
+            /**
+             * The string leading to the state, used to determine its class
+             */
+            private final String sample;
+
+            State(String prefix, int generic, String sample) {
+                this.prefix = prefix;
+                this.generic = generic;
+                this.sample = sample;
+            }
+
+            State next(char symbol) {
+                var string = String.valueOf(symbol);
+                var nextPrefix = prefix != null && prefixes.contains(prefix + symbol) ? prefix + symbol : null;
+                var nextGeneric = NONE;
+
+                if ((generic == EMPTY || generic == DIGITS) && LexemeClass.Const.test(string))
+                    nextGeneric = DIGITS;
+                else if ((generic == EMPTY || generic == LETTERS) && LexemeClass.Ident.test(string))
+                    nextGeneric = LETTERS;
+
+                if (nextPrefix == null && nextGeneric == NONE)
+                    return new State(null, NONE, "\0");
+
+                return new State(nextPrefix, nextGeneric, sample + symbol);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (!(o instanceof State))
+                    return false;
+
+                var state = (State) o;
+                return generic == state.generic && Objects.equals(prefix, state.prefix);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(prefix, generic);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The source of lexemes stored in a list
+ */
+@RequiredArgsConstructor
+class ListTokenSource implements TokenSource {
+    /**
+     * The list of lexemes, which is expected to provide fast random access
+     */
+    @NonNull
+    private final List<Lexeme> lexemes;
+
+    /**
+     * Index of the next lexeme in the list
+     */
+    private int index = 0;
+
+    /**
+     * Index of the marked lexeme in the list, -1 if none is marked
+     */
+    private int mark = -1;
+
+    @Override
+    public Lexeme peek() {
+        return index < lexemes.size() ? lexemes.get(index) : null;
+    }
+
+    @Override
+    public Lexeme next() {
+        if (index >= lexemes.size())
+            throw new NoSuchElementException("The input is over");
+
+        return lexemes.get(index++);
+    }
+
+    @Override
+    public void mark() {
+        mark = index;
+    }
+
+    @Override
+    public void reset() {
+        if (mark < 0)
+            throw new IllegalStateException("No position has been marked");
+
+        index = mark;
+        mark = -1;
+    }
+}
@@ -0,0 +1,250 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The cache of the lexemes and the ASTs of the recently parsed source codes, which is kept in memory,
+ * so that parsing the same source code again costs only its hashing and comparison.
+ * <p>
+ * The entries are split into segments by the hash of the source code, every segment has its own lock
+ * and an equal part of the budget and removes its least recently used entries when the part is exceeded,
+ * so the threads using different segments do not wait for each other.
+ */
+final class MemoryParseCache {
+    /**
+     * The number of the segments, a power of two
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * The estimated number of bytes taken by a lexeme of {@link TokenBuffer}
+     */
+    private static final int LEXEME_WEIGHT = 5 * Integer.BYTES;
+
+    /**
+     * The estimated number of bytes taken by a node of {@link Ast}, including its cached hash
+     */
+    private static final int NODE_WEIGHT = 6 * Integer.BYTES;
+
+    /**
+     * The estimated number of bytes taken by the objects of an entry regardless of its size
+     */
+    private static final int ENTRY_WEIGHT = 256;
+
+    /**
+     * The segments of the entries
+     */
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * The maximal estimated number of bytes taken by the entries of a segment
+     */
+    private final long segmentBudget;
+
+    /**
+     * The number of the source codes which have been found in the cache
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of the source codes which have not been found in the cache
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The number of the entries removed to fit the budget
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty cache
+     *
+     * @param budget the maximal estimated number of bytes taken by the entries,
+     *               an entry taking more than its segment may take is not cached
+     */
+    MemoryParseCache(long budget) {
+        if (budget <= 0)
+            throw new IllegalArgumentException("The budget of the cache has to be positive, but got " + budget);
+
+        segmentBudget = Math.max(1, budget / SEGMENTS);
+
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment();
+    }
+
+    /**
+     * Gets the lexemes and the AST of the source code from the cache.
+     * If they are not found, the source code is copied, so that the entry does not depend on the buffer,
+     * and the copy is passed to the loader. Several threads may load the same source code at the same time.
+     *
+     * @param content the source code, its remaining bytes are read
+     * @param loader  the way to get the lexemes and the AST if they are not in the cache
+     * @return the lexemes and the AST of the source code
+     * @throws IOException if the loader failed to read the source code
+     */
+    ParseCache.Entry get(@NonNull ByteBuffer content, @NonNull Loader loader) throws IOException {
+        var key = new Key(content);
+        var segment = segments[(key.hash ^ key.hash >>> 16) & SEGMENTS - 1];
+
+        synchronized (segment) {
+            var cached = segment.entries.get(key);
+
+            if (cached != null) {
+                hits.increment();
+                return cached.entry;
+            }
+        }
+
+        misses.increment();
+
+        var bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+
+        var entry = loader.load(ByteBuffer.wrap(bytes));
+        var weight = weigh(entry, bytes.length);
+
+        if (weight <= segmentBudget) {
+            synchronized (segment) {
+                var previous = segment.entries.put(new Key(ByteBuffer.wrap(bytes), key.hash), new Cached(entry, weight));
+                segment.weight += weight - (previous != null ? previous.weight : 0);
+
+                for (var iterator = segment.entries.values().iterator(); segment.weight > segmentBudget; ) {
+                    segment.weight -= iterator.next().weight;
+                    iterator.remove();
+                    evictions.increment();
+                }
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * @return the number of the source codes which have been found in the cache
+     */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of the source codes which have not been found in the cache
+     */
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of the entries removed to fit the budget
+     */
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the estimated number of bytes taken by the entries
+     *
+     * @return the sum of the estimated sizes of the entries
+     */
+    long getWeight() {
+        var weight = 0L;
+
+        for (var segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+
+        return weight;
+    }
+
+    /**
+     * Estimates the number of bytes taken by the entry
+     */
+    private static long weigh(ParseCache.Entry entry, int length) {
+        var weight = ENTRY_WEIGHT + 2L * length + entry.getLexerErrors().length
+                + (long) entry.getTokens().size() * LEXEME_WEIGHT
+                + (long) entry.getRoot().getAst().size() * NODE_WEIGHT;
+
+        for (var message : entry.getErrorMessages())
+            weight += 2L * message.length();
+
+        return weight;
+    }
+
+    /**
+     * The way to get the lexemes and the AST of a source code which is not in the cache
+     */
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * Gets the lexemes and the AST of the source code
+         *
+         * @param content the source code, which is not changed later
+         * @return the lexemes and the AST of the source code
+         * @throws IOException if failed to read the source code
+         */
+        ParseCache.Entry load(ByteBuffer content) throws IOException;
+    }
+
+    /**
+     * The source code with its hash, which is computed once
+     */
+    private static final class Key {
+        private final ByteBuffer content;
+
+        private final int hash;
+
+        Key(ByteBuffer content) {
+            this(content, content.hashCode());
+        }
+
+        Key(ByteBuffer content, int hash) {
+            this.content = content;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && hash == ((Key) o).hash && content.equals(((Key) o).content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * An entry with its estimated size
+     */
+    private static final class Cached {
+        private final ParseCache.Entry entry;
+
+        private final long weight;
+
+        Cached(ParseCache.Entry entry, long weight) {
+            this.entry = entry;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The entries sharing a lock, ordered from the least recently used to the most recently used one
+     */
+    private static final class Segment {
+        /**
+         * The entries by their source codes
+         */
+        private final LinkedHashMap<Key, Cached> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * The estimated number of bytes taken by the entries
+         */
+        private long weight = 0;
+    }
+}
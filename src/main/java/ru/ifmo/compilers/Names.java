@@ -0,0 +1,243 @@
+package ru.ifmo.compilers;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connects the identifiers of a program to the declarations of its variables.
+ * Every declared variable gets a slot, the slots are dense and follow the order of the declarations.
+ * Every {@link LexemeClass#Ident} node of the AST, including the declarations, is annotated with the slot of its variable,
+ * so the later passes index arrays by the slots instead of looking up the names.
+ * <p>
+ * The names are resolved in one pass over the AST, found by the ids of their signs in the table of the first declaration,
+ * so the lookup is sized by the signs of the program itself. The names coming from other tables, as the ones of the subtrees
+ * shared with other programs, are found in that table by their characters.
+ * The undeclared and the repeatedly declared variables are reported as diagnostics.
+ * A repeated declaration refers to the slot of the first one.
+ */
+final class Names {
+    /**
+     * The names of the variables in the order of their slots
+     */
+    @Getter
+    private final List<String> variables = new ArrayList<>();
+
+    /**
+     * The found problems, in the order of the nodes
+     */
+    @Getter
+    private final List<String> diagnostics = new ArrayList<>();
+
+    /**
+     * The table of the signs of the first declared variable, null if no variable is declared
+     */
+    private SymbolTable symbols = null;
+
+    /**
+     * The slots of the variables indexed by the ids of their names in {@link Names#symbols},
+     * {@link SymbolTable#NONE} if not declared
+     */
+    private int[] slotsBySymbol = new int[0];
+
+    /**
+     * The lines of the declarations of the variables indexed by slot
+     */
+    private int[] declarationLines = new int[16];
+
+    /**
+     * The slots of the nodes of every store indexed by node, {@link SymbolTable#NONE} for the unresolved nodes
+     */
+    private final Map<Ast, int[]> annotations = new IdentityHashMap<>();
+
+    private Names() {
+    }
+
+    /**
+     * Resolves the names of the program
+     *
+     * @param root the root of the AST of a correct program
+     * @return the resolved names
+     */
+    static Names resolve(@NonNull OutputTreeNode<Lexeme> root) {
+        var names = new Names();
+        var ast = root.getAst().getTargetAst(root.getIndex());
+        var node = root.getAst().getTargetNode(root.getIndex());
+        var lineShift = root.getLineShift() + root.getAst().getLineShift(root.getIndex());
+        var first = ast.getFirstChild(node);
+
+        if (first != Ast.NONE && ast.isLexeme(first) && ast.getSymbol(first) == SymbolTable.VAR) {
+            names.declare(ast.getTargetAst(first), ast.getTargetNode(first), lineShift + ast.getLineShift(first));
+            first = ast.getNextSibling(first);
+        }
+
+        names.resolveUses(ast, first, lineShift);
+        return names;
+    }
+
+    /**
+     * Gets the slot of the variable the node refers to
+     *
+     * @param ast  the store containing the node
+     * @param node the index of the node
+     * @return the slot or {@link SymbolTable#NONE} if the node is not a resolved identifier
+     */
+    int getSlot(@NonNull Ast ast, int node) {
+        var slots = annotations.get(ast.getTargetAst(node));
+        var index = ast.getTargetNode(node);
+
+        return slots != null && index < slots.length ? slots[index] : SymbolTable.NONE;
+    }
+
+    /**
+     * Checks whether the names have been resolved without problems
+     *
+     * @return true if there are no diagnostics
+     */
+    boolean isCorrect() {
+        return diagnostics.isEmpty();
+    }
+
+    private void declare(Ast ast, int declaration, int lineShift) {
+        for (int node = ast.getFirstChild(declaration); node != Ast.NONE; node = ast.getNextSibling(node)) {
+            var target = ast.getTargetAst(node);
+            var ident = ast.getTargetNode(node);
+            var line = target.getLine(ident) + lineShift + ast.getLineShift(node);
+            var symbol = symbolOf(target, ident, true);
+            var slot = slotOf(symbol);
+
+            if (slot != SymbolTable.NONE) {
+                diagnostics.add(String.format("On line %d variable '%s' is already declared on line %d",
+                        line, target.getLexeme(ident).getSign(), declarationLines[slot]));
+            } else {
+                slot = variables.size();
+                variables.add(target.getLexeme(ident).getSign());
+
+                if (slot == declarationLines.length)
+                    declarationLines = Arrays.copyOf(declarationLines, slot * 2);
+
+                declarationLines[slot] = line;
+
+                if (symbol >= slotsBySymbol.length) {
+                    var length = slotsBySymbol.length;
+                    slotsBySymbol = Arrays.copyOf(slotsBySymbol, Math.max(symbol + 1, length * 2));
+                    Arrays.fill(slotsBySymbol, length, slotsBySymbol.length, SymbolTable.NONE);
+                }
+
+                slotsBySymbol[symbol] = slot;
+            }
+
+            annotate(target, ident, slot);
+        }
+    }
+
+    /**
+     * Annotates the identifiers of the nodes starting from the first one and of their subtrees
+     *
+     * @param ast       the store containing the nodes
+     * @param first     the first of the sibling nodes
+     * @param lineShift the number to be added to the lines of the nodes
+     */
+    private void resolveUses(Ast ast, int first, int lineShift) {
+        var asts = new Ast[16];
+        var siblings = new int[16];
+        var shifts = new int[16];
+        var depth = 0;
+        asts[0] = ast;
+        siblings[0] = first;
+        shifts[0] = lineShift;
+
+        while (depth >= 0) {
+            var store = asts[depth];
+            var node = siblings[depth];
+
+            if (node == Ast.NONE) {
+                depth--;
+                continue;
+            }
+
+            siblings[depth] = store.getNextSibling(node);
+
+            var target = store.getTargetAst(node);
+            var index = store.getTargetNode(node);
+            var shift = shifts[depth] + store.getLineShift(node);
+
+            if (target.isLexeme(index) && target.getLexemeClass(index) == LexemeClass.Ident) {
+                resolveUse(target, index, shift);
+                continue;
+            }
+
+            var child = target.getFirstChild(index);
+            if (child != Ast.NONE) {
+                if (++depth == siblings.length) {
+                    asts = Arrays.copyOf(asts, depth * 2);
+                    siblings = Arrays.copyOf(siblings, depth * 2);
+                    shifts = Arrays.copyOf(shifts, depth * 2);
+                }
+
+                asts[depth] = target;
+                siblings[depth] = child;
+                shifts[depth] = shift;
+            }
+        }
+    }
+
+    private void resolveUse(Ast ast, int node, int lineShift) {
+        var slot = slotOf(symbolOf(ast, node, false));
+
+        if (slot == SymbolTable.NONE) {
+            diagnostics.add(String.format("On line %d variable '%s' is not declared",
+                    ast.getLine(node) + lineShift, ast.getLexeme(node).getSign()));
+        }
+
+        annotate(ast, node, slot);
+    }
+
+    /**
+     * Gets the id of the name of the identifier in {@link Names#symbols}
+     *
+     * @param ast           the store containing the identifier
+     * @param node          the index of the identifier
+     * @param isDeclaration whether the name is added to the table if it is not there
+     * @return the id of the name, {@link SymbolTable#NONE} if it is not in the table
+     */
+    private int symbolOf(Ast ast, int node, boolean isDeclaration) {
+        var table = ast.getSymbolTable(node);
+        var symbol = ast.getSymbol(node);
+
+        if (symbols == null) {
+            if (!isDeclaration)
+                return SymbolTable.NONE;
+
+            symbols = table;
+        }
+
+        if (table == symbols && symbol != SymbolTable.NONE)
+            return symbol;
+
+        var sign = ast.getLexeme(node).getSignView();
+        return isDeclaration ? symbols.intern(sign) : symbols.find(sign);
+    }
+
+    private int slotOf(int symbol) {
+        return symbol >= 0 && symbol < slotsBySymbol.length ? slotsBySymbol[symbol] : SymbolTable.NONE;
+    }
+
+    private void annotate(Ast ast, int node, int slot) {
+        var slots = annotations.get(ast);
+
+        if (slots == null || slots.length < ast.size()) {
+            var length = slots == null ? 0 : slots.length;
+            slots = slots == null ? new int[ast.size()] : Arrays.copyOf(slots, ast.size());
+            Arrays.fill(slots, length, slots.length, SymbolTable.NONE);
+            annotations.put(ast, slots);
+        }
+
+        slots[node] = slot;
+    }
+}
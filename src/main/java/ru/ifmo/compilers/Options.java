@@ -0,0 +1,333 @@
+package ru.ifmo.compilers;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The options passed to the program on start
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+final class Options {
+    /**
+     * The option disabling printing of the lexemes, so that the input is parsed while being read
+     */
+    static final String NO_LEXEMES_OPTION = "--no-lexemes";
+
+    /**
+     * The option setting the number of files processed at the same time
+     */
+    static final String JOBS_OPTION = "--jobs";
+
+    /**
+     * The option enabling sharing of equal subtrees between the ASTs
+     */
+    static final String HASH_CONS_OPTION = "--hash-cons";
+
+    /**
+     * The option enabling execution of the correct programs
+     */
+    static final String RUN_OPTION = "--run";
+
+    /**
+     * The option setting the instruction budget of an executed program
+     */
+    static final String BUDGET_OPTION = "--budget";
+
+    /**
+     * The option enabling compilation of the executed programs into JVM bytecode
+     */
+    static final String JIT_OPTION = "--jit";
+
+    /**
+     * The option enabling simplification of the ASTs
+     */
+    static final String SIMPLIFY_OPTION = "--simplify";
+
+    /**
+     * The option enabling printing of the optimized SSA form of the correct programs
+     */
+    static final String SSA_OPTION = "--ssa";
+
+    /**
+     * The option starting the server processing the requests of the clients instead of the files
+     */
+    static final String SERVE_OPTION = "--serve";
+
+    /**
+     * The option setting the loopback port the server listens on and the client connects to
+     */
+    static final String PORT_OPTION = "--port";
+
+    /**
+     * The option setting the directory of the cache of the lexemes and the ASTs of the files
+     */
+    static final String CACHE_OPTION = "--cache";
+
+    /**
+     * The option setting the maximal size of the cache in bytes
+     */
+    static final String CACHE_SIZE_OPTION = "--cache-size";
+
+    /**
+     * The option enabling the cache of the lexemes and the ASTs in memory and setting its size in bytes
+     */
+    static final String MEMORY_CACHE_OPTION = "--memory-cache";
+
+    /**
+     * The option setting the format the ASTs are exported in instead of being printed, implies {@value #NO_LEXEMES_OPTION}
+     */
+    static final String EXPORT_OPTION = "--export";
+
+    /**
+     * The option making the parser only check the syntax of the programs without building their ASTs,
+     * implies {@value #NO_LEXEMES_OPTION}
+     */
+    static final String VALIDATE_OPTION = "--validate";
+
+    /**
+     * The port used if {@value #PORT_OPTION} is not passed
+     */
+    static final int DEFAULT_PORT = 7357;
+
+    /**
+     * The greatest port number
+     */
+    private static final int MAX_PORT = 65535;
+
+    /**
+     * The names of the files to be processed
+     */
+    @NonNull
+    private final List<String> files;
+
+    /**
+     * Whether the lexemes are printed before the AST
+     */
+    private final boolean printLexemes;
+
+    /**
+     * The number of files processed at the same time
+     */
+    private final int jobs;
+
+    /**
+     * Whether equal subtrees of the ASTs are stored once
+     */
+    private final boolean hashCons;
+
+    /**
+     * Whether the correct programs are executed after their AST is printed
+     */
+    private final boolean run;
+
+    /**
+     * The maximal number of the assignments and checks of loop conditions an executed program may perform
+     */
+    private final long budget;
+
+    /**
+     * Whether the executed programs are compiled into JVM bytecode instead of being interpreted
+     */
+    private final boolean jit;
+
+    /**
+     * Whether the ASTs are simplified before being printed and executed
+     */
+    private final boolean simplify;
+
+    /**
+     * Whether the optimized SSA form of the correct programs is printed after their AST
+     */
+    private final boolean ssa;
+
+    /**
+     * Whether the requests of the clients are served instead of processing the files
+     */
+    private final boolean serve;
+
+    /**
+     * The loopback port the server listens on and the client connects to
+     */
+    private final int port;
+
+    /**
+     * The directory of the cache of the lexemes and the ASTs of the files, null if they are not cached
+     */
+    private final String cache;
+
+    /**
+     * The maximal size of the cache in bytes
+     */
+    private final long cacheSize;
+
+    /**
+     * The estimated size in bytes of the cache of the lexemes and the ASTs in memory, 0 if there is no such cache
+     */
+    private final long memoryCacheSize;
+
+    /**
+     * The format the ASTs are exported in, null if they are printed
+     */
+    private final AstExporter.Format export;
+
+    /**
+     * Whether only the syntax of the programs is checked
+     */
+    private final boolean validate;
+
+    /**
+     * Parses the arguments of the program
+     *
+     * @param args the arguments passed to program on start
+     * @return the parsed options
+     * @throws IllegalArgumentException if an option has an invalid value
+     */
+    static Options parse(@NonNull String... args) {
+        var files = new ArrayList<String>();
+        var printLexemes = true;
+        var jobs = 1;
+        var hashCons = false;
+        var run = false;
+        var budget = Interpreter.DEFAULT_BUDGET;
+        var jit = false;
+        var simplify = false;
+        var ssa = false;
+        var serve = false;
+        var port = (long) DEFAULT_PORT;
+        String cache = null;
+        var cacheSize = ParseCache.DEFAULT_SIZE;
+        var memoryCacheSize = 0L;
+        AstExporter.Format export = null;
+        var validate = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case NO_LEXEMES_OPTION:
+                    printLexemes = false;
+                    break;
+
+                case HASH_CONS_OPTION:
+                    hashCons = true;
+                    break;
+
+                case RUN_OPTION:
+                    run = true;
+                    break;
+
+                case SIMPLIFY_OPTION:
+                    simplify = true;
+                    break;
+
+                case SSA_OPTION:
+                    ssa = true;
+                    break;
+
+                case VALIDATE_OPTION:
+                    validate = true;
+                    break;
+
+                case SERVE_OPTION:
+                    serve = true;
+                    break;
+
+                case JIT_OPTION:
+                    run = true;
+                    jit = true;
+                    break;
+
+                case JOBS_OPTION:
+                    jobs = (int) Math.min(parsePositive(JOBS_OPTION, i + 1 < args.length ? args[++i] : null), Integer.MAX_VALUE);
+                    break;
+
+                case BUDGET_OPTION:
+                    budget = parsePositive(BUDGET_OPTION, i + 1 < args.length ? args[++i] : null);
+                    break;
+
+                case PORT_OPTION:
+                    port = parsePositive(PORT_OPTION, i + 1 < args.length ? args[++i] : null);
+
+                    if (port > MAX_PORT)
+                        throw new IllegalArgumentException(String.format("Option %s expects a port number, but got %d", PORT_OPTION, port));
+                    break;
+
+                case CACHE_OPTION:
+                    if (i + 1 == args.length)
+                        throw new IllegalArgumentException(String.format("Option %s expects a directory", CACHE_OPTION));
+
+                    cache = args[++i];
+                    break;
+
+                case CACHE_SIZE_OPTION:
+                    cacheSize = parsePositive(CACHE_SIZE_OPTION, i + 1 < args.length ? args[++i] : null);
+                    break;
+
+                case MEMORY_CACHE_OPTION:
+                    memoryCacheSize = parsePositive(MEMORY_CACHE_OPTION, i + 1 < args.length ? args[++i] : null);
+                    break;
+
+                case EXPORT_OPTION:
+                    export = parseFormat(i + 1 < args.length ? args[++i] : null);
+                    break;
+
+                default:
+                    files.add(args[i]);
+            }
+        }
+
+        if (export != null && (run || ssa))
+            throw new IllegalArgumentException(String.format("Option %s cannot be combined with %s or %s", EXPORT_OPTION, RUN_OPTION, SSA_OPTION));
+
+        if (validate && (run || ssa || export != null))
+            throw new IllegalArgumentException(String.format("Option %s cannot be combined with %s, %s or %s",
+                    VALIDATE_OPTION, RUN_OPTION, SSA_OPTION, EXPORT_OPTION));
+
+        if (export != null || validate)
+            printLexemes = false;
+
+        return new Options(Collections.unmodifiableList(files), printLexemes, jobs, hashCons, run, budget, jit, simplify, ssa,
+                serve, (int) port, cache, cacheSize, memoryCacheSize, export, validate);
+    }
+
+    /**
+     * Parses the value of {@value #EXPORT_OPTION}
+     *
+     * @param value the value of the option, null if it is missing
+     * @return the format of the exported ASTs
+     * @throws IllegalArgumentException if the value is not a name of a format
+     */
+    private static AstExporter.Format parseFormat(String value) {
+        try {
+            return AstExporter.Format.of(String.valueOf(value));
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        throw new IllegalArgumentException(String.format("Option %s expects binary or json, but got %s", EXPORT_OPTION, value));
+    }
+
+    /**
+     * Parses the value of the option which has to be a positive number
+     *
+     * @param option the name of the option
+     * @param value  the value of the option, null if it is missing
+     * @return the parsed value
+     * @throws IllegalArgumentException if the value is not a positive number
+     */
+    private static long parsePositive(String option, String value) {
+        try {
+            long number = Long.parseLong(String.valueOf(value));
+
+            if (number > 0)
+                return number;
+        } catch (NumberFormatException ignored) {
+        }
+
+        throw new IllegalArgumentException(String.format("Option %s expects a positive number, but got %s", option, value));
+    }
+}
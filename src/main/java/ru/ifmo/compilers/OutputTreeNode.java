@@ -1,43 +1,113 @@
 package ru.ifmo.compilers;
 
-import lombok.AllArgsConstructor;
-import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
-import java.util.Collection;
-import java.util.LinkedList;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Represents a node in tree
+ * Represents a node in tree, which is stored in {@link Ast}
  *
  * @param <T> the type of the content in the node
  */
-@AllArgsConstructor
-@EqualsAndHashCode
 class OutputTreeNode<T> {
     /**
-     * The content to represent
+     * The store containing the node
      */
+    @Getter
     @NonNull
-    private final String content;
+    private final Ast ast;
 
     /**
-     * The list of child nodes
+     * The index of the node in {@link OutputTreeNode#ast}
      */
     @Getter
-    private final List<OutputTreeNode<T>> children = new LinkedList<>();
+    private final int index;
+
+    /**
+     * The number added to the lines of the lexemes of the subtree by the links the node has been reached through
+     */
+    @Getter
+    private final int lineShift;
+
+    /**
+     * Creates a root node of a new tree
+     *
+     * @param content the content to be represented
+     */
+    OutputTreeNode(@NonNull String content) {
+        this(new Ast(), content);
+    }
 
     /**
-     * Creates a new tree node
+     * Creates a root node of a new tree in the store
      *
+     * @param ast     the store of the tree
      * @param content the content to be represented
      */
-    private OutputTreeNode(@NonNull T content) {
-        this.content = content.toString();
+    OutputTreeNode(@NonNull Ast ast, @NonNull String content) {
+        this(ast, ast.addLabel(Ast.NONE, content));
+    }
+
+    /**
+     * Creates a view of the node in the store
+     *
+     * @param ast   the store containing the node
+     * @param index the index of the node
+     */
+    OutputTreeNode(@NonNull Ast ast, int index) {
+        this(ast, index, 0);
+    }
+
+    /**
+     * Creates a view of the node in the store reached through the links moving it to other lines
+     *
+     * @param ast       the store containing the node
+     * @param index     the index of the node
+     * @param lineShift the number to be added to the lines of the lexemes of the subtree
+     */
+    OutputTreeNode(@NonNull Ast ast, int index, int lineShift) {
+        this.ast = ast;
+        this.index = index;
+        this.lineShift = lineShift;
+    }
+
+    /**
+     * Gets the represented content
+     *
+     * @return the text of the node
+     */
+    String getContent() {
+        return ast.isLexeme(index) ? ast.getLexeme(index, lineShift).toString() : ast.getContent(index);
+    }
+
+    /**
+     * Gets the child nodes
+     *
+     * @return the unmodifiable list of the views of the child nodes, the linked nodes are viewed in their stores
+     */
+    List<OutputTreeNode<T>> getChildren() {
+        var children = new ArrayList<OutputTreeNode<T>>();
+        var target = ast.getTargetAst(index);
+        var child = target.getFirstChild(ast.getTargetNode(index));
+        var shift = lineShift + ast.getLineShift(index);
+
+        for (; child != Ast.NONE; child = target.getNextSibling(child)) {
+            children.add(new OutputTreeNode<>(target.getTargetAst(child), target.getTargetNode(child),
+                    shift + target.getLineShift(child)));
+        }
+
+        return Collections.unmodifiableList(children);
     }
 
     /**
@@ -46,42 +116,39 @@ class OutputTreeNode<T> {
      * @param out where to print the data
      */
     void print(@NonNull PrintStream out) {
-        out.println(content);
+        var writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()), AstPrinter.BUFFER_SIZE);
 
-        var iterator = children.iterator();
-        while (iterator.hasNext())
-            iterator.next().printAsChild("", iterator.hasNext(), out);
+        try {
+            print(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
-     * Adds a new child to the node
+     * Prints the node as root node, then prints its children. The writer is not flushed.
      *
-     * @param content the content of new node
-     * @return the created node
+     * @param out where to print the data
+     * @throws IOException if failed to write
      */
-    @NonNull
-    OutputTreeNode<T> addChild(@NonNull T content) {
-        var node = new OutputTreeNode<>(content);
-        children.add(node);
-        return node;
+    void print(@NonNull Writer out) throws IOException {
+        AstPrinter.print(ast, index, lineShift, out);
     }
 
     /**
-     * Prints the node as child node
+     * Adds a new child to the node
      *
-     * @param prefix  the prefix to be printed before the node
-     * @param hasNext whether the root node has more children or not
-     * @param stream  the stream to write output
+     * @param content the content of new node
+     * @return the created node
      */
-    private void printAsChild(@NonNull String prefix, boolean hasNext, @NonNull PrintStream stream) {
-        stream.println(prefix + "│   ");
-        stream.println(prefix + (hasNext ? "├── " : "└── ") + content);
-
-        var newPrefix = prefix + (hasNext ? "│   " : "    ");
+    @NonNull
+    OutputTreeNode<T> addChild(@NonNull T content) {
+        var child = content instanceof Lexeme
+                ? ast.addLexeme(index, (Lexeme) content)
+                : ast.addLabel(index, content.toString());
 
-        var iterator = children.iterator();
-        while (iterator.hasNext())
-            iterator.next().printAsChild(newPrefix, iterator.hasNext(), stream);
+        return new OutputTreeNode<>(ast, child);
     }
 
     /**
@@ -91,32 +158,52 @@ class OutputTreeNode<T> {
      */
     @Override
     public String toString() {
-        var bytes = new ByteArrayOutputStream();
+        var writer = new StringWriter();
 
-        try (bytes) {
-            print(new PrintStream(bytes));
-        } catch (Throwable e) {
+        try {
+            print(writer);
+        } catch (IOException e) {
             return super.toString();
         }
 
-        return bytes.toString();
+        return writer.toString();
     }
 
     /**
      * Checks whether this node has children or not
      *
-     * @return true if children.size() > 0, false otherwise
+     * @return true if the node has at least one child, false otherwise
      */
     boolean hasChildren() {
-        return children.size() > 0;
+        return ast.getTargetAst(index).getFirstChild(ast.getTargetNode(index)) != Ast.NONE;
     }
 
     /**
-     * Adds all children from the {@param newChildren} to this node
+     * Compares the nodes by their content and their children, the nodes may be stored in different stores.
+     * If both trees are frozen, the cached hashes of the subtrees are compared first, the lines are compared after them.
      *
-     * @param newChildren children to add
+     * @param o the object to compare with
+     * @return true if the trees are equal
      */
-    void addChildren(Collection<OutputTreeNode<T>> newChildren) {
-        children.addAll(newChildren);
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof OutputTreeNode))
+            return false;
+
+        var node = (OutputTreeNode<?>) o;
+        return Ast.subtreeEquals(ast, index, lineShift, node.ast, node.index, node.lineShift);
+    }
+
+    /**
+     * Gets the hash of the subtree, which is cached if the tree is frozen and does not depend on the lines
+     *
+     * @return the hash of the subtree
+     */
+    @Override
+    public int hashCode() {
+        return ast.getSubtreeHash(index);
     }
 }
@@ -0,0 +1,442 @@
+package ru.ifmo.compilers;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The cache of the lexemes and the ASTs of the source files, which is stored in a directory
+ * and may be shared by several processes.
+ * <p>
+ * An entry is stored in a file named by the hash of the content of the source file and of the code of the lexer
+ * and the parser, so that a changed file or a new version of the program never finds a stale entry.
+ * An entry is written to a temporary file and then moved to its place, so a reader sees either a complete entry
+ * or none. The least recently used entries are removed when the size of the directory exceeds the limit.
+ */
+final class ParseCache {
+    /**
+     * The size of the cache if {@value Options#CACHE_SIZE_OPTION} is not passed
+     */
+    static final long DEFAULT_SIZE = 256L << 20;
+
+    /**
+     * The first bytes of an entry
+     */
+    private static final int MAGIC = 0x50415354;
+
+    /**
+     * The extension of the files of the entries
+     */
+    private static final String EXTENSION = ".ast";
+
+    /**
+     * The extension of the files of the entries being written
+     */
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    /**
+     * The age after which a temporary file is considered to be left by a failed process
+     */
+    private static final long STALE_AGE = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The algorithm of the hashes of the entries
+     */
+    private static final String ALGORITHM = "SHA-256";
+
+    /**
+     * The classes which define the lexemes and the ASTs and the way they are stored,
+     * so that the entries are invalidated when they or their nested classes change
+     */
+    private static final List<Class<?>> VERSIONED_CLASSES = List.of(Lexer.class, LexerTable.class, LexemeClass.class,
+            Lexeme.class, SymbolTable.class, SourceText.class, TokenBuffer.class, Parser.class, AstBuilder.class,
+            Ast.class, OutputTreeNode.class, ByteOutput.class, ParseCache.class);
+
+    /**
+     * The hash of the code of {@link ParseCache#VERSIONED_CLASSES}
+     */
+    private static final byte[] VERSION = version();
+
+    /**
+     * The directory containing the entries
+     */
+    private final Path directory;
+
+    /**
+     * The maximal total size of the entries in bytes
+     */
+    private final long maxSize;
+
+    /**
+     * The table the signs of the read and the parsed lexemes are interned to
+     */
+    private final SymbolTable symbols;
+
+    /**
+     * The number of the files which have been found in the cache
+     */
+    private final AtomicInteger hits = new AtomicInteger();
+
+    /**
+     * The number of the files which have been parsed and stored
+     */
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Whether an entry has been stored, so that the size of the cache has to be checked
+     */
+    private final AtomicBoolean isChanged = new AtomicBoolean();
+
+    /**
+     * Creates a cache stored in the directory, which is created when the first entry is stored
+     *
+     * @param directory the directory containing the entries
+     * @param maxSize   the maximal total size of the entries in bytes
+     */
+    ParseCache(@NonNull Path directory, long maxSize) {
+        this(directory, maxSize, SymbolTable.SHARED);
+    }
+
+    /**
+     * Creates a cache stored in the directory, which interns the signs of the lexemes to the table
+     *
+     * @param directory the directory containing the entries
+     * @param maxSize   the maximal total size of the entries in bytes
+     * @param symbols   the table the signs of the lexemes are interned to
+     */
+    ParseCache(@NonNull Path directory, long maxSize, @NonNull SymbolTable symbols) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.symbols = symbols;
+    }
+
+    /**
+     * @return the number of the files which have been found in the cache
+     */
+    int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of the files which have been parsed and stored
+     */
+    int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the lexemes and the AST of the source code from the cache.
+     * If they are not found, reads and parses the source code and stores the result.
+     *
+     * @param content the source code, its remaining bytes are read
+     * @param threads the number of threads reading the source code if it is not found
+     * @return the lexemes and the AST of the source code
+     * @throws IOException if failed to read the source code
+     */
+    Entry get(@NonNull ByteBuffer content, int threads) throws IOException {
+        var key = key(content);
+        var path = directory.resolve(key + EXTENSION);
+        var entry = load(path, content, symbols);
+
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        misses.incrementAndGet();
+        entry = Entry.parse(content, threads, symbols);
+        store(path, entry);
+        return entry;
+    }
+
+    /**
+     * Removes the least recently used entries until their total size does not exceed the limit.
+     * Nothing is done if no entry has been stored since the last check.
+     * The entries may be removed by other processes at the same time.
+     */
+    void trim() {
+        if (!isChanged.getAndSet(false))
+            return;
+
+        var files = new ArrayList<Path>();
+        var sizes = new ArrayList<Long>();
+        var times = new ArrayList<Long>();
+        var total = 0L;
+        var now = System.currentTimeMillis();
+
+        try (var stream = Files.newDirectoryStream(directory)) {
+            for (var file : stream) {
+                var name = file.getFileName().toString();
+                BasicFileAttributes attributes;
+
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue;
+                }
+
+                var time = attributes.lastModifiedTime().toMillis();
+
+                if (name.endsWith(TEMPORARY_EXTENSION) && now - time > STALE_AGE) {
+                    delete(file);
+                } else if (name.endsWith(EXTENSION) && attributes.isRegularFile()) {
+                    files.add(file);
+                    sizes.add(attributes.size());
+                    times.add(time);
+                    total += attributes.size();
+                }
+            }
+        } catch (IOException ignored) {
+            return;
+        }
+
+        var order = new Integer[files.size()];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, Comparator.comparing(times::get));
+
+        for (int i = 0; i < order.length && total > maxSize; i++) {
+            delete(files.get(order[i]));
+            total -= sizes.get(order[i]);
+        }
+    }
+
+    /**
+     * Deletes the file if it has not been deleted by another process, a failure is ignored
+     */
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // The file is deleted by a later check
+        }
+    }
+
+    /**
+     * Loads the entry of the source code and marks it as recently used
+     *
+     * @param path    the file of the entry
+     * @param content the source code
+     * @param symbols the table the signs of the lexemes are interned to
+     * @return the loaded entry, null if there is no valid one
+     */
+    private static Entry load(Path path, ByteBuffer content, SymbolTable symbols) {
+        ByteBuffer input;
+
+        try {
+            input = Lexer.mapFile(path);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            return null;
+        }
+
+        try {
+            if (input.getInt() != MAGIC || input.getInt() != content.remaining())
+                return null;
+
+            var isCorrect = input.get() != 0;
+            var lexerErrors = ByteOutput.readBytes(input);
+
+            var errorMessages = new ArrayList<String>();
+            for (int i = ByteOutput.readVarInt(input); i > 0; i--)
+                errorMessages.add(ByteOutput.readString(input));
+
+            var tokens = TokenBuffer.read(input, new SourceText(content), symbols);
+            var root = ByteOutput.readVarInt(input);
+            var ast = Ast.read(input, tokens);
+
+            if (root < 0 || root >= ast.size() || input.hasRemaining())
+                return null;
+
+            return new Entry(tokens, new OutputTreeNode<>(ast, root), isCorrect,
+                    Collections.unmodifiableList(errorMessages), lexerErrors);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the entry, failures are ignored as the entry is just parsed again next time
+     *
+     * @param path  the file of the entry
+     * @param entry the entry
+     */
+    private void store(Path path, Entry entry) {
+        Path temporary = null;
+
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, path.getFileName().toString(), TEMPORARY_EXTENSION);
+
+            var output = new ByteOutput();
+            output.writeInt(MAGIC);
+            output.writeInt(entry.getTokens().getSource().length());
+            output.writeByte(entry.isCorrect() ? 1 : 0);
+            output.writeBytes(entry.getLexerErrors());
+
+            output.writeVarInt(entry.getErrorMessages().size());
+            for (var message : entry.getErrorMessages())
+                output.writeString(message);
+
+            entry.getTokens().write(output);
+            output.writeVarInt(entry.getRoot().getIndex());
+            entry.getRoot().getAst().write(output);
+
+            try (var stream = Files.newOutputStream(temporary)) {
+                output.writeTo(stream);
+            }
+
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            isChanged.set(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            if (temporary != null)
+                delete(temporary);
+        }
+    }
+
+    /**
+     * Computes the name of the entry of the source code
+     *
+     * @param content the source code, its remaining bytes are hashed
+     * @return the hexadecimal hash of the source code and of the version of the program
+     */
+    private static String key(ByteBuffer content) {
+        var digest = digest();
+        digest.update(VERSION);
+        digest.update(content.duplicate());
+
+        var key = new StringBuilder();
+        for (var b : digest.digest())
+            key.append(String.format("%02x", b));
+
+        return key.toString();
+    }
+
+    /**
+     * Hashes the class files of {@link ParseCache#VERSIONED_CLASSES} and of the classes nested in them
+     */
+    private static byte[] version() {
+        var digest = digest();
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIC));
+
+        var types = new ArrayDeque<Class<?>>(VERSIONED_CLASSES);
+
+        while (!types.isEmpty()) {
+            var type = types.poll();
+            var name = type.getName().substring(type.getName().lastIndexOf('.') + 1);
+
+            try (InputStream code = type.getResourceAsStream(name + ".class")) {
+                if (code == null)
+                    throw new IllegalStateException("The code of " + type.getName() + " is not found");
+
+                digest.update(code.readAllBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read the code of " + type.getName(), e);
+            }
+
+            types.addAll(Arrays.asList(type.getDeclaredClasses()));
+        }
+
+        return digest.digest();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported", e);
+        }
+    }
+
+    /**
+     * The lexemes and the AST of a source file with the errors found in it
+     */
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    static final class Entry {
+        /**
+         * The lexemes of the source code
+         */
+        private final TokenBuffer tokens;
+
+        /**
+         * The root of the AST, which has not been interned
+         */
+        private final OutputTreeNode<Lexeme> root;
+
+        /**
+         * Whether the program is correct
+         */
+        private final boolean isCorrect;
+
+        /**
+         * The errors found by the parser
+         */
+        private final List<String> errorMessages;
+
+        /**
+         * What the lexer has printed as errors
+         */
+        private final byte[] lexerErrors;
+
+        /**
+         * Reads and parses the source code
+         *
+         * @param content the source code, its remaining bytes are read
+         * @param threads the number of threads reading the source code
+         * @return the lexemes and the AST of the source code
+         * @throws IOException if failed to read the source code
+         */
+        static Entry parse(ByteBuffer content, int threads) throws IOException {
+            return parse(content, threads, SymbolTable.SHARED);
+        }
+
+        /**
+         * Reads and parses the source code, the signs of the lexemes are interned to the table
+         *
+         * @param content the source code, its remaining bytes are read
+         * @param threads the number of threads reading the source code
+         * @param symbols the table the signs of the lexemes are interned to
+         * @return the lexemes and the AST of the source code
+         * @throws IOException if failed to read the source code
+         */
+        static Entry parse(ByteBuffer content, int threads, SymbolTable symbols) throws IOException {
+            var errors = new ByteArrayOutputStream();
+
+            try (var lexer = new Lexer(content.duplicate())) {
+                lexer.setErrors(new PrintStream(errors));
+                lexer.setSymbols(symbols);
+                lexer.readToEnd(threads);
+
+                var parser = new Parser(lexer.getTokens());
+                var isCorrect = parser.parseProgram();
+
+                return new Entry(lexer.getTokens(), parser.getRoot(), isCorrect,
+                        Collections.unmodifiableList(parser.getErrorMessages()), errors.toByteArray());
+            }
+        }
+    }
+}
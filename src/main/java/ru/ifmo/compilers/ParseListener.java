@@ -0,0 +1,137 @@
+package ru.ifmo.compilers;
+
+/**
+ * Receives the events of {@link Parser} while it parses, so that a program may be checked or measured
+ * without building its tree. All the methods do nothing by default.
+ * <p>
+ * The events come in the order the nodes of the AST are created: an operator comes before its operands,
+ * an assignment starts when its operator is found, so the target comes with it. If the program is incorrect,
+ * the events stop after the first error, the started constructions are not exited.
+ * Every lexeme comes with its index in the source of lexemes of the parser.
+ */
+interface ParseListener {
+    /**
+     * Called when the declaration of the variables starts
+     *
+     * @param keyword the keyword "Var"
+     * @param index   the index of the keyword
+     */
+    default void enterDeclaration(Lexeme keyword, int index) {
+    }
+
+    /**
+     * Called for every declared variable
+     *
+     * @param variable the name of the variable
+     * @param index    the index of the name
+     */
+    default void onVariable(Lexeme variable, int index) {
+    }
+
+    /**
+     * Called when the declaration of the variables is over
+     */
+    default void exitDeclaration() {
+    }
+
+    /**
+     * Called when an assignment starts, its value follows as an expression
+     *
+     * @param target        the assigned variable
+     * @param targetIndex   the index of the variable
+     * @param operator      the assignment operator
+     * @param operatorIndex the index of the operator
+     */
+    default void enterAssignment(Lexeme target, int targetIndex, Lexeme operator, int operatorIndex) {
+    }
+
+    /**
+     * Called when an assignment is over
+     */
+    default void exitAssignment() {
+    }
+
+    /**
+     * Called when a loop starts, its condition follows as an expression
+     *
+     * @param keyword the keyword "WHILE"
+     * @param index   the index of the keyword
+     */
+    default void enterLoop(Lexeme keyword, int index) {
+    }
+
+    /**
+     * Called when the body of the loop starts, the body is a single operator
+     *
+     * @param keyword the keyword "DO"
+     * @param index   the index of the keyword
+     */
+    default void enterLoopBody(Lexeme keyword, int index) {
+    }
+
+    /**
+     * Called when the body of a loop is over
+     */
+    default void exitLoop() {
+    }
+
+    /**
+     * Called when a compound operator "Begin ... End" starts
+     */
+    default void enterCompound() {
+    }
+
+    /**
+     * Called when a compound operator is over
+     */
+    default void exitCompound() {
+    }
+
+    /**
+     * Called when an expression starts
+     */
+    default void enterExpression() {
+    }
+
+    /**
+     * Called for a unary minus, it is followed by the operand or the binary operator it applies to
+     *
+     * @param operator the minus
+     * @param index    the index of the minus
+     */
+    default void onUnaryMinus(Lexeme operator, int index) {
+    }
+
+    /**
+     * Called for a binary operator, the rest of the expression contains its operands
+     *
+     * @param operator the operator
+     * @param index    the index of the operator
+     */
+    default void onBinaryOperator(Lexeme operator, int index) {
+    }
+
+    /**
+     * Called for a variable or a constant in an expression
+     *
+     * @param operand the operand
+     * @param index   the index of the operand
+     */
+    default void onOperand(Lexeme operand, int index) {
+    }
+
+    /**
+     * Called when an expression is over
+     */
+    default void exitExpression() {
+    }
+
+    /**
+     * Called for every error found by the parser, including the ones of the alternatives which have been rejected
+     * later, so it is called at least once if the program is incorrect
+     *
+     * @param message the description of the error
+     */
+    default void onError(String message) {
+    }
+}
@@ -1,22 +1,24 @@
 package ru.ifmo.compilers;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Performs the syntax analysis
+ * Performs the syntax analysis, reporting the found constructions to {@link ParseListener}.
+ * The AST is built by {@link AstBuilder}, which is the listener unless another one is given.
  */
-@RequiredArgsConstructor
 class Parser {
     /**
-     * The list of lexemes from {@link Lexer}
+     * The source of lexemes from {@link Lexer}, only the next lexeme is looked at
      */
     @NonNull
-    private final List<Lexeme> lexemes;
+    private final TokenSource lexemes;
 
     /**
      * The list of errors found during analysis
@@ -25,241 +27,406 @@ class Parser {
     private final List<String> errorMessages = new ArrayList<>();
 
     /**
-     * The root node of the AST
+     * The receiver of the events of the analysis
+     */
+    private final ParseListener listener;
+
+    /**
+     * The root node of the AST, null if no AST is built
+     */
+    @Getter
+    private OutputTreeNode<Lexeme> root;
+
+    /**
+     * The interner sharing the subtrees of the AST with other trees, null if the subtrees are not shared
+     */
+    @Setter(AccessLevel.PACKAGE)
+    private AstInterner interner = null;
+
+    /**
+     * The number of the nodes of the AST replaced by links to the equal interned subtrees
      */
     @Getter
-    private OutputTreeNode<Lexeme> root = new OutputTreeNode<>("\nAST");
+    private int deduplicatedNodes = 0;
+
+    /**
+     * The last consumed lexeme
+     */
+    private Lexeme current = null;
+
+    /**
+     * The number of consumed lexemes, so that the index of {@link Parser#current} is one less
+     */
+    private int consumed = 0;
+
+    /**
+     * Whether the analysis has been started
+     */
+    private boolean isStarted = false;
+
+    /**
+     * Creates a parser of the lexemes
+     *
+     * @param lexemes the source of lexemes
+     */
+    Parser(@NonNull TokenSource lexemes) {
+        this(lexemes, new AstBuilder());
+    }
+
+    /**
+     * Creates a parser of the lexemes
+     *
+     * @param lexemes the list of lexemes
+     */
+    Parser(@NonNull List<Lexeme> lexemes) {
+        this(TokenSource.of(lexemes));
+    }
+
+    /**
+     * Creates a parser of the lexemes, the nodes of the AST refer to the lexemes in the buffer
+     *
+     * @param lexemes the buffer of lexemes
+     */
+    Parser(@NonNull TokenBuffer lexemes) {
+        this(new BufferTokenSource(lexemes, 0, lexemes.size()), new AstBuilder(lexemes));
+    }
 
     /**
-     * Index of last accessed lexeme in lexemes list
+     * Creates a parser of a part of the lexemes of the buffer, which is expected to be a list of operators.
+     * The nodes of the AST refer to the lexemes in the buffer.
+     *
+     * @param lexemes the buffer of lexemes
+     * @param from    the index of the first lexeme of the part
+     * @param to      the index after the last lexeme of the part
      */
-    private int index = -1;
+    Parser(@NonNull TokenBuffer lexemes, int from, int to) {
+        this(new BufferTokenSource(lexemes, from, to), new AstBuilder(lexemes));
+        this.consumed = from;
+    }
 
     /**
-     * Starts the analysis
+     * Creates a parser of the lexemes reporting the found constructions to the listener.
+     * The AST is built only if the listener is {@link AstBuilder}.
+     *
+     * @param lexemes  the source of lexemes
+     * @param listener the receiver of the events
+     */
+    Parser(@NonNull TokenSource lexemes, @NonNull ParseListener listener) {
+        this.lexemes = lexemes;
+        this.listener = listener;
+        this.root = listener instanceof AstBuilder ? ((AstBuilder) listener).getRoot() : null;
+    }
+
+    /**
+     * Starts the analysis. The AST is frozen when the analysis is over and interned if there is an interner
      *
      * @return true if program is correct, false otherwise
      * @throws IllegalStateException if program has been analysed already
      */
     boolean parseProgram() {
-        if (root.hasChildren() || index > -1)
+        if (isStarted)
+            throw new IllegalStateException("AST was already parsed!");
+
+        isStarted = true;
+
+        var isCorrect = parseVariablesDeclaration(true)
+                && parseComputations(true);
+
+        if (root != null) {
+            var ast = root.getAst();
+            ast.freeze();
+
+            if (interner != null) {
+                root = interner.intern(root);
+                deduplicatedNodes = ast.size() - root.getAst().size();
+            }
+        }
+
+        return isCorrect;
+    }
+
+    /**
+     * Parses the operators until the lexemes are over, the found operators become the children of the root.
+     * The AST is frozen when the analysis is over.
+     *
+     * @param limit the maximal number of the operators, the nested operators are not counted
+     * @return true if the lexemes are a list of at least one and at most {@code limit} operators, false otherwise
+     * @throws IllegalStateException if the lexemes have been analysed already
+     */
+    boolean parseOperators(int limit) {
+        if (isStarted)
             throw new IllegalStateException("AST was already parsed!");
 
-        return parseVariablesDeclaration(root, true)
-                && parseComputations(root, true);
+        isStarted = true;
+
+        var count = 0;
+        var isCorrect = true;
+
+        while (isCorrect && lexemes.peekClass() != null)
+            isCorrect = ++count <= limit && parseOperatorsList(SymbolTable.NONE);
+
+        if (root != null)
+            root.getAst().freeze();
+
+        return isCorrect && count > 0;
     }
 
     /**
      * Parses "Computations" = "Begin *list of operators* End."
      *
-     * @param parent            the parent node to add found AST nodes
      * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse computations, false otherwise
      */
-    private boolean parseComputations(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        if (!checkNextLexeme(LexemeClass.Keyword, "Begin", isLastAlternative))
-            return false;
-
-        if (!parseOperatorsList(parent, isLastAlternative))
+    private boolean parseComputations(boolean isLastAlternative) {
+        if (!checkNextLexeme(LexemeClass.Keyword, SymbolTable.BEGIN, isLastAlternative))
             return false;
 
-        return checkNextLexeme(LexemeClass.Keyword, "End.", isLastAlternative);
+        return parseOperatorsList(SymbolTable.END_OF_PROGRAM);
     }
 
     /**
-     * Parses list of operators as defined in {@link Parser#parseOperator}
+     * Parses list of operators followed by the closing keyword, including the nested operators.
+     * Every operator is either an assignment, a loop "WHILE *expression* DO *operator*"
+     * or a compound operator "Begin *list of operators* End".
+     * <p>
+     * The operator is chosen by the next lexeme only, see {@link Parser#predictOperator}.
+     * The operators which are not finished yet are kept in a stack instead of recursion.
      *
-     * @param parent            parent node to assign found operators
-     * @param isLastAlternative if true, adds errors to error list
-     * @return true if managed to parse at least one operator, false otherwise
+     * @param end the id of the keyword closing the list, {@link SymbolTable#NONE} to parse a single operator
+     * @return true if managed to parse at least one operator and the closing keyword, false otherwise
      */
-    private boolean parseOperatorsList(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        if (parseOperator(parent, isLastAlternative)) {
-            parseOperatorsList(parent, false);
-            return true;
+    private boolean parseOperatorsList(int end) {
+        var blocks = new ArrayDeque<Block>();
+        blocks.push(new Block(end, false));
+
+        while (!blocks.isEmpty()) {
+            var block = blocks.peek();
+
+            if (block.end != SymbolTable.NONE && !block.isEmpty && predictOperator() == null) {
+                if (!checkNextLexeme(LexemeClass.Keyword, block.end, true))
+                    return false;
+
+                blocks.pop();
+
+                if (block.end == SymbolTable.END) {
+                    listener.exitCompound();
+                    finishOperator(blocks);
+                }
+
+                continue;
+            }
+
+            block.isEmpty = false;
+
+            var operator = predictOperator();
+            if (operator == null) {
+                checkNextLexeme(LexemeClass.Keyword, SymbolTable.BEGIN, true);
+                return false;
+            }
+
+            switch (operator) {
+                case ASSIGNMENT:
+                    if (!parseAssignment(true))
+                        return false;
+
+                    finishOperator(blocks);
+                    break;
+
+                case LOOP:
+                    if (!parseLoopHeader())
+                        return false;
+
+                    blocks.push(new Block(SymbolTable.NONE, true));
+                    break;
+
+                case COMPOUND:
+                    checkNextLexeme(LexemeClass.Keyword, SymbolTable.BEGIN, true);
+                    listener.enterCompound();
+                    blocks.push(new Block(SymbolTable.END, false));
+                    break;
+            }
         }
 
-        return false;
+        return true;
     }
 
     /**
-     * Parses operator: either assignment, complex operator or compound operator
+     * Removes the blocks of a single operator after their operator has been parsed, exiting the loops
      *
-     * @param parent            parent node to assign found operator
-     * @param isLastAlternative if true, adds errors to error list
-     * @return true if managed to parse an operator, false otherwise
+     * @param blocks the operators which are not finished yet
      */
-    private boolean parseOperator(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        return parseAssignment(parent, false)
-                || parseComplexOperator(parent, false)
-                || parseCompoundOperator(parent, isLastAlternative);
+    private void finishOperator(ArrayDeque<Block> blocks) {
+        while (!blocks.isEmpty() && blocks.peek().end == SymbolTable.NONE) {
+            if (blocks.pop().isLoop)
+                listener.exitLoop();
+        }
     }
 
     /**
-     * Parses a compound operator = "Begin *list of operators* End"
+     * Chooses the operator by its first lexeme, which is the next one
      *
-     * @param parent            parent node to assign found operator
-     * @param isLastAlternative if true, adds errors to error list
-     * @return true if managed to parse, false otherwise
+     * @return the operator starting with the next lexeme, null if no operator starts with it or the input is over
      */
-    private boolean parseCompoundOperator(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        if (!checkNextLexeme(LexemeClass.Keyword, "Begin", isLastAlternative))
-            return false;
+    private Operator predictOperator() {
+        var lexemeClass = lexemes.peekClass();
 
-        if (!parseOperatorsList(parent, isLastAlternative))
-            return false;
+        if (lexemeClass == LexemeClass.Ident)
+            return Operator.ASSIGNMENT;
 
-        return checkNextLexeme(LexemeClass.Keyword, "End", isLastAlternative);
+        if (lexemeClass != LexemeClass.Keyword)
+            return null;
 
-    }
+        switch (lexemes.peekSymbol()) {
+            case SymbolTable.WHILE:
+                return Operator.LOOP;
 
-    /**
-     * Parses complex operator: either a loop or compound operator
-     *
-     * @param parent            parent node to assign found operator
-     * @param isLastAlternative if true, adds errors to error list
-     * @return true if managed to parse, false otherwise
-     */
-    private boolean parseComplexOperator(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        return parseLoopOperator(parent, false)
-                || parseCompoundOperator(parent, isLastAlternative);
+            case SymbolTable.BEGIN:
+                return Operator.COMPOUND;
+
+            default:
+                return null;
+        }
     }
 
     /**
-     * Parses loop operator: "WHILE *expression* DO *operator* "
+     * Parses the beginning of loop operator: "WHILE *expression* DO"
      *
-     * @param parent            parent node to assign found operator
-     * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse, false otherwise
      */
-    private boolean parseLoopOperator(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        OutputTreeNode<Lexeme> whileNode;
-        if (checkNextLexeme(LexemeClass.Keyword, "WHILE", isLastAlternative))
-            whileNode = addLexeme(parent);
+    private boolean parseLoopHeader() {
+        if (checkNextLexeme(LexemeClass.Keyword, SymbolTable.WHILE, true))
+            listener.enterLoop(current, consumed - 1);
         else
             return false;
 
-        if (!parseExpression(whileNode, true))
+        if (!parseExpression(true))
             return false;
 
-        OutputTreeNode<Lexeme> doNode;
-        if (checkNextLexeme(LexemeClass.Keyword, "DO", true))
-            doNode = addLexeme(whileNode);
+        if (checkNextLexeme(LexemeClass.Keyword, SymbolTable.DO, true))
+            listener.enterLoopBody(current, consumed - 1);
         else
             return false;
 
-        return parseOperator(doNode, true);
+        return true;
     }
 
     /**
      * Parses an assignment = "*Ident* := *expression* "
      *
-     * @param parent            parent node to assign found assignment
      * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse, false otherwise
      */
-    private boolean parseAssignment(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
+    private boolean parseAssignment(boolean isLastAlternative) {
         Lexeme toBeAssigned;
-        if (checkNextLexeme(LexemeClass.Ident, null, isLastAlternative))
-            toBeAssigned = lexemes.get(index);
-        else
+        int toBeAssignedIndex;
+        if (checkNextLexeme(LexemeClass.Ident, SymbolTable.NONE, isLastAlternative)) {
+            toBeAssigned = current;
+            toBeAssignedIndex = consumed - 1;
+        } else {
             return false;
+        }
 
-        OutputTreeNode<Lexeme> assignmentOp;
-        if (checkNextLexeme(LexemeClass.AssignmentOperator, null, true))
-            assignmentOp = addLexeme(parent);
+        if (checkNextLexeme(LexemeClass.AssignmentOperator, SymbolTable.NONE, true))
+            listener.enterAssignment(toBeAssigned, toBeAssignedIndex, current, consumed - 1);
         else
             return false;
 
-        assignmentOp.addChild(toBeAssigned);
+        if (!parseExpression(true))
+            return false;
 
-        if (!parseExpression(assignmentOp, true))
+        if (!checkNextLexeme(LexemeClass.Separator, SymbolTable.SEMICOLON, true))
             return false;
 
-        return checkNextLexeme(LexemeClass.Separator, ";", true);
+        listener.exitAssignment();
+        return true;
     }
 
     /**
      * Parses an expression = "*unary operator* *subexpression*"
      * where unary operator is optional
      *
-     * @param parent            parent node to assign found expression
      * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse, false otherwise
      */
-    private boolean parseExpression(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        parseUnaryOperation(parent, false);
-        return parseSubExpression(parent, isLastAlternative);
+    private boolean parseExpression(boolean isLastAlternative) {
+        listener.enterExpression();
+        parseUnaryOperation(false);
+
+        if (!parseSubExpression(isLastAlternative))
+            return false;
+
+        listener.exitExpression();
+        return true;
     }
 
     /**
      * Parses sub expression = "( *Expression* )" or " *Operand* "
-     * or " *Operand* *Binary operator* *Expression * "
+     * or " *Operand* *Binary operator* *Sub expression* "
+     * <p>
+     * All binary operators have the same precedence and are right associative,
+     * so every found operator becomes the parent of the rest of the sub expression
+     * and is reported before its left operand.
+     * Instead of recursion, the parser counts the open parentheses,
+     * as nothing may follow a closing parenthesis but another one.
      *
-     * @param parent            parent node to assign found subexpression
      * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse, false otherwise
      */
-    private boolean parseSubExpression(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        if (checkNextLexeme(LexemeClass.Separator, "(", false)) {
-            if (!parseExpression(parent, true))
-                return false;
+    private boolean parseSubExpression(boolean isLastAlternative) {
+        var openParentheses = 0;
+
+        while (true) {
+            if (checkNextLexeme(LexemeClass.Separator, SymbolTable.LEFT_PARENTHESIS, false)) {
+                openParentheses++;
+                parseUnaryOperation(false);
+                isLastAlternative = true;
+                continue;
+            }
 
-            return checkNextLexeme(LexemeClass.Separator, ")", true);
-        }
+            if (!parseOperand(isLastAlternative))
+                return false;
 
-        OutputTreeNode<Lexeme> operation = new OutputTreeNode<>("Dummy");
-        if (parseOperand(operation, isLastAlternative)) {
-            var store = new NodeStore();
+            var operand = current;
+            var operandIndex = consumed - 1;
 
-            if (parseBinaryOperator(parent, false, store)) {
-                store.getNode().addChildren(operation.getChildren());
+            if (!parseBinaryOperator()) {
+                listener.onOperand(operand, operandIndex);
+                break;
+            }
 
-                return parseSubExpression(store.getNode(), true);
-            } else {
-                parent.addChildren(operation.getChildren());
+            listener.onBinaryOperator(current, consumed - 1);
+            listener.onOperand(operand, operandIndex);
+            isLastAlternative = true;
+        }
 
-                return true;
-            }
+        for (; openParentheses > 0; openParentheses--) {
+            if (!checkNextLexeme(LexemeClass.Separator, SymbolTable.RIGHT_PARENTHESIS, true))
+                return false;
         }
 
-        return false;
+        return true;
     }
 
     /**
      * Parses binary operator: either {@link LexemeClass#ArithmeticOperator}
      * or {@link LexemeClass#ComparisonOperator}
      *
-     * @param parent            parent node to assign found operator
-     * @param isLastAlternative if true, adds errors to error list
-     * @param store             where the created node will be stored
      * @return true if managed to parse, false otherwise
      */
-    private boolean parseBinaryOperator(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative,
-                                        @NonNull NodeStore store) {
-        if (checkNextLexeme(LexemeClass.ArithmeticOperator, null, false)) {
-            store.setNode(addLexeme(parent));
-            return true;
-        }
-
-        if (checkNextLexeme(LexemeClass.ComparisonOperator, null, isLastAlternative)) {
-            store.setNode(addLexeme(parent));
-            return true;
-        }
-
-        return false;
+    private boolean parseBinaryOperator() {
+        return checkNextLexeme(LexemeClass.ArithmeticOperator, SymbolTable.NONE, false)
+                || checkNextLexeme(LexemeClass.ComparisonOperator, SymbolTable.NONE, false);
     }
 
     /**
      * Parses unary operator: {@link LexemeClass#ArithmeticOperator} where sign is "-"
      *
-     * @param parent            parent node to assign found operator
      * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse, false otherwise
      */
-    private boolean parseUnaryOperation(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        if (checkNextLexeme(LexemeClass.ArithmeticOperator, "-", isLastAlternative)) {
-            addLexeme(parent);
+    private boolean parseUnaryOperation(boolean isLastAlternative) {
+        if (checkNextLexeme(LexemeClass.ArithmeticOperator, SymbolTable.MINUS, isLastAlternative)) {
+            listener.onUnaryMinus(current, consumed - 1);
             return true;
         }
 
@@ -269,104 +436,148 @@ class Parser {
     /**
      * Parses an operand: either {@link LexemeClass#Ident} or {@link LexemeClass#Const}
      *
-     * @param parent            parent node to assign found operand
      * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse, false otherwise
      */
-    private boolean parseOperand(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        if (checkNextLexeme(LexemeClass.Ident, null, false)) {
-            addLexeme(parent);
-            return true;
-        }
-
-        if (checkNextLexeme(LexemeClass.Const, null, isLastAlternative))
-            addLexeme(parent);
-        else
-            return false;
-
-        return true;
+    private boolean parseOperand(boolean isLastAlternative) {
+        return checkNextLexeme(LexemeClass.Ident, SymbolTable.NONE, false)
+                || checkNextLexeme(LexemeClass.Const, SymbolTable.NONE, isLastAlternative);
     }
 
     /**
      * Parses the declaration of variables: "Var *list of variables*"
      *
-     * @param parent            parent node to assign found variables list
      * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse, false otherwise
      */
-    private boolean parseVariablesDeclaration(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        if (checkNextLexeme(LexemeClass.Keyword, "Var", isLastAlternative))
-            return parseVariablesList(addLexeme(parent), isLastAlternative);
+    private boolean parseVariablesDeclaration(boolean isLastAlternative) {
+        if (checkNextLexeme(LexemeClass.Keyword, SymbolTable.VAR, isLastAlternative))
+            listener.enterDeclaration(current, consumed - 1);
         else
             return false;
+
+        if (!parseVariablesList(isLastAlternative))
+            return false;
+
+        listener.exitDeclaration();
+        return true;
     }
 
     /**
      * Parses list of variables: "{@link LexemeClass#Ident}" or "{@link LexemeClass#Ident} ; *list of variables*"
      * or "{@link LexemeClass#Ident}, *list of variables*"
      *
-     * @param parent            parent node to assign found variables list
      * @param isLastAlternative if true, adds errors to error list
      * @return true if managed to parse at least one variable, false otherwise
      */
-    private boolean parseVariablesList(@NonNull OutputTreeNode<Lexeme> parent, boolean isLastAlternative) {
-        if (checkNextLexeme(LexemeClass.Ident, null, isLastAlternative))
-            addLexeme(parent);
-        else
-            return false;
-
-        if (checkNextLexeme(LexemeClass.Separator, ";", false)) {
-            parseVariablesList(parent, false);
-            return true;
+    private boolean parseVariablesList(boolean isLastAlternative) {
+        var isAfterSemicolon = false;
+
+        while (true) {
+            if (checkNextLexeme(LexemeClass.Ident, SymbolTable.NONE, isLastAlternative))
+                listener.onVariable(current, consumed - 1);
+            else
+                return isAfterSemicolon;
+
+            if (checkNextLexeme(LexemeClass.Separator, SymbolTable.SEMICOLON, false)) {
+                isAfterSemicolon = true;
+                isLastAlternative = false;
+            } else if (!checkNextLexeme(LexemeClass.Separator, SymbolTable.COMMA, isLastAlternative)) {
+                return isAfterSemicolon;
+            }
         }
-
-        if (checkNextLexeme(LexemeClass.Separator, ",", isLastAlternative))
-            return parseVariablesList(parent, isLastAlternative);
-
-        return false;
     }
 
     /**
-     * Checks whether the next lexeme in the list is of {@param lexemeClass}
-     * and its sign is {@param sign}. If {@param sign} is null, checks only the class
+     * Checks whether the next lexeme is of {@param lexemeClass}
+     * and its sign has id {@param symbol} in {@link SymbolTable}.
+     * If {@param symbol} is {@link SymbolTable#NONE}, checks only the class
      *
      * @param lexemeClass       the class of expected lexeme
-     * @param sign              the sign of expected lexeme
+     * @param symbol            the id of the sign of expected lexeme
      * @param isLastAlternative if true, adds error to errors list
      * @return if the next lexeme equals to expected one
      */
-    private boolean checkNextLexeme(@NonNull LexemeClass lexemeClass, String sign, boolean isLastAlternative) {
-        if (index + 1 < lexemes.size()) {
-            Lexeme lexeme = lexemes.get(index + 1);
+    private boolean checkNextLexeme(@NonNull LexemeClass lexemeClass, int symbol, boolean isLastAlternative) {
+        var nextClass = lexemes.peekClass();
 
-            if (lexeme.getLexemeClass() == lexemeClass && (sign == null || lexeme.getSign().equals(sign))) {
-                index++;
-                return true;
-            }
-
-            if (isLastAlternative) {
-                errorMessages.add(String.format(
-                        "On line %d expected '%s', but found '%s'",
-                        lexeme.getLine(), sign == null ? "*Any* " + lexemeClass : sign, lexeme.getSign()
-                ));
-            }
+        if (nextClass == lexemeClass && (symbol == SymbolTable.NONE || lexemes.peekSymbol() == symbol)) {
+            current = lexemes.next();
+            consumed++;
+            return true;
+        }
 
+        if (!isLastAlternative)
             return false;
-        }
 
-        if (isLastAlternative)
-            errorMessages.add(String.format("Expected %s, but the end of input reached", sign));
+        var sign = symbol == SymbolTable.NONE ? null : SymbolTable.SHARED.getSign(symbol);
+
+        if (nextClass != null) {
+            var lexeme = lexemes.peek();
+            addError(String.format(
+                    "On line %d expected '%s', but found '%s'",
+                    lexeme.getLine(), sign == null ? "*Any* " + lexemeClass : sign, lexeme.getSign()
+            ));
+        } else {
+            addError(String.format("Expected %s, but the end of input reached", sign));
+        }
 
         return false;
     }
 
     /**
-     * Adds current lexeme in the lexemes list as child to {@param node}
+     * Adds the error to the list and reports it to the listener
      *
-     * @param node the node to be assigned a new child
-     * @return the created node
+     * @param message the description of the error
      */
-    private OutputTreeNode<Lexeme> addLexeme(@NonNull OutputTreeNode<Lexeme> node) {
-        return node.addChild(lexemes.get(index));
+    private void addError(String message) {
+        errorMessages.add(message);
+        listener.onError(message);
+    }
+
+    /**
+     * The operators which start with different lexemes
+     */
+    private enum Operator {
+        /**
+         * "*Ident* := *expression* ;", starts with {@link LexemeClass#Ident}
+         */
+        ASSIGNMENT,
+
+        /**
+         * "WHILE *expression* DO *operator*", starts with "WHILE"
+         */
+        LOOP,
+
+        /**
+         * "Begin *list of operators* End", starts with "Begin"
+         */
+        COMPOUND
+    }
+
+    /**
+     * An operator containing other operators, which has not been parsed completely yet
+     */
+    private static final class Block {
+        /**
+         * The id of the keyword closing the list of operators,
+         * {@link SymbolTable#NONE} if the block contains a single operator, as the body of a loop
+         */
+        private final int end;
+
+        /**
+         * Whether the block is the body of a loop
+         */
+        private final boolean isLoop;
+
+        /**
+         * Whether no operator has been found in the block yet
+         */
+        private boolean isEmpty = true;
+
+        Block(int end, boolean isLoop) {
+            this.end = end;
+            this.isLoop = isLoop;
+        }
     }
 }
@@ -0,0 +1,461 @@
+package ru.ifmo.compilers;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Simplifies the ASTs built by {@link Parser}, keeping their shape and their meaning, see {@link Interpreter}.
+ * Folds the constant parts of the expressions, including the unary minuses, applies the identities
+ * {@code x * 1 = x}, {@code x / 1 = x}, {@code x + 0 = x}, {@code x - 0 = x}, {@code 1 * x = x}, {@code 0 + x = x},
+ * {@code 0 - x = -x} and {@code x - x = 0}, and removes the loops which conditions are always 0.
+ * <p>
+ * A folded constant has the line of the first lexeme it replaces, the other lexemes keep their lines.
+ * Nothing which may fail at runtime, like a division by zero, is folded.
+ */
+final class Simplifier {
+    /**
+     * The descriptions of the changes made, in the order of the nodes
+     */
+    @Getter
+    private final List<String> changes = new ArrayList<>();
+
+    /**
+     * The store of the simplified AST
+     */
+    private Ast result;
+
+    /**
+     * Creates a simplified copy of the AST
+     *
+     * @param root the root of the AST of a correct program
+     * @return the root of the frozen copy
+     */
+    OutputTreeNode<Lexeme> simplify(@NonNull OutputTreeNode<Lexeme> root) {
+        var ast = root.getAst().getTargetAst(root.getIndex());
+        var node = root.getAst().getTargetNode(root.getIndex());
+        var lineShift = root.getLineShift() + root.getAst().getLineShift(root.getIndex());
+
+        var symbols = ast.getSymbolTable();
+        result = symbols != null ? new Ast(symbols) : new Ast();
+        var copy = copy(Ast.NONE, ast, node, lineShift);
+        simplifyStatements(ast, ast.getFirstChild(node), copy, lineShift);
+        result.freeze();
+
+        return new OutputTreeNode<>(result, copy);
+    }
+
+    /**
+     * Copies the nodes starting from the first one with their subtrees, simplifying the statements
+     *
+     * @param ast       the store containing the nodes
+     * @param first     the first of the sibling nodes
+     * @param parent    the parent of the copies
+     * @param lineShift the number to be added to the lines of the nodes
+     */
+    private void simplifyStatements(Ast ast, int first, int parent, int lineShift) {
+        var asts = new Ast[16];
+        var siblings = new int[16];
+        var parents = new int[16];
+        var shifts = new int[16];
+        var depth = 0;
+        asts[0] = ast;
+        siblings[0] = first;
+        parents[0] = parent;
+        shifts[0] = lineShift;
+
+        while (depth >= 0) {
+            var store = asts[depth];
+            var node = siblings[depth];
+
+            if (node == Ast.NONE) {
+                depth--;
+                continue;
+            }
+
+            siblings[depth] = store.getNextSibling(node);
+
+            var target = store.getTargetAst(node);
+            var index = store.getTargetNode(node);
+            var shift = shifts[depth] + store.getLineShift(node);
+            var children = target.getFirstChild(index);
+            var copy = Ast.NONE;
+
+            if (target.isLexeme(index) && target.getLexemeClass(index) == LexemeClass.AssignmentOperator) {
+                copy = copy(parents[depth], target, index, shift);
+                copy(copy, target, children, shift);
+                simplifyExpression(copy, target, target.getNextSibling(children), shift);
+                continue;
+            }
+
+            if (target.isLexeme(index) && target.getLexemeClass(index) == LexemeClass.Keyword
+                    && target.getSymbol(index) == SymbolTable.WHILE) {
+                var levels = decode(target, children, shift);
+                var condition = simplify(levels);
+
+                if (isConstant(condition, 0)) {
+                    changes.add(String.format("On line %d removed the loop which condition is always 0",
+                            target.getLine(index) + shift));
+                    continue;
+                }
+
+                var body = children;
+                while (target.getNextSibling(body) != Ast.NONE)
+                    body = target.getNextSibling(body);
+
+                copy = copy(parents[depth], target, index, shift);
+                report(levels, condition);
+                write(copy, condition);
+
+                copy = copy(copy, target, body, shift);
+                children = target.getTargetAst(body).getFirstChild(target.getTargetNode(body));
+                shift += target.getLineShift(body);
+                target = target.getTargetAst(body);
+            } else {
+                copy = copy(parents[depth], target, index, shift);
+            }
+
+            if (children != Ast.NONE) {
+                if (++depth == siblings.length) {
+                    asts = Arrays.copyOf(asts, depth * 2);
+                    siblings = Arrays.copyOf(siblings, depth * 2);
+                    parents = Arrays.copyOf(parents, depth * 2);
+                    shifts = Arrays.copyOf(shifts, depth * 2);
+                }
+
+                asts[depth] = target;
+                siblings[depth] = children;
+                parents[depth] = copy;
+                shifts[depth] = shift;
+            }
+        }
+    }
+
+    private void simplifyExpression(int parent, Ast ast, int first, int lineShift) {
+        var levels = decode(ast, first, lineShift);
+        var simplified = simplify(levels);
+
+        report(levels, simplified);
+        write(parent, simplified);
+    }
+
+    /**
+     * Reads the expression starting from the node as a list of levels,
+     * each level is an operand optionally followed by a binary operator applied to it and to the next levels
+     *
+     * @param ast       the store containing the expression
+     * @param first     the first node of the expression
+     * @param lineShift the number to be added to the lines of the nodes
+     * @return the levels of the expression
+     */
+    private static List<Level> decode(Ast ast, int first, int lineShift) {
+        var levels = new ArrayList<Level>();
+
+        for (int node = first; ; ) {
+            Lexeme negation = null;
+            var negations = 0;
+
+            for (; isUnaryMinus(ast, node); node = ast.getNextSibling(node)) {
+                negation = negation == null ? ast.getLexeme(node, lineShift) : null;
+                negations++;
+            }
+
+            var target = ast.getTargetAst(node);
+            var term = ast.getTargetNode(node);
+            var operand = target.getFirstChild(term);
+            lineShift += ast.getLineShift(node);
+
+            if (operand == Ast.NONE) {
+                levels.add(new Level(negation, negations, target.getLexeme(term, lineShift), null));
+                return levels;
+            }
+
+            levels.add(new Level(negation, negations, target.getLexeme(operand, lineShift),
+                    target.getLexeme(term, lineShift)));
+            ast = target;
+            node = target.getNextSibling(operand);
+        }
+    }
+
+    /**
+     * Simplifies the expression starting from its last level
+     *
+     * @param levels the levels of the expression
+     * @return the levels of the simplified expression
+     */
+    private static Deque<Level> simplify(List<Level> levels) {
+        var output = new ArrayDeque<Level>();
+        Long value = null;
+
+        for (int i = levels.size() - 1; i >= 0; i--) {
+            var level = levels.get(i);
+            var operand = valueOf(level.operand);
+            var isNegated = level.negation != null;
+
+            if (level.operator == null) {
+                output.addFirst(level.normalized());
+                value = operand == null ? null : isNegated ? -operand : operand;
+                continue;
+            }
+
+            var operator = level.operator.getSymbol();
+            var folded = operand != null && value != null ? apply(operator, operand, value) : null;
+
+            if (folded != null) {
+                value = isNegated ? -folded : folded;
+                output.clear();
+                output.addFirst(constant(value, level.operand.getLine()));
+            } else if (value != null && value.equals(rightIdentity(operator))) {
+                output.clear();
+                output.addFirst(new Level(level.negation, isNegated ? 1 : 0, level.operand, null));
+                value = operand == null ? null : isNegated ? -operand : operand;
+            } else if (operand != null && operand.equals(leftIdentity(operator))) {
+                if (isNegated != (operator == SymbolTable.MINUS)) {
+                    var first = output.removeFirst();
+                    var negation = first.negation == null ? new Lexeme(LexemeClass.ArithmeticOperator, "-", first.operand.getLine()) : null;
+                    output.addFirst(new Level(negation, negation == null ? 0 : 1, first.operand, first.operator));
+                    value = value == null ? null : -value;
+                }
+            } else if (operator == SymbolTable.MINUS && isSameVariable(level.operand, output)) {
+                value = 0L;
+                output.clear();
+                output.addFirst(constant(value, level.operand.getLine()));
+            } else {
+                output.addFirst(level.normalized());
+                value = null;
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * Applies the binary operator to the constants
+     *
+     * @return the result or null if the operator fails or the result can not be written as a constant
+     */
+    private static Long apply(int operator, long left, long right) {
+        long result;
+
+        switch (operator) {
+            case SymbolTable.PLUS:
+                result = left + right;
+                break;
+
+            case SymbolTable.MINUS:
+                result = left - right;
+                break;
+
+            case SymbolTable.MULTIPLY:
+                result = left * right;
+                break;
+
+            case SymbolTable.DIVIDE:
+                if (right == 0)
+                    return null;
+
+                result = left / right;
+                break;
+
+            case SymbolTable.LESS:
+                result = left < right ? 1 : 0;
+                break;
+
+            case SymbolTable.GREATER:
+                result = left > right ? 1 : 0;
+                break;
+
+            case SymbolTable.EQUALS:
+                result = left == right ? 1 : 0;
+                break;
+
+            default:
+                return null;
+        }
+
+        return result != Long.MIN_VALUE ? result : null;
+    }
+
+    /**
+     * Gets the constant {@code e} such that {@code x op e = x}
+     *
+     * @return the constant or null if there is no such one
+     */
+    private static Long rightIdentity(int operator) {
+        switch (operator) {
+            case SymbolTable.MULTIPLY:
+            case SymbolTable.DIVIDE:
+                return 1L;
+
+            case SymbolTable.PLUS:
+            case SymbolTable.MINUS:
+                return 0L;
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Gets the constant {@code e} such that {@code e op x} is either {@code x} or {@code -x}
+     *
+     * @return the constant or null if there is no such one
+     */
+    private static Long leftIdentity(int operator) {
+        switch (operator) {
+            case SymbolTable.MULTIPLY:
+                return 1L;
+
+            case SymbolTable.PLUS:
+            case SymbolTable.MINUS:
+                return 0L;
+
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isSameVariable(Lexeme operand, Deque<Level> rest) {
+        if (operand.getLexemeClass() != LexemeClass.Ident || rest.size() != 1)
+            return false;
+
+        var level = rest.getFirst();
+        return level.negation == null && level.operator == null
+                && level.operand.getLexemeClass() == LexemeClass.Ident && level.operand.signEquals(operand);
+    }
+
+    private static boolean isConstant(Deque<Level> levels, long value) {
+        if (levels.size() != 1)
+            return false;
+
+        var level = levels.getFirst();
+        var operand = valueOf(level.operand);
+        return operand != null && (level.negation != null ? -operand : operand) == value;
+    }
+
+    private static Long valueOf(Lexeme operand) {
+        if (operand.getLexemeClass() != LexemeClass.Const)
+            return null;
+
+        try {
+            return Long.parseLong(operand.getSign());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static Level constant(long value, int line) {
+        var negation = value < 0 ? new Lexeme(LexemeClass.ArithmeticOperator, "-", line) : null;
+        return new Level(negation, negation == null ? 0 : 1,
+                new Lexeme(LexemeClass.Const, Long.toString(Math.abs(value)), line), null);
+    }
+
+    private static boolean isUnaryMinus(Ast ast, int node) {
+        return node != Ast.NONE && ast.getLexemeClass(node) == LexemeClass.ArithmeticOperator
+                && ast.getSymbol(node) == SymbolTable.MINUS
+                && ast.getTargetAst(node).getFirstChild(ast.getTargetNode(node)) == Ast.NONE;
+    }
+
+    /**
+     * Describes the change of the expression if it has been changed
+     *
+     * @param original   the levels of the original expression
+     * @param simplified the levels of the simplified expression
+     */
+    private void report(Collection<Level> original, Collection<Level> simplified) {
+        var before = text(original);
+        var after = text(simplified);
+
+        if (!before.equals(after)) {
+            changes.add(String.format("On line %d replaced '%s' with '%s'",
+                    original.iterator().next().operand.getLine(), before, after));
+        }
+    }
+
+    private static String text(Collection<Level> levels) {
+        var text = new StringBuilder();
+
+        for (var level : levels) {
+            text.append("-".repeat(level.negations)).append(level.operand.getSignView());
+
+            if (level.operator != null)
+                text.append(' ').append(level.operator.getSignView()).append(' ');
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Adds the nodes of the expression to the simplified AST
+     *
+     * @param parent the parent of the expression
+     * @param levels the levels of the expression
+     */
+    private void write(int parent, Collection<Level> levels) {
+        for (var level : levels) {
+            if (level.negation != null)
+                result.addLexeme(parent, level.negation);
+
+            if (level.operator == null) {
+                result.addLexeme(parent, level.operand);
+                return;
+            }
+
+            parent = result.addLexeme(parent, level.operator);
+            result.addLexeme(parent, level.operand);
+        }
+    }
+
+    private int copy(int parent, Ast ast, int node, int lineShift) {
+        return ast.isLexeme(node)
+                ? result.addLexeme(parent, ast.getLexeme(node, lineShift))
+                : result.addLabel(parent, ast.getContent(node));
+    }
+
+    /**
+     * A part of an expression: optionally negated operand, optionally followed by a binary operator
+     */
+    private static final class Level {
+        /**
+         * The unary minus before the operand, null if the operand is not negated
+         */
+        private final Lexeme negation;
+
+        /**
+         * The number of the unary minuses before the operand in the source code
+         */
+        private final int negations;
+
+        /**
+         * The operand
+         */
+        private final Lexeme operand;
+
+        /**
+         * The operator applied to the operand and the next levels, null for the last level
+         */
+        private final Lexeme operator;
+
+        Level(Lexeme negation, int negations, Lexeme operand, Lexeme operator) {
+            this.negation = negation;
+            this.negations = negations;
+            this.operand = operand;
+            this.operator = operator;
+        }
+
+        /**
+         * Gets the level having at most one unary minus
+         *
+         * @return this level or its copy without the pairs of the unary minuses
+         */
+        Level normalized() {
+            return negations <= 1 ? this : new Level(negation, negation == null ? 0 : 1, operand, operator);
+        }
+    }
+}
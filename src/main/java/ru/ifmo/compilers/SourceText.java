@@ -0,0 +1,73 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Represents the source code as a sequence of characters, one per byte of the buffer,
+ * without decoding or copying the buffer
+ */
+final class SourceText implements CharSequence {
+    /**
+     * The bytes of the source code
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * Index of the first byte of the text in {@link SourceText#bytes}
+     */
+    private final int offset;
+
+    /**
+     * The number of characters in the text
+     */
+    private final int length;
+
+    /**
+     * Creates a text containing the remaining bytes of the buffer
+     *
+     * @param bytes the bytes of the source code
+     */
+    SourceText(@NonNull ByteBuffer bytes) {
+        this(bytes, bytes.position(), bytes.remaining());
+    }
+
+    private SourceText(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index: " + index);
+
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public SourceText subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length)
+            throw new IndexOutOfBoundsException(String.format("[%d, %d) of %d", start, end, length));
+
+        return new SourceText(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        if (bytes.hasArray())
+            return new String(bytes.array(), bytes.arrayOffset() + offset, length, StandardCharsets.ISO_8859_1);
+
+        var copy = new byte[length];
+        bytes.duplicate().position(offset).get(copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+}
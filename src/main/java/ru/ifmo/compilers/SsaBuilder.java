@@ -0,0 +1,223 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+import static ru.ifmo.compilers.SsaGraph.Opcode;
+
+/**
+ * Lowers the programs of {@link Interpreter} into {@link SsaGraph}.
+ * The executable nodes already have the variables resolved to slots, so the current value of every variable
+ * is tracked in an array indexed by slot. An assignment adds a copy of the assigned value.
+ * A loop gets a header block starting with a phi for every variable, merging its values before the loop
+ * and after the body, then the body block and the exit block.
+ * <p>
+ * The budget of the interpreter is not a part of the graph, the backends executing it guard the loops themselves.
+ */
+final class SsaBuilder {
+    /**
+     * The built graph
+     */
+    private final SsaGraph graph;
+
+    /**
+     * The number of the variables, the slot following them is the scratch slot of {@link Interpreter.Chain}
+     */
+    private final int variables;
+
+    /**
+     * The current values of the variables and of the scratch slot, indexed by slot
+     */
+    private final SsaGraph.Value[] current;
+
+    /**
+     * The block the instructions are added to
+     */
+    private SsaGraph.Block block;
+
+    private SsaBuilder(List<String> variables) {
+        this.graph = new SsaGraph(variables);
+        this.variables = variables.size();
+        this.current = new SsaGraph.Value[this.variables + 1];
+    }
+
+    /**
+     * Lowers the program
+     *
+     * @param interpreter the interpreter of the program
+     * @return the graph of the program
+     */
+    static SsaGraph build(@NonNull Interpreter interpreter) {
+        var builder = new SsaBuilder(interpreter.getVariables());
+        builder.block = builder.graph.addBlock();
+
+        var zero = builder.block.add(Opcode.CONST, 0, List.of());
+        Arrays.fill(builder.current, 0, builder.variables, zero);
+
+        builder.lower(interpreter.getProgram());
+        builder.block.ret(Arrays.asList(Arrays.copyOf(builder.current, builder.variables)));
+
+        return builder.graph;
+    }
+
+    /**
+     * Lowers the statement. The loops which bodies are being lowered are kept on a stack
+     * instead of being lowered recursively, so the depth of the loops is not limited by the call stack.
+     */
+    private void lower(Interpreter.Statement statement) {
+        var work = new ArrayDeque<Object>();
+        work.push(statement);
+
+        while (!work.isEmpty()) {
+            var item = work.pop();
+
+            if (item instanceof OpenLoop) {
+                exitLoop((OpenLoop) item);
+            } else if (item instanceof Interpreter.Block) {
+                var statements = ((Interpreter.Block) item).statements;
+                for (int i = statements.length - 1; i >= 0; i--)
+                    work.push(statements[i]);
+            } else if (item instanceof Interpreter.Assignment) {
+                var assignment = (Interpreter.Assignment) item;
+                current[assignment.slot] = add(Opcode.COPY, lower(assignment.value));
+            } else if (item instanceof Interpreter.Loop) {
+                var loop = (Interpreter.Loop) item;
+                work.push(enterLoop(loop));
+                work.push(loop.body);
+            } else {
+                throw new IllegalArgumentException("Unknown statement: " + item.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * Adds the header of the loop and starts its body
+     *
+     * @param loop the loop
+     * @return the loop to be finished after its body is lowered
+     */
+    private OpenLoop enterLoop(Interpreter.Loop loop) {
+        var header = graph.addBlock();
+        block.jump(header);
+        block = header;
+
+        var phis = new SsaGraph.Value[variables];
+        for (int slot = 0; slot < variables; slot++) {
+            phis[slot] = header.add(Opcode.PHI, 0, List.of(current[slot]));
+            current[slot] = phis[slot];
+        }
+
+        var condition = lower(loop.condition);
+        var body = graph.addBlock();
+        var exit = graph.addBlock();
+        header.branch(condition, body, exit);
+
+        block = body;
+        return new OpenLoop(header, phis, exit);
+    }
+
+    /**
+     * Jumps from the end of the body of the loop back to its header and continues after the loop
+     *
+     * @param loop the loop which body has been lowered
+     */
+    private void exitLoop(OpenLoop loop) {
+        block.jump(loop.header);
+
+        for (int slot = 0; slot < variables; slot++) {
+            loop.phis[slot].getOperands().add(current[slot]);
+            current[slot] = loop.phis[slot];
+        }
+
+        block = loop.exit;
+    }
+
+    private SsaGraph.Value lower(Interpreter.Expression expression) {
+        if (expression instanceof Interpreter.Constant)
+            return block.add(Opcode.CONST, ((Interpreter.Constant) expression).value, List.of());
+
+        if (expression instanceof Interpreter.Variable)
+            return current[((Interpreter.Variable) expression).slot];
+
+        if (expression instanceof Interpreter.Negation)
+            return add(Opcode.NEG, lower(((Interpreter.Negation) expression).operand));
+
+        if (expression instanceof Interpreter.Chain) {
+            var parts = ((Interpreter.Chain) expression).parts;
+            var value = lower(parts[0]);
+
+            for (int i = 1; i < parts.length; i++) {
+                current[variables] = value;
+                value = lower(parts[i]);
+            }
+
+            return value;
+        }
+
+        if (expression instanceof Interpreter.Binary) {
+            var binary = (Interpreter.Binary) expression;
+            var left = lower(binary.left);
+            return add(opcodeOf(binary), left, lower(binary.right));
+        }
+
+        throw new IllegalArgumentException("Unknown expression: " + expression.getClass().getSimpleName());
+    }
+
+    private SsaGraph.Value add(Opcode opcode, SsaGraph.Value... operands) {
+        return block.add(opcode, 0, Arrays.asList(operands));
+    }
+
+    private static Opcode opcodeOf(Interpreter.Binary binary) {
+        if (binary instanceof Interpreter.Add)
+            return Opcode.ADD;
+
+        if (binary instanceof Interpreter.Subtract)
+            return Opcode.SUB;
+
+        if (binary instanceof Interpreter.Multiply)
+            return Opcode.MUL;
+
+        if (binary instanceof Interpreter.Divide)
+            return Opcode.DIV;
+
+        if (binary instanceof Interpreter.Less)
+            return Opcode.LESS;
+
+        if (binary instanceof Interpreter.Greater)
+            return Opcode.GREATER;
+
+        if (binary instanceof Interpreter.Equal)
+            return Opcode.EQUAL;
+
+        throw new IllegalArgumentException("Unknown operator: " + binary.getClass().getSimpleName());
+    }
+
+    /**
+     * A loop which body is being lowered
+     */
+    private static final class OpenLoop {
+        /**
+         * The block checking the condition
+         */
+        private final SsaGraph.Block header;
+
+        /**
+         * The phis of the variables at the start of the header, indexed by slot
+         */
+        private final SsaGraph.Value[] phis;
+
+        /**
+         * The block following the loop
+         */
+        private final SsaGraph.Block exit;
+
+        OpenLoop(SsaGraph.Block header, SsaGraph.Value[] phis, SsaGraph.Block exit) {
+            this.header = header;
+            this.phis = phis;
+            this.exit = exit;
+        }
+    }
+}
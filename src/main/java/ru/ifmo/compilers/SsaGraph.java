@@ -0,0 +1,270 @@
+package ru.ifmo.compilers;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A program in static single assignment form: a control flow graph of basic blocks,
+ * where every value is computed by exactly one instruction and never changes.
+ * The values of a variable reaching a block along different edges are merged by the phi instructions at its start.
+ * <p>
+ * The program starts in the first block with all variables being 0, and the block ending in return
+ * lists the final values of the variables in the order of {@link SsaGraph#getVariables()}.
+ */
+final class SsaGraph {
+    /**
+     * The kind of an instruction
+     */
+    enum Opcode {
+        CONST, COPY, PHI, NEG, ADD, SUB, MUL, DIV, LESS, GREATER, EQUAL;
+
+        /**
+         * The name of the instruction in the printed form
+         */
+        final String mnemonic = name().toLowerCase();
+    }
+
+    /**
+     * The kind of the last instruction of a block
+     */
+    enum Terminator {
+        /**
+         * Continues to the only successor
+         */
+        JUMP,
+
+        /**
+         * Continues to the first successor if the argument is not 0 and to the second one otherwise
+         */
+        BRANCH,
+
+        /**
+         * Finishes the program, the arguments are the final values of the variables
+         */
+        RETURN
+    }
+
+    /**
+     * The names of the variables in the order of their slots
+     */
+    @Getter
+    private final List<String> variables;
+
+    /**
+     * The blocks of the program, the first one is the entry
+     */
+    @Getter
+    private final List<Block> blocks = new ArrayList<>();
+
+    /**
+     * Creates a graph without blocks
+     *
+     * @param variables the names of the variables in the order of their slots
+     */
+    SsaGraph(@NonNull List<String> variables) {
+        this.variables = Collections.unmodifiableList(new ArrayList<>(variables));
+    }
+
+    /**
+     * Adds an empty block
+     *
+     * @return the added block
+     */
+    Block addBlock() {
+        var block = new Block(blocks.size());
+        blocks.add(block);
+        return block;
+    }
+
+    /**
+     * Replaces the uses of the values by instructions and terminators, following the chains of replacements
+     *
+     * @param replacements the values to be used instead of the values
+     */
+    void replaceUses(@NonNull Map<Value, Value> replacements) {
+        if (replacements.isEmpty())
+            return;
+
+        for (var block : blocks) {
+            for (var instruction : block.instructions)
+                instruction.operands.replaceAll(value -> resolve(replacements, value));
+
+            block.arguments.replaceAll(value -> resolve(replacements, value));
+        }
+    }
+
+    private static Value resolve(Map<Value, Value> replacements, Value value) {
+        for (var replacement = replacements.get(value); replacement != null; replacement = replacements.get(value))
+            value = replacement;
+
+        return value;
+    }
+
+    /**
+     * An instruction computing a value
+     */
+    static final class Value {
+        /**
+         * The kind of the instruction
+         */
+        @Getter
+        private final Opcode opcode;
+
+        /**
+         * The value of a {@link Opcode#CONST} instruction
+         */
+        @Getter
+        private final long constant;
+
+        /**
+         * The values used by the instruction, the operands of a phi follow the order of the predecessors of its block
+         */
+        @Getter
+        private final List<Value> operands = new ArrayList<>();
+
+        /**
+         * The block containing the instruction
+         */
+        @Getter
+        @Setter(AccessLevel.PACKAGE)
+        private Block block;
+
+        Value(Opcode opcode, long constant, List<Value> operands) {
+            this.opcode = opcode;
+            this.constant = constant;
+            this.operands.addAll(operands);
+        }
+
+        /**
+         * Checks whether the instruction may throw, so it may be neither removed nor moved
+         *
+         * @return true for a division which divisor is not a constant other than 0
+         */
+        boolean mayFail() {
+            if (opcode != Opcode.DIV)
+                return false;
+
+            var divisor = operands.get(1);
+            return divisor.opcode != Opcode.CONST || divisor.constant == 0;
+        }
+    }
+
+    /**
+     * A basic block: the phi instructions, the other instructions and the terminator
+     */
+    static final class Block {
+        /**
+         * The index of the block in {@link SsaGraph#getBlocks()} at the moment of its creation
+         */
+        @Getter
+        private final int id;
+
+        /**
+         * The instructions of the block, the phi instructions first
+         */
+        @Getter
+        private final List<Value> instructions = new ArrayList<>();
+
+        /**
+         * The blocks continuing to this block
+         */
+        @Getter
+        private final List<Block> predecessors = new ArrayList<>();
+
+        /**
+         * The blocks this block continues to
+         */
+        @Getter
+        private final List<Block> successors = new ArrayList<>();
+
+        /**
+         * The last instruction of the block, null if the block is not finished
+         */
+        @Getter
+        private Terminator terminator;
+
+        /**
+         * The condition of a branch or the final values of the variables
+         */
+        @Getter
+        private final List<Value> arguments = new ArrayList<>();
+
+        private Block(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Adds an instruction to the end of the block, a phi is added after the other phi instructions
+         *
+         * @param opcode   the kind of the instruction
+         * @param constant the value of a constant, ignored by the other instructions
+         * @param operands the values used by the instruction
+         * @return the added instruction
+         */
+        Value add(@NonNull Opcode opcode, long constant, @NonNull List<Value> operands) {
+            var value = new Value(opcode, constant, operands);
+            value.block = this;
+
+            if (opcode == Opcode.PHI) {
+                var index = 0;
+                while (index < instructions.size() && instructions.get(index).opcode == Opcode.PHI)
+                    index++;
+
+                instructions.add(index, value);
+            } else {
+                instructions.add(value);
+            }
+
+            return value;
+        }
+
+        /**
+         * Finishes the block with a jump
+         *
+         * @param target the successor
+         */
+        void jump(@NonNull Block target) {
+            finish(Terminator.JUMP, List.of(), target);
+        }
+
+        /**
+         * Finishes the block with a branch
+         *
+         * @param condition   the value checked by the branch
+         * @param ifNotZero   the successor taken if the condition is not 0
+         * @param otherwise   the successor taken if the condition is 0
+         */
+        void branch(@NonNull Value condition, @NonNull Block ifNotZero, @NonNull Block otherwise) {
+            finish(Terminator.BRANCH, List.of(condition), ifNotZero, otherwise);
+        }
+
+        /**
+         * Finishes the block and the program
+         *
+         * @param results the final values of the variables
+         */
+        void ret(@NonNull List<Value> results) {
+            finish(Terminator.RETURN, results);
+        }
+
+        private void finish(Terminator terminator, List<Value> arguments, Block... successors) {
+            if (this.terminator != null)
+                throw new IllegalStateException("The block " + id + " is already finished");
+
+            this.terminator = terminator;
+            this.arguments.addAll(arguments);
+
+            for (var successor : successors) {
+                this.successors.add(successor);
+                successor.predecessors.add(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static ru.ifmo.compilers.SsaGraph.Opcode;
+
+/**
+ * The optimizations of {@link SsaGraph}. Every pass changes the graph in place
+ * and returns the number of the removed or moved instructions.
+ */
+final class SsaOptimizer {
+    private SsaOptimizer() {
+    }
+
+    /**
+     * Runs all passes until none of them changes the graph
+     *
+     * @param graph the graph to be optimized
+     * @return the total number of the removed or moved instructions
+     */
+    static int optimize(@NonNull SsaGraph graph) {
+        var total = 0;
+
+        for (var changes = -1; changes != 0; total += changes)
+            changes = propagateCopies(graph) + hoistInvariants(graph) + eliminateDeadStores(graph);
+
+        return total;
+    }
+
+    /**
+     * Replaces the uses of every copy with the copied value and removes the copy.
+     * A phi merging the same value along all edges, except the ones where it merges itself, is a copy as well.
+     *
+     * @param graph the graph to be optimized
+     * @return the number of the removed instructions
+     */
+    static int propagateCopies(@NonNull SsaGraph graph) {
+        var replacements = new IdentityHashMap<SsaGraph.Value, SsaGraph.Value>();
+
+        for (var changed = true; changed; ) {
+            changed = false;
+
+            for (var block : graph.getBlocks()) {
+                for (var instruction : block.getInstructions()) {
+                    if (replacements.containsKey(instruction))
+                        continue;
+
+                    var copied = copiedValue(instruction, replacements);
+                    if (copied != null) {
+                        replacements.put(instruction, copied);
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        graph.replaceUses(replacements);
+        return remove(graph, replacements.keySet());
+    }
+
+    /**
+     * Moves the instructions of the loops which depend only on the values computed before the loops
+     * to the end of the block preceding the loop, so they are executed once.
+     * The instructions which may fail are not moved, as the loop may be executed zero times.
+     *
+     * @param graph the graph to be optimized
+     * @return the number of the moved instructions
+     */
+    static int hoistInvariants(@NonNull SsaGraph graph) {
+        var moved = 0;
+
+        for (var header : graph.getBlocks()) {
+            if (header.getPredecessors().size() != 2 || header.getPredecessors().get(1).getId() < header.getId())
+                continue;
+
+            var preheader = header.getPredecessors().get(0);
+            var loop = loopOf(header, header.getPredecessors().get(1));
+
+            for (var changed = true; changed; ) {
+                changed = false;
+
+                for (var block : graph.getBlocks()) {
+                    if (!loop.contains(block))
+                        continue;
+
+                    for (var iterator = block.getInstructions().iterator(); iterator.hasNext(); ) {
+                        var instruction = iterator.next();
+
+                        if (instruction.getOpcode() == Opcode.PHI || instruction.mayFail()
+                                || !instruction.getOperands().stream().allMatch(operand -> !loop.contains(operand.getBlock())))
+                            continue;
+
+                        iterator.remove();
+                        instruction.setBlock(preheader);
+                        preheader.getInstructions().add(instruction);
+                        moved++;
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        return moved;
+    }
+
+    /**
+     * Removes the instructions which values are never used, like the stores to the variables
+     * reassigned before being read. The values of the branches and of the return, where the final
+     * values of the variables are observed, are used, as well as the instructions which may fail.
+     *
+     * @param graph the graph to be optimized
+     * @return the number of the removed instructions
+     */
+    static int eliminateDeadStores(@NonNull SsaGraph graph) {
+        var live = Collections.newSetFromMap(new IdentityHashMap<SsaGraph.Value, Boolean>());
+        var pending = new ArrayDeque<SsaGraph.Value>();
+
+        for (var block : graph.getBlocks()) {
+            pending.addAll(block.getArguments());
+
+            for (var instruction : block.getInstructions()) {
+                if (instruction.mayFail())
+                    pending.add(instruction);
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            var value = pending.poll();
+
+            if (live.add(value))
+                pending.addAll(value.getOperands());
+        }
+
+        var dead = Collections.newSetFromMap(new IdentityHashMap<SsaGraph.Value, Boolean>());
+        for (var block : graph.getBlocks()) {
+            for (var instruction : block.getInstructions()) {
+                if (!live.contains(instruction))
+                    dead.add(instruction);
+            }
+        }
+
+        return remove(graph, dead);
+    }
+
+    /**
+     * Gets the value the instruction copies
+     *
+     * @return the copied value, null if the instruction is not a copy
+     */
+    private static SsaGraph.Value copiedValue(SsaGraph.Value instruction, IdentityHashMap<SsaGraph.Value, SsaGraph.Value> replacements) {
+        if (instruction.getOpcode() == Opcode.COPY)
+            return instruction.getOperands().get(0);
+
+        if (instruction.getOpcode() != Opcode.PHI)
+            return null;
+
+        SsaGraph.Value copied = null;
+
+        for (var operand : instruction.getOperands()) {
+            while (replacements.containsKey(operand))
+                operand = replacements.get(operand);
+
+            if (operand == instruction || operand == copied)
+                continue;
+
+            if (copied != null)
+                return null;
+
+            copied = operand;
+        }
+
+        return copied;
+    }
+
+    /**
+     * Finds the blocks of the loop: the header and the blocks reaching the end of the body without the header
+     */
+    private static Set<SsaGraph.Block> loopOf(SsaGraph.Block header, SsaGraph.Block end) {
+        var loop = new HashSet<SsaGraph.Block>();
+        var pending = new ArrayDeque<SsaGraph.Block>();
+        loop.add(header);
+        pending.add(end);
+
+        while (!pending.isEmpty()) {
+            var block = pending.poll();
+
+            if (loop.add(block))
+                pending.addAll(block.getPredecessors());
+        }
+
+        return loop;
+    }
+
+    private static int remove(SsaGraph graph, Set<SsaGraph.Value> values) {
+        if (values.isEmpty())
+            return 0;
+
+        for (var block : graph.getBlocks())
+            block.getInstructions().removeIf(values::contains);
+
+        return values.size();
+    }
+}
@@ -0,0 +1,135 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prints {@link SsaGraph} as text, one instruction per line:
+ * <pre>
+ * block1: from block0, block2
+ *     v1 = phi v0, v4
+ *     v2 = const 10
+ *     v3 = less v1, v2
+ *     branch v3, block2, block3
+ * </pre>
+ * The values are numbered in the order of their instructions, the operands which are not in the graph are printed as "?".
+ */
+final class SsaPrinter {
+    /**
+     * The separator of the printed lines
+     */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private SsaPrinter() {
+    }
+
+    /**
+     * Prints the graph. The writer is neither flushed nor closed.
+     *
+     * @param graph the graph to be printed
+     * @param out   where to print the graph
+     * @throws IOException if failed to write
+     */
+    static void print(@NonNull SsaGraph graph, @NonNull Writer out) throws IOException {
+        var numbers = new IdentityHashMap<SsaGraph.Value, Integer>();
+
+        for (var block : graph.getBlocks()) {
+            for (var instruction : block.getInstructions())
+                numbers.put(instruction, numbers.size());
+        }
+
+        for (var block : graph.getBlocks()) {
+            out.write("block" + block.getId() + ":");
+            writeBlocks(block.getPredecessors(), " from ", out);
+            out.write(LINE_SEPARATOR);
+
+            for (var instruction : block.getInstructions()) {
+                out.write("    ");
+                out.write(name(instruction, numbers));
+                out.write(" = ");
+                out.write(instruction.getOpcode().mnemonic);
+
+                if (instruction.getOpcode() == SsaGraph.Opcode.CONST)
+                    out.write(" " + instruction.getConstant());
+                else
+                    writeValues(instruction.getOperands(), numbers, out);
+
+                out.write(LINE_SEPARATOR);
+            }
+
+            if (block.getTerminator() == null)
+                continue;
+
+            out.write("    ");
+
+            switch (block.getTerminator()) {
+                case JUMP:
+                    out.write("jump");
+                    writeBlocks(block.getSuccessors(), " ", out);
+                    break;
+
+                case BRANCH:
+                    out.write("branch");
+                    writeValues(block.getArguments(), numbers, out);
+                    writeBlocks(block.getSuccessors(), ", ", out);
+                    break;
+
+                case RETURN:
+                    out.write("return");
+
+                    for (int i = 0; i < block.getArguments().size(); i++) {
+                        out.write(i == 0 ? " " : ", ");
+                        out.write(graph.getVariables().get(i) + " = " + name(block.getArguments().get(i), numbers));
+                    }
+
+                    break;
+            }
+
+            out.write(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * Prints the graph to a string
+     *
+     * @param graph the graph to be printed
+     * @return the printed graph
+     */
+    static String toString(@NonNull SsaGraph graph) {
+        var out = new StringWriter();
+
+        try {
+            print(graph, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return out.toString();
+    }
+
+    private static void writeValues(List<SsaGraph.Value> values, Map<SsaGraph.Value, Integer> numbers, Writer out) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            out.write(i == 0 ? " " : ", ");
+            out.write(name(values.get(i), numbers));
+        }
+    }
+
+    private static void writeBlocks(List<SsaGraph.Block> blocks, String prefix, Writer out) throws IOException {
+        for (int i = 0; i < blocks.size(); i++) {
+            out.write(i == 0 ? prefix : ", ");
+            out.write("block" + blocks.get(i).getId());
+        }
+    }
+
+    private static String name(SsaGraph.Value value, Map<SsaGraph.Value, Integer> numbers) {
+        var number = numbers.get(value);
+        return number != null ? "v" + number : "?";
+    }
+}
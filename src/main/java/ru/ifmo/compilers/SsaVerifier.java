@@ -0,0 +1,267 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ru.ifmo.compilers.SsaGraph.Opcode;
+import static ru.ifmo.compilers.SsaGraph.Terminator;
+
+/**
+ * Checks that {@link SsaGraph} is well-formed:
+ * the edges are consistent, every block is finished, the phi instructions are at the starts of the blocks
+ * and have an operand per predecessor, the number of the operands matches the instructions,
+ * and every value is defined once in a block dominating its uses.
+ */
+final class SsaVerifier {
+    /**
+     * The graph being checked
+     */
+    private final SsaGraph graph;
+
+    /**
+     * The found problems
+     */
+    private final List<String> problems = new ArrayList<>();
+
+    /**
+     * The positions of the instructions in their blocks
+     */
+    private final Map<SsaGraph.Value, Integer> positions = new IdentityHashMap<>();
+
+    /**
+     * The immediate dominators of the reachable blocks, the entry block dominates itself
+     */
+    private final Map<SsaGraph.Block, SsaGraph.Block> dominators = new HashMap<>();
+
+    /**
+     * The indices of the reachable blocks in the reverse postorder
+     */
+    private final Map<SsaGraph.Block, Integer> order = new HashMap<>();
+
+    private SsaVerifier(SsaGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Checks the graph
+     *
+     * @param graph the graph to be checked
+     * @return the found problems, empty if the graph is well-formed
+     */
+    static List<String> verify(@NonNull SsaGraph graph) {
+        var verifier = new SsaVerifier(graph);
+        verifier.verify();
+        return verifier.problems;
+    }
+
+    private void verify() {
+        if (graph.getBlocks().isEmpty()) {
+            problems.add("The graph has no blocks");
+            return;
+        }
+
+        if (!graph.getBlocks().get(0).getPredecessors().isEmpty())
+            problems.add("The entry block has predecessors");
+
+        for (var block : graph.getBlocks()) {
+            checkEdges(block);
+
+            for (int i = 0; i < block.getInstructions().size(); i++) {
+                var instruction = block.getInstructions().get(i);
+
+                if (positions.put(instruction, i) != null)
+                    problems.add(String.format("A value is defined twice in block%d", block.getId()));
+
+                if (instruction.getBlock() != block)
+                    problems.add(String.format("The value %d of block%d refers to another block", i, block.getId()));
+            }
+        }
+
+        computeDominators();
+
+        for (var block : graph.getBlocks()) {
+            var isPhiAllowed = true;
+
+            for (var instruction : block.getInstructions()) {
+                isPhiAllowed &= instruction.getOpcode() == Opcode.PHI;
+                checkInstruction(block, instruction, isPhiAllowed);
+            }
+
+            for (var argument : block.getArguments())
+                checkUse(block, argument, block.getInstructions().size());
+        }
+    }
+
+    private void checkEdges(SsaGraph.Block block) {
+        var terminator = block.getTerminator();
+
+        if (terminator == null) {
+            problems.add(String.format("block%d is not finished", block.getId()));
+            return;
+        }
+
+        var successors = terminator == Terminator.JUMP ? 1 : terminator == Terminator.BRANCH ? 2 : 0;
+        var arguments = terminator == Terminator.BRANCH ? 1 : terminator == Terminator.RETURN ? graph.getVariables().size() : 0;
+
+        if (block.getSuccessors().size() != successors || block.getArguments().size() != arguments)
+            problems.add(String.format("block%d has a malformed %s", block.getId(), terminator.name().toLowerCase()));
+
+        for (var successor : block.getSuccessors()) {
+            if (!graph.getBlocks().contains(successor) || !successor.getPredecessors().contains(block))
+                problems.add(String.format("The edge from block%d to block%d is not consistent", block.getId(), successor.getId()));
+        }
+
+        for (var predecessor : block.getPredecessors()) {
+            if (!predecessor.getSuccessors().contains(block))
+                problems.add(String.format("The edge from block%d to block%d is not consistent", predecessor.getId(), block.getId()));
+        }
+    }
+
+    private void checkInstruction(SsaGraph.Block block, SsaGraph.Value instruction, boolean isPhiAllowed) {
+        var operands = instruction.getOperands();
+        var position = positions.get(instruction);
+
+        switch (instruction.getOpcode()) {
+            case CONST:
+                checkOperands(block, position, operands.size(), 0);
+                return;
+
+            case COPY:
+            case NEG:
+                checkOperands(block, position, operands.size(), 1);
+                break;
+
+            case PHI:
+                if (!isPhiAllowed)
+                    problems.add(String.format("The phi v%d of block%d follows other instructions", position, block.getId()));
+
+                checkOperands(block, position, operands.size(), block.getPredecessors().size());
+
+                for (int i = 0; i < operands.size() && i < block.getPredecessors().size(); i++) {
+                    var predecessor = block.getPredecessors().get(i);
+                    checkUse(predecessor, operands.get(i), predecessor.getInstructions().size());
+                }
+
+                return;
+
+            default:
+                checkOperands(block, position, operands.size(), 2);
+        }
+
+        for (var operand : operands)
+            checkUse(block, operand, position);
+    }
+
+    private void checkOperands(SsaGraph.Block block, int position, int actual, int expected) {
+        if (actual != expected) {
+            problems.add(String.format("The instruction %d of block%d has %d operands instead of %d",
+                    position, block.getId(), actual, expected));
+        }
+    }
+
+    /**
+     * Checks that the value is defined before the position in the block
+     */
+    private void checkUse(SsaGraph.Block block, SsaGraph.Value value, int position) {
+        var definition = value == null ? null : positions.get(value);
+
+        if (definition == null) {
+            problems.add(String.format("block%d uses a value which is not defined", block.getId()));
+            return;
+        }
+
+        var isDominated = value.getBlock() == block ? definition < position : dominates(value.getBlock(), block);
+
+        if (!isDominated) {
+            problems.add(String.format("block%d uses the value %d of block%d which does not dominate the use",
+                    block.getId(), definition, value.getBlock().getId()));
+        }
+    }
+
+    private boolean dominates(SsaGraph.Block dominator, SsaGraph.Block block) {
+        if (!order.containsKey(block))
+            return true;
+
+        for (var current = block; ; current = dominators.get(current)) {
+            if (current == dominator)
+                return true;
+
+            if (current == dominators.get(current))
+                return false;
+        }
+    }
+
+    /**
+     * Computes the immediate dominators by the iterative algorithm of Cooper, Harvey and Kennedy
+     */
+    private void computeDominators() {
+        var postorder = new ArrayList<SsaGraph.Block>();
+        var visited = new IdentityHashMap<SsaGraph.Block, Boolean>();
+        var stack = new ArrayList<SsaGraph.Block>();
+        var next = new ArrayList<Integer>();
+        var entry = graph.getBlocks().get(0);
+
+        stack.add(entry);
+        next.add(0);
+        visited.put(entry, true);
+
+        while (!stack.isEmpty()) {
+            var top = stack.size() - 1;
+            var block = stack.get(top);
+            var index = next.get(top);
+
+            if (index < block.getSuccessors().size()) {
+                next.set(top, index + 1);
+                var successor = block.getSuccessors().get(index);
+
+                if (visited.put(successor, true) == null) {
+                    stack.add(successor);
+                    next.add(0);
+                }
+            } else {
+                postorder.add(block);
+                stack.remove(top);
+                next.remove(top);
+            }
+        }
+
+        for (int i = postorder.size() - 1; i >= 0; i--)
+            order.put(postorder.get(i), postorder.size() - 1 - i);
+
+        dominators.put(entry, entry);
+
+        for (var changed = true; changed; ) {
+            changed = false;
+
+            for (int i = postorder.size() - 2; i >= 0; i--) {
+                var block = postorder.get(i);
+                SsaGraph.Block dominator = null;
+
+                for (var predecessor : block.getPredecessors()) {
+                    if (dominators.containsKey(predecessor))
+                        dominator = dominator == null ? predecessor : intersect(predecessor, dominator);
+                }
+
+                if (dominator != null && dominators.put(block, dominator) != dominator)
+                    changed = true;
+            }
+        }
+    }
+
+    private SsaGraph.Block intersect(SsaGraph.Block first, SsaGraph.Block second) {
+        while (first != second) {
+            while (order.get(first) > order.get(second))
+                first = dominators.get(first);
+
+            while (order.get(second) > order.get(first))
+                second = dominators.get(second);
+        }
+
+        return first;
+    }
+}
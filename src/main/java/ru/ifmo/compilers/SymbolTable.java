@@ -0,0 +1,290 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each distinct sign of lexemes to a dense integer id, so that the signs are stored once
+ * and compared as integers. The table can be shared by lexers running in different threads.
+ * <p>
+ * All the files of an invocation share {@link #SHARED}. The server gives every connection a table of its own,
+ * so that it does not keep the signs of every request it has served. The predefined signs have the same ids
+ * in every table, the ids of the other signs are valid only in their table.
+ */
+final class SymbolTable {
+    /**
+     * The id meaning that the lexeme has no interned sign or any sign is expected
+     */
+    static final int NONE = -1;
+
+    /**
+     * The id of "Var"
+     */
+    static final int VAR = 0;
+
+    /**
+     * The id of "Begin"
+     */
+    static final int BEGIN = 1;
+
+    /**
+     * The id of "End"
+     */
+    static final int END = 2;
+
+    /**
+     * The id of "End."
+     */
+    static final int END_OF_PROGRAM = 3;
+
+    /**
+     * The id of "WHILE"
+     */
+    static final int WHILE = 4;
+
+    /**
+     * The id of "DO"
+     */
+    static final int DO = 5;
+
+    /**
+     * The id of ";"
+     */
+    static final int SEMICOLON = 6;
+
+    /**
+     * The id of ","
+     */
+    static final int COMMA = 7;
+
+    /**
+     * The id of "("
+     */
+    static final int LEFT_PARENTHESIS = 8;
+
+    /**
+     * The id of ")"
+     */
+    static final int RIGHT_PARENTHESIS = 9;
+
+    /**
+     * The id of "-"
+     */
+    static final int MINUS = 10;
+
+    /**
+     * The id of "+"
+     */
+    static final int PLUS = 11;
+
+    /**
+     * The id of "*"
+     */
+    static final int MULTIPLY = 12;
+
+    /**
+     * The id of "/"
+     */
+    static final int DIVIDE = 13;
+
+    /**
+     * The id of "<"
+     */
+    static final int LESS = 14;
+
+    /**
+     * The id of ">"
+     */
+    static final int GREATER = 15;
+
+    /**
+     * The id of "="
+     */
+    static final int EQUALS = 16;
+
+    /**
+     * The id of ":="
+     */
+    static final int ASSIGNMENT = 17;
+
+    /**
+     * The signs interned by every table in this order, so that their ids are the same in all tables
+     */
+    private static final List<String> PREDEFINED = List.of(
+            "Var", "Begin", "End", "End.", "WHILE", "DO", ";", ",", "(", ")", "-", "+", "*", "/", "<", ">", "=", ":="
+    );
+
+    /**
+     * The table shared by all lexers by default
+     */
+    static final SymbolTable SHARED = new SymbolTable();
+
+    /**
+     * The ids of the interned signs
+     */
+    private final ConcurrentHashMap<Key, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * The interned signs, indexed by id. A new array is published whenever a sign is added.
+     */
+    private volatile String[] signs = new String[64];
+
+    /**
+     * The number of interned signs, guarded by this
+     */
+    private int size = 0;
+
+    /**
+     * Creates a table containing only the predefined signs
+     */
+    SymbolTable() {
+        PREDEFINED.forEach(this::intern);
+    }
+
+    /**
+     * Checks whether the signs of lexemes of the class are interned
+     *
+     * @param lexemeClass the class of lexemes
+     * @return false for constants and undefined lexemes, true otherwise
+     */
+    static boolean isInterned(@NonNull LexemeClass lexemeClass) {
+        return lexemeClass != LexemeClass.Const && lexemeClass != LexemeClass.Undefined;
+    }
+
+    /**
+     * Checks whether the id belongs to a predefined sign, so it means the same sign in every table
+     *
+     * @param id the id of the sign
+     * @return true if the sign is predefined
+     */
+    static boolean isPredefined(int id) {
+        return id >= 0 && id < PREDEFINED.size();
+    }
+
+    /**
+     * Compares the signs of two tables, by their ids if the tables are the same or the signs are predefined
+     *
+     * @param table      the table of the first sign
+     * @param id         the id of the first sign
+     * @param otherTable the table of the second sign
+     * @param otherId    the id of the second sign
+     * @return true if the signs are equal
+     */
+    static boolean signEquals(@NonNull SymbolTable table, int id, @NonNull SymbolTable otherTable, int otherId) {
+        if (table == otherTable || isPredefined(id) || isPredefined(otherId))
+            return id == otherId;
+
+        return table.getSign(id).equals(otherTable.getSign(otherId));
+    }
+
+    /**
+     * Gets the id of the sign, adding the sign to the table if it is not present.
+     * Does not lock and does not copy the sign if it is present.
+     *
+     * @param sign the sign to be interned
+     * @return the id of the sign
+     */
+    int intern(@NonNull CharSequence sign) {
+        var id = ids.get(new Key(sign));
+        return id != null ? id : add(sign.toString());
+    }
+
+    /**
+     * Gets the id of the sign without adding it to the table
+     *
+     * @param sign the sign to be found
+     * @return the id of the sign, {@link #NONE} if it is not present
+     */
+    int find(@NonNull CharSequence sign) {
+        var id = ids.get(new Key(sign));
+        return id != null ? id : NONE;
+    }
+
+    /**
+     * Gets the sign by its id
+     *
+     * @param id the id of the sign
+     * @return the interned sign
+     * @throws IllegalArgumentException if no sign has the id
+     */
+    String getSign(int id) {
+        var current = signs;
+
+        if (id < 0 || id >= current.length || current[id] == null)
+            throw new IllegalArgumentException("Unknown symbol id: " + id);
+
+        return current[id];
+    }
+
+    /**
+     * Gets the number of the interned signs
+     *
+     * @return the number of the signs
+     */
+    int size() {
+        return ids.size();
+    }
+
+    private synchronized int add(String sign) {
+        var key = new Key(sign);
+        var id = ids.get(key);
+
+        if (id != null)
+            return id;
+
+        var current = signs;
+        if (size == current.length)
+            current = Arrays.copyOf(current, size * 2);
+
+        current[size] = sign;
+        signs = current;
+        ids.put(key, size);
+
+        return size++;
+    }
+
+    /**
+     * The key of the map, which compares the characters of the signs
+     */
+    private static final class Key {
+        private final CharSequence sign;
+        private final int hash;
+
+        Key(CharSequence sign) {
+            int hash = 0;
+            for (int i = 0; i < sign.length(); i++)
+                hash = 31 * hash + sign.charAt(i);
+
+            this.sign = sign;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+
+            if (!(o instanceof Key))
+                return false;
+
+            var key = (Key) o;
+            if (hash != key.hash || sign.length() != key.sign.length())
+                return false;
+
+            for (int i = 0; i < sign.length(); i++) {
+                if (sign.charAt(i) != key.sign.charAt(i))
+                    return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
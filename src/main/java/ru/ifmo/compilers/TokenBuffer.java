@@ -0,0 +1,484 @@
+package ru.ifmo.compilers;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Stores the lexemes found in the source code as parallel arrays,
+ * each lexeme is represented by its class, its position in the source code and its line.
+ * The sign of a lexeme is the part of the source code it spans, unless the lexeme spans a comment,
+ * then its sign without the comment is copied.
+ */
+final class TokenBuffer {
+    /**
+     * The initial capacity of the arrays
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * All the classes of lexemes, indexed by ordinal
+     */
+    private static final LexemeClass[] CLASSES = LexemeClass.values();
+
+    /**
+     * The source code the lexemes have been found in
+     */
+    @Getter
+    private final CharSequence source;
+
+    /**
+     * The table the signs of the lexemes are interned to
+     */
+    @Getter
+    private final SymbolTable symbolTable;
+
+    /**
+     * Ordinals of the classes of the lexemes
+     */
+    private int[] classes = new int[INITIAL_CAPACITY];
+
+    /**
+     * Indices of the first characters of the lexemes in {@link TokenBuffer#source}
+     */
+    private int[] starts = new int[INITIAL_CAPACITY];
+
+    /**
+     * Numbers of the characters in the lexemes
+     */
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    /**
+     * Lines of the source code the lexemes have been found on
+     */
+    private int[] lines = new int[INITIAL_CAPACITY];
+
+    /**
+     * Ids of the signs of the lexemes in {@link TokenBuffer#symbolTable}
+     */
+    private int[] symbols = new int[INITIAL_CAPACITY];
+
+    /**
+     * The copied signs of the lexemes spanning comments indexed by lexeme, null for the other lexemes.
+     * The array itself is null until such a lexeme is added.
+     */
+    private String[] copiedSigns = null;
+
+    /**
+     * The number of the lexemes
+     */
+    private int size = 0;
+
+    /**
+     * Creates an empty buffer of lexemes found in the source code
+     *
+     * @param source      the source code
+     * @param symbolTable the table the signs of the lexemes are interned to
+     */
+    TokenBuffer(@NonNull CharSequence source, @NonNull SymbolTable symbolTable) {
+        this.source = source;
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * Adds a lexeme to the end of the buffer
+     *
+     * @param lexemeClass the class of the lexeme
+     * @param start       the index of the first character of the lexeme in the source code
+     * @param length      the number of the characters in the lexeme
+     * @param line        the line of the source code the lexeme has been found on
+     * @param symbol      the id of the sign in {@link TokenBuffer#symbolTable} or {@link SymbolTable#NONE}
+     */
+    void add(@NonNull LexemeClass lexemeClass, int start, int length, int line, int symbol) {
+        ensureCapacity(size + 1);
+
+        classes[size] = lexemeClass.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        symbols[size] = symbol;
+        size++;
+    }
+
+    /**
+     * Adds a lexeme spanning a comment to the end of the buffer, its sign is the source code without the comment
+     *
+     * @param lexemeClass the class of the lexeme
+     * @param start       the index of the first character of the lexeme in the source code
+     * @param length      the number of the characters the lexeme spans, including the comment
+     * @param line        the line of the source code the lexeme has been found on
+     * @param symbol      the id of the sign in {@link TokenBuffer#symbolTable} or {@link SymbolTable#NONE}
+     * @param sign        the sign of the lexeme
+     */
+    void add(@NonNull LexemeClass lexemeClass, int start, int length, int line, int symbol, @NonNull String sign) {
+        add(lexemeClass, start, length, line, symbol);
+
+        if (copiedSigns == null)
+            copiedSigns = new String[classes.length];
+
+        copiedSigns[size - 1] = sign;
+    }
+
+    /**
+     * Adds all lexemes of the other buffer to the end of this buffer
+     *
+     * @param other the buffer which source code is a part of this buffer's source code
+     * @param shift the index of the first character of the other buffer's source code in this buffer's source code
+     */
+    void addAll(@NonNull TokenBuffer other, int shift) {
+        addAll(other, 0, other.size, shift, 0);
+    }
+
+    /**
+     * Adds the lexemes of the other buffer to the end of this buffer, moving them in the source code.
+     * If the buffers have different tables, the signs are interned to the table of this buffer.
+     *
+     * @param other     the buffer containing the lexemes
+     * @param from      the index of the first lexeme to be added
+     * @param to        the index after the last lexeme to be added
+     * @param shift     the index of the first character of the other buffer's source code in this buffer's source code
+     * @param lineShift the number to be added to the lines of the lexemes
+     */
+    void addAll(@NonNull TokenBuffer other, int from, int to, int shift, int lineShift) {
+        if (from < 0 || from > to || to > other.size)
+            throw new IndexOutOfBoundsException(String.format("[%d, %d) of %d", from, to, other.size));
+
+        var count = to - from;
+        ensureCapacity(size + count);
+
+        System.arraycopy(other.classes, from, classes, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        System.arraycopy(other.symbols, from, symbols, size, count);
+
+        if (other.copiedSigns != null) {
+            if (copiedSigns == null)
+                copiedSigns = new String[classes.length];
+
+            System.arraycopy(other.copiedSigns, from, copiedSigns, size, count);
+        }
+
+        for (int i = 0; i < count; i++) {
+            starts[size + i] = other.starts[from + i] + shift;
+            lines[size + i] = other.lines[from + i] + lineShift;
+
+            var symbol = symbols[size + i];
+            if (other.symbolTable != symbolTable && symbol != SymbolTable.NONE && !SymbolTable.isPredefined(symbol))
+                symbols[size + i] = symbolTable.intern(other.symbolTable.getSign(symbol));
+        }
+
+        size += count;
+    }
+
+    /**
+     * Gets the number of the lexemes
+     *
+     * @return the number of the lexemes in the buffer
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the first lexeme which starts at the position or after it
+     *
+     * @param position the index of a character in the source code
+     * @return the index of the lexeme or {@link TokenBuffer#size()} if there is no such lexeme
+     */
+    int indexAt(int position) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (starts[middle] < position)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        return low;
+    }
+
+    /**
+     * Compares the lexemes by their classes, signs and lines, but not by their positions in the source code
+     *
+     * @param index      the index of the lexeme in this buffer
+     * @param other      the buffer containing the other lexeme
+     * @param otherIndex the index of the other lexeme
+     * @param lineShift  the number to be added to the line of the lexeme of this buffer before comparing
+     * @return true if the lexemes are equal
+     */
+    boolean lexemeEquals(int index, @NonNull TokenBuffer other, int otherIndex, int lineShift) {
+        checkIndex(index);
+        other.checkIndex(otherIndex);
+
+        if (classes[index] != other.classes[otherIndex] || lines[index] + lineShift != other.lines[otherIndex]
+                || lengths[index] != other.lengths[otherIndex])
+            return false;
+
+        var sign = getSignView(index);
+        var otherSign = other.getSignView(otherIndex);
+        if (sign.length() != otherSign.length())
+            return false;
+
+        for (int i = 0; i < sign.length(); i++) {
+            if (sign.charAt(i) != otherSign.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the class of the lexeme
+     *
+     * @param index the index of the lexeme
+     * @return the class of the lexeme
+     */
+    LexemeClass getLexemeClass(int index) {
+        return CLASSES[classes[checkIndex(index)]];
+    }
+
+    /**
+     * Gets the line the lexeme has been found on
+     *
+     * @param index the index of the lexeme
+     * @return the line of the source code
+     */
+    int getLine(int index) {
+        return lines[checkIndex(index)];
+    }
+
+    /**
+     * Gets the id of the sign of the lexeme
+     *
+     * @param index the index of the lexeme
+     * @return the id in {@link TokenBuffer#symbolTable} or {@link SymbolTable#NONE}
+     */
+    int getSymbol(int index) {
+        return symbols[checkIndex(index)];
+    }
+
+    /**
+     * Gets the sign of the lexeme
+     *
+     * @param index the index of the lexeme
+     * @return the sign of the lexeme
+     */
+    String getSign(int index) {
+        return getSignView(index).toString();
+    }
+
+    /**
+     * Gets the sign of the lexeme without copying it from the source code unless the lexeme spans a comment
+     *
+     * @param index the index of the lexeme
+     * @return the sign of the lexeme
+     */
+    private CharSequence getSignView(int index) {
+        checkIndex(index);
+
+        if (copiedSigns != null && copiedSigns[index] != null)
+            return copiedSigns[index];
+
+        return source.subSequence(starts[index], starts[index] + lengths[index]);
+    }
+
+    /**
+     * Creates an instance of {@link Lexeme} representing the lexeme, its sign is not copied from the source code
+     * unless the lexeme spans a comment
+     *
+     * @param index the index of the lexeme
+     * @return the created lexeme
+     */
+    Lexeme get(int index) {
+        return get(index, 0);
+    }
+
+    /**
+     * Creates an instance of {@link Lexeme} representing the lexeme moved to another line
+     *
+     * @param index     the index of the lexeme
+     * @param lineShift the number to be added to the line of the lexeme
+     * @return the created lexeme
+     */
+    Lexeme get(int index, int lineShift) {
+        if (copiedSigns != null && copiedSigns[checkIndex(index)] != null) {
+            var sign = copiedSigns[index];
+            return new Lexeme(getLexemeClass(index), sign, 0, sign.length(), lines[index] + lineShift,
+                    symbols[index], symbolTable);
+        }
+
+        return new Lexeme(getLexemeClass(index), source, starts[index], lengths[index], lines[index] + lineShift,
+                symbols[index], symbolTable);
+    }
+
+    /**
+     * Gets the lexemes as a list, which creates an instance of {@link Lexeme} on every access
+     *
+     * @return the unmodifiable view of the buffer
+     */
+    List<Lexeme> asList() {
+        return new LexemeList();
+    }
+
+    /**
+     * Writes the classes, the positions and the lines of the lexemes, the positions and the lines as differences
+     * with the previous lexeme. The signs of the symbols are written once and the lexemes refer to them by number,
+     * as the ids of the signs are valid only in their table. The source code is not written,
+     * only the copied signs of the lexemes spanning comments follow the lexemes.
+     *
+     * @param output where to write the lexemes
+     */
+    void write(@NonNull ByteOutput output) {
+        var maxSymbol = SymbolTable.NONE;
+        for (int i = 0; i < size; i++)
+            maxSymbol = Math.max(maxSymbol, symbols[i]);
+
+        var indices = new int[maxSymbol + 1];
+        var signs = new ArrayList<String>();
+
+        for (int i = 0; i < size; i++) {
+            if (symbols[i] != SymbolTable.NONE && indices[symbols[i]] == 0) {
+                signs.add(symbolTable.getSign(symbols[i]));
+                indices[symbols[i]] = signs.size();
+            }
+        }
+
+        output.writeVarInt(signs.size());
+        for (var sign : signs)
+            output.writeString(sign);
+
+        output.writeVarInt(size);
+
+        for (int i = 0; i < size; i++) {
+            output.writeVarInt(classes[i]);
+            output.writeSignedVarInt(starts[i] - (i > 0 ? starts[i - 1] : 0));
+            output.writeVarInt(lengths[i]);
+            output.writeSignedVarInt(lines[i] - (i > 0 ? lines[i - 1] : 0));
+            output.writeVarInt(symbols[i] == SymbolTable.NONE ? 0 : indices[symbols[i]]);
+        }
+
+        var copied = 0;
+        for (int i = 0; copiedSigns != null && i < size; i++) {
+            if (copiedSigns[i] != null)
+                copied++;
+        }
+
+        output.writeVarInt(copied);
+
+        for (int i = 0, previous = 0; copied > 0 && i < size; i++) {
+            if (copiedSigns[i] != null) {
+                output.writeVarInt(i - previous);
+                output.writeString(copiedSigns[i]);
+                previous = i;
+            }
+        }
+    }
+
+    /**
+     * Reads the lexemes written by {@link TokenBuffer#write}, the signs of the symbols are interned again
+     *
+     * @param input       the buffer to read the lexemes from, its position is moved after them
+     * @param source      the source code the lexemes have been found in
+     * @param symbolTable the table to intern the signs to
+     * @return the buffer of the read lexemes
+     * @throws IllegalArgumentException if the lexemes do not fit the source code
+     */
+    static TokenBuffer read(@NonNull ByteBuffer input, @NonNull CharSequence source, @NonNull SymbolTable symbolTable) {
+        var ids = new int[ByteOutput.readVarInt(input) + 1];
+        ids[0] = SymbolTable.NONE;
+
+        for (int i = 1; i < ids.length; i++) {
+            ids[i] = symbolTable.intern(ByteOutput.readString(input));
+        }
+
+        var size = ByteOutput.readVarInt(input);
+        if (size < 0 || size > input.remaining())
+            throw new IllegalArgumentException("Invalid number of lexemes: " + size);
+
+        var buffer = new TokenBuffer(source, symbolTable);
+        buffer.ensureCapacity(size);
+
+        for (int i = 0, start = 0, line = 0; i < size; i++) {
+            var lexemeClass = ByteOutput.readVarInt(input);
+            start += ByteOutput.readSignedVarInt(input);
+            var length = ByteOutput.readVarInt(input);
+            line += ByteOutput.readSignedVarInt(input);
+            var symbol = ByteOutput.readVarInt(input);
+
+            if (lexemeClass >= CLASSES.length || start < 0 || length < 0 || start > source.length() - length
+                    || symbol >= ids.length)
+                throw new IllegalArgumentException("Invalid lexeme " + i);
+
+            buffer.classes[i] = lexemeClass;
+            buffer.starts[i] = start;
+            buffer.lengths[i] = length;
+            buffer.lines[i] = line;
+            buffer.symbols[i] = ids[symbol];
+        }
+
+        buffer.size = size;
+
+        var copied = ByteOutput.readVarInt(input);
+        if (copied < 0 || copied > size)
+            throw new IllegalArgumentException("Invalid number of copied signs: " + copied);
+
+        for (int i = 0, index = 0; i < copied; i++) {
+            index += ByteOutput.readVarInt(input);
+            if (index < 0 || index >= size)
+                throw new IllegalArgumentException("Invalid lexeme " + index);
+
+            if (buffer.copiedSigns == null)
+                buffer.copiedSigns = new String[buffer.classes.length];
+
+            buffer.copiedSigns[index] = ByteOutput.readString(input);
+        }
+
+        return buffer;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= classes.length)
+            return;
+
+        int capacity = Math.max(required, classes.length * 2);
+        classes = Arrays.copyOf(classes, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        symbols = Arrays.copyOf(symbols, capacity);
+
+        if (copiedSigns != null)
+            copiedSigns = Arrays.copyOf(copiedSigns, capacity);
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        return index;
+    }
+
+    /**
+     * The list view of the buffer
+     */
+    private class LexemeList extends AbstractList<Lexeme> implements RandomAccess {
+        @Override
+        public Lexeme get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.ifmo.compilers;
+
+import lombok.NonNull;
+
+import java.util.List;
+
+/**
+ * A source of lexemes which are consumed one by one
+ */
+interface TokenSource {
+    /**
+     * Creates a source of the lexemes from the list
+     *
+     * @param lexemes the list of lexemes
+     * @return the created source
+     */
+    static TokenSource of(@NonNull List<Lexeme> lexemes) {
+        return new ListTokenSource(lexemes);
+    }
+
+    /**
+     * Gets the next lexeme without consuming it
+     *
+     * @return the next lexeme or null if the input is over
+     * @throws java.io.UncheckedIOException if failed to read the input
+     */
+    Lexeme peek();
+
+    /**
+     * Gets the class of the next lexeme without consuming it,
+     * the sources storing the lexemes in arrays do not create the lexeme for it
+     *
+     * @return the class of the next lexeme or null if the input is over
+     * @throws java.io.UncheckedIOException if failed to read the input
+     */
+    default LexemeClass peekClass() {
+        var lexeme = peek();
+        return lexeme == null ? null : lexeme.getLexemeClass();
+    }
+
+    /**
+     * Gets the id of the sign of the next lexeme without consuming it,
+     * the sources storing the lexemes in arrays do not create the lexeme for it
+     *
+     * @return the id in {@link SymbolTable}, {@link SymbolTable#NONE} if the sign is not interned or the input is over
+     * @throws java.io.UncheckedIOException if failed to read the input
+     */
+    default int peekSymbol() {
+        var lexeme = peek();
+        return lexeme == null ? SymbolTable.NONE : lexeme.getSymbol();
+    }
+
+    /**
+     * Consumes the next lexeme
+     *
+     * @return the consumed lexeme
+     * @throws java.util.NoSuchElementException if the input is over
+     * @throws java.io.UncheckedIOException     if failed to read the input
+     */
+    Lexeme next();
+
+    /**
+     * Remembers the current position, so that {@link TokenSource#reset} could return to it.
+     * The number of lexemes which can be consumed after the mark may be limited.
+     */
+    void mark();
+
+    /**
+     * Returns to the position remembered by {@link TokenSource#mark}, then forgets it
+     *
+     * @throws IllegalStateException if no position has been marked
+     */
+    void reset();
+}
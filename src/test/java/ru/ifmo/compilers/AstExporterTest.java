@@ -0,0 +1,179 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AstExporterTest {
+
+    private static final String PROGRAM = "Var a, b;\nBegin\n  a := 3;\n  WHILE a > 0 DO\n  Begin\n    b := b + a;\n" +
+            "    a := a - 1;\n  End\nEnd.\n";
+
+    private static final String SHARED = "Var a, b;\nBegin\n  a := 3 * (1 + 2);\n  b := 3 * (1 + 2);\nEnd.\n";
+
+    @TempDir
+    Path directory;
+
+    private static OutputTreeNode<Lexeme> parse(String code) throws IOException {
+        return ParseCache.Entry.parse(ByteBuffer.wrap(code.getBytes(StandardCharsets.ISO_8859_1)), 1).getRoot();
+    }
+
+    private static byte[] export(AstExporter.Format format, List<OutputTreeNode<Lexeme>> roots) throws IOException {
+        var output = new ByteArrayOutputStream();
+
+        try (var exporter = new AstExporter(format, Channels.newChannel(output))) {
+            exporter.writeHeader();
+            for (var root : roots)
+                exporter.write(root.getAst(), root.getIndex());
+        }
+
+        return output.toByteArray();
+    }
+
+    private static List<OutputTreeNode<Lexeme>> read(ByteBuffer input) {
+        var roots = new ArrayList<OutputTreeNode<Lexeme>>();
+
+        for (var reader = new AstExportReader(input); reader.hasNext(); )
+            roots.add(reader.next());
+
+        return roots;
+    }
+
+    private static void assertSameTrees(List<OutputTreeNode<Lexeme>> expected, List<OutputTreeNode<Lexeme>> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+            assertEquals(expected.get(i), actual.get(i));
+            assertEquals(expected.get(i).hashCode(), actual.get(i).hashCode());
+        }
+    }
+
+    @Test
+    void readsBinaryTrees() throws IOException {
+        var roots = List.of(parse(PROGRAM), parse(SHARED), parse("Var a;\nBegin\nEnd.\n"));
+        var bytes = export(AstExporter.Format.BINARY, roots);
+        var read = read(ByteBuffer.wrap(bytes));
+
+        assertSameTrees(roots, read);
+        assertTrue(read.get(0).getAst().isFrozen());
+        assertTrue(bytes.length < roots.get(0).toString().length());
+
+        var reader = new AstExportReader(ByteBuffer.wrap(bytes));
+        reader.skip();
+        reader.skip();
+        assertEquals(roots.get(2).toString(), reader.next().toString());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void readsMappedFile() throws IOException {
+        var code = new StringBuilder("Var a, b;\nBegin\n");
+        for (int i = 0; i < 20000; i++)
+            code.append("  a := 2 / (b - ").append(i).append(");\n");
+
+        var roots = List.of(parse(code.append("End.\n").toString()), parse(PROGRAM));
+        var file = directory.resolve("trees.bin");
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             var exporter = new AstExporter(AstExporter.Format.BINARY, channel)) {
+            exporter.writeHeader();
+            for (var root : roots)
+                exporter.write(root.getAst(), root.getIndex());
+        }
+
+        assertTrue(Files.size(file) > 64 * 1024);
+        assertSameTrees(roots, read(Lexer.mapFile(file)));
+    }
+
+    @Test
+    void writesLinkedSubtreesAsCopies() throws IOException {
+        var root = parse(SHARED);
+        var interner = new AstInterner();
+        var first = interner.intern(root);
+        var interned = interner.intern(parse(SHARED));
+
+        assertTrue(interned.getAst().size() < root.getAst().size());
+        assertEquals(first, interned);
+        assertArrayEquals(export(AstExporter.Format.BINARY, List.of(root)), export(AstExporter.Format.BINARY, List.of(interned)));
+        assertArrayEquals(export(AstExporter.Format.JSON, List.of(root)), export(AstExporter.Format.JSON, List.of(interned)));
+    }
+
+    @Test
+    void writesJson() throws IOException {
+        var root = new OutputTreeNode<Lexeme>("say \"\u00e9\u20ac\ud83d\ude00\"\n");
+        var child = root.addChild(new Lexeme(LexemeClass.Ident, "a", 1));
+        child.addChild(new Lexeme(LexemeClass.Const, "12", 10));
+        root.addChild(new Lexeme(LexemeClass.Separator, ";", 2));
+
+        var expected = "{\"label\":\"say \\\"\u00e9\u20ac\ud83d\ude00\\\"\\u000a\",\"children\":[" +
+                "{\"class\":\"Ident\",\"sign\":\"a\",\"line\":1,\"children\":[{\"class\":\"Const\",\"sign\":\"12\",\"line\":10}]}," +
+                "{\"class\":\"Separator\",\"sign\":\";\",\"line\":2}]}\n" +
+                "{\"label\":\"leaf\"}\n";
+
+        var bytes = export(AstExporter.Format.JSON, List.of(root, new OutputTreeNode<>("leaf")));
+        assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+
+        assertEquals(root.toString(), read(ByteBuffer.wrap(export(AstExporter.Format.BINARY, List.of(root)))).get(0).toString());
+    }
+
+    @Test
+    void rejectsMalformedStreams() throws IOException {
+        var bytes = export(AstExporter.Format.BINARY, List.of(parse(PROGRAM)));
+
+        assertThrows(IllegalArgumentException.class, () -> new AstExportReader(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5})));
+        assertTrue(read(ByteBuffer.wrap(Arrays.copyOf(bytes, 5))).isEmpty());
+
+        for (var length : new int[]{7, bytes.length / 2, bytes.length - 1}) {
+            var reader = new AstExportReader(ByteBuffer.wrap(Arrays.copyOf(bytes, length)));
+            assertThrows(IllegalArgumentException.class, reader::next);
+        }
+
+        var damaged = bytes.clone();
+        damaged[9] = (byte) 0xFF;
+        assertThrows(IllegalArgumentException.class, () -> new AstExportReader(ByteBuffer.wrap(damaged)).next());
+    }
+
+    @Test
+    void exportsCorrectPrograms() throws IOException {
+        Files.writeString(directory.resolve("correct.pas"), PROGRAM);
+        Files.writeString(directory.resolve("incorrect.pas"), "Var a;\nBegin\n  a := 1 + ;\nEnd.\n");
+        Files.writeString(directory.resolve("shared.pas"), SHARED);
+
+        for (var args : new String[][]{{"--export", "binary"}, {"--export", "BINARY", "--jobs", "2", "--cache", "cache"}}) {
+            var out = new ByteArrayOutputStream();
+            var err = new ByteArrayOutputStream();
+            var files = List.of("correct.pas", "incorrect.pas", "shared.pas");
+            var list = new ArrayList<>(List.of(args));
+            list.addAll(files);
+
+            new EntryPoint(Options.parse(list.toArray(String[]::new)), directory, new PrintStream(out), new PrintStream(err))
+                    .run(new ByteArrayInputStream(new byte[0]));
+
+            assertSameTrees(List.of(parse(PROGRAM), parse(SHARED)), read(ByteBuffer.wrap(out.toByteArray())));
+            assertTrue(err.toString().contains("expected"));
+        }
+
+        var out = new ByteArrayOutputStream();
+        new EntryPoint(Options.parse("--export", "json"), directory, new PrintStream(out), System.err)
+                .run(new ByteArrayInputStream(PROGRAM.getBytes(StandardCharsets.US_ASCII)));
+
+        assertEquals(new String(export(AstExporter.Format.JSON, List.of(parse(PROGRAM))), StandardCharsets.UTF_8), out.toString());
+    }
+}
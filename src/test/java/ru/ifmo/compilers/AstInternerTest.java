@@ -0,0 +1,126 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.ifmo.compilers.TestUtils.getResult;
+
+class AstInternerTest {
+
+    @TempDir
+    Path directory;
+
+    private static Parser parse(String code, AstInterner interner) {
+        var parser = new Parser(getResult(code));
+        parser.setInterner(interner);
+        assertTrue(parser.parseProgram());
+        return parser;
+    }
+
+    @Test
+    void sharesRepeatedSubtrees() {
+        var code = "Var a;\nBegin\n  a := a + 1; a := a + 1;\n  a := a + 1;\nEnd.";
+        var interner = new AstInterner();
+        var parser = parse(code, interner);
+        var plain = new Parser(getResult(code));
+        plain.parseProgram();
+
+        assertEquals(8, parser.getDeduplicatedNodes());
+        assertEquals(plain.getRoot(), parser.getRoot());
+        assertEquals(plain.getRoot().hashCode(), parser.getRoot().hashCode());
+        assertEquals(plain.getRoot().toString(), parser.getRoot().toString());
+    }
+
+    @Test
+    void sharesTreesBetweenPrograms() {
+        var code = "Var a;\nBegin\n  WHILE a < 10 DO a := a * 2;\nEnd.";
+        var interner = new AstInterner();
+        var first = parse(code, interner);
+        var second = parse(code, interner);
+
+        assertEquals(0, first.getDeduplicatedNodes());
+        assertEquals(first.getRoot().getAst().size() - 1, second.getDeduplicatedNodes());
+        assertEquals(1, second.getRoot().getAst().size());
+        assertTrue(second.getRoot().getAst().isLink(0));
+        assertEquals(first.getRoot(), second.getRoot());
+        assertEquals(first.getRoot().toString(), second.getRoot().toString());
+        assertEquals(first.getRoot().getChildren(), second.getRoot().getChildren());
+    }
+
+    @Test
+    void sharesSubtreesOnOtherLines() {
+        var interner = new AstInterner();
+        var first = parse("Var a;\nBegin\n  a := a + 1;\nEnd.", interner);
+        var code = "Var a;\nBegin\n\n  a := a + 1;\nEnd.";
+        var parser = parse(code, interner);
+        var plain = new Parser(getResult(code));
+        plain.parseProgram();
+
+        assertEquals(5, parser.getDeduplicatedNodes());
+        assertNotEquals(first.getRoot(), parser.getRoot());
+        assertEquals(plain.getRoot(), parser.getRoot());
+        assertEquals(plain.getRoot().toString(), parser.getRoot().toString());
+        assertEquals(plain.getRoot().getChildren(), parser.getRoot().getChildren());
+    }
+
+    @Test
+    void sharesStatementOnEveryLine() {
+        var code = "Var a;\nBegin\n" + "  a := a + 1;\n".repeat(1000) + "End.";
+        var parser = parse(code, new AstInterner());
+        var plain = new Parser(getResult(code));
+        plain.parseProgram();
+
+        assertEquals(999 * 4, parser.getDeduplicatedNodes());
+        assertEquals(plain.getRoot(), parser.getRoot());
+        assertEquals(plain.getRoot().toString(), parser.getRoot().toString());
+        assertEquals(plain.getRoot().toString(), new Simplifier().simplify(parser.getRoot()).toString());
+    }
+
+    @Test
+    void reportsLinesOfSharedSubtrees() {
+        var code = "Var a;\nBegin\n" + "  b := a + 1;\n".repeat(3) + "End.";
+        var parser = parse(code, new AstInterner());
+        var plain = new Parser(getResult(code));
+        plain.parseProgram();
+
+        assertEquals(8, parser.getDeduplicatedNodes());
+        assertEquals(Names.resolve(plain.getRoot()).getDiagnostics(), Names.resolve(parser.getRoot()).getDiagnostics());
+    }
+
+    @Test
+    void internsFilesInTheirOrderInParallel() throws IOException {
+        // The first file takes the longest, so the others are parsed before it is interned
+        Files.writeString(directory.resolve("large.pas"), "Var a;\nBegin\n" + "  a := a + 1;\n".repeat(5000) + "End.");
+        var args = new ArrayList<>(List.of("--hash-cons", "--no-lexemes", "large.pas"));
+        for (int i = 0; i < 8; i++) {
+            Files.writeString(directory.resolve(i + ".pas"), "Var a;\nBegin\n" + "  a := a + 1;\n".repeat(i + 1) + "End.");
+            args.add(i + ".pas");
+        }
+
+        var expected = run(args);
+        args.addAll(0, List.of("--jobs", "4"));
+
+        assertEquals(expected, run(args));
+    }
+
+    private String run(List<String> args) {
+        var err = new ByteArrayOutputStream();
+        var errStream = new PrintStream(err);
+
+        new EntryPoint(Options.parse(args.toArray(String[]::new)), directory, new PrintStream(new ByteArrayOutputStream()), errStream)
+                .run(new ByteArrayInputStream(new byte[0]));
+
+        errStream.flush();
+        return err.toString();
+    }
+}
@@ -0,0 +1,181 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AstTest {
+
+    private static TokenBuffer getTokens(String code) {
+        var lexer = new Lexer(new ByteArrayInputStream(code.getBytes()));
+
+        try (lexer) {
+            lexer.readToEnd();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return lexer.getTokens();
+    }
+
+    @Test
+    void linksChildrenInOrder() {
+        var ast = new Ast();
+        var root = ast.addLabel(Ast.NONE, "root");
+        var first = ast.addLexeme(root, new Lexeme(LexemeClass.Ident, "a", 1));
+        var second = ast.addLexeme(root, new Lexeme(LexemeClass.Const, "1", 2));
+        var nested = ast.addLabel(first, "nested");
+
+        assertEquals(4, ast.size());
+        assertEquals(first, ast.getFirstChild(root));
+        assertEquals(second, ast.getNextSibling(first));
+        assertEquals(Ast.NONE, ast.getNextSibling(second));
+        assertEquals(nested, ast.getFirstChild(first));
+        assertEquals(Ast.NONE, ast.getFirstChild(second));
+
+        assertFalse(ast.isLexeme(root));
+        assertEquals("root", ast.getContent(root));
+        assertEquals(LexemeClass.Const, ast.getLexemeClass(second));
+        assertEquals(2, ast.getLine(second));
+        assertEquals(new Lexeme(LexemeClass.Ident, "a", 1), ast.getLexeme(first));
+        assertEquals(ast.getSymbolTable(first).find("a"), ast.getSymbol(first));
+        assertNotEquals(SymbolTable.NONE, ast.getSymbol(first));
+        assertThrows(IllegalArgumentException.class, () -> ast.getLexeme(root));
+        assertThrows(IndexOutOfBoundsException.class, () -> ast.getFirstChild(4));
+    }
+
+    @Test
+    void refersToBuffer() {
+        var tokens = getTokens("a := 12;");
+        var ast = new Ast(tokens);
+        var root = ast.addToken(Ast.NONE, 1);
+        ast.addToken(root, 0);
+        ast.addToken(root, 2);
+
+        assertEquals(new Lexeme(LexemeClass.AssignmentOperator, ":=", 1), ast.getLexeme(root));
+        assertEquals("12", ast.getLexeme(ast.getNextSibling(ast.getFirstChild(root))).getSign());
+        assertThrows(IllegalStateException.class, () -> new Ast().addToken(Ast.NONE, 0));
+    }
+
+    @Test
+    void bufferedTreeEqualsCopiedTree() {
+        var code = "Var a, b;\nBegin\n  a := 1 + b;\n  WHILE a < 10 DO Begin a := a * 2; End\nEnd.";
+        var buffered = new Parser(getTokens(code));
+        var copied = new Parser(TokenSource.of(getTokens(code).asList()));
+
+        assertTrue(buffered.parseProgram());
+        assertTrue(copied.parseProgram());
+        assertEquals(copied.getRoot(), buffered.getRoot());
+        assertEquals(copied.getRoot().hashCode(), buffered.getRoot().hashCode());
+        assertEquals(copied.getRoot().toString(), buffered.getRoot().toString());
+    }
+
+    @Test
+    void printsTree() throws IOException {
+        var ast = new Ast();
+        var root = ast.addLabel(Ast.NONE, "root");
+        var first = ast.addLabel(root, "first");
+        ast.addLabel(ast.addLabel(first, "nested"), "leaf");
+        ast.addLabel(first, "last nested");
+        ast.addLexeme(root, new Lexeme(LexemeClass.Ident, "a", 1));
+
+        var n = System.lineSeparator();
+        var expected = "root" + n +
+                "│   " + n +
+                "├── first" + n +
+                "│   │   " + n +
+                "│   ├── nested" + n +
+                "│   │   │   " + n +
+                "│   │   └── leaf" + n +
+                "│   │   " + n +
+                "│   └── last nested" + n +
+                "│   " + n +
+                "└── Lexeme(lexemeClass=Ident, sign=a, line=1)" + n;
+
+        var writer = new StringWriter();
+        AstPrinter.print(ast, root, writer);
+
+        assertEquals(expected, writer.toString());
+        assertEquals(expected, new OutputTreeNode<Lexeme>(ast, root).toString());
+    }
+
+    @Test
+    void printsDeepTree() throws IOException {
+        var ast = new Ast();
+        var node = ast.addLabel(Ast.NONE, "root");
+        for (int i = 0; i < 20_000; i++)
+            node = ast.addLabel(node, "node");
+
+        var lines = new long[1];
+        var writer = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    if (buffer[i] == '\n')
+                        lines[0]++;
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        var buffered = new BufferedWriter(writer);
+        AstPrinter.print(ast, 0, buffered);
+        buffered.flush();
+
+        assertEquals(40_001, lines[0]);
+    }
+
+    private static Ast buildChain(int depth, String leaf) {
+        var ast = new Ast();
+        var node = ast.addLabel(Ast.NONE, "root");
+        for (int i = 0; i < depth; i++)
+            node = ast.addLexeme(node, new Lexeme(LexemeClass.Ident, "a", i));
+
+        ast.addLexeme(node, new Lexeme(LexemeClass.Const, leaf, depth));
+        return ast;
+    }
+
+    @Test
+    void comparesDeepTrees() {
+        var first = buildChain(100_000, "1");
+        var second = buildChain(100_000, "1");
+        var different = buildChain(100_000, "2");
+
+        assertTrue(Ast.subtreeEquals(first, 0, second, 0));
+        assertFalse(Ast.subtreeEquals(first, 0, different, 0));
+        assertEquals(first.getSubtreeHash(0), second.getSubtreeHash(0));
+
+        var hash = first.getSubtreeHash(0);
+        first.freeze();
+        second.freeze();
+        different.freeze();
+
+        assertEquals(hash, first.getSubtreeHash(0));
+        assertTrue(Ast.subtreeEquals(first, 0, second, 0));
+        assertFalse(Ast.subtreeEquals(first, 0, different, 0));
+        assertEquals(new OutputTreeNode<Lexeme>(first, 0), new OutputTreeNode<Lexeme>(second, 0));
+    }
+
+    @Test
+    void frozenTreeCannotBeChanged() {
+        var ast = new Ast();
+        var root = ast.addLabel(Ast.NONE, "root");
+        ast.freeze();
+
+        assertTrue(ast.isFrozen());
+        assertThrows(IllegalStateException.class, () -> ast.addLabel(root, "child"));
+    }
+}
@@ -0,0 +1,92 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the tests of {@link InterpreterTest} on the compiled programs
+ */
+class BytecodeGeneratorTest extends InterpreterTest {
+
+    @Override
+    Interpreter compile(OutputTreeNode<Lexeme> root) {
+        return BytecodeGenerator.compile(Interpreter.compile(root));
+    }
+
+    @Override
+    int maxLoopDepth() {
+        return BytecodeGenerator.MAX_LOOP_DEPTH;
+    }
+
+    @Test
+    void rejectsTooDeeplyNestedLoops() {
+        var root = parse(nestedLoops(BytecodeGenerator.MAX_LOOP_DEPTH + 1));
+        assertThrows(IllegalStateException.class, () -> compile(root));
+    }
+
+    @Test
+    void splitsLongPrograms() {
+        var code = new StringBuilder("Var a, b;\nBegin\n");
+        for (int i = 0; i < 50_000; i++)
+            code.append("  a := a + 1;\n");
+        code.append("  WHILE 3 > b DO\n  Begin\n");
+        for (int i = 0; i < 5_000; i++)
+            code.append("    a := a - 1;\n");
+        code.append("    b := b + 1;\n  End\nEnd.");
+
+        var result = run(code.toString());
+
+        assertEquals(35_000, result.get("a"));
+        assertEquals(3, result.get("b"));
+    }
+
+    @Test
+    void splitsLongExpressions() {
+        var code = new StringBuilder("Var a, b;\nBegin\n  b := 2;\n  a := b");
+        for (int i = 0; i < 100_000; i++)
+            code.append(" + b");
+        code.append(";\nEnd.");
+
+        assertEquals(200_002, run(code.toString()).get("a"));
+    }
+
+    private static String name(int index) {
+        return "v" + (char) ('a' + index / 26 / 26) + (char) ('a' + index / 26 % 26) + (char) ('a' + index % 26);
+    }
+
+    @Test
+    void manyVariables() {
+        var code = new StringBuilder("Var ").append(name(0));
+        for (int i = 1; i < 1000; i++)
+            code.append(", ").append(name(i));
+        code.append(";\nBegin\n  ").append(name(0)).append(" := 1;\n");
+        for (int i = 1; i < 1000; i++)
+            code.append("  ").append(name(i)).append(" := ").append(name(i - 1)).append(" + 1;\n");
+        code.append("End.");
+
+        assertEquals(1000, run(code.toString()).get(name(999)));
+    }
+
+    @Test
+    void unloadsCompiledPrograms() throws InterruptedException {
+        var interpreter = compile(parse("Var a;\nBegin\n  a := 1;\nEnd."));
+        var loader = interpreter.getProgram().getClass().getClassLoader();
+
+        assertNotSame(BytecodeGenerator.class.getClassLoader(), loader);
+        assertEquals(1, interpreter.run(Interpreter.DEFAULT_BUDGET)[0]);
+
+        var reference = new WeakReference<>(loader);
+        interpreter = null;
+        loader = null;
+
+        for (int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(reference.get());
+    }
+}
@@ -0,0 +1,208 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileServerTest {
+
+    private static final String PROGRAM = "Var a, b;\nBegin\n  a := 3;\n  WHILE a > 0 DO\n  Begin\n    b := b + a;\n" +
+            "    a := a - 1;\n  End\nEnd.\n";
+
+    private static CompileServer server;
+
+    @TempDir
+    static Path directory;
+
+    @TempDir
+    static Path tokenDirectory;
+
+    @BeforeAll
+    static void start() throws IOException {
+        server = new CompileServer(0, 4, tokenDirectory);
+        new Thread(() -> server.serve(System.err)).start();
+
+        Files.writeString(directory.resolve("first.pas"), PROGRAM);
+        Files.writeString(directory.resolve("second.pas"), "Var a;\nBegin\n  a := 1 + ;\nEnd.\n");
+        Files.writeString(directory.resolve("shared.pas"), "Var a, b;\nBegin\n  a := (1 + 2) * 3;\n  b := (1 + 2) * 3;\nEnd.\n");
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        server.close();
+    }
+
+    private static String[] answer(String input, String... args) throws IOException {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        CompileClient.request(server.getPort(), tokenDirectory, directory, args, new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(out), new PrintStream(err));
+
+        return new String[]{out.toString(), err.toString()};
+    }
+
+    private static String[] expected(String input, String... args) {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        var outStream = new PrintStream(out);
+        var errStream = new PrintStream(err);
+
+        try {
+            new EntryPoint(Options.parse(args), directory, outStream, errStream).run(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)));
+        } catch (IllegalArgumentException e) {
+            errStream.println(e.getMessage());
+        }
+
+        outStream.flush();
+        errStream.flush();
+        return new String[]{out.toString(), err.toString()};
+    }
+
+    private static void assertSameAnswer(String input, String... args) throws IOException {
+        assertArrayEquals(expected(input, args), answer(input, args));
+    }
+
+    @Test
+    void processesFiles() throws IOException {
+        assertSameAnswer("", "first.pas", "second.pas");
+        assertSameAnswer("", "--no-lexemes", "--run", "--ssa", "first.pas");
+        assertSameAnswer("", "--jobs", "2", "first.pas", "second.pas", "first.pas");
+        assertTrue(answer("", "first.pas")[0].contains("Creating the AST:"));
+    }
+
+    @Test
+    void readsInputIfNoFileIsOpen() throws IOException {
+        assertSameAnswer(PROGRAM, "--run");
+        assertSameAnswer(PROGRAM, "--no-lexemes", "missing.pas");
+        assertTrue(answer(PROGRAM, "missing.pas")[1].startsWith("Unable to open file missing.pas for reading"));
+        assertTrue(answer("", "missing.pas")[1].startsWith(
+                "Unable to open file missing.pas for reading: java.nio.file.NoSuchFileException: missing.pas\n"));
+        assertTrue(answer("", "--validate", "missing.pas")[1].startsWith(
+                "Unable to open file missing.pas for reading: java.nio.file.NoSuchFileException: missing.pas\n"));
+
+        var large = new StringBuilder("Var a;\nBegin\n");
+        for (int i = 0; i < 20000; i++)
+            large.append("  a := a + ").append(i).append(";\n");
+
+        assertSameAnswer(large.append("End.\n").toString());
+    }
+
+    @Test
+    void reportsInvalidOptions() throws IOException {
+        assertArrayEquals(new String[]{"", "Option --jobs expects a positive number, but got 0\n"}, answer("", "--jobs", "0"));
+    }
+
+    @Test
+    void isolatesConcurrentRequests() throws Exception {
+        var expected = expected("", "--hash-cons", "shared.pas");
+        var executor = Executors.newFixedThreadPool(8);
+
+        try {
+            var requests = new ArrayList<Callable<String[]>>();
+            for (int i = 0; i < 32; i++)
+                requests.add(() -> answer("", "--hash-cons", "shared.pas"));
+
+            for (var answer : executor.invokeAll(requests))
+                assertArrayEquals(expected, answer.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void keepsSignsOfRequestsOutOfSharedTable() throws IOException {
+        var program = "Var requestOnly;\nBegin\n  requestOnly := 1 + 2;\nEnd.\n";
+        answer(program, "--hash-cons", "--simplify", "--run", "--ssa");
+        answer(program, "--jit", "--run");
+
+        assertEquals(SymbolTable.NONE, SymbolTable.SHARED.find("requestOnly"));
+    }
+
+    @Test
+    void failsToConnectWithoutServer() throws IOException {
+        int port;
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        assertThrows(ConnectException.class, () -> CompileClient.request(port, tokenDirectory, directory, new String[0],
+                new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()), System.err));
+
+        Files.write(CompileServer.tokenFile(tokenDirectory, port), new byte[CompileServer.TOKEN_LENGTH]);
+        assertThrows(ConnectException.class, () -> CompileClient.request(port, tokenDirectory, directory, new String[0],
+                new ByteArrayInputStream(new byte[0]), new PrintStream(new ByteArrayOutputStream()), System.err));
+    }
+
+    @Test
+    void writesTokenReadableOnlyByOwner() throws IOException {
+        var file = CompileServer.tokenFile(tokenDirectory, server.getPort());
+
+        assertEquals(CompileServer.TOKEN_LENGTH, Files.size(file));
+        assertEquals(Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE), Files.getPosixFilePermissions(file));
+    }
+
+    @Test
+    void rejectsWrongToken() throws IOException {
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            var output = new DataOutputStream(socket.getOutputStream());
+            output.write(new byte[CompileServer.TOKEN_LENGTH]);
+            output.flush();
+
+            assertEquals(-1, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    void idleClientsDoNotDelayRequests() throws IOException {
+        var idle = new ArrayList<Socket>();
+        answer("", "first.pas");
+
+        try {
+            // More idle connections than the threads processing the requests
+            for (int i = 0; i < 8; i++)
+                idle.add(new Socket(InetAddress.getLoopbackAddress(), server.getPort()));
+
+            var start = System.nanoTime();
+            assertSameAnswer("", "first.pas");
+            assertTrue(System.nanoTime() - start < CompileServer.TOKEN_TIMEOUT * 1_000_000L,
+                    "The request has waited for the idle clients");
+
+            for (var socket : idle)
+                assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            for (var socket : idle)
+                socket.close();
+        }
+    }
+
+    @Test
+    void removesTokenFileWhenClosed() throws IOException {
+        var other = new CompileServer(0, 1, tokenDirectory);
+        var file = CompileServer.tokenFile(tokenDirectory, other.getPort());
+
+        assertTrue(Files.exists(file));
+        other.close();
+        assertFalse(Files.exists(file));
+    }
+}
@@ -0,0 +1,241 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalParserTest {
+
+    private static final String PROGRAM = "Var a, b;\nBegin\n  a := 1;\n  { a comment\n  b := 2; }\n" +
+            "  WHILE 3 > a DO\n  Begin\n    a := a + 1;\n    b := b * 2;\n  End\n  b := -b;\nEnd.\n";
+
+    private static String largeProgram(int statements) {
+        var code = new StringBuilder("Var a, b;\nBegin\n");
+        for (int i = 0; i < statements; i++)
+            code.append(i % 10 == 0 ? "  WHILE a > 0 DO a := a - 1;\n" : "  a := " + i + ";\n");
+
+        return code.append("End.\n").toString();
+    }
+
+    private static void assertMatchesFullParse(IncrementalParser state) throws IOException {
+        var errors = new ByteArrayOutputStream();
+        var lexer = new Lexer(ByteBuffer.wrap(state.getText().getBytes(StandardCharsets.ISO_8859_1)));
+        lexer.setErrors(new PrintStream(errors));
+        lexer.readToEnd();
+
+        var parser = new Parser(lexer.getTokens());
+        var isCorrect = parser.parseProgram();
+
+        assertIterableEquals(lexer.getLexemes(), state.getLexemes());
+        assertEquals(errors.toString(), state.getUndefinedSequences().stream().map(error -> error + "\n").reduce("", String::concat));
+        assertEquals(isCorrect, state.isCorrect());
+        assertIterableEquals(parser.getErrorMessages(), state.getErrorMessages());
+        assertEquals(parser.getRoot().toString(), state.getRoot().toString());
+        assertEquals(parser.getRoot(), state.getRoot());
+    }
+
+    @Test
+    void parsesWholeText() throws IOException {
+        var state = IncrementalParser.parse(PROGRAM);
+
+        assertTrue(state.isCorrect());
+        assertEquals(PROGRAM, state.getText());
+        assertMatchesFullParse(state);
+    }
+
+    @Test
+    void reparsesOnlyEditedOperator() throws IOException {
+        var code = largeProgram(1000);
+        var state = IncrementalParser.parse(code);
+        var edited = state.edit(code.indexOf("a := 501;") + 5, 3, "7 + b");
+
+        assertEquals(1, edited.getRelexedLines());
+        assertEquals(6, edited.getReparsedLexemes());
+        assertMatchesFullParse(edited);
+
+        var ast = edited.getRoot().getAst();
+        var first = ast.getFirstChild(edited.getRoot().getIndex());
+        assertTrue(ast.isLink(first));
+        assertSame(state.getRoot().getAst(), ast.getTargetAst(first));
+    }
+
+    @Test
+    void linksOperatorsMovedToOtherLines() throws IOException {
+        var code = largeProgram(1000);
+        var state = IncrementalParser.parse(code);
+        var edited = state.edit(code.indexOf("a := 501;"), 0, "b := 0;\n\n  ");
+
+        assertMatchesFullParse(edited);
+
+        var ast = edited.getRoot().getAst();
+        var children = 0;
+        var last = Ast.NONE;
+
+        for (int child = ast.getFirstChild(edited.getRoot().getIndex()); child != Ast.NONE; child = ast.getNextSibling(child)) {
+            assertTrue(ast.isLink(child));
+            children++;
+            last = child;
+        }
+
+        assertEquals(children + 1, ast.size());
+        assertSame(state.getRoot().getAst(), ast.getTargetAst(last));
+        assertEquals(2, ast.getLineShift(last));
+    }
+
+    @Test
+    void reparsesOnlyEditedLoopBody() throws IOException {
+        var state = IncrementalParser.parse(PROGRAM);
+        var edited = state.edit(PROGRAM.indexOf("b * 2") + 4, 1, "3");
+
+        assertEquals(6, edited.getReparsedLexemes());
+        assertMatchesFullParse(edited);
+    }
+
+    @Test
+    void keepsAstIfOnlySpacesChange() throws IOException {
+        var state = IncrementalParser.parse(PROGRAM);
+        var edited = state.edit(PROGRAM.indexOf(":="), 0, "   ");
+
+        assertEquals(0, edited.getReparsedLexemes());
+        assertSame(state.getRoot(), edited.getRoot());
+        assertMatchesFullParse(edited);
+    }
+
+    @Test
+    void movesFollowingLines() throws IOException {
+        var code = largeProgram(100);
+        var state = IncrementalParser.parse(code);
+        var edited = state.edit(code.indexOf("a := 51;"), 0, "b := 0;\n\n  ");
+
+        assertEquals(3, edited.getRelexedLines());
+        assertMatchesFullParse(edited);
+
+        edited = edited.edit(code.indexOf("a := 51;"), "b := 0;\n\n  ".length(), "");
+        assertMatchesFullParse(edited);
+        assertEquals(code, edited.getText());
+    }
+
+    @Test
+    void rereadsLinesUntilCommentStateIsSame() throws IOException {
+        var code = largeProgram(100);
+        var state = IncrementalParser.parse(code);
+        var offset = code.indexOf("a := 51;");
+
+        var opened = state.edit(offset, 0, "{");
+        assertFalse(opened.isCorrect());
+        assertTrue(opened.getRelexedLines() > 40);
+        assertMatchesFullParse(opened);
+
+        var closed = opened.edit(code.indexOf("a := 59;") + 1, 0, "}");
+        assertTrue(closed.isCorrect());
+        assertMatchesFullParse(closed);
+
+        var commented = closed.edit(code.indexOf("a := 55;") + 1, 0, "x");
+        assertEquals(1, commented.getRelexedLines());
+        assertEquals(0, commented.getReparsedLexemes());
+        assertMatchesFullParse(commented);
+    }
+
+    @Test
+    void rereadsLexemesSpanningComments() throws IOException {
+        var code = "Var ab, abc;\nBegin\n  ab{\n  } := 1;\n  abc := 2;\nEnd.";
+        var state = IncrementalParser.parse(code);
+        assertTrue(state.isCorrect());
+
+        var joined = state.edit(code.indexOf("} :=") + 1, 1, "c");
+        assertTrue(joined.isCorrect());
+        assertEquals("abc", joined.getLexemes().get(6).getSign());
+        assertMatchesFullParse(joined);
+
+        var split = joined.edit(code.indexOf("ab{") + 2, 0, " ");
+        assertMatchesFullParse(split);
+
+        var renamed = state.edit(code.indexOf("ab{"), 1, "x");
+        assertMatchesFullParse(renamed);
+
+        var opened = state.edit(code.indexOf("abc :=") + 2, 0, "{");
+        assertMatchesFullParse(opened.edit(code.indexOf("End."), 0, "} "));
+    }
+
+    @Test
+    void widensToEnclosingOperator() throws IOException {
+        var code = "Var a;\nBegin\n  WHILE a DO a := 1;\n  a := 2;\nEnd.";
+        var state = IncrementalParser.parse(code);
+        var edited = state.edit(code.indexOf("a := 1;"), 0, "a := 3; ");
+
+        assertTrue(edited.isCorrect());
+        assertMatchesFullParse(edited);
+    }
+
+    @Test
+    void rejectsEditsOutOfText() {
+        var state = IncrementalParser.parse(PROGRAM);
+
+        assertThrows(IndexOutOfBoundsException.class, () -> state.edit(PROGRAM.length(), 1, ""));
+        assertThrows(IndexOutOfBoundsException.class, () -> state.edit(-1, 0, "a"));
+    }
+
+    @Test
+    void randomEditsMatchFullParse() throws IOException {
+        var random = new Random(20);
+        var incremental = 0;
+        var snippets = new String[]{"a := 1;", "b := a + 2;\n", "{", "}", "\n", " ", "WHILE a > 1 DO ", "Begin ", "End ",
+                "x", "7", ";", "-", "(", ")", "#", "End."};
+
+        for (int round = 0; round < 5; round++) {
+            var state = IncrementalParser.parse(largeProgram(30));
+            var correct = state;
+
+            for (int step = 0; step < 300; step++) {
+                // Editing mostly correct programs, since an incorrect one is always parsed anew
+                if (random.nextInt(4) != 0)
+                    state = correct;
+
+                var length = state.getText().length();
+                var offset = random.nextInt(length + 1);
+
+                IncrementalParser edited;
+
+                if (random.nextBoolean() && offset < length) {
+                    edited = state.edit(offset, random.nextInt(Math.min(8, length - offset)) + 1, "");
+                } else {
+                    edited = state.edit(offset, 0, snippets[random.nextInt(snippets.length)]);
+                }
+
+                assertMatchesFullParse(edited);
+
+                if (edited.getReparsedLexemes() < edited.getTokens().size())
+                    incremental++;
+
+                state = edited;
+                if (edited.isCorrect())
+                    correct = edited;
+            }
+        }
+
+        assertTrue(incremental > 100, "Only " + incremental + " edits have been parsed incrementally");
+    }
+
+    @Test
+    void typingKeepsProgramCorrect() throws IOException {
+        var state = IncrementalParser.parse(largeProgram(50));
+        var offset = state.getText().indexOf("a := 25;");
+
+        for (var symbol : List.of("b", " ", ":", "=", " ", "a", " ", "-", " ", "(", "2", ")", ";", "\n", " ")) {
+            state = state.edit(offset, 0, symbol);
+            offset++;
+            assertMatchesFullParse(state);
+        }
+
+        assertTrue(state.isCorrect());
+        assertTrue(state.getRoot().getAst().getLinkedAstCount() <= 8);
+    }
+}
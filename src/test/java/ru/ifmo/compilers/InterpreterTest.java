@@ -0,0 +1,135 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.ifmo.compilers.TestUtils.getResult;
+
+class InterpreterTest {
+
+    static OutputTreeNode<Lexeme> parse(String code) {
+        var parser = new Parser(getResult(code));
+        assertTrue(parser.parseProgram(), () -> String.join("\n", parser.getErrorMessages()));
+        return parser.getRoot();
+    }
+
+    Interpreter compile(OutputTreeNode<Lexeme> root) {
+        return Interpreter.compile(root);
+    }
+
+    Map<String, Long> run(String code, long budget) {
+        var interpreter = compile(parse(code));
+        var values = interpreter.run(budget);
+        var result = new HashMap<String, Long>();
+
+        for (int i = 0; i < values.length; i++)
+            result.put(interpreter.getVariables().get(i), values[i]);
+
+        return result;
+    }
+
+    Map<String, Long> run(String code) {
+        return run(code, Interpreter.DEFAULT_BUDGET);
+    }
+
+    int maxLoopDepth() {
+        return 5000;
+    }
+
+    static String nestedLoops(int depth) {
+        return "Var a;\nBegin\n  a := 1;\n" + "WHILE a > 0 DO\nBegin\n".repeat(depth) + "a := 0;\n"
+                + "End\n".repeat(depth) + "End.";
+    }
+
+    @Test
+    void assignsConstants() {
+        var result = run("Var a, b;\nBegin\n  a := 5;\n  b := a;\nEnd.");
+
+        assertEquals(Map.of("a", 5L, "b", 5L), result);
+    }
+
+    @Test
+    void operatorsAreRightAssociative() {
+        var result = run("Var a, b, c, d;\nBegin\n  a := 2 * 3 + 1;\n  b := 10 - 4 - 3;\n  c := (2 * (3 + 1));\n  d := 20 / 10 / 5;\nEnd.");
+
+        assertEquals(8, result.get("a"));
+        assertEquals(9, result.get("b"));
+        assertEquals(8, result.get("c"));
+        assertEquals(10, result.get("d"));
+    }
+
+    @Test
+    void unaryMinusNegatesRestOfExpression() {
+        var result = run("Var a, b, c;\nBegin\n  a := 3;\n  b := -a + 1;\n  c := -(-a);\nEnd.");
+
+        assertEquals(-4, result.get("b"));
+        assertEquals(3, result.get("c"));
+    }
+
+    @Test
+    void comparisons() {
+        var result = run("Var a, b, c, d;\nBegin\n  a := 1 < 2;\n  b := 1 > 2;\n  c := 2 = 2;\n  d := 1 + 1 = 2;\nEnd.");
+
+        assertEquals(Map.of("a", 1L, "b", 0L, "c", 1L, "d", 1L), result);
+    }
+
+    @Test
+    void loops() {
+        var result = run("Var i, s, j;\nBegin\n  WHILE 10 > i DO\n  Begin\n    i := i + 1;\n    j := 0;\n" +
+                "    WHILE i > j DO\n    Begin\n      j := j + 1;\n      s := s + 1;\n    End\n  End\nEnd.");
+
+        assertEquals(10, result.get("i"));
+        assertEquals(55, result.get("s"));
+    }
+
+    @Test
+    void longExpression() {
+        var code = new StringBuilder("Var a;\nBegin\n  a := -1");
+        for (int i = 0; i < 10_000; i++)
+            code.append(" + 1");
+        code.append(";\nEnd.");
+
+        assertEquals(-10_001, run(code.toString()).get("a"));
+    }
+
+    @Test
+    void budgetStopsRunawayLoop() {
+        var code = "Var a;\nBegin\n  WHILE 1 DO a := a + 1;\nEnd.";
+
+        assertThrows(IllegalStateException.class, () -> run(code, 1000));
+        assertEquals(3, run("Var a;\nBegin\n  a := 1;\n  a := 2;\n  a := 3;\nEnd.", 3).get("a"));
+        assertThrows(IllegalStateException.class, () -> run("Var a;\nBegin\n  a := 1;\n  a := 2;\nEnd.", 1));
+    }
+
+    @Test
+    void divisionByZero() {
+        assertThrows(ArithmeticException.class, () -> run("Var a;\nBegin\n  a := 1 / a;\nEnd."));
+    }
+
+    @Test
+    void deeplyNestedLoops() {
+        assertEquals(Map.of("a", 0L), run(nestedLoops(maxLoopDepth())));
+    }
+
+    @Test
+    void undeclaredVariable() {
+        var root = parse("Var a;\nBegin\n  b := a;\nEnd.");
+
+        var e = assertThrows(IllegalArgumentException.class, () -> compile(root));
+        assertEquals("On line 3 variable 'b' is not declared", e.getMessage());
+    }
+
+    @Test
+    void runsInternedTree() {
+        var interner = new AstInterner();
+        var code = "Var a, b;\nBegin\n  a := a + 1; a := a + 1;\n  WHILE 5 > b DO b := b + a;\nEnd.";
+        var parser = new Parser(getResult(code));
+        parser.setInterner(interner);
+        assertTrue(parser.parseProgram());
+
+        assertArrayEquals(new long[]{2, 6}, compile(parser.getRoot()).run(Interpreter.DEFAULT_BUDGET));
+    }
+}
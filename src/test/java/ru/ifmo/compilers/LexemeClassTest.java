@@ -3,6 +3,8 @@ package ru.ifmo.compilers;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 class LexemeClassTest {
@@ -21,4 +23,30 @@ class LexemeClassTest {
     void number() {
         assertEquals(LexemeClass.Const, LexemeClass.determine("123"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void tableMatchesDetermine() {
+        var table = LexerTable.INSTANCE;
+
+        for (var string : List.of("End", "End.", "Endx", "Begin", "Beg", "WHILE", "WHILEx", ":", ":=", "abc", "123",
+                "<", "=", "DO", "Var", "V", "\u00ff")) {
+            int state = LexerTable.START;
+            for (var symbol : string.toCharArray())
+                state = table.next(state, symbol);
+
+            assertEquals(LexemeClass.determine(string), table.classOf(state), string);
+        }
+    }
+
+    @Test
+    void tableEmitsBeforeUndefined() {
+        var table = LexerTable.INSTANCE;
+
+        int state = table.next(LexerTable.START, '1');
+        assertEquals(LexerTable.EMIT, table.next(state, 'a') & LexerTable.EMIT);
+
+        state = table.next(table.next(LexerTable.START, ':'), '=');
+        assertEquals(LexemeClass.AssignmentOperator, table.classOf(state));
+        assertEquals(LexerTable.EMIT, table.next(state, '1') & LexerTable.EMIT);
+    }
+}
@@ -3,11 +3,20 @@ package ru.ifmo.compilers;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static ru.ifmo.compilers.TestUtils.getResult;
 
 class LexerTest {
@@ -262,4 +271,197 @@ class LexerTest {
 
         assertIterableEquals(expected, getResult(code));
     }
-}
\ No newline at end of file
+
+    @Test
+    void lastLexemeAfterOperator() {
+        var code = "a:=b+c";
+
+        var expected = List.of(
+                new Lexeme(LexemeClass.Ident, "a", 1),
+                new Lexeme(LexemeClass.AssignmentOperator, ":=", 1),
+                new Lexeme(LexemeClass.Ident, "b", 1),
+                new Lexeme(LexemeClass.ArithmeticOperator, "+", 1),
+                new Lexeme(LexemeClass.Ident, "c", 1)
+        );
+
+        assertIterableEquals(expected, getResult(code));
+    }
+
+    @Test
+    void lexemeOnChunkBoundary() throws IOException {
+        var code = " ".repeat(64 * 1024 - 2) + "Begin\nEnd.";
+
+        var expected = List.of(
+                new Lexeme(LexemeClass.Keyword, "Begin", 1),
+                new Lexeme(LexemeClass.Keyword, "End.", 2)
+        );
+
+        assertIterableEquals(expected, getResult(code));
+
+        var buffer = ByteBuffer.allocateDirect(code.length()).put(code.getBytes());
+        try (var lexer = new Lexer(buffer.flip())) {
+            lexer.readToEnd();
+            assertIterableEquals(expected, lexer.getLexemes());
+        }
+    }
+
+    @Test
+    void mappedFile() throws IOException {
+        var code = "Var a;\nBegin\n  a := 1; { comment }\nEnd.";
+        var file = Files.createTempFile("lexer", ".pas");
+
+        try {
+            Files.writeString(file, code);
+
+            try (var lexer = Lexer.map(file)) {
+                lexer.readToEnd();
+                assertIterableEquals(getResult(code), lexer.getLexemes());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void commentDoesNotSeparateLexemes() {
+        var code = "Var ab{comment}cd;\nBegin ab{\n}cd := 1{x}0; End.";
+
+        var expected = List.of(
+                new Lexeme(LexemeClass.Keyword, "Var", 1),
+                new Lexeme(LexemeClass.Ident, "abcd", 1),
+                new Lexeme(LexemeClass.Separator, ";", 1),
+                new Lexeme(LexemeClass.Keyword, "Begin", 2),
+                new Lexeme(LexemeClass.Ident, "abcd", 3),
+                new Lexeme(LexemeClass.AssignmentOperator, ":=", 3),
+                new Lexeme(LexemeClass.Const, "10", 3),
+                new Lexeme(LexemeClass.Separator, ";", 3),
+                new Lexeme(LexemeClass.Keyword, "End.", 3)
+        );
+
+        var result = getResult(code);
+
+        assertIterableEquals(expected, result);
+        assertEquals("abcd", result.get(4).getSign());
+        assertTrue(result.get(1).signEquals(result.get(4)));
+    }
+
+    @Test
+    void commentInsideLexemeIsReadByAllSources() throws IOException {
+        var code = ("Var ab{ x }cd;\nBegin ab{\n\n}cd := 1{\n}0; End{ y }.\n").repeat(20);
+        var expected = getResult(code);
+
+        for (int partSize : new int[]{1, 3, 16}) {
+            var parallel = new Lexer(ByteBuffer.wrap(code.getBytes()));
+            parallel.readToEnd(4, partSize);
+
+            assertIterableEquals(expected, parallel.getLexemes());
+        }
+
+        var source = new Lexer(new ByteArrayInputStream(code.getBytes())).tokenSource(2);
+        var lexemes = new ArrayList<Lexeme>();
+        while (source.peek() != null)
+            lexemes.add(source.next());
+
+        assertIterableEquals(expected, lexemes);
+    }
+
+    @Test
+    void manyLexemes() {
+        var code = "a;\n".repeat(1000);
+
+        var result = getResult(code);
+
+        assertEquals(2000, result.size());
+        assertEquals(new Lexeme(LexemeClass.Ident, "a", 1000), result.get(1998));
+        assertEquals(new Lexeme(LexemeClass.Separator, ";", 1000), result.get(1999));
+    }
+
+    @Test
+    void lazySourceMatchesReadToEnd() {
+        var code = "Var abc;\nBegin\n" + " ".repeat(64 * 1024 - 20) + "abc := 12345;\n{ x }End.";
+        var source = new Lexer(new ByteArrayInputStream(code.getBytes())).tokenSource(4);
+
+        var lexemes = new ArrayList<Lexeme>();
+        while (source.peek() != null)
+            lexemes.add(source.next());
+
+        assertIterableEquals(getResult(code), lexemes);
+        assertThrows(NoSuchElementException.class, source::next);
+    }
+
+    @Test
+    void lazySourceMarkAndReset() {
+        var source = new Lexer(new ByteArrayInputStream("a := 1;".getBytes())).tokenSource(2);
+
+        source.mark();
+        assertEquals(new Lexeme(LexemeClass.Ident, "a", 1), source.next());
+        assertEquals(new Lexeme(LexemeClass.AssignmentOperator, ":=", 1), source.next());
+        source.reset();
+
+        assertEquals(new Lexeme(LexemeClass.Ident, "a", 1), source.next());
+        source.mark();
+        source.next();
+        source.next();
+        assertThrows(IllegalStateException.class, source::next);
+    }
+
+    @Test
+    void bufferSourceReadsPart() throws IOException {
+        var lexer = new Lexer(new ByteArrayInputStream("Var abc;\nBegin abc := 1; End.".getBytes()));
+        lexer.readToEnd();
+        var tokens = lexer.getTokens();
+        var source = new BufferTokenSource(tokens, 4, 8);
+
+        assertEquals(LexemeClass.Ident, source.peekClass());
+        assertEquals(tokens.getSymbolTable().find("abc"), source.peekSymbol());
+
+        source.mark();
+        assertIterableEquals(tokens.asList().subList(4, 6), List.of(source.next(), source.next()));
+        source.reset();
+
+        var lexemes = new ArrayList<Lexeme>();
+        while (source.peekClass() != null)
+            lexemes.add(source.next());
+
+        assertIterableEquals(tokens.asList().subList(4, 8), lexemes);
+        assertEquals(SymbolTable.NONE, source.peekSymbol());
+        assertThrows(NoSuchElementException.class, source::next);
+    }
+
+    @Test
+    void lexemeIsViewOfSource() {
+        var source = new SourceText(ByteBuffer.wrap("Var abc;".getBytes()));
+        var symbols = new SymbolTable();
+        var lexeme = new Lexeme(LexemeClass.Ident, source, 4, 3, 1, symbols.intern("abc"), symbols);
+        var expected = new Lexeme(LexemeClass.Ident, "abc", 1);
+
+        assertEquals(expected, lexeme);
+        assertEquals(expected.hashCode(), lexeme.hashCode());
+        assertEquals("abc", lexeme.getSign());
+        assertEquals(expected.toString(), lexeme.toString());
+        assertTrue(lexeme.signEquals("abc"));
+    }
+
+    @Test
+    void parallelReadMatchesSequential() throws IOException {
+        var code = ("Var abc, d;\nBegin { a\ncomment\n}\n  abc := 1 - (d * 20);\n{\n\n} d := 3 #;\n" +
+                "WHILE abc > 0 DO { c } abc := abc - 1;\n").repeat(50) + "End.";
+
+        var expectedErrors = new ByteArrayOutputStream();
+        var sequential = new Lexer(ByteBuffer.wrap(code.getBytes()));
+        sequential.setErrors(new PrintStream(expectedErrors));
+        sequential.readToEnd();
+
+        assertTrue(expectedErrors.toString().startsWith("Undefined sequence found on 8-th line: #\n"));
+
+        for (int partSize : new int[]{1, 7, 100}) {
+            var errors = new ByteArrayOutputStream();
+            var parallel = new Lexer(ByteBuffer.wrap(code.getBytes()));
+            parallel.setErrors(new PrintStream(errors));
+            parallel.readToEnd(4, partSize);
+
+            assertIterableEquals(sequential.getLexemes(), parallel.getLexemes());
+            assertEquals(expectedErrors.toString(), errors.toString());
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryParseCacheTest {
+
+    private static final String PROGRAM = "Var a, b;\nBegin\n  a := 3;\n  WHILE a > 0 DO\n  Begin\n    b := b + a;\n" +
+            "    a := a - 1;\n  End\nEnd.\n";
+
+    private static final String INCORRECT = "Var a, #b;\nBegin\n  a := 1 + ;\n  b := ?;\nEnd.\n";
+
+    @TempDir
+    Path directory;
+
+    private static ByteBuffer content(String code) {
+        return ByteBuffer.wrap(code.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static ParseCache.Entry parse(ByteBuffer content) throws IOException {
+        return ParseCache.Entry.parse(content, 1);
+    }
+
+    private static int segment(String code) {
+        var hash = content(code).hashCode();
+        return (hash ^ hash >>> 16) & 15;
+    }
+
+    private String[] run(MemoryParseCache cache, String... args) {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        var outStream = new PrintStream(out);
+        var errStream = new PrintStream(err);
+
+        new EntryPoint(Options.parse(args), directory, outStream, errStream, cache).run(new ByteArrayInputStream(new byte[0]));
+
+        outStream.flush();
+        errStream.flush();
+        return new String[]{out.toString(), err.toString()};
+    }
+
+    @Test
+    void returnsCachedEntries() throws IOException {
+        var cache = new MemoryParseCache(1 << 20);
+        var entry = cache.get(content(PROGRAM), MemoryParseCacheTest::parse);
+
+        assertSame(entry, cache.get(content(PROGRAM), content -> fail("The entry has to be cached")));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(cache.getWeight() > PROGRAM.length());
+    }
+
+    @Test
+    void doesNotDependOnBuffer() throws IOException {
+        var cache = new MemoryParseCache(1 << 20);
+        var bytes = PROGRAM.getBytes(StandardCharsets.ISO_8859_1);
+        var entry = cache.get(ByteBuffer.wrap(bytes), MemoryParseCacheTest::parse);
+        var expected = entry.getRoot().toString();
+
+        bytes[bytes.length - 3] = ';';
+
+        assertEquals(expected, entry.getRoot().toString());
+        assertSame(entry, cache.get(content(PROGRAM), MemoryParseCacheTest::parse));
+        assertNotSame(entry, cache.get(ByteBuffer.wrap(bytes), MemoryParseCacheTest::parse));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void missesChangedContent() throws IOException {
+        var cache = new MemoryParseCache(1 << 20);
+        var correct = cache.get(content(PROGRAM), MemoryParseCacheTest::parse);
+        var incorrect = cache.get(content(INCORRECT), MemoryParseCacheTest::parse);
+
+        assertEquals(2, cache.getMisses());
+        assertTrue(correct.isCorrect());
+        assertFalse(incorrect.isCorrect());
+        assertSame(incorrect, cache.get(content(INCORRECT), MemoryParseCacheTest::parse));
+    }
+
+    @Test
+    void removesLeastRecentlyUsedEntries() throws IOException {
+        var single = new MemoryParseCache(1 << 20);
+        single.get(content(PROGRAM), MemoryParseCacheTest::parse);
+        var weight = single.getWeight();
+
+        var codes = new ArrayList<String>();
+        for (int i = 0; codes.size() < 4; i++) {
+            var code = PROGRAM.replace("3", String.valueOf(i % 10)).replace("a - 1", "a - " + i / 10);
+            if (segment(code) == segment(PROGRAM) && code.length() == PROGRAM.length())
+                codes.add(code);
+        }
+
+        // Every code goes to the same segment, which fits three entries of the same weight
+        var cache = new MemoryParseCache(16 * (3 * weight + weight / 2));
+        for (int i = 0; i < 3; i++)
+            cache.get(content(codes.get(i)), MemoryParseCacheTest::parse);
+
+        cache.get(content(codes.get(0)), MemoryParseCacheTest::parse);
+        cache.get(content(codes.get(3)), MemoryParseCacheTest::parse);
+
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3 * weight, cache.getWeight());
+
+        var loads = new AtomicInteger();
+        for (var code : List.of(codes.get(0), codes.get(2), codes.get(3)))
+            cache.get(content(code), content -> {
+                loads.incrementAndGet();
+                return parse(content);
+            });
+
+        assertEquals(0, loads.get());
+        cache.get(content(codes.get(1)), MemoryParseCacheTest::parse);
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    void skipsTooLargeEntries() throws IOException {
+        var cache = new MemoryParseCache(16);
+        var entry = cache.get(content(PROGRAM), MemoryParseCacheTest::parse);
+
+        assertNotSame(entry, cache.get(content(PROGRAM), MemoryParseCacheTest::parse));
+        assertEquals(0, cache.getWeight());
+        assertEquals(0, cache.getEvictions());
+        assertThrows(IllegalArgumentException.class, () -> new MemoryParseCache(0));
+    }
+
+    @Test
+    void isSharedByConcurrentUsers() throws Exception {
+        var cache = new MemoryParseCache(1 << 20);
+        var codes = new String[]{PROGRAM, INCORRECT, PROGRAM.replace("3", "4")};
+        var expected = new String[codes.length];
+        for (int i = 0; i < codes.length; i++)
+            expected[i] = parse(content(codes[i])).getRoot().toString();
+
+        var executor = Executors.newFixedThreadPool(6);
+
+        try {
+            var tasks = new ArrayList<Callable<Void>>();
+
+            for (int i = 0; i < 300; i++) {
+                var index = i % codes.length;
+                tasks.add(() -> {
+                    assertEquals(expected[index], cache.get(content(codes[index]), MemoryParseCacheTest::parse).getRoot().toString());
+                    return null;
+                });
+            }
+
+            for (var result : executor.invokeAll(tasks))
+                result.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(300, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getHits() >= 300 - 6 * codes.length);
+    }
+
+    @Test
+    void printsSameAsWithoutCache() throws IOException {
+        Files.writeString(directory.resolve("correct.pas"), PROGRAM);
+        Files.writeString(directory.resolve("incorrect.pas"), INCORRECT);
+
+        var cache = new MemoryParseCache(1 << 20);
+        // The interned subtrees of a printed AST may be collected, so only a single file is interned
+        var lists = new String[][]{{"correct.pas", "incorrect.pas", "correct.pas"},
+                {"--no-lexemes", "incorrect.pas", "correct.pas"},
+                {"--run", "--ssa", "--simplify", "correct.pas", "incorrect.pas"},
+                {"--hash-cons", "correct.pas"},
+                {"--cache", "cache", "incorrect.pas", "correct.pas"}};
+
+        for (var list : lists) {
+            var expected = run(null, list);
+
+            assertArrayEquals(expected, run(cache, list));
+            assertArrayEquals(expected, run(cache, list));
+        }
+
+        assertEquals(2, cache.getMisses());
+
+        var args = new ArrayList<>(List.of(lists[0]));
+        args.add(0, "--memory-cache");
+        args.add(1, "1000000");
+        assertArrayEquals(run(null, lists[0]), run(null, args.toArray(String[]::new)));
+    }
+}
@@ -0,0 +1,108 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.ifmo.compilers.TestUtils.getResult;
+
+class NamesTest {
+
+    private static OutputTreeNode<Lexeme> parse(String code) {
+        var parser = new Parser(getResult(code));
+        assertTrue(parser.parseProgram());
+        return parser.getRoot();
+    }
+
+    private static void collectSlots(Ast ast, int node, Names names, List<Integer> slots) {
+        var target = ast.getTargetAst(node);
+        var index = ast.getTargetNode(node);
+
+        if (target.getLexemeClass(index) == LexemeClass.Ident)
+            slots.add(names.getSlot(ast, node));
+
+        for (int child = target.getFirstChild(index); child != Ast.NONE; child = target.getNextSibling(child))
+            collectSlots(target, child, names, slots);
+    }
+
+    private static List<Integer> slots(OutputTreeNode<Lexeme> root, Names names) {
+        var slots = new ArrayList<Integer>();
+        var ast = root.getAst();
+
+        for (int child = ast.getFirstChild(root.getIndex()); child != Ast.NONE; child = ast.getNextSibling(child))
+            collectSlots(ast, child, names, slots);
+
+        return slots;
+    }
+
+    @Test
+    void assignsDenseSlots() {
+        var root = parse("Var b, a, c;\nBegin\n  a := b + c;\n  WHILE a < 3 DO c := a;\nEnd.");
+        var names = Names.resolve(root);
+
+        assertTrue(names.isCorrect());
+        assertIterableEquals(List.of("b", "a", "c"), names.getVariables());
+        assertIterableEquals(List.of(0, 1, 2, 1, 0, 2, 1, 2, 1), slots(root, names));
+    }
+
+    @Test
+    void reportsUndeclaredVariables() {
+        var root = parse("Var a;\nBegin\n  a := b;\n  c := a;\nEnd.");
+        var names = Names.resolve(root);
+
+        assertFalse(names.isCorrect());
+        assertIterableEquals(List.of(
+                "On line 3 variable 'b' is not declared",
+                "On line 4 variable 'c' is not declared"
+        ), names.getDiagnostics());
+        assertIterableEquals(List.of(0, 0, SymbolTable.NONE, SymbolTable.NONE, 0), slots(root, names));
+    }
+
+    @Test
+    void reportsRepeatedDeclarations() {
+        var root = parse("Var a, b,\n a;\nBegin\n  a := b;\nEnd.");
+        var names = Names.resolve(root);
+
+        assertIterableEquals(List.of("On line 2 variable 'a' is already declared on line 1"), names.getDiagnostics());
+        assertIterableEquals(List.of("a", "b"), names.getVariables());
+        assertIterableEquals(List.of(0, 1, 0, 0, 1), slots(root, names));
+    }
+
+    @Test
+    void resolvesInternedTree() {
+        var interner = new AstInterner();
+        var code = "Var a, b;\nBegin\n  a := b + 1; a := b + 1;\nEnd.";
+        var parser = new Parser(getResult(code));
+        parser.setInterner(interner);
+        assertTrue(parser.parseProgram());
+
+        var names = Names.resolve(parser.getRoot());
+
+        assertTrue(names.isCorrect());
+        assertIterableEquals(List.of(0, 1, 0, 1, 0, 1), slots(parser.getRoot(), names));
+    }
+
+    @Test
+    void resolvesNamesOfSubtreesSharedWithOtherPrograms() throws IOException {
+        var code = "Var x, a;\nBegin\n  a := 2 * (x + 1);\nEnd.";
+        var entry = ParseCache.Entry.parse(ByteBuffer.wrap(code.getBytes()), 1, new SymbolTable());
+        var interner = new AstInterner();
+        var other = interner.intern(entry.getRoot());
+        var root = interner.intern(parse("Var a, x, y;\nBegin\n  a := 2 * (x + 1);\n  y := a;\nEnd."));
+        var names = Names.resolve(root);
+
+        var ast = root.getAst();
+        var declaration = ast.getFirstChild(root.getIndex());
+        var assignment = ast.getNextSibling(declaration);
+        assertSame(other.getAst(), ast.getTargetAst(assignment));
+        assertNotSame(ast.getSymbolTable(ast.getFirstChild(declaration)), other.getAst().getSymbolTable(ast.getTargetNode(assignment)));
+
+        assertTrue(names.isCorrect());
+        assertIterableEquals(List.of("a", "x", "y"), names.getVariables());
+        assertIterableEquals(List.of(0, 1, 2, 0, 1, 2, 0), slots(root, names));
+    }
+}
@@ -0,0 +1,99 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OptionsTest {
+
+    @Test
+    void defaults() {
+        var options = Options.parse("a.pas", "b.pas");
+
+        assertIterableEquals(List.of("a.pas", "b.pas"), options.getFiles());
+        assertTrue(options.isPrintLexemes());
+        assertEquals(1, options.getJobs());
+        assertFalse(options.isRun());
+        assertEquals(Interpreter.DEFAULT_BUDGET, options.getBudget());
+    }
+
+    @Test
+    void jobs() {
+        var options = Options.parse("--jobs", "8", "a.pas", "--no-lexemes");
+
+        assertIterableEquals(List.of("a.pas"), options.getFiles());
+        assertFalse(options.isPrintLexemes());
+        assertEquals(8, options.getJobs());
+    }
+
+    @Test
+    void invalidJobs() {
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--jobs", "0"));
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("a.pas", "--jobs"));
+    }
+
+    @Test
+    void run() {
+        var options = Options.parse("--run", "--budget", "10000000000", "a.pas");
+
+        assertIterableEquals(List.of("a.pas"), options.getFiles());
+        assertTrue(options.isRun());
+        assertEquals(10_000_000_000L, options.getBudget());
+        assertFalse(options.isJit());
+        assertTrue(Options.parse("--jit").isRun());
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--budget", "-1"));
+    }
+
+    @Test
+    void serve() {
+        var options = Options.parse("--serve", "--port", "4000");
+
+        assertTrue(options.isServe());
+        assertEquals(4000, options.getPort());
+        assertEquals(Options.DEFAULT_PORT, Options.parse("a.pas").getPort());
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--port", "65536"));
+    }
+
+    @Test
+    void cache() {
+        var options = Options.parse("--cache", "build/cache", "--cache-size", "1000", "a.pas");
+
+        assertEquals("build/cache", options.getCache());
+        assertEquals(1000, options.getCacheSize());
+        assertIterableEquals(List.of("a.pas"), options.getFiles());
+        assertNull(Options.parse("a.pas").getCache());
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("a.pas", "--cache"));
+    }
+
+    @Test
+    void memoryCache() {
+        assertEquals(1 << 20, Options.parse("--memory-cache", "1048576", "a.pas").getMemoryCacheSize());
+        assertEquals(0, Options.parse("a.pas").getMemoryCacheSize());
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--memory-cache", "0"));
+    }
+
+    @Test
+    void export() {
+        var options = Options.parse("--export", "json", "a.pas");
+
+        assertEquals(AstExporter.Format.JSON, options.getExport());
+        assertFalse(options.isPrintLexemes());
+        assertNull(Options.parse("a.pas").getExport());
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--export", "xml"));
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--export"));
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--export", "binary", "--run"));
+    }
+
+    @Test
+    void validate() {
+        var options = Options.parse("--validate", "a.pas");
+
+        assertTrue(options.isValidate());
+        assertFalse(options.isPrintLexemes());
+        assertFalse(Options.parse("a.pas").isValidate());
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--validate", "--export", "json"));
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--validate", "--run"));
+    }
+}
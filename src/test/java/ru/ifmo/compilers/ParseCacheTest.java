@@ -0,0 +1,198 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseCacheTest {
+
+    private static final String PROGRAM = "Var a, b;\nBegin\n  a := 3;\n  WHILE a > 0 DO\n  Begin\n    b := b + a;\n" +
+            "    a := a - 1;\n  End\nEnd.\n";
+
+    private static final String INCORRECT = "Var a, #b;\nBegin\n  a := 1 + ;\n  b := ?;\nEnd.\n";
+
+    private static final String COMMENTED = "Var a{ x }b;\nBegin\n  ab := 1{\n}2;\n  c{}d := #{}?;\nEnd.\n";
+
+    @TempDir
+    Path directory;
+
+    private static ByteBuffer content(String code) {
+        return ByteBuffer.wrap(code.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void assertSameEntries(ParseCache.Entry expected, ParseCache.Entry actual) {
+        assertIterableEquals(expected.getTokens().asList(), actual.getTokens().asList());
+        assertEquals(expected.getRoot().toString(), actual.getRoot().toString());
+        assertEquals(expected.getRoot(), actual.getRoot());
+        assertEquals(expected.isCorrect(), actual.isCorrect());
+        assertIterableEquals(expected.getErrorMessages(), actual.getErrorMessages());
+        assertArrayEquals(expected.getLexerErrors(), actual.getLexerErrors());
+    }
+
+    private Path[] entries() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.toArray(Path[]::new);
+        }
+    }
+
+    private String[] run(String... args) {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        var outStream = new PrintStream(out);
+        var errStream = new PrintStream(err);
+
+        new EntryPoint(Options.parse(args), directory, outStream, errStream).run(new ByteArrayInputStream(new byte[0]));
+
+        outStream.flush();
+        errStream.flush();
+        return new String[]{out.toString(), err.toString()};
+    }
+
+    @Test
+    void loadsStoredEntries() throws IOException {
+        for (var code : new String[]{PROGRAM, INCORRECT, COMMENTED, ""}) {
+            var expected = ParseCache.Entry.parse(content(code), 1);
+            var cache = new ParseCache(directory, ParseCache.DEFAULT_SIZE);
+
+            assertSameEntries(expected, cache.get(content(code), 1));
+            assertEquals(1, cache.getMisses());
+
+            var other = new ParseCache(directory, ParseCache.DEFAULT_SIZE);
+            var loaded = other.get(content(code), 1);
+
+            assertEquals(1, other.getHits());
+            assertSameEntries(expected, loaded);
+            assertTrue(loaded.getRoot().getAst().isFrozen());
+        }
+
+        assertFalse(new String(ParseCache.Entry.parse(content(INCORRECT), 1).getLexerErrors()).isEmpty());
+        assertEquals(4, entries().length);
+    }
+
+    @Test
+    void missesChangedContent() throws IOException {
+        var cache = new ParseCache(directory, ParseCache.DEFAULT_SIZE);
+        cache.get(content(PROGRAM), 1);
+        var changed = cache.get(content(PROGRAM.replace("b + a", "b - a")), 1);
+
+        assertEquals(2, cache.getMisses());
+        assertTrue(changed.getRoot().toString().contains("-"));
+    }
+
+    @Test
+    void ignoresDamagedEntries() throws IOException {
+        var cache = new ParseCache(directory, ParseCache.DEFAULT_SIZE);
+        var expected = cache.get(content(PROGRAM), 1);
+        var entry = entries()[0];
+        var bytes = Files.readAllBytes(entry);
+
+        for (var damaged : new byte[][]{new byte[0], new byte[]{1, 2, 3}, Arrays.copyOf(bytes, bytes.length / 2)}) {
+            Files.write(entry, damaged);
+            assertSameEntries(expected, cache.get(content(PROGRAM), 1));
+        }
+
+        assertEquals(0, cache.getHits());
+        assertArrayEquals(bytes, Files.readAllBytes(entry));
+    }
+
+    @Test
+    void removesLeastRecentlyUsedEntries() throws IOException {
+        var codes = new String[]{PROGRAM, PROGRAM.replace("3", "4"), PROGRAM.replace("3", "5"), PROGRAM.replace("3", "6")};
+        var cache = new ParseCache(directory, ParseCache.DEFAULT_SIZE);
+
+        for (int i = 0; i < 3; i++) {
+            cache.get(content(codes[i]), 1);
+
+            for (var file : entries()) {
+                if (Files.getLastModifiedTime(file).toMillis() > 1000 * 3)
+                    Files.setLastModifiedTime(file, FileTime.fromMillis(1000 * (i + 1)));
+            }
+        }
+
+        var size = Files.size(entries()[0]);
+        var small = new ParseCache(directory, 2 * size + size / 2);
+        small.get(content(codes[0]), 1);
+        small.get(content(codes[3]), 1);
+        small.trim();
+
+        assertEquals(1, small.getHits());
+        assertEquals(2, entries().length);
+
+        var check = new ParseCache(directory, ParseCache.DEFAULT_SIZE);
+        check.get(content(codes[0]), 1);
+        check.get(content(codes[3]), 1);
+        check.get(content(codes[1]), 1);
+
+        assertEquals(2, check.getHits());
+    }
+
+    @Test
+    void isSharedByConcurrentUsers() throws Exception {
+        var codes = new String[]{PROGRAM, INCORRECT, PROGRAM.replace("3", "4")};
+        var executor = Executors.newFixedThreadPool(6);
+
+        try {
+            var tasks = new ArrayList<Callable<Void>>();
+
+            for (int i = 0; i < 60; i++) {
+                var code = codes[i % codes.length];
+                tasks.add(() -> {
+                    var cache = new ParseCache(directory, ParseCache.DEFAULT_SIZE);
+                    assertSameEntries(ParseCache.Entry.parse(content(code), 1), cache.get(content(code), 1));
+                    cache.trim();
+                    return null;
+                });
+            }
+
+            for (var result : executor.invokeAll(tasks))
+                result.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(codes.length, entries().length);
+    }
+
+    @Test
+    void printsSameAsWithoutCache() throws IOException {
+        Files.writeString(directory.resolve("correct.pas"), PROGRAM);
+        Files.writeString(directory.resolve("incorrect.pas"), INCORRECT);
+
+        // The interned subtrees of a printed AST may be collected, so only a single file is interned
+        var lists = new String[][]{{"correct.pas", "incorrect.pas", "correct.pas"},
+                {"--no-lexemes", "incorrect.pas", "correct.pas"},
+                {"--run", "--ssa", "--simplify", "correct.pas", "incorrect.pas"},
+                {"--hash-cons", "correct.pas"}};
+
+        for (var list : lists) {
+            var args = new ArrayList<>(List.of(list));
+
+            var expected = run(args.toArray(String[]::new));
+            args.add(0, "--cache");
+            args.add(1, "cache");
+
+            assertArrayEquals(expected, run(args.toArray(String[]::new)));
+            assertArrayEquals(expected, run(args.toArray(String[]::new)));
+        }
+
+        try (var files = Files.list(directory.resolve("cache"))) {
+            assertEquals(2, files.count());
+        }
+    }
+}
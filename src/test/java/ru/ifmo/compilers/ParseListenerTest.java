@@ -0,0 +1,190 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseListenerTest {
+
+    private static final String PROGRAM = "Var a, b;\nBegin\n  a := -3;\n  WHILE a > 0 DO\n  Begin\n    b := b + (a - 1);\n" +
+            "    WHILE b < 0 DO a := 1;\n  End\nEnd.\n";
+
+    private static final String[] CODES = {PROGRAM, "Var a;\nBegin\n  a := 1 + ;\nEnd.\n", "Var a;\nBegin\nEnd.\n",
+            "Var a;\nBegin\n  WHILE a DO Begin a := (1 + (2 - 3); End\nEnd.\n", "Var a; b;\nBegin\n  a := b;\n",
+            "Var a\nBegin a := 1; End.", ""};
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Records the events as strings
+     */
+    private static final class Recorder implements ParseListener {
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void enterDeclaration(Lexeme keyword, int index) {
+            events.add("declaration " + index);
+        }
+
+        @Override
+        public void onVariable(Lexeme variable, int index) {
+            events.add("variable " + variable.getSign());
+        }
+
+        @Override
+        public void exitDeclaration() {
+            events.add("/declaration");
+        }
+
+        @Override
+        public void enterAssignment(Lexeme target, int targetIndex, Lexeme operator, int operatorIndex) {
+            events.add("assignment " + target.getSign() + " " + targetIndex + " " + operatorIndex);
+        }
+
+        @Override
+        public void exitAssignment() {
+            events.add("/assignment");
+        }
+
+        @Override
+        public void enterLoop(Lexeme keyword, int index) {
+            events.add("loop");
+        }
+
+        @Override
+        public void enterLoopBody(Lexeme keyword, int index) {
+            events.add("body");
+        }
+
+        @Override
+        public void exitLoop() {
+            events.add("/loop");
+        }
+
+        @Override
+        public void enterCompound() {
+            events.add("compound");
+        }
+
+        @Override
+        public void exitCompound() {
+            events.add("/compound");
+        }
+
+        @Override
+        public void enterExpression() {
+            events.add("expression");
+        }
+
+        @Override
+        public void onUnaryMinus(Lexeme operator, int index) {
+            events.add("minus");
+        }
+
+        @Override
+        public void onBinaryOperator(Lexeme operator, int index) {
+            events.add(operator.getSign());
+        }
+
+        @Override
+        public void onOperand(Lexeme operand, int index) {
+            events.add(operand.getSign());
+        }
+
+        @Override
+        public void exitExpression() {
+            events.add("/expression");
+        }
+
+        @Override
+        public void onError(String message) {
+            events.add("error " + message);
+        }
+    }
+
+    private static List<String> record(String code) {
+        var recorder = new Recorder();
+        var parser = new Parser(TokenSource.of(TestUtils.getResult(code)), recorder);
+
+        parser.parseProgram();
+        assertNull(parser.getRoot());
+        return recorder.events;
+    }
+
+    @Test
+    void reportsConstructions() {
+        assertIterableEquals(List.of("declaration 0", "variable a", "variable b", "/declaration",
+                "assignment a 6 7", "expression", "minus", "3", "/expression", "/assignment",
+                "loop", "expression", ">", "a", "0", "/expression", "body", "compound",
+                "assignment b 17 18", "expression", "+", "b", "-", "a", "1", "/expression", "/assignment",
+                "loop", "expression", "<", "b", "0", "/expression", "body",
+                "assignment a 32 33", "expression", "1", "/expression", "/assignment", "/loop",
+                "/compound", "/loop"), record(PROGRAM));
+    }
+
+    @Test
+    void stopsAfterError() {
+        var events = record("Var a;\nBegin\n  WHILE a > DO a := 1;\nEnd.\n");
+
+        assertEquals(List.of("declaration 0", "variable a", "/declaration", "loop", "expression", ">", "a"),
+                events.subList(0, 7));
+        assertTrue(events.get(events.size() - 1).startsWith("error On line 3"));
+        assertFalse(events.contains("/loop"));
+    }
+
+    @Test
+    void buildsSameTreeAsParser() {
+        for (var code : CODES) {
+            var expected = new Parser(TestUtils.getResult(code));
+            var builder = new AstBuilder();
+            var actual = new Parser(TokenSource.of(TestUtils.getResult(code)), builder);
+
+            assertEquals(expected.parseProgram(), actual.parseProgram());
+            assertSame(builder.getRoot(), actual.getRoot());
+            assertEquals(expected.getRoot().toString(), actual.getRoot().toString());
+            assertEquals(expected.getRoot(), actual.getRoot());
+            assertIterableEquals(expected.getErrorMessages(), actual.getErrorMessages());
+        }
+    }
+
+    @Test
+    void validatesWithoutTree() throws IOException {
+        Files.writeString(directory.resolve("correct.pas"), PROGRAM);
+
+        for (var code : CODES) {
+            Files.writeString(directory.resolve("checked.pas"), code);
+
+            var parser = new Parser(TestUtils.getResult(code));
+            var errors = code.isEmpty() || parser.parseProgram() ? "" : String.join("\n", parser.getErrorMessages()) + "\n";
+
+            assertEquals(errors, run("--validate", "checked.pas")[0]);
+            assertEquals(errors, run("--validate", "--cache", "cache", "--jobs", "2", "checked.pas", "correct.pas")[0]);
+        }
+
+        assertFalse(Files.exists(directory.resolve("cache")));
+    }
+
+    private String[] run(String... args) {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        var outStream = new PrintStream(out);
+        var errStream = new PrintStream(err);
+
+        new EntryPoint(Options.parse(args), directory, outStream, errStream).run(new ByteArrayInputStream(new byte[0]));
+
+        outStream.flush();
+        errStream.flush();
+        return new String[]{out.toString(), err.toString()};
+    }
+}
@@ -142,4 +142,87 @@ class ParserTest {
 
         assertIncorrect(code, expected, expectedError);
     }
-}
\ No newline at end of file
+
+    @Test
+    void nestedExpression() {
+        var code = "Var a;\n" +
+                "Begin\n" +
+                "  a := 1 + (-a * (a - 2));\n" +
+                "End.";
+
+        var expected = getRoot();
+
+        expected.addChild(new Lexeme(LexemeClass.Keyword, "Var", 1))
+                .addChild(new Lexeme(LexemeClass.Ident, "a", 1));
+
+        var assignment = expected.addChild(new Lexeme(LexemeClass.AssignmentOperator, ":=", 3));
+        assignment.addChild(new Lexeme(LexemeClass.Ident, "a", 3));
+
+        var sum = assignment.addChild(new Lexeme(LexemeClass.ArithmeticOperator, "+", 3));
+        sum.addChild(new Lexeme(LexemeClass.Const, "1", 3));
+        sum.addChild(new Lexeme(LexemeClass.ArithmeticOperator, "-", 3));
+
+        var product = sum.addChild(new Lexeme(LexemeClass.ArithmeticOperator, "*", 3));
+        product.addChild(new Lexeme(LexemeClass.Ident, "a", 3));
+
+        var difference = product.addChild(new Lexeme(LexemeClass.ArithmeticOperator, "-", 3));
+        difference.addChild(new Lexeme(LexemeClass.Ident, "a", 3));
+        difference.addChild(new Lexeme(LexemeClass.Const, "2", 3));
+
+        assertCorrect(code, expected);
+    }
+
+    @Test
+    void unclosedParenthesis() {
+        var code = "Var a;\n" +
+                "Begin\n" +
+                "  a := (a + 1;\n" +
+                "End.";
+
+        var parser = getParser(code);
+
+        assertFalse(parser.parseProgram());
+        assertEquals("On line 3 expected ')', but found ';'", parser.getErrorMessages().get(0));
+    }
+
+    @Test
+    void longInput() {
+        var code = "Var a;\n" +
+                "Begin\n" +
+                "  a := " + "a + ".repeat(50_000) + "1;\n" +
+                "  a := 1;\n".repeat(50_000) +
+                "End.";
+
+        var parser = new Parser(TestUtils.getResult(code));
+
+        assertTrue(parser.parseProgram());
+        assertEquals(50_002, parser.getRoot().getChildren().size());
+    }
+
+    @Test
+    void noSilentRecovery() {
+        var code = "Var a;\n" +
+                "Begin\n" +
+                "  a := 1;\n" +
+                "  a\n" +
+                "End.";
+
+        var parser = getParser(code);
+
+        assertFalse(parser.parseProgram());
+        assertIterableEquals(List.of("On line 5 expected '*Any* AssignmentOperator', but found 'End.'"), parser.getErrorMessages());
+    }
+
+    @Test
+    void deeplyNestedOperators() {
+        var code = "Var a;\n" +
+                "Begin\n" +
+                "WHILE a DO Begin ".repeat(50_000) + "a := 1;" + " End".repeat(50_000) + "\n" +
+                "End.";
+
+        var parser = new Parser(TestUtils.getResult(code));
+
+        assertTrue(parser.parseProgram());
+        assertIterableEquals(Collections.emptyList(), parser.getErrorMessages());
+    }
+}
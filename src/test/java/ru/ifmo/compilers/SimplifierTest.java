@@ -0,0 +1,127 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.ifmo.compilers.TestUtils.getResult;
+
+class SimplifierTest {
+
+    private static OutputTreeNode<Lexeme> parse(String code) {
+        var parser = new Parser(getResult(code));
+        assertTrue(parser.parseProgram(), () -> String.join("\n", parser.getErrorMessages()));
+        return parser.getRoot();
+    }
+
+    private static void assertSimplified(String expected, String code, String... changes) {
+        var simplifier = new Simplifier();
+        var simplified = simplifier.simplify(parse(code));
+
+        assertEquals(parse(expected).toString(), simplified.toString());
+        assertEquals(parse(expected), simplified);
+        assertIterableEquals(List.of(changes), simplifier.getChanges());
+    }
+
+    @Test
+    void foldsConstants() {
+        assertSimplified("Var a;\nBegin\n  a := 8;\nEnd.", "Var a;\nBegin\n  a := 2 * 3 + 1;\nEnd.",
+                "On line 3 replaced '2 * 3 + 1' with '8'");
+        assertSimplified("Var a;\nBegin\n  a := a + 4;\nEnd.", "Var a;\nBegin\n  a := a + (1 + 3);\nEnd.",
+                "On line 3 replaced 'a + 1 + 3' with 'a + 4'");
+        assertSimplified("Var a;\nBegin\n  a := 1;\nEnd.", "Var a;\nBegin\n  a := 2 > 1;\nEnd.",
+                "On line 3 replaced '2 > 1' with '1'");
+    }
+
+    @Test
+    void foldsUnaryMinus() {
+        assertSimplified("Var a;\nBegin\n  a := -5;\nEnd.", "Var a;\nBegin\n  a := -(2 + 3);\nEnd.",
+                "On line 3 replaced '-2 + 3' with '-5'");
+        assertSimplified("Var a;\nBegin\n  a := 1;\nEnd.", "Var a;\nBegin\n  a := 6 + (-5);\nEnd.",
+                "On line 3 replaced '6 + -5' with '1'");
+        assertSimplified("Var a;\nBegin\n  a := a;\nEnd.", "Var a;\nBegin\n  a := -(-a);\nEnd.",
+                "On line 3 replaced '--a' with 'a'");
+    }
+
+    @Test
+    void appliesIdentities() {
+        assertSimplified("Var a, b;\nBegin\n  a := b;\n  a := b;\n  a := b;\n  a := -b;\n  a := 0;\nEnd.",
+                "Var a, b;\nBegin\n  a := b * (3 - 2);\n  a := 0 + b;\n  a := b - 0;\n  a := 0 - b;\n  a := b - b;\nEnd.",
+                "On line 3 replaced 'b * 3 - 2' with 'b'",
+                "On line 4 replaced '0 + b' with 'b'",
+                "On line 5 replaced 'b - 0' with 'b'",
+                "On line 6 replaced '0 - b' with '-b'",
+                "On line 7 replaced 'b - b' with '0'");
+    }
+
+    @Test
+    void keepsFailingExpressions() {
+        assertSimplified("Var a;\nBegin\n  a := 1 / 0;\n  a := a / 0;\nEnd.", "Var a;\nBegin\n  a := 1 / 0;\n  a := a / 0;\nEnd.");
+        assertSimplified("Var a;\nBegin\n  a := a * 0;\nEnd.", "Var a;\nBegin\n  a := a * 0;\nEnd.");
+    }
+
+    @Test
+    void removesLoopsWithFalseCondition() {
+        assertSimplified("Var a;\nBegin\n  a := 1;\nEnd.",
+                "Var a;\nBegin\n  a := 1;\n  WHILE 1 > 2 DO a := 2;\nEnd.",
+                "On line 4 removed the loop which condition is always 0");
+        assertSimplified("Var a;\nBegin\n  WHILE 1 DO\n  Begin\n    a := 5;\n  End\nEnd.",
+                "Var a;\nBegin\n  WHILE 2 > 1 DO\n  Begin\n    a := 2 + 3;\n  End\nEnd.",
+                "On line 3 replaced '2 > 1' with '1'",
+                "On line 5 replaced '2 + 3' with '5'");
+    }
+
+    @Test
+    void keepsLines() {
+        var simplified = new Simplifier().simplify(parse("Var a;\nBegin\n  a :=\n 2\n *\n 3;\nEnd."));
+        var ast = simplified.getAst();
+        var assignment = ast.getNextSibling(ast.getFirstChild(simplified.getIndex()));
+        var value = ast.getNextSibling(ast.getFirstChild(assignment));
+
+        assertEquals(3, ast.getLine(assignment));
+        assertEquals("6", ast.getLexeme(value).getSign());
+        assertEquals(4, ast.getLine(value));
+    }
+
+    @Test
+    void keepsMeaning() {
+        var random = new Random(18);
+        var operands = new String[]{"a", "b", "0", "1", "2", "7"};
+        var operators = new String[]{"+", "-", "*", "/", "<", ">", "="};
+
+        for (int i = 0; i < 500; i++) {
+            var code = new StringBuilder("Var a, b, c;\nBegin\n  a := 3;\n  b := 5;\n  c := ");
+            var parentheses = 0;
+
+            for (int j = random.nextInt(6); j >= 0; j--) {
+                if (random.nextInt(3) == 0) {
+                    code.append("(");
+                    if (random.nextBoolean())
+                        code.append("-");
+                    parentheses++;
+                }
+
+                code.append(operands[random.nextInt(operands.length)]);
+                if (j > 0)
+                    code.append(' ').append(operators[random.nextInt(operators.length)]).append(' ');
+            }
+
+            code.append(")".repeat(parentheses)).append(";\nEnd.");
+
+            var root = parse(code.toString());
+            var simplified = new Simplifier().simplify(root);
+
+            long[] expected;
+            try {
+                expected = Interpreter.compile(root).run(Interpreter.DEFAULT_BUDGET);
+            } catch (ArithmeticException e) {
+                assertThrows(ArithmeticException.class, () -> Interpreter.compile(simplified).run(Interpreter.DEFAULT_BUDGET), code::toString);
+                continue;
+            }
+
+            assertArrayEquals(expected, Interpreter.compile(simplified).run(Interpreter.DEFAULT_BUDGET), code::toString);
+        }
+    }
+}
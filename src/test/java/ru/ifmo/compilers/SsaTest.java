@@ -0,0 +1,237 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.ifmo.compilers.InterpreterTest.parse;
+
+class SsaTest {
+
+    private static final String LOOPS = "Var i, s, j;\nBegin\n  WHILE 10 > i DO\n  Begin\n    i := i + 1;\n    j := 0;\n" +
+            "    WHILE i > j DO\n    Begin\n      j := j + 1;\n      s := s + 1;\n    End\n  End\nEnd.";
+
+    private static SsaGraph build(String code) {
+        var graph = SsaBuilder.build(Interpreter.compile(parse(code)));
+        assertIterableEquals(List.of(), SsaVerifier.verify(graph));
+        return graph;
+    }
+
+    /**
+     * Executes the graph the way the interpreter executes the program
+     */
+    private static long[] evaluate(SsaGraph graph) {
+        var values = new IdentityHashMap<SsaGraph.Value, Long>();
+        SsaGraph.Block previous = null;
+
+        for (var block = graph.getBlocks().get(0); ; ) {
+            var phis = new IdentityHashMap<SsaGraph.Value, Long>();
+
+            for (var instruction : block.getInstructions()) {
+                if (instruction.getOpcode() == SsaGraph.Opcode.PHI)
+                    phis.put(instruction, values.get(instruction.getOperands().get(block.getPredecessors().indexOf(previous))));
+            }
+
+            values.putAll(phis);
+
+            for (var instruction : block.getInstructions()) {
+                if (instruction.getOpcode() != SsaGraph.Opcode.PHI)
+                    values.put(instruction, evaluate(instruction, values));
+            }
+
+            previous = block;
+
+            switch (block.getTerminator()) {
+                case JUMP:
+                    block = block.getSuccessors().get(0);
+                    break;
+
+                case BRANCH:
+                    block = block.getSuccessors().get(values.get(block.getArguments().get(0)) != 0 ? 0 : 1);
+                    break;
+
+                default:
+                    return block.getArguments().stream().mapToLong(values::get).toArray();
+            }
+        }
+    }
+
+    private static long evaluate(SsaGraph.Value instruction, Map<SsaGraph.Value, Long> values) {
+        var operands = instruction.getOperands().stream().mapToLong(values::get).toArray();
+
+        switch (instruction.getOpcode()) {
+            case CONST:
+                return instruction.getConstant();
+            case COPY:
+                return operands[0];
+            case NEG:
+                return -operands[0];
+            case ADD:
+                return operands[0] + operands[1];
+            case SUB:
+                return operands[0] - operands[1];
+            case MUL:
+                return operands[0] * operands[1];
+            case DIV:
+                return operands[0] / operands[1];
+            case LESS:
+                return operands[0] < operands[1] ? 1 : 0;
+            case GREATER:
+                return operands[0] > operands[1] ? 1 : 0;
+            case EQUAL:
+                return operands[0] == operands[1] ? 1 : 0;
+            default:
+                throw new AssertionError(instruction.getOpcode());
+        }
+    }
+
+    private static void assertKeepsMeaning(String code) {
+        var expected = Interpreter.compile(parse(code)).run(Interpreter.DEFAULT_BUDGET);
+        var graph = build(code);
+
+        assertArrayEquals(expected, evaluate(graph));
+
+        List<ToIntFunction<SsaGraph>> passes = List.of(SsaOptimizer::propagateCopies,
+                SsaOptimizer::hoistInvariants, SsaOptimizer::eliminateDeadStores);
+
+        for (var pass : passes) {
+            pass.applyAsInt(graph);
+            assertIterableEquals(List.of(), SsaVerifier.verify(graph), () -> SsaPrinter.toString(graph));
+            assertArrayEquals(expected, evaluate(graph));
+        }
+
+        SsaOptimizer.optimize(graph);
+        assertIterableEquals(List.of(), SsaVerifier.verify(graph), () -> SsaPrinter.toString(graph));
+        assertArrayEquals(expected, evaluate(graph));
+    }
+
+    private static long count(SsaGraph graph, SsaGraph.Opcode opcode) {
+        return graph.getBlocks().stream()
+                .flatMap(block -> block.getInstructions().stream())
+                .filter(instruction -> instruction.getOpcode() == opcode)
+                .count();
+    }
+
+    @Test
+    void keepsMeaning() {
+        assertKeepsMeaning("Var a, b;\nBegin\n  a := 2 * 3 + 1;\n  b := -a + 1;\n  a := a = 7;\nEnd.");
+        assertKeepsMeaning(LOOPS);
+        assertKeepsMeaning("Var a, b, c;\nBegin\n  b := 3;\n  WHILE 5 > a DO\n  Begin\n    a := a + 1;\n" +
+                "    c := b * 2 + c;\n  End\nEnd.");
+        assertKeepsMeaning("Var a, b;\nBegin\n  WHILE 0 DO a := 1;\n  b := a + 1;\nEnd.");
+    }
+
+    @Test
+    void keepsMeaningOfLongExpressions() {
+        var code = new StringBuilder("Var a, b;\nBegin\n  b := 2;\n  a := b");
+        for (int i = 0; i < 500; i++)
+            code.append(i % 2 == 0 ? " + " : " - ").append(i % 3 == 0 ? "b" : String.valueOf(i));
+
+        assertKeepsMeaning(code.append(";\nEnd.").toString());
+    }
+
+    @Test
+    void printsOptimizedGraph() {
+        var graph = build("Var a, b;\nBegin\n  a := 1;\n  a := 2;\n  b := a;\nEnd.");
+        SsaOptimizer.optimize(graph);
+
+        var separator = System.lineSeparator();
+        assertEquals("block0:" + separator + "    v0 = const 2" + separator + "    return a = v0, b = v0" + separator,
+                SsaPrinter.toString(graph));
+    }
+
+    @Test
+    void printsLoops() {
+        var graph = build("Var a;\nBegin\n  WHILE 3 > a DO a := a + 1;\nEnd.");
+        var printed = SsaPrinter.toString(graph);
+
+        assertTrue(printed.contains("block1: from block0, block2"), printed);
+        assertTrue(printed.contains("= phi v0, v"), printed);
+        assertTrue(printed.contains("branch v"), printed);
+        assertTrue(printed.contains("jump block1"), printed);
+    }
+
+    @Test
+    void lowersDeeplyNestedLoops() {
+        var graph = build(InterpreterTest.nestedLoops(3000));
+        assertArrayEquals(new long[]{0}, evaluate(graph));
+    }
+
+    @Test
+    void removesCopiesAndTrivialPhis() {
+        var graph = build("Var a, b, c;\nBegin\n  b := 4;\n  WHILE 3 > a DO\n  Begin\n    a := a + 1;\n    c := b;\n  End\nEnd.");
+
+        assertEquals(3, count(graph, SsaGraph.Opcode.PHI));
+        assertTrue(SsaOptimizer.propagateCopies(graph) > 0);
+
+        assertEquals(0, count(graph, SsaGraph.Opcode.COPY));
+        assertEquals(2, count(graph, SsaGraph.Opcode.PHI));
+    }
+
+    @Test
+    void hoistsInvariants() {
+        var graph = build("Var i, a, b;\nBegin\n  b := 3;\n  WHILE 10 > i DO\n  Begin\n    i := i + 1;\n    a := b * 2;\n  End\nEnd.");
+        SsaOptimizer.optimize(graph);
+
+        var multiplications = graph.getBlocks().stream()
+                .flatMap(block -> block.getInstructions().stream())
+                .filter(instruction -> instruction.getOpcode() == SsaGraph.Opcode.MUL)
+                .toArray(SsaGraph.Value[]::new);
+
+        assertEquals(1, multiplications.length);
+        assertSame(graph.getBlocks().get(0), multiplications[0].getBlock());
+        assertArrayEquals(new long[]{10, 6, 3}, evaluate(graph));
+    }
+
+    @Test
+    void keepsFailingInstructionsInLoops() {
+        var code = "Var i, a, b;\nBegin\n  WHILE 0 > i DO a := 1 / b;\nEnd.";
+        var graph = build(code);
+        SsaOptimizer.optimize(graph);
+
+        assertEquals(1, count(graph, SsaGraph.Opcode.DIV));
+        assertNotSame(graph.getBlocks().get(0), graph.getBlocks().stream()
+                .flatMap(block -> block.getInstructions().stream())
+                .filter(instruction -> instruction.getOpcode() == SsaGraph.Opcode.DIV)
+                .findFirst().orElseThrow().getBlock());
+        assertArrayEquals(new long[]{0, 0, 0}, evaluate(graph));
+    }
+
+    @Test
+    void eliminatesDeadStores() {
+        var graph = build("Var a, b;\nBegin\n  a := 1 + 2;\n  a := 3 * 4;\n  b := a / 0;\n  b := 5;\nEnd.");
+        SsaOptimizer.optimize(graph);
+
+        assertEquals(0, count(graph, SsaGraph.Opcode.ADD));
+        assertEquals(1, count(graph, SsaGraph.Opcode.MUL));
+        assertEquals(1, count(graph, SsaGraph.Opcode.DIV));
+    }
+
+    @Test
+    void verifierFindsProblems() {
+        var graph = new SsaGraph(List.of("a"));
+        var entry = graph.addBlock();
+        var loop = graph.addBlock();
+        var zero = entry.add(SsaGraph.Opcode.CONST, 0, List.of());
+        entry.jump(loop);
+
+        var sum = loop.add(SsaGraph.Opcode.ADD, 0, List.of(zero, zero));
+        var phi = loop.add(SsaGraph.Opcode.PHI, 0, List.of(zero));
+        loop.getInstructions().add(loop.getInstructions().remove(0));
+        loop.ret(List.of(phi));
+
+        var problems = SsaVerifier.verify(graph);
+        assertEquals(1, problems.size(), problems::toString);
+        assertTrue(problems.get(0).contains("phi"), problems::toString);
+
+        var unfinished = new SsaGraph(List.of("a"));
+        unfinished.addBlock().add(SsaGraph.Opcode.ADD, 0, List.of(zero, zero));
+
+        problems = SsaVerifier.verify(unfinished);
+        assertEquals(3, problems.size(), problems::toString);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.ifmo.compilers;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SymbolTableTest {
+
+    @Test
+    void predefinedSymbols() {
+        var table = new SymbolTable();
+
+        assertEquals(SymbolTable.BEGIN, table.intern("Begin"));
+        assertEquals(SymbolTable.END_OF_PROGRAM, table.intern("End."));
+        assertEquals(SymbolTable.SEMICOLON, table.intern(";"));
+        assertEquals("WHILE", table.getSign(SymbolTable.WHILE));
+    }
+
+    @Test
+    void sameIdForSameSign() {
+        var table = new SymbolTable();
+        var source = new SourceText(ByteBuffer.wrap("abc abd".getBytes()));
+
+        int id = table.intern("abc");
+
+        assertEquals(id, table.intern(source.subSequence(0, 3)));
+        assertNotEquals(id, table.intern(source.subSequence(4, 7)));
+        assertEquals("abd", table.getSign(table.intern("abd")));
+    }
+
+    @Test
+    void concurrentInterning() throws InterruptedException, ExecutionException {
+        var table = new SymbolTable();
+        int predefined = table.size();
+        var executor = Executors.newFixedThreadPool(8);
+
+        try {
+            var tasks = new ArrayList<Callable<int[]>>();
+            for (int thread = 0; thread < 8; thread++) {
+                tasks.add(() -> {
+                    var ids = new int[1000];
+                    for (int i = 0; i < ids.length; i++)
+                        ids[i] = table.intern("name" + i);
+                    return ids;
+                });
+            }
+
+            var results = new ArrayList<int[]>();
+            for (Future<int[]> future : executor.invokeAll(tasks))
+                results.add(future.get());
+
+            var distinct = new HashSet<Integer>();
+            for (int i = 0; i < 1000; i++) {
+                for (var ids : results)
+                    assertEquals(results.get(0)[i], ids[i]);
+
+                assertEquals("name" + i, table.getSign(results.get(0)[i]));
+                distinct.add(results.get(0)[i]);
+            }
+
+            assertEquals(1000, distinct.size());
+            assertEquals(predefined + 1000, table.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void tablesAreIndependent() {
+        var table = new SymbolTable();
+        var other = new SymbolTable();
+
+        var id = table.intern("abc");
+        assertEquals(SymbolTable.NONE, other.find("abc"));
+        assertEquals(SymbolTable.PLUS, other.find("+"));
+        assertEquals(table.size() - 1, other.size());
+
+        assertEquals(id, other.intern("xyz"));
+        assertEquals("abc", table.getSign(id));
+        assertEquals("xyz", other.getSign(id));
+        assertEquals(id, table.find("abc"));
+
+        assertTrue(SymbolTable.isPredefined(SymbolTable.ASSIGNMENT));
+        assertFalse(SymbolTable.isPredefined(id));
+        assertTrue(SymbolTable.signEquals(table, SymbolTable.DO, other, SymbolTable.DO));
+        assertTrue(SymbolTable.signEquals(table, id, other, other.intern("abc")));
+        assertFalse(SymbolTable.signEquals(table, id, other, id));
+        assertFalse(SymbolTable.signEquals(table, id, other, SymbolTable.DO));
+    }
+}